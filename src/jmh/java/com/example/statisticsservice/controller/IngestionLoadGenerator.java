@@ -0,0 +1,319 @@
+package com.example.statisticsservice.controller;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sends transactions to a running service and prints accepted transactions per second, latency of requests
+ * and memory and threads of the service, so protocols and web stacks can be compared on the same host:
+ * <pre>
+ * ./gradlew loadGenerator -PloadArgs="protocol=binary port=9090 connections=4 batch=1000 duration=30s"
+ * ./gradlew loadGenerator -PloadArgs="protocol=rest port=8080 connections=4 batch=1000 duration=30s"
+ * ./gradlew loadGenerator -PloadArgs="protocol=single port=8080 connections=10000 duration=60s"
+ * </pre>
+ * {@code binary} and {@code rest} send batches, {@code single} sends one transaction per {@code POST /transactions}
+ * from one thread with {@code connections} requests in flight, so it holds that many connections open.
+ * Every connection waits for the response to a request before sending the next one.
+ */
+public final class IngestionLoadGenerator {
+
+    private static final Pattern METRIC_VALUE = Pattern.compile("\"value\"\\s*:\\s*([0-9.Ee+-]+)");
+    /**
+     * Latency histogram has 8 sub-buckets per power of two of microseconds, so percentiles are within 1/8.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private final String protocol;
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int batchSize;
+    private final Duration duration;
+    private final int keys;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final AtomicLongArray latencies = new AtomicLongArray(64 << SUB_BUCKET_BITS);
+
+    private IngestionLoadGenerator(Map<String, String> options) {
+        this.protocol = options.getOrDefault("protocol", "binary");
+        this.host = options.getOrDefault("host", "localhost");
+        this.port = Integer.parseInt(options.getOrDefault("port", "binary".equals(protocol) ? "9090" : "8080"));
+        this.connections = Integer.parseInt(options.getOrDefault("connections", "4"));
+        this.batchSize = Integer.parseInt(options.getOrDefault("batch", "1000"));
+        this.duration = Duration.parse("PT" + options.getOrDefault("duration", "30s").toUpperCase());
+        this.keys = Integer.parseInt(options.getOrDefault("keys", "0"));
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value argument: arg=" + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        new IngestionLoadGenerator(options).run();
+    }
+
+    private void run() throws InterruptedException {
+        final long deadlineNanos = System.nanoTime() + duration.toNanos();
+        final long startNanos = System.nanoTime();
+        if ("single".equals(protocol)) {
+            sendSingle(deadlineNanos);
+        } else {
+            runThreads(deadlineNanos);
+        }
+
+        final double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("protocol=%s connections=%d batch=%d: %.0f accepted/s, %d accepted, %d rejected, "
+                        + "%.1f requests/s%n",
+                protocol, connections, batchSize, accepted.sum() / seconds, accepted.sum(), rejected.sum(),
+                batches.sum() / seconds);
+        System.out.printf("latency: p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms%n",
+                percentileInMs(0.5), percentileInMs(0.99), percentileInMs(0.999), percentileInMs(1));
+        if (!"binary".equals(protocol)) {
+            printServiceResources();
+        }
+    }
+
+    private void runThreads(long deadlineNanos) throws InterruptedException {
+        final List<Thread> threads = new ArrayList<>();
+        for (int connection = 0; connection < connections; connection++) {
+            final Thread thread = new Thread(() -> {
+                try {
+                    if ("binary".equals(protocol)) {
+                        sendBinary(deadlineNanos);
+                    } else if ("rest".equals(protocol)) {
+                        sendRest(deadlineNanos);
+                    } else {
+                        throw new IllegalArgumentException("Unknown protocol: " + protocol);
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "load-generator-" + connection);
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private void sendBinary(long deadlineNanos) throws IOException {
+        final ByteBuffer frame = ByteBuffer.allocateDirect(BinaryFrameDecoder.LENGTH_SIZE + 1
+                + batchSize * (Long.BYTES + Double.BYTES + Short.BYTES + 16));
+        final ByteBuffer ack = ByteBuffer.allocateDirect(BinaryFrameDecoder.ACK_SIZE);
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port))) {
+            channel.socket().setTcpNoDelay(true);
+            while (System.nanoTime() < deadlineNanos) {
+                frame.clear();
+                frame.putInt(0);
+                frame.put(keys > 0 ? BinaryFrameDecoder.FLAG_KEYS : 0);
+                final long now = System.currentTimeMillis();
+                for (int index = 0; index < batchSize; index++) {
+                    frame.putLong(now).putDouble(randomAmount());
+                    if (keys > 0) {
+                        final byte[] key = randomKey().getBytes(StandardCharsets.UTF_8);
+                        frame.putShort((short) key.length).put(key);
+                    }
+                }
+                frame.putInt(0, frame.position() - BinaryFrameDecoder.LENGTH_SIZE);
+                frame.flip();
+                final long sentNanos = System.nanoTime();
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+
+                ack.clear();
+                while (ack.hasRemaining()) {
+                    if (channel.read(ack) < 0) {
+                        throw new IOException("Connection is closed by the server");
+                    }
+                }
+                recordLatency(sentNanos);
+                ack.flip();
+                final int acceptedInBatch = ack.getInt();
+                accepted.add(acceptedInBatch);
+                rejected.add(batchSize - acceptedInBatch);
+                batches.increment();
+            }
+        }
+    }
+
+    private void sendRest(long deadlineNanos) throws IOException, InterruptedException {
+        final HttpClient client = newHttpClient();
+        final URI uri = URI.create("http://" + host + ":" + port + "/transactions/batch");
+        final StringBuilder body = new StringBuilder();
+        while (System.nanoTime() < deadlineNanos) {
+            body.setLength(0);
+            final long now = System.currentTimeMillis();
+            for (int index = 0; index < batchSize; index++) {
+                body.append("{\"amount\":").append(randomAmount()).append(",\"timestamp\":").append(now);
+                if (keys > 0) {
+                    body.append(",\"key\":\"").append(randomKey()).append('"');
+                }
+                body.append("}\n");
+            }
+
+            final HttpRequest request = HttpRequest.newBuilder(uri)
+                    .header("Content-Type", "application/x-ndjson")
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                    .build();
+            final long sentNanos = System.nanoTime();
+            final HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            recordLatency(sentNanos);
+            final int acceptedInBatch = parseAccepted(response.body());
+            accepted.add(acceptedInBatch);
+            rejected.add(batchSize - acceptedInBatch);
+            batches.increment();
+        }
+    }
+
+    /**
+     * Every one of {@code connections} chains sends the next request, when the previous one completes.
+     */
+    private void sendSingle(long deadlineNanos) throws InterruptedException {
+        final HttpClient client = newHttpClient();
+        final URI uri = URI.create("http://" + host + ":" + port + "/transactions");
+        final CountDownLatch chains = new CountDownLatch(connections);
+        for (int connection = 0; connection < connections; connection++) {
+            sendSingle(client, uri, deadlineNanos, chains);
+        }
+        chains.await();
+    }
+
+    private void sendSingle(HttpClient client, URI uri, long deadlineNanos, CountDownLatch chains) {
+        if (System.nanoTime() >= deadlineNanos) {
+            chains.countDown();
+            return;
+        }
+
+        final String body = "{\"amount\":" + randomAmount() + ",\"timestamp\":" + System.currentTimeMillis()
+                + (keys > 0 ? ",\"key\":\"" + randomKey() + '"' : "") + "}";
+        final HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        final long sentNanos = System.nanoTime();
+        final CompletableFuture<HttpResponse<Void>> response =
+                client.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+        // async, so failures completing at once don't recurse on one stack
+        response.whenCompleteAsync((result, error) -> {
+            recordLatency(sentNanos);
+            if (error == null && result.statusCode() == 201) {
+                accepted.increment();
+            } else {
+                rejected.increment();
+            }
+            batches.increment();
+            sendSingle(client, uri, deadlineNanos, chains);
+        });
+    }
+
+    private static HttpClient newHttpClient() {
+        // HTTP/1.1 explicitly, otherwise every connection starts with an h2c upgrade attempt
+        return HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    private void recordLatency(long sentNanos) {
+        final long micros = Math.max(1, (System.nanoTime() - sentNanos) / 1_000);
+        final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        final int subBucket = exponent >= SUB_BUCKET_BITS
+                ? (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1)
+                : (int) (micros << (SUB_BUCKET_BITS - exponent)) & ((1 << SUB_BUCKET_BITS) - 1);
+        latencies.incrementAndGet((exponent << SUB_BUCKET_BITS) + subBucket);
+    }
+
+    /**
+     * @return upper bound of the bucket, which holds the percentile
+     */
+    private double percentileInMs(double percentile) {
+        long total = 0;
+        for (int index = 0; index < latencies.length(); index++) {
+            total += latencies.get(index);
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int index = 0; index < latencies.length(); index++) {
+            seen += latencies.get(index);
+            if (seen >= rank && latencies.get(index) > 0) {
+                final int exponent = index >>> SUB_BUCKET_BITS;
+                final int subBucket = index & ((1 << SUB_BUCKET_BITS) - 1);
+                final double upperBoundInMicros =
+                        Math.pow(2, exponent) * (1 + (subBucket + 1) / (double) (1 << SUB_BUCKET_BITS));
+                return upperBoundInMicros / 1_000;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Prints memory and threads of the service from actuator, they are what a web stack spends on connections.
+     */
+    private void printServiceResources() {
+        final HttpClient client = newHttpClient();
+        final StringBuilder line = new StringBuilder("service:");
+        for (String metric : new String[]{"jvm.memory.used", "jvm.threads.live"}) {
+            try {
+                final HttpRequest request = HttpRequest.newBuilder(
+                        URI.create("http://" + host + ":" + port + "/actuator/metrics/" + metric)).build();
+                final Matcher matcher = METRIC_VALUE.matcher(
+                        client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+                line.append(' ').append(metric).append('=')
+                        .append(matcher.find() ? String.format("%.0f", Double.parseDouble(matcher.group(1))) : "?");
+            } catch (IOException e) {
+                line.append(' ').append(metric).append("=?");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        System.out.println(line);
+    }
+
+    private static double randomAmount() {
+        return ThreadLocalRandom.current().nextInt(1, 100_000) / 100.0;
+    }
+
+    private String randomKey() {
+        return "key-" + ThreadLocalRandom.current().nextInt(keys);
+    }
+
+    /**
+     * Only {@code accepted} is needed, so the response is not parsed as a whole.
+     */
+    private static int parseAccepted(String body) {
+        final int start = body.indexOf("\"accepted\":") + "\"accepted\":".length();
+        int end = start;
+        while (end < body.length() && Character.isDigit(body.charAt(end))) {
+            end++;
+        }
+        return end > start ? Integer.parseInt(body.substring(start, end)) : 0;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.dto.BatchTransactionsResponse;
+import com.example.statisticsservice.service.StatisticsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding cost per transaction of a REST batch body (NDJSON) and of a binary frame of the same transactions.
+ * Saving is stubbed out, so only the protocol is measured; end-to-end throughput with the HTTP stack
+ * is measured by {@link IngestionLoadGenerator}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestionProtocolBenchmark {
+
+    private static final int BATCH_SIZE = 1024;
+
+    private TransactionsBatchReader reader;
+    private TransactionsBatch batch;
+    private byte[] ndjson;
+    private ByteBuffer frame;
+
+    @Setup
+    public void setUp() {
+        final StatisticsService statisticsService = new StatisticsService(Duration.ofHours(1)) {
+            @Override
+            public int saveTransactions(String[] keys, double[] amounts, long[] timestamps, int length) {
+                return length;
+            }
+        };
+        reader = new TransactionsBatchReader(new ObjectMapper(), statisticsService);
+        batch = new TransactionsBatch(statisticsService);
+
+        final long now = System.currentTimeMillis();
+        final StringBuilder body = new StringBuilder();
+        frame = ByteBuffer.allocateDirect(1 + BATCH_SIZE * (Long.BYTES + Double.BYTES));
+        frame.put((byte) 0);
+        for (int index = 0; index < BATCH_SIZE; index++) {
+            final double amount = 10 + index % 1000 / 100.0;
+            body.append("{\"amount\": ").append(amount).append(", \"timestamp\": ").append(now).append("}\n");
+            frame.putLong(now).putDouble(amount);
+        }
+        ndjson = body.toString().getBytes(StandardCharsets.UTF_8);
+        frame.flip();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public BatchTransactionsResponse restBatch() throws IOException {
+        return reader.read(new ByteArrayInputStream(ndjson));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long binaryFrame() {
+        frame.position(0);
+        batch.reset();
+        BinaryFrameDecoder.decode(frame, frame.limit(), batch);
+        return batch.getAccepted();
+    }
+}
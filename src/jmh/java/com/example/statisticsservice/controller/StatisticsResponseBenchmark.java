@@ -0,0 +1,76 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import com.example.statisticsservice.dto.StatisticsResponse;
+import com.example.statisticsservice.service.Statistics;
+import com.example.statisticsservice.service.StatisticsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@code GET /statistics} response while statistics don't change: a cached body, a {@code 304},
+ * and serialization of a new response on every read, as it was done before the cache.
+ * {@code gc.alloc.rate.norm} of cached reads is expected to be zero.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticsResponseBenchmark {
+
+    private StatisticsService statisticsService;
+    private StatisticsResponseCache cache;
+    private ObjectMapper objectMapper;
+    private String eTag;
+
+    @Setup
+    public void setUp() {
+        final StatisticsProperties properties = new StatisticsProperties();
+        statisticsService = new StatisticsService(properties);
+        statisticsService.init();
+        objectMapper = new ObjectMapper();
+        cache = new StatisticsResponseCache(objectMapper, statisticsService, properties);
+        eTag = cache.get(statisticsService.getSnapshot(), 0, null).getHeaders().getETag();
+    }
+
+    @TearDown
+    public void tearDown() {
+        statisticsService.destroy();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public ResponseEntity<byte[]> cachedBody() {
+        return cache.get(statisticsService.getSnapshot(), 0, null);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public ResponseEntity<byte[]> notModified() {
+        return cache.get(statisticsService.getSnapshot(), 0, eTag);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public byte[] serializedOnEveryRead() throws Exception {
+        final Statistics stat = statisticsService.getStatisticsCache();
+        return objectMapper.writeValueAsBytes(new StatisticsResponse(stat.getSum(), stat.getAvg(), stat.getMax(),
+                stat.getMin(), stat.getCount(), stat.getP50(), stat.getP95(), stat.getP99()));
+    }
+}
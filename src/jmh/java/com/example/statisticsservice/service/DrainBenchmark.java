@@ -0,0 +1,100 @@
+package com.example.statisticsservice.service;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of aggregating one millisecond of traffic at 10^4..4*10^6 transactions per second with fixed and adaptive
+ * drain policies: transactions of the millisecond are saved, the simulated clock moves by a millisecond and passes
+ * of the statistics thread run until there is nothing to do, as they do after a wakeup. Above 1000 us per operation
+ * the statistics thread can't keep up with the rate. Passes per operation, i.e. publications of statistics,
+ * are reported as a secondary result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DrainBenchmark {
+
+    private static final long WINDOW_IN_MS = 1_000;
+
+    @Param({"10000", "100000", "1000000", "4000000"})
+    public int rate;
+
+    @Param({"false", "true"})
+    public boolean adaptive;
+
+    @Param({"PRIORITY_QUEUE", "BUCKETS"})
+    public StatisticsProperties.Engine engine;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Passes {
+        public long passes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            passes = 0;
+        }
+    }
+
+    private final Random random = new Random(42);
+    private SimulatedClock clock;
+    private StatisticsService statisticsService;
+    private double[] amounts;
+    private long[] timestamps;
+
+    @Setup
+    public void setUp() {
+        final StatisticsProperties properties = new StatisticsProperties();
+        // short window keeps population of the priority queue engine bounded
+        properties.getSliding().setWindow(Duration.ofMillis(WINDOW_IN_MS));
+        properties.setEngine(engine);
+        properties.getDrain().setAdaptive(adaptive);
+        clock = new SimulatedClock(0);
+        statisticsService = new StatisticsService(properties, clock);
+
+        final int transactionsPerMs = Math.max(1, rate / 1000);
+        amounts = new double[transactionsPerMs];
+        timestamps = new long[transactionsPerMs];
+        // the window is filled, so every millisecond expires as many transactions as it adds
+        final Passes passes = new Passes();
+        for (long ms = 0; ms < WINDOW_IN_MS; ms++) {
+            aggregateMillisecond(passes);
+        }
+    }
+
+    @Benchmark
+    public long aggregateMillisecond(Passes passes) {
+        final long nowInMs = clock.millis();
+        for (int index = 0; index < amounts.length; index++) {
+            amounts[index] = random.nextInt(100_000) / 100.0;
+            timestamps[index] = nowInMs;
+        }
+        statisticsService.saveTransactions(amounts, timestamps, amounts.length);
+        clock.advance(1);
+
+        while (statisticsService.aggregate()) {
+            passes.passes++;
+        }
+        return statisticsService.getStatisticsCache().getCount();
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.statisticsservice.service;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link StatisticsService#saveTransaction} with the statistics thread running.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class IngestionBenchmark {
+
+    @Param({"QUEUE", "STRIPED"})
+    public StatisticsProperties.IngestionMode ingestionMode;
+
+    @Param({"PRIORITY_QUEUE", "BUCKETS"})
+    public StatisticsProperties.Engine engine;
+
+    private StatisticsService statisticsService;
+
+    @Setup
+    public void setUp() {
+        final StatisticsProperties properties = new StatisticsProperties();
+        // short window keeps population of the priority queue engine bounded
+        properties.getSliding().setWindow(Duration.ofSeconds(1));
+        properties.setEngine(engine);
+        properties.getIngestion().setMode(ingestionMode);
+
+        statisticsService = new StatisticsService(properties);
+        statisticsService.init();
+    }
+
+    @TearDown
+    public void tearDown() {
+        statisticsService.destroy();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void saveTransaction1Thread() {
+        saveTransaction();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void saveTransaction4Threads() {
+        saveTransaction();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void saveTransaction16Threads() {
+        saveTransaction();
+    }
+
+    private void saveTransaction() {
+        statisticsService.saveTransaction(12.3, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.statisticsservice.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Throughput of {@link StatisticsService#getStatisticsCache()} while the statistics thread publishes snapshots.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadBenchmark {
+
+    private StatisticsService statisticsService;
+    private Thread writer;
+
+    @Setup
+    public void setUp() {
+        statisticsService = new StatisticsService(Duration.ofSeconds(1));
+        statisticsService.init();
+
+        writer = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                statisticsService.saveTransaction(12.3, System.currentTimeMillis());
+                // about 100k transactions per second
+                LockSupport.parkNanos(10_000);
+            }
+        }, "benchmark-writer");
+        writer.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        writer.interrupt();
+        writer.join();
+        statisticsService.destroy();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Statistics getStatisticsCache1Thread() {
+        return statisticsService.getStatisticsCache();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Statistics getStatisticsCache16Threads() {
+        return statisticsService.getStatisticsCache();
+    }
+}
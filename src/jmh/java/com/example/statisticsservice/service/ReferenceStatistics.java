@@ -0,0 +1,74 @@
+package com.example.statisticsservice.service;
+
+import java.util.Arrays;
+
+/**
+ * Naive statistics of a sliding window, which keep every transaction and recompute everything on read,
+ * quantiles are exact by nearest rank. It's the reference, which {@link TransactionReplay} checks the service against.
+ */
+final class ReferenceStatistics {
+
+    private final long windowInMs;
+    /**
+     * Transactions in the order of arrival, they are dropped from the head, when the head has expired,
+     * so an expired transaction behind a late one is kept longer, but never counted.
+     */
+    private long[] timestamps = new long[1024];
+    private double[] amounts = new double[1024];
+    private int head;
+    private int tail;
+
+    ReferenceStatistics(long windowInMs) {
+        this.windowInMs = windowInMs;
+    }
+
+    void add(double amount, long timestamp) {
+        if (tail == timestamps.length) {
+            // live transactions are moved to the start, into twice larger arrays if they take more than half
+            final int length = tail - head;
+            final long[] newTimestamps = length > timestamps.length / 2 ? new long[2 * timestamps.length] : timestamps;
+            final double[] newAmounts = length > amounts.length / 2 ? new double[2 * amounts.length] : amounts;
+            System.arraycopy(timestamps, head, newTimestamps, 0, length);
+            System.arraycopy(amounts, head, newAmounts, 0, length);
+            timestamps = newTimestamps;
+            amounts = newAmounts;
+            tail = length;
+            head = 0;
+        }
+        timestamps[tail] = timestamp;
+        amounts[tail] = amount;
+        tail++;
+    }
+
+    /**
+     * @return statistics of transactions, which are not older than the window at the time
+     */
+    Statistics getStatistics(long nowInMs) {
+        final long thresholdInMs = nowInMs - windowInMs;
+        while (head < tail && timestamps[head] < thresholdInMs) {
+            head++;
+        }
+
+        final double[] live = new double[tail - head];
+        int count = 0;
+        double sum = 0;
+        for (int index = head; index < tail; index++) {
+            if (timestamps[index] >= thresholdInMs) {
+                live[count++] = amounts[index];
+                sum += amounts[index];
+            }
+        }
+        if (count == 0) {
+            return Statistics.EMPTY;
+        }
+
+        Arrays.sort(live, 0, count);
+        final double[] quantiles = new double[Statistics.QUANTILES.length];
+        for (int index = 0; index < quantiles.length; index++) {
+            final long rank = Math.max(1, (long) Math.ceil(Statistics.QUANTILES[index] * count));
+            quantiles[index] = live[(int) rank - 1];
+        }
+        return new Statistics(sum, sum / count, live[count - 1], live[0], count,
+                quantiles[0], quantiles[1], quantiles[2]);
+    }
+}
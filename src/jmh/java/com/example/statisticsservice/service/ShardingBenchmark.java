@@ -0,0 +1,62 @@
+package com.example.statisticsservice.service;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of aggregation by 1 to 16 statistics threads.
+ * Producers are blocked by full ingestion buffers, so the throughput is the one of draining, not of enqueueing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ShardingBenchmark {
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int shards;
+
+    private StatisticsService statisticsService;
+
+    @Setup
+    public void setUp() {
+        final StatisticsProperties properties = new StatisticsProperties();
+        // short window keeps population of the priority queue engine bounded
+        properties.getSliding().setWindow(Duration.ofSeconds(1));
+        properties.setEngine(StatisticsProperties.Engine.PRIORITY_QUEUE);
+        properties.setShards(shards);
+        properties.getIngestion().setOverflowPolicy(StatisticsProperties.OverflowPolicy.BLOCK);
+        properties.getIngestion().setBlockTimeout(Duration.ofSeconds(1));
+
+        statisticsService = new StatisticsService(properties);
+        statisticsService.init();
+    }
+
+    @TearDown
+    public void tearDown() {
+        statisticsService.destroy();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean saveTransaction16Threads() {
+        return statisticsService.saveTransaction(12.3, System.currentTimeMillis());
+    }
+}
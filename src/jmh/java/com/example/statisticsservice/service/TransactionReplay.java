@@ -0,0 +1,453 @@
+package com.example.statisticsservice.service;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Replays a recorded file of transactions through ingestion, aggregation and expiry of {@link StatisticsService}
+ * in virtual time, as fast as the service goes, and checks statistics against {@link ReferenceStatistics}:
+ * <pre>
+ * ./gradlew replay -PreplayArgs="file=transactions.csv window=60s check=1s"
+ * ./gradlew replay -PreplayArgs="file=transactions.bin engine=off-heap"
+ * ./gradlew replay -PreplayArgs="generate=transactions.bin count=10000000 rate=20000"
+ * </pre>
+ * A {@code .csv} file has a {@code timestamp,amount} line per transaction, any other file has big-endian
+ * {@code timestamp:int64 amount:float64} records, as in the binary protocol. Transactions are replayed in the order
+ * of the file, the clock is set to the greatest timestamp so far, so a transaction arrives at its own timestamp
+ * unless it's out of order. The statistics threads are not started, the replay drives their passes itself and times
+ * them, {@code drain=fixed} replays with fixed batches instead of adaptive ones.
+ * <p>
+ * It prints throughput in transactions per second of time spent in the service, how much faster than the recording
+ * the replay was, latency histograms of every stage, final statistics of both, and exits with 1 if a check has failed.
+ */
+public final class TransactionReplay {
+
+    private static final int MAX_REPORTED_MISMATCHES = 10;
+
+    private enum Stage {
+        INGEST("ingest batch"),
+        PASS("aggregation pass"),
+        READ("read snapshot");
+
+        private final String title;
+
+        Stage(String title) {
+            this.title = title;
+        }
+    }
+
+    /**
+     * Latency histogram of a stage with 8 sub-buckets per power of two of nanoseconds, so percentiles are within 1/8.
+     */
+    private static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+
+        private final long[] counts = new long[64 << SUB_BUCKET_BITS];
+        private long total;
+        private long totalNanos;
+        private long maxNanos;
+
+        void record(long nanos) {
+            nanos = Math.max(1, nanos);
+            final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            final int subBucket = exponent >= SUB_BUCKET_BITS
+                    ? (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1)
+                    : (int) (nanos << (SUB_BUCKET_BITS - exponent)) & ((1 << SUB_BUCKET_BITS) - 1);
+            counts[(exponent << SUB_BUCKET_BITS) + subBucket]++;
+            total++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        /**
+         * @return upper bound of the bucket, which holds the percentile
+         */
+        double percentileInMicros(double percentile) {
+            final long rank = Math.max(1, (long) Math.ceil(percentile * total));
+            long seen = 0;
+            for (int index = 0; index < counts.length; index++) {
+                seen += counts[index];
+                if (seen >= rank && counts[index] > 0) {
+                    final int exponent = index >>> SUB_BUCKET_BITS;
+                    final int subBucket = index & ((1 << SUB_BUCKET_BITS) - 1);
+                    return Math.pow(2, exponent) * (1 + (subBucket + 1) / (double) (1 << SUB_BUCKET_BITS)) / 1_000;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Reads transactions of a recording one by one.
+     */
+    private interface Recording extends Closeable {
+        /**
+         * @return false at the end of the recording
+         */
+        boolean next() throws IOException;
+
+        long timestamp();
+
+        double amount();
+    }
+
+    private final Path file;
+    private final int batchSize;
+    private final long checkIntervalInMs;
+    private final long windowInMs;
+    private final double relativeAccuracy;
+    private final StatisticsProperties properties = new StatisticsProperties();
+
+    private final Histogram[] histograms = new Histogram[Stage.values().length];
+    private long transactions;
+    private long accepted;
+    private long late;
+    private long future;
+    private long checks;
+    private long mismatches;
+
+    private TransactionReplay(Map<String, String> options) {
+        this.file = Paths.get(options.getOrDefault("file", "transactions.csv"));
+        this.batchSize = Integer.parseInt(options.getOrDefault("batch", "1000"));
+        this.checkIntervalInMs = parseDuration(options.getOrDefault("check", "1s")).toMillis();
+        final Duration window = parseDuration(options.getOrDefault("window", "60s"));
+        this.windowInMs = window.toMillis();
+        properties.getSliding().setWindow(window);
+        properties.setEngine(StatisticsProperties.Engine.valueOf(
+                options.getOrDefault("engine", "priority-queue").toUpperCase(Locale.ROOT).replace('-', '_')));
+        properties.getDrain().setAdaptive(!"fixed".equals(options.getOrDefault("drain", "adaptive")));
+        properties.getIngestion().setCapacity(Math.max(properties.getIngestion().getCapacity(), batchSize));
+        this.relativeAccuracy = properties.getQuantiles().getRelativeAccuracy();
+        for (Stage stage : Stage.values()) {
+            histograms[stage.ordinal()] = new Histogram();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        final Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value argument: arg=" + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        if (options.containsKey("generate")) {
+            generate(Paths.get(options.get("generate")), Long.parseLong(options.getOrDefault("count", "1000000")),
+                    Integer.parseInt(options.getOrDefault("rate", "10000")));
+            return;
+        }
+        if (!new TransactionReplay(options).run()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return true if all checks have passed
+     */
+    private boolean run() throws IOException {
+        final double[] amounts = new double[batchSize];
+        final long[] timestamps = new long[batchSize];
+        final ReferenceStatistics reference = new ReferenceStatistics(windowInMs);
+        SimulatedClock clock = null;
+        StatisticsService statisticsService = null;
+        long firstTimestamp = 0;
+        long nextCheckMs = 0;
+
+        final long startNanos = System.nanoTime();
+        try (Recording recording = open(file)) {
+            boolean hasNext = recording.next();
+            while (hasNext) {
+                if (clock == null) {
+                    firstTimestamp = recording.timestamp();
+                    clock = new SimulatedClock(firstTimestamp);
+                    statisticsService = new StatisticsService(properties, clock);
+                    nextCheckMs = firstTimestamp + checkIntervalInMs;
+                }
+
+                // a batch is what arrived within one check interval at most
+                int length = 0;
+                while (hasNext && length < batchSize && recording.timestamp() < nextCheckMs) {
+                    transactions++;
+                    clock.advanceTo(recording.timestamp());
+                    final Watermark.Status status = statisticsService.checkTimestamp(recording.timestamp());
+                    if (status == Watermark.Status.ACCEPTED) {
+                        amounts[length] = recording.amount();
+                        timestamps[length] = recording.timestamp();
+                        reference.add(amounts[length], timestamps[length]);
+                        length++;
+                    } else if (status == Watermark.Status.LATE) {
+                        late++;
+                    } else {
+                        future++;
+                    }
+                    hasNext = recording.next();
+                }
+                if (hasNext && recording.timestamp() >= nextCheckMs) {
+                    clock.advanceTo(nextCheckMs);
+                }
+
+                process(statisticsService, amounts, timestamps, length);
+                if (clock.millis() >= nextCheckMs) {
+                    check(statisticsService, reference, clock.millis());
+                    nextCheckMs = clock.millis() + checkIntervalInMs;
+                }
+            }
+        }
+        final double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        if (statisticsService == null) {
+            System.out.println("No transactions in " + file);
+            return true;
+        }
+        check(statisticsService, reference, clock.millis());
+        report(statisticsService.getStatisticsCache(), reference.getStatistics(clock.millis()), seconds,
+                (clock.millis() - firstTimestamp) / 1e3);
+        return mismatches == 0;
+    }
+
+    private void process(StatisticsService statisticsService, double[] amounts, long[] timestamps, int length) {
+        if (length > 0) {
+            final long ingestNanos = System.nanoTime();
+            final int saved = statisticsService.saveTransactions(amounts, timestamps, length);
+            record(Stage.INGEST, ingestNanos);
+            if (saved != length) {
+                throw new IllegalStateException("Transactions were shed during replay: shed=" + (length - saved));
+            }
+            accepted += length;
+        }
+
+        boolean hasProgress;
+        do {
+            final long passNanos = System.nanoTime();
+            hasProgress = statisticsService.aggregate();
+            if (hasProgress) {
+                record(Stage.PASS, passNanos);
+            }
+        } while (hasProgress);
+    }
+
+    private void check(StatisticsService statisticsService, ReferenceStatistics reference, long nowInMs) {
+        final long readNanos = System.nanoTime();
+        final Statistics actual = statisticsService.getStatisticsCache();
+        record(Stage.READ, readNanos);
+        final Statistics expected = reference.getStatistics(nowInMs);
+        checks++;
+
+        final String mismatch = mismatch(actual, expected);
+        if (mismatch != null) {
+            mismatches++;
+            if (mismatches <= MAX_REPORTED_MISMATCHES) {
+                System.out.printf("mismatch at %d: %s%n  service:   %s%n  reference: %s%n",
+                        nowInMs, mismatch, format(actual), format(expected));
+            }
+        }
+    }
+
+    /**
+     * Count, min and max are exact, sums may differ by rounding of the naive sum,
+     * quantiles by the relative accuracy of the sketch.
+     *
+     * @return the first field, which doesn't match, or null
+     */
+    private String mismatch(Statistics actual, Statistics expected) {
+        if (actual.getCount() != expected.getCount()) {
+            return "count";
+        }
+        if (actual.getCount() == 0) {
+            return null;
+        }
+        final double sumTolerance = 1e-9 * Math.abs(expected.getSum()) + 1e-6;
+        if (Math.abs(actual.getSum() - expected.getSum()) > sumTolerance) {
+            return "sum";
+        }
+        if (Math.abs(actual.getAvg() - expected.getAvg()) > sumTolerance / expected.getCount()) {
+            return "avg";
+        }
+        if (actual.getMin() != expected.getMin()) {
+            return "min";
+        }
+        if (actual.getMax() != expected.getMax()) {
+            return "max";
+        }
+        if (!withinAccuracy(actual.getP50(), expected.getP50())) {
+            return "p50";
+        }
+        if (!withinAccuracy(actual.getP95(), expected.getP95())) {
+            return "p95";
+        }
+        if (!withinAccuracy(actual.getP99(), expected.getP99())) {
+            return "p99";
+        }
+        return null;
+    }
+
+    private boolean withinAccuracy(double actual, double expected) {
+        return Math.abs(actual - expected) <= relativeAccuracy * Math.abs(expected) + 1e-9;
+    }
+
+    private void record(Stage stage, long startNanos) {
+        histograms[stage.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Throughput is by the time spent in the service, the rest is spent mostly by the reference.
+     */
+    private void report(Statistics actual, Statistics expected, double seconds, double virtualSeconds) {
+        long serviceNanos = 0;
+        for (Histogram histogram : histograms) {
+            serviceNanos += histogram.totalNanos;
+        }
+        final double serviceSeconds = serviceNanos / 1e9;
+        System.out.printf("replayed %d transactions (%d accepted, %d late, %d future) of %.1fs in %.2fs, "
+                        + "%.2fs of them in the service: %.0f transactions/s, %.0fx real time%n",
+                transactions, accepted, late, future, virtualSeconds, seconds, serviceSeconds,
+                transactions / serviceSeconds, virtualSeconds / serviceSeconds);
+        for (Stage stage : Stage.values()) {
+            final Histogram histogram = histograms[stage.ordinal()];
+            System.out.printf("%-17s calls=%d p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus%n",
+                    stage.title, histogram.total, histogram.percentileInMicros(0.5),
+                    histogram.percentileInMicros(0.99), histogram.percentileInMicros(0.999),
+                    histogram.maxNanos / 1e3);
+        }
+        System.out.println("service:   " + format(actual));
+        System.out.println("reference: " + format(expected));
+        System.out.printf("checks=%d mismatches=%d%n", checks, mismatches);
+    }
+
+    private static String format(Statistics stat) {
+        return String.format(Locale.ROOT, "count=%d sum=%.2f avg=%.2f min=%.2f max=%.2f p50=%.2f p95=%.2f p99=%.2f",
+                stat.getCount(), stat.getSum(), stat.getAvg(), stat.getMin(), stat.getMax(),
+                stat.getP50(), stat.getP95(), stat.getP99());
+    }
+
+    private static Recording open(Path file) throws IOException {
+        if (file.toString().endsWith(".csv")) {
+            final BufferedReader reader = Files.newBufferedReader(file);
+            return new Recording() {
+                private long timestamp;
+                private double amount;
+
+                @Override
+                public boolean next() throws IOException {
+                    String line;
+                    do {
+                        line = reader.readLine();
+                        if (line == null) {
+                            return false;
+                        }
+                        line = line.trim();
+                        // a header and blank lines are skipped
+                    } while (line.isEmpty() || !Character.isDigit(line.charAt(0)));
+
+                    final int separator = line.indexOf(',');
+                    if (separator < 0) {
+                        throw new IOException("Expected timestamp,amount line: line=" + line);
+                    }
+                    timestamp = Long.parseLong(line.substring(0, separator).trim());
+                    amount = Double.parseDouble(line.substring(separator + 1).trim());
+                    return true;
+                }
+
+                @Override
+                public long timestamp() {
+                    return timestamp;
+                }
+
+                @Override
+                public double amount() {
+                    return amount;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    reader.close();
+                }
+            };
+        }
+
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        return new Recording() {
+            private long timestamp;
+            private double amount;
+
+            @Override
+            public boolean next() throws IOException {
+                try {
+                    timestamp = input.readLong();
+                } catch (EOFException e) {
+                    return false;
+                }
+                amount = input.readDouble();
+                return true;
+            }
+
+            @Override
+            public long timestamp() {
+                return timestamp;
+            }
+
+            @Override
+            public double amount() {
+                return amount;
+            }
+
+            @Override
+            public void close() throws IOException {
+                input.close();
+            }
+        };
+    }
+
+    /**
+     * Writes a recording of {@code rate} transactions per second, which are up to 100ms out of order.
+     */
+    private static void generate(Path file, long count, int rate) throws IOException {
+        final Random random = new Random(1);
+        final long startMs = System.currentTimeMillis() - count * 1000 / rate;
+        final boolean csv = file.toString().endsWith(".csv");
+        try (DataOutputStream binary = csv ? null
+                     : new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+             PrintWriter text = csv ? new PrintWriter(Files.newBufferedWriter(file)) : null) {
+            if (csv) {
+                text.println("timestamp,amount");
+            }
+            for (long index = 0; index < count; index++) {
+                final long timestamp = startMs + index * 1000 / rate - random.nextInt(100);
+                final double amount = random.nextInt(10_000_000) / 100.0;
+                if (csv) {
+                    text.print(timestamp);
+                    text.print(',');
+                    text.println(amount);
+                } else {
+                    binary.writeLong(timestamp);
+                    binary.writeDouble(amount);
+                }
+            }
+        }
+        System.out.printf("generated %d transactions at %d/s into %s%n", count, rate, file);
+    }
+
+    private static Duration parseDuration(String value) {
+        return DurationStyle.detectAndParse(value);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.statisticsservice.service;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steady state add and eviction of one batch at a fixed window population,
+ * the same work as {@link StatisticsService#addNewElementsIfNeeded()} and
+ * {@link StatisticsService#removeOldElementsIfNeeded()} do per pass, but with synthetic time,
+ * so the population doesn't depend on the ingestion rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class WindowBenchmark {
+
+    private static final long WINDOW_IN_MS = 60_000;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int population;
+
+    @Param({"PRIORITY_QUEUE", "BUCKETS", "OFF_HEAP"})
+    public StatisticsProperties.Engine engine;
+
+    private StatisticsEngine statisticsEngine;
+    private final Random random = new Random(42);
+    private double millisPerTransaction;
+    private long transactions;
+
+    @Setup
+    public void setUp() {
+        final StatisticsProperties properties = new StatisticsProperties();
+        properties.getSliding().setWindow(Duration.ofMillis(WINDOW_IN_MS));
+        properties.setEngine(engine);
+        statisticsEngine = StatisticsService.createEngine(properties, new long[]{WINDOW_IN_MS});
+
+        millisPerTransaction = (double) WINDOW_IN_MS / population;
+        for (int index = 0; index < population; index++) {
+            statisticsEngine.add(nextAmount(), nextTimestamp());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(StatisticsService.BATCH_SIZE)
+    public void addAndEvictBatch(Blackhole blackhole) {
+        long timestamp = 0;
+        for (int index = 0; index < StatisticsService.BATCH_SIZE; index++) {
+            timestamp = nextTimestamp();
+            statisticsEngine.add(nextAmount(), timestamp);
+        }
+        blackhole.consume(statisticsEngine.getStatistics());
+
+        blackhole.consume(statisticsEngine.removeExpired(timestamp, StatisticsService.BATCH_SIZE));
+        blackhole.consume(statisticsEngine.getStatistics());
+    }
+
+    private long nextTimestamp() {
+        return (long) (transactions++ * millisPerTransaction);
+    }
+
+    private double nextAmount() {
+        return random.nextInt(100_000) / 100.0;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.statisticsservice.service;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GC cost of a large live window: steady state add and eviction like {@link WindowBenchmark}, for transactions
+ * kept as objects and as off-heap records. Besides throughput and the {@code gc} profiler's count and time,
+ * the heap used by the populated window and the longest GC pause of the measurement are printed per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class WindowGcBenchmark {
+
+    private static final long WINDOW_IN_MS = 60_000;
+
+    @Param({"1000000", "10000000"})
+    public int population;
+
+    @Param({"PRIORITY_QUEUE", "OFF_HEAP"})
+    public StatisticsProperties.Engine engine;
+
+    private StatisticsEngine statisticsEngine;
+    private final Random random = new Random(42);
+    private double millisPerTransaction;
+    private long transactions;
+
+    private final AtomicLong maxGcPauseInMs = new AtomicLong();
+    private final NotificationListener gcListener = (notification, handback) -> {
+        if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            final GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            maxGcPauseInMs.accumulateAndGet(info.getGcInfo().getDuration(), Math::max);
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        final StatisticsProperties properties = new StatisticsProperties();
+        properties.getSliding().setWindow(Duration.ofMillis(WINDOW_IN_MS));
+        properties.setEngine(engine);
+        statisticsEngine = StatisticsService.createEngine(properties, new long[]{WINDOW_IN_MS});
+
+        millisPerTransaction = (double) WINDOW_IN_MS / population;
+        for (int index = 0; index < population; index++) {
+            statisticsEngine.add(nextAmount(), nextTimestamp());
+        }
+
+        System.gc();
+        final long heapUsedInMb = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() >> 20;
+        System.out.println("Heap used by the window: engine=" + engine + ", population=" + population
+                + ", heapUsedInMb=" + heapUsedInMb);
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener(gcListener, null, null);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetGcPause() {
+        maxGcPauseInMs.set(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void printGcPause() {
+        System.out.println("Max GC pause: engine=" + engine + ", population=" + population
+                + ", maxGcPauseInMs=" + maxGcPauseInMs.get());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).removeNotificationListener(gcListener);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(StatisticsService.BATCH_SIZE)
+    public void addAndEvictBatch(Blackhole blackhole) {
+        long timestamp = 0;
+        for (int index = 0; index < StatisticsService.BATCH_SIZE; index++) {
+            timestamp = nextTimestamp();
+            statisticsEngine.add(nextAmount(), timestamp);
+        }
+        blackhole.consume(statisticsEngine.removeExpired(timestamp, StatisticsService.BATCH_SIZE));
+        blackhole.consume(statisticsEngine.getStatistics());
+    }
+
+    private long nextTimestamp() {
+        return (long) (transactions++ * millisPerTransaction);
+    }
+
+    private double nextAmount() {
+        return random.nextInt(100_000) / 100.0;
+    }
+}
@@ -0,0 +1,911 @@
+package com.example.statisticsservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "statistics")
+public class StatisticsProperties {
+
+    public enum Engine {
+        /**
+         * Keeps every live transaction in a priority queue, exact to the millisecond.
+         */
+        PRIORITY_QUEUE,
+        /**
+         * Keeps a fixed ring of time buckets, O(1) add and expiry, constant memory.
+         */
+        BUCKETS,
+        /**
+         * The same as priority queue, but transactions are records in direct memory within a budget,
+         * so the window is not traced by the GC.
+         */
+        OFF_HEAP
+    }
+
+    public enum IngestionMode {
+        /**
+         * Single bounded queue shared by all request threads.
+         */
+        QUEUE,
+        /**
+         * Lock-free preallocated stripes, request threads are spread across stripes by thread id.
+         */
+        STRIPED
+    }
+
+    public enum OverflowPolicy {
+        /**
+         * New transaction is rejected, request gets 503 with Retry-After.
+         */
+        REJECT,
+        /**
+         * The oldest buffered transaction is dropped to make room for the new one, supported by queue mode only.
+         */
+        DROP_OLDEST,
+        /**
+         * Request thread waits up to {@code statistics.ingestion.block-timeout} for free space, then rejects.
+         */
+        BLOCK,
+        /**
+         * Transactions are merged per millisecond into a separate overflow area, so only min/max/sum/count are kept.
+         */
+        COALESCE
+    }
+
+    public enum SumAccumulator {
+        /**
+         * Compensated (Neumaier) summation of doubles.
+         */
+        COMPENSATED,
+        /**
+         * Exact sum of amounts rounded to {@code statistics.sum.scale} fraction digits.
+         */
+        FIXED_POINT
+    }
+
+    private final Sliding sliding = new Sliding();
+    private final Bucket bucket = new Bucket();
+    private final OffHeap offHeap = new OffHeap();
+    private final Ingestion ingestion = new Ingestion();
+    private final Sum sum = new Sum();
+    private final Quantiles quantiles = new Quantiles();
+    private final Keys keys = new Keys();
+    private final Watermark watermark = new Watermark();
+    private final Persistence persistence = new Persistence();
+    private final Binary binary = new Binary();
+    private final Cluster cluster = new Cluster();
+    private final Rollup rollup = new Rollup();
+    private final Sketches sketches = new Sketches();
+    private final Stream stream = new Stream();
+    private final Drain drain = new Drain();
+    private Engine engine = Engine.PRIORITY_QUEUE;
+
+    /**
+     * Number of aggregation shards, every shard has its own ingestion buffer, engine and statistics thread,
+     * request threads are spread across shards by thread id. Is rounded up to a power of two,
+     * 0 means number of available processors.
+     */
+    private int shards = 1;
+
+    /**
+     * The statistics thread sleeps until the next transaction or the next expiry, if it's set, then not longer
+     * than this, as a safety net against a missed wakeup. Null means no cap, so an idle thread doesn't wake up.
+     */
+    private Duration maxStaleness;
+
+    /**
+     * {@code Cache-Control} max age of {@code GET /statistics}, zero means {@code no-cache},
+     * so clients revalidate every read with {@code If-None-Match}.
+     */
+    private Duration cacheMaxAge = Duration.ZERO;
+
+    public Sliding getSliding() {
+        return sliding;
+    }
+
+    public Bucket getBucket() {
+        return bucket;
+    }
+
+    public OffHeap getOffHeap() {
+        return offHeap;
+    }
+
+    public Ingestion getIngestion() {
+        return ingestion;
+    }
+
+    public Sum getSum() {
+        return sum;
+    }
+
+    public Quantiles getQuantiles() {
+        return quantiles;
+    }
+
+    public Keys getKeys() {
+        return keys;
+    }
+
+    public Watermark getWatermark() {
+        return watermark;
+    }
+
+    public Persistence getPersistence() {
+        return persistence;
+    }
+
+    public Binary getBinary() {
+        return binary;
+    }
+
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    public Rollup getRollup() {
+        return rollup;
+    }
+
+    public Sketches getSketches() {
+        return sketches;
+    }
+
+    public Stream getStream() {
+        return stream;
+    }
+
+    public Drain getDrain() {
+        return drain;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    public Duration getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    public void setMaxStaleness(Duration maxStaleness) {
+        this.maxStaleness = maxStaleness;
+    }
+
+    public Duration getCacheMaxAge() {
+        return cacheMaxAge;
+    }
+
+    public void setCacheMaxAge(Duration cacheMaxAge) {
+        this.cacheMaxAge = cacheMaxAge;
+    }
+
+    public static class Sliding {
+
+        /**
+         * The primary window, it's returned by default.
+         */
+        private Duration window = Duration.ofSeconds(60);
+
+        /**
+         * Additional windows, which are calculated from the same transactions.
+         */
+        private List<Duration> windows = new ArrayList<>();
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public List<Duration> getWindows() {
+            return windows;
+        }
+
+        public void setWindows(List<Duration> windows) {
+            this.windows = windows;
+        }
+    }
+
+    public static class Bucket {
+
+        /**
+         * Width of one time bucket. Transactions expire together with their bucket,
+         * so statistics may include transactions up to (resolution - 1 ms) older than the window.
+         */
+        private Duration resolution = Duration.ofMillis(1);
+
+        public Duration getResolution() {
+            return resolution;
+        }
+
+        public void setResolution(Duration resolution) {
+            this.resolution = resolution;
+        }
+    }
+
+    public static class OffHeap {
+
+        /**
+         * Direct memory of all windows of all shards for {@code off-heap} engine, it's split evenly between them
+         * and allocated on demand. When a window is full, its oldest transactions are evicted before expiry.
+         */
+        private DataSize maxMemory = DataSize.ofGigabytes(1);
+
+        public DataSize getMaxMemory() {
+            return maxMemory;
+        }
+
+        public void setMaxMemory(DataSize maxMemory) {
+            this.maxMemory = maxMemory;
+        }
+    }
+
+    public static class Ingestion {
+
+        private IngestionMode mode = IngestionMode.QUEUE;
+
+        /**
+         * Number of stripes for striped mode, 0 means number of available processors.
+         * Is rounded up to a power of two.
+         */
+        private int stripes = 0;
+
+        /**
+         * Capacity of one stripe in transactions. Is rounded up to a power of two.
+         */
+        private int stripeCapacity = 65536;
+
+        /**
+         * Capacity of the queue in queue mode.
+         */
+        private int capacity = 1 << 20;
+
+        /**
+         * What to do with a transaction, when the buffer is full.
+         */
+        private OverflowPolicy overflowPolicy = OverflowPolicy.REJECT;
+
+        /**
+         * Max wait time of a request thread for block policy.
+         */
+        private Duration blockTimeout = Duration.ofMillis(10);
+
+        /**
+         * Number of per millisecond slots of coalesce policy. Is rounded up to a power of two.
+         */
+        private int coalesceSlots = 4096;
+
+        public IngestionMode getMode() {
+            return mode;
+        }
+
+        public void setMode(IngestionMode mode) {
+            this.mode = mode;
+        }
+
+        public int getStripes() {
+            return stripes;
+        }
+
+        public void setStripes(int stripes) {
+            this.stripes = stripes;
+        }
+
+        public int getStripeCapacity() {
+            return stripeCapacity;
+        }
+
+        public void setStripeCapacity(int stripeCapacity) {
+            this.stripeCapacity = stripeCapacity;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        public Duration getBlockTimeout() {
+            return blockTimeout;
+        }
+
+        public void setBlockTimeout(Duration blockTimeout) {
+            this.blockTimeout = blockTimeout;
+        }
+
+        public int getCoalesceSlots() {
+            return coalesceSlots;
+        }
+
+        public void setCoalesceSlots(int coalesceSlots) {
+            this.coalesceSlots = coalesceSlots;
+        }
+    }
+
+    public static class Sum {
+
+        private SumAccumulator accumulator = SumAccumulator.COMPENSATED;
+
+        /**
+         * Number of fraction digits kept by fixed point accumulator, e.g. 2 for cents.
+         */
+        private int scale = 2;
+
+        public SumAccumulator getAccumulator() {
+            return accumulator;
+        }
+
+        public void setAccumulator(SumAccumulator accumulator) {
+            this.accumulator = accumulator;
+        }
+
+        public int getScale() {
+            return scale;
+        }
+
+        public void setScale(int scale) {
+            this.scale = scale;
+        }
+    }
+
+    public static class Quantiles {
+
+        /**
+         * Max relative error of quantiles, memory of a window sketch is O(1 / relativeAccuracy).
+         */
+        private double relativeAccuracy = 0.01;
+
+        public double getRelativeAccuracy() {
+            return relativeAccuracy;
+        }
+
+        public void setRelativeAccuracy(double relativeAccuracy) {
+            this.relativeAccuracy = relativeAccuracy;
+        }
+    }
+
+    public static class Keys {
+
+        /**
+         * Max number of keys with statistics, a key takes 40 bytes per bucket of (window + future skew) / resolution
+         * buckets, i.e. about 2.5KB for a 60s window at 1s resolution, so the default table takes about 25MB.
+         */
+        private int maxKeys = 10_000;
+
+        /**
+         * Width of one bucket of a key, statistics of a key may include transactions
+         * up to (resolution - 1 ms) older than the window.
+         */
+        private Duration resolution = Duration.ofSeconds(1);
+
+        /**
+         * Number of independently locked parts of the key table. Is rounded up to a power of two.
+         */
+        private int stripes = 16;
+
+        public int getMaxKeys() {
+            return maxKeys;
+        }
+
+        public void setMaxKeys(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+
+        public Duration getResolution() {
+            return resolution;
+        }
+
+        public void setResolution(Duration resolution) {
+            this.resolution = resolution;
+        }
+
+        public int getStripes() {
+            return stripes;
+        }
+
+        public void setStripes(int stripes) {
+            this.stripes = stripes;
+        }
+    }
+
+    public static class Watermark {
+
+        /**
+         * How far behind the greatest accepted timestamp a transaction may be, null means the longest window.
+         */
+        private Duration allowedLateness;
+
+        /**
+         * How far ahead of the clock a transaction may be, it's saved as if it happened now.
+         */
+        private Duration futureSkew = Duration.ofSeconds(1);
+
+        public Duration getAllowedLateness() {
+            return allowedLateness;
+        }
+
+        public void setAllowedLateness(Duration allowedLateness) {
+            this.allowedLateness = allowedLateness;
+        }
+
+        public Duration getFutureSkew() {
+            return futureSkew;
+        }
+
+        public void setFutureSkew(Duration futureSkew) {
+            this.futureSkew = futureSkew;
+        }
+    }
+
+    public static class Persistence {
+
+        /**
+         * Transactions are written to a write-ahead log and the window is rebuilt from it on startup.
+         */
+        private boolean enabled = false;
+
+        private String directory = "data/wal";
+
+        /**
+         * Size of one memory-mapped log segment file. Segments are deleted, when they leave the longest window.
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Log segments are forced to disk not more often than this, records written between syncs
+         * survive a crash of the process, but not of the OS.
+         */
+        private Duration syncInterval = Duration.ofMillis(10);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public DataSize getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(DataSize segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public Duration getSyncInterval() {
+            return syncInterval;
+        }
+
+        public void setSyncInterval(Duration syncInterval) {
+            this.syncInterval = syncInterval;
+        }
+    }
+
+    public static class Binary {
+
+        /**
+         * Transactions are also accepted by the binary protocol over a plain TCP socket.
+         */
+        private boolean enabled = false;
+
+        private String host = "0.0.0.0";
+
+        private int port = 9090;
+
+        /**
+         * Max length of one frame, every connection has an input buffer of this size.
+         */
+        private DataSize maxFrameSize = DataSize.ofKilobytes(256);
+
+        /**
+         * Max number of open connections, further ones wait in the accept backlog, until a connection is closed.
+         * Direct memory of connections is about max connections * max frame size.
+         */
+        private int maxConnections = 256;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public void setHost(String host) {
+            this.host = host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public void setPort(int port) {
+            this.port = port;
+        }
+
+        public DataSize getMaxFrameSize() {
+            return maxFrameSize;
+        }
+
+        public void setMaxFrameSize(DataSize maxFrameSize) {
+            this.maxFrameSize = maxFrameSize;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+    }
+
+    public static class Cluster {
+
+        /**
+         * The node keeps time-bucketed partial aggregates of the longest window for coordinators.
+         */
+        private boolean node = false;
+
+        /**
+         * Bucket width of partial aggregates, a merged window may include transactions up to
+         * {@code resolution - 1ms} older than the window.
+         */
+        private Duration resolution = Duration.ofSeconds(1);
+
+        /**
+         * Partial aggregates are encoded by the statistics thread at most this often, and whenever it's idle.
+         */
+        private Duration publishInterval = Duration.ofMillis(100);
+
+        /**
+         * Base URLs of nodes, which are merged by this instance, e.g. {@code http://node-1:8080}.
+         * The instance is a coordinator if there are peers.
+         */
+        private List<String> peers = new ArrayList<>();
+
+        private Duration pollInterval = Duration.ofMillis(500);
+
+        private Duration requestTimeout = Duration.ofSeconds(1);
+
+        /**
+         * Partial aggregates of a node, which are older than this, are left out of merged statistics.
+         */
+        private Duration maxStaleness = Duration.ofSeconds(5);
+
+        public boolean isNode() {
+            return node;
+        }
+
+        public void setNode(boolean node) {
+            this.node = node;
+        }
+
+        public Duration getResolution() {
+            return resolution;
+        }
+
+        public void setResolution(Duration resolution) {
+            this.resolution = resolution;
+        }
+
+        public Duration getPublishInterval() {
+            return publishInterval;
+        }
+
+        public void setPublishInterval(Duration publishInterval) {
+            this.publishInterval = publishInterval;
+        }
+
+        public List<String> getPeers() {
+            return peers;
+        }
+
+        public void setPeers(List<String> peers) {
+            this.peers = peers;
+        }
+
+        public Duration getPollInterval() {
+            return pollInterval;
+        }
+
+        public void setPollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+        }
+
+        public Duration getRequestTimeout() {
+            return requestTimeout;
+        }
+
+        public void setRequestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+        }
+
+        public Duration getMaxStaleness() {
+            return maxStaleness;
+        }
+
+        public void setMaxStaleness(Duration maxStaleness) {
+            this.maxStaleness = maxStaleness;
+        }
+    }
+
+    public static class Rollup {
+
+        /**
+         * Keep history of count, sum, min and max for range queries.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Tiers of history, every tier keeps {@code retention / resolution} buckets.
+         */
+        private List<RollupTier> tiers = new ArrayList<>(List.of(
+                new RollupTier(Duration.ofSeconds(1), Duration.ofHours(1)),
+                new RollupTier(Duration.ofMinutes(1), Duration.ofDays(1)),
+                new RollupTier(Duration.ofHours(1), Duration.ofDays(30))));
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<RollupTier> getTiers() {
+            return tiers;
+        }
+
+        public void setTiers(List<RollupTier> tiers) {
+            this.tiers = tiers;
+        }
+    }
+
+    public static class RollupTier {
+
+        private Duration resolution;
+
+        private Duration retention;
+
+        public RollupTier() {
+        }
+
+        public RollupTier(Duration resolution, Duration retention) {
+            this.resolution = resolution;
+            this.retention = retention;
+        }
+
+        public Duration getResolution() {
+            return resolution;
+        }
+
+        public void setResolution(Duration resolution) {
+            this.resolution = resolution;
+        }
+
+        public Duration getRetention() {
+            return retention;
+        }
+
+        public void setRetention(Duration retention) {
+            this.retention = retention;
+        }
+    }
+
+    public static class Sketches {
+
+        /**
+         * Keep distinct count and heavy hitter sketches of windows.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Width of one time bucket of sketches, a window may include transactions up to {@code resolution - 1ms}
+         * older than the window. Memory is O(longest window / resolution).
+         */
+        private Duration resolution = Duration.ofSeconds(1);
+
+        /**
+         * Distinct counts keep {@code 2^precision} one byte registers per bucket,
+         * their standard error is {@code 1.04 / sqrt(2^precision)}.
+         */
+        private int precision = 12;
+
+        /**
+         * Counters of the most frequent amounts per bucket, an amount more frequent than
+         * {@code 1 / heavyHitters} of a window is always found.
+         */
+        private int heavyHitters = 64;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getResolution() {
+            return resolution;
+        }
+
+        public void setResolution(Duration resolution) {
+            this.resolution = resolution;
+        }
+
+        public int getPrecision() {
+            return precision;
+        }
+
+        public void setPrecision(int precision) {
+            this.precision = precision;
+        }
+
+        public int getHeavyHitters() {
+            return heavyHitters;
+        }
+
+        public void setHeavyHitters(int heavyHitters) {
+            this.heavyHitters = heavyHitters;
+        }
+    }
+
+    public static class Stream {
+
+        /**
+         * A subscriber of {@code GET /statistics/stream} gets an update at most this often,
+         * statistics published in between are conflated into the latest ones.
+         */
+        private Duration minInterval = Duration.ofMillis(100);
+
+        /**
+         * An idle stream gets a comment this often, so proxies keep it open and closed clients are found.
+         */
+        private Duration heartbeat = Duration.ofSeconds(15);
+
+        /**
+         * A stream is closed after this time, an event source reconnects by itself.
+         */
+        private Duration timeout = Duration.ofMinutes(30);
+
+        private int maxSubscribers = 10_000;
+
+        /**
+         * Threads, which write updates to subscribers, a slow subscriber holds one of them while it's written to.
+         */
+        private int sendThreads = 4;
+
+        public Duration getMinInterval() {
+            return minInterval;
+        }
+
+        public void setMinInterval(Duration minInterval) {
+            this.minInterval = minInterval;
+        }
+
+        public Duration getHeartbeat() {
+            return heartbeat;
+        }
+
+        public void setHeartbeat(Duration heartbeat) {
+            this.heartbeat = heartbeat;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public int getMaxSubscribers() {
+            return maxSubscribers;
+        }
+
+        public void setMaxSubscribers(int maxSubscribers) {
+            this.maxSubscribers = maxSubscribers;
+        }
+
+        public int getSendThreads() {
+            return sendThreads;
+        }
+
+        public void setSendThreads(int sendThreads) {
+            this.sendThreads = sendThreads;
+        }
+    }
+
+    public static class Drain {
+
+        /**
+         * Batches of a pass of the statistics thread are sized by measured cost per transaction, so the pass,
+         * including publication of statistics, takes about target latency. Otherwise every batch is min batch.
+         */
+        private boolean adaptive = true;
+
+        /**
+         * Time of one pass of the statistics thread, which new and expired transactions share,
+         * statistics are published after every pass, so it bounds how long a publication waits under load.
+         */
+        private Duration targetLatency = Duration.ofMillis(1);
+
+        private int minBatch = 100;
+
+        private int maxBatch = 65_536;
+
+        public boolean isAdaptive() {
+            return adaptive;
+        }
+
+        public void setAdaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+        }
+
+        public Duration getTargetLatency() {
+            return targetLatency;
+        }
+
+        public void setTargetLatency(Duration targetLatency) {
+            this.targetLatency = targetLatency;
+        }
+
+        public int getMinBatch() {
+            return minBatch;
+        }
+
+        public void setMinBatch(int minBatch) {
+            this.minBatch = minBatch;
+        }
+
+        public int getMaxBatch() {
+            return maxBatch;
+        }
+
+        public void setMaxBatch(int maxBatch) {
+            this.maxBatch = maxBatch;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.statisticsservice.controller;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary ingestion protocol, all numbers are big-endian:
+ * <pre>
+ * frame   := length:int32 payload                  length of payload, up to max frame size
+ * payload := flags:int8 record*                    flags bit 0: records have keys
+ * record  := timestamp:int64 amount:float64 [keyLength:uint16 key:utf8]
+ * ack     := accepted:int32 tooOld:int32 tooNew:int32 invalid:int32 shed:int32
+ * </pre>
+ * Records with a negative timestamp or an amount, which is not valid, e.g. NaN or infinite, are counted as invalid.
+ * Every frame gets one ack, acks are sent in the order of frames.
+ */
+final class BinaryFrameDecoder {
+
+    static final int LENGTH_SIZE = Integer.BYTES;
+    static final int ACK_SIZE = 5 * Integer.BYTES;
+    static final byte FLAG_KEYS = 1;
+
+    private static final int RECORD_SIZE = Long.BYTES + Double.BYTES;
+    private static final int KEY_LENGTH_SIZE = Short.BYTES;
+
+    private BinaryFrameDecoder() {
+    }
+
+    /**
+     * Decodes records of the payload from the buffer's position to {@code end} straight into the batch
+     * and flushes it, the position is moved to {@code end}.
+     *
+     * @throws MalformedFrameException if the payload is not valid, records before the error are saved
+     */
+    static void decode(ByteBuffer input, int end, TransactionsBatch batch) {
+        if (input.position() >= end) {
+            throw new MalformedFrameException("Empty frame");
+        }
+
+        try {
+            final boolean hasKeys = (input.get() & FLAG_KEYS) != 0;
+            while (input.position() < end) {
+                if (end - input.position() < RECORD_SIZE) {
+                    throw new MalformedFrameException("Truncated record: remaining=" + (end - input.position()));
+                }
+                final long timestamp = input.getLong();
+                final double amount = input.getDouble();
+
+                String key = null;
+                if (hasKeys) {
+                    key = decodeKey(input, end);
+                }
+                // the batch validates the raw amount, so NaN and infinities never reach the statistics thread
+                batch.add(amount, timestamp, key);
+            }
+        } finally {
+            batch.flush();
+        }
+    }
+
+    /**
+     * Writes the ack of the decoded frame.
+     */
+    static void encodeAck(ByteBuffer output, TransactionsBatch batch) {
+        output.putInt((int) batch.getAccepted());
+        output.putInt((int) batch.getTooOld());
+        output.putInt((int) batch.getTooNew());
+        output.putInt((int) (batch.getInvalidTimestamp() + batch.getInvalidAmount()));
+        output.putInt((int) batch.getShed());
+    }
+
+    private static String decodeKey(ByteBuffer input, int end) {
+        if (end - input.position() < KEY_LENGTH_SIZE) {
+            throw new MalformedFrameException("Truncated key length");
+        }
+        final int keyLength = Short.toUnsignedInt(input.getShort());
+        if (end - input.position() < keyLength) {
+            throw new MalformedFrameException("Truncated key: keyLength=" + keyLength);
+        }
+        if (keyLength == 0) {
+            return null;
+        }
+
+        final String key;
+        if (input.hasArray()) {
+            key = new String(input.array(), input.arrayOffset() + input.position(), keyLength, StandardCharsets.UTF_8);
+            input.position(input.position() + keyLength);
+        } else {
+            final byte[] bytes = new byte[keyLength];
+            input.get(bytes);
+            key = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return key;
+    }
+}
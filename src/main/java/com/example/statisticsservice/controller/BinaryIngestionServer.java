@@ -0,0 +1,265 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import com.example.statisticsservice.service.StatisticsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingestion listener of the binary protocol, see {@link BinaryFrameDecoder}, alongside the REST API.
+ * <p>
+ * One selector thread serves all connections. Every connection has a direct input buffer of max frame size,
+ * records are decoded from it straight into a reused {@link TransactionsBatch}, so a transaction costs no allocation
+ * unless it has a key. A connection is not read while its acks can't be written, so a slow client
+ * doesn't make the server buffer acks. At max connections, or for a while after a failed accept, e.g. when
+ * the process is out of file descriptors, new connections are left in the accept backlog.
+ */
+@Component
+@ConditionalOnProperty(prefix = "statistics.binary", name = "enabled", havingValue = "true")
+public class BinaryIngestionServer {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryIngestionServer.class);
+    private static final int PENDING_ACKS = 64;
+    private static final long SHUTDOWN_TIMEOUT_IN_MS = 5_000;
+    private static final long ACCEPT_RETRY_IN_MS = 100;
+
+    private static final class Connection {
+        private final ByteBuffer input;
+        private final ByteBuffer output = ByteBuffer.allocateDirect(PENDING_ACKS * BinaryFrameDecoder.ACK_SIZE);
+
+        private Connection(int maxFrameSize) {
+            this.input = ByteBuffer.allocateDirect(BinaryFrameDecoder.LENGTH_SIZE + maxFrameSize);
+        }
+    }
+
+    private final InetSocketAddress address;
+    private final int maxFrameSize;
+    private final int maxConnections;
+    /**
+     * Is used by the selector thread only.
+     */
+    private final TransactionsBatch batch;
+    private final Thread selectorThread = new Thread(this::processConnections, "binary-ingestion");
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private SelectionKey serverKey;
+    /**
+     * Are used by the selector thread only.
+     */
+    private int connectionCount;
+    private long acceptRetryAtNanos = System.nanoTime();
+
+    public BinaryIngestionServer(StatisticsService statisticsService, StatisticsProperties properties) {
+        // saving must never wait on the selector thread, it would stall every connection
+        if (properties.getIngestion().getOverflowPolicy() == StatisticsProperties.OverflowPolicy.BLOCK) {
+            throw new IllegalArgumentException("Overflow policy block is not supported by binary ingestion");
+        }
+        final StatisticsProperties.Binary binary = properties.getBinary();
+        if (binary.getMaxConnections() <= 0) {
+            throw new IllegalArgumentException("Binary max connections must be positive: maxConnections="
+                    + binary.getMaxConnections());
+        }
+
+        this.address = new InetSocketAddress(binary.getHost(), binary.getPort());
+        this.maxFrameSize = Math.toIntExact(binary.getMaxFrameSize().toBytes());
+        this.maxConnections = binary.getMaxConnections();
+        this.batch = new TransactionsBatch(statisticsService);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        selectorThread.start();
+        log.info("Binary ingestion is listening: address={}", serverChannel.getLocalAddress());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        selectorThread.interrupt();
+        selector.wakeup();
+        try {
+            selectorThread.join(SHUTDOWN_TIMEOUT_IN_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * @return local port, it's useful when the configured port is 0
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    private void processConnections() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (updateAccepting()) {
+                    selector.select();
+                } else {
+                    selector.select(ACCEPT_RETRY_IN_MS);
+                }
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    processKey(key);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            log.error("Binary ingestion selector failed", e);
+        }
+        log.info("Binary ingestion thread was stopped");
+    }
+
+    /**
+     * @return true if new connections are accepted
+     */
+    private boolean updateAccepting() {
+        final boolean accepting = connectionCount < maxConnections && System.nanoTime() - acceptRetryAtNanos >= 0;
+        serverKey.interestOps(accepting ? SelectionKey.OP_ACCEPT : 0);
+        return accepting;
+    }
+
+    private void processKey(SelectionKey key) throws IOException {
+        if (key.isAcceptable()) {
+            try {
+                accept();
+            } catch (IOException e) {
+                // the connection stays in the backlog, it's accepted again a bit later, not in a busy loop
+                log.warn("Cannot accept binary ingestion connection: message={}", e.getMessage());
+                acceptRetryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ACCEPT_RETRY_IN_MS);
+            }
+            return;
+        }
+
+        try {
+            if (key.isReadable()) {
+                read(key);
+            }
+            if (key.isValid() && key.isWritable()) {
+                write(key);
+            }
+        } catch (IOException | MalformedFrameException e) {
+            log.warn("Closing binary ingestion connection: remote={}, message={}",
+                    ((SocketChannel) key.channel()).getRemoteAddress(), e.getMessage());
+            close(key);
+        }
+    }
+
+    private void close(SelectionKey key) throws IOException {
+        key.cancel();
+        key.channel().close();
+        connectionCount--;
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.register(selector, SelectionKey.OP_READ, new Connection(maxFrameSize));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        connectionCount++;
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        final Connection connection = (Connection) key.attachment();
+        if (((SocketChannel) key.channel()).read(connection.input) < 0) {
+            close(key);
+            return;
+        }
+        serve(key, connection);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        serve(key, (Connection) key.attachment());
+    }
+
+    private void serve(SelectionKey key, Connection connection) throws IOException {
+        boolean outputFull;
+        do {
+            outputFull = processFrames(connection);
+            // frames may be left in the input, while there was no room for their acks
+        } while (flush(key) && outputFull);
+    }
+
+    /**
+     * Decodes whole frames of the input, while there is room for their acks.
+     *
+     * @return true if it stopped, because there is no room for the next ack
+     */
+    private boolean processFrames(Connection connection) {
+        final ByteBuffer input = connection.input;
+        input.flip();
+        try {
+            while (connection.output.remaining() >= BinaryFrameDecoder.ACK_SIZE
+                    && input.remaining() >= BinaryFrameDecoder.LENGTH_SIZE) {
+                final int length = input.getInt(input.position());
+                if (length <= 0 || length > maxFrameSize) {
+                    throw new MalformedFrameException("Invalid frame length: length=" + length
+                            + ", maxFrameSize=" + maxFrameSize);
+                }
+                if (input.remaining() < BinaryFrameDecoder.LENGTH_SIZE + length) {
+                    break;
+                }
+
+                input.position(input.position() + BinaryFrameDecoder.LENGTH_SIZE);
+                batch.reset();
+                BinaryFrameDecoder.decode(input, input.position() + length, batch);
+                BinaryFrameDecoder.encodeAck(connection.output, batch);
+            }
+            return connection.output.remaining() < BinaryFrameDecoder.ACK_SIZE;
+        } finally {
+            input.compact();
+        }
+    }
+
+    /**
+     * Writes pending acks, the connection is read again only when all of them are written.
+     *
+     * @return true if all acks are written
+     */
+    private boolean flush(SelectionKey key) throws IOException {
+        final ByteBuffer output = ((Connection) key.attachment()).output;
+        if (output.position() > 0) {
+            output.flip();
+            ((SocketChannel) key.channel()).write(output);
+            output.compact();
+        }
+
+        final boolean flushed = output.position() == 0;
+        key.interestOps(flushed ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+        return flushed;
+    }
+}
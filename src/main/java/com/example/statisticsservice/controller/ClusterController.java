@@ -0,0 +1,71 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.dto.ClusterStatisticsResponse;
+import com.example.statisticsservice.service.ClusterCoordinator;
+import com.example.statisticsservice.service.ClusterStatistics;
+import com.example.statisticsservice.service.StatisticsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Partial aggregates of a cluster node and merged statistics of a coordinator.
+ */
+@RestController
+public class ClusterController {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterController.class);
+
+    private final StatisticsService statisticsService;
+    private final ClusterCoordinator clusterCoordinator;
+
+    public ClusterController(StatisticsService statisticsService, ClusterCoordinator clusterCoordinator) {
+        this.statisticsService = statisticsService;
+        this.clusterCoordinator = clusterCoordinator;
+    }
+
+    /**
+     * Is polled by coordinators, {@code 404} if the instance is not a cluster node.
+     */
+    @GetMapping(value = "/internal/partials", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> partialAggregates() {
+        final byte[] partials = statisticsService.getPartialAggregates();
+        if (partials == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(partials);
+    }
+
+    /**
+     * @param window one of configured sliding windows, the primary one by default
+     */
+    @GetMapping("/cluster/statistics")
+    public ResponseEntity<ClusterStatisticsResponse> clusterStatistics(@RequestParam(required = false) String window) {
+        if (!clusterCoordinator.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        int index = 0;
+        if (window != null) {
+            try {
+                index = statisticsService.windowIndex(DurationStyle.detectAndParse(window));
+            } catch (IllegalArgumentException e) {
+                log.warn("Invalid window: window={}, windows={}", window, statisticsService.getWindows());
+                return ResponseEntity.badRequest().build();
+            }
+        }
+
+        final ClusterStatistics statistics = clusterCoordinator.getStatistics();
+        return ResponseEntity.ok(new ClusterStatisticsResponse(
+                StatisticsResponseCache.toResponse(statistics.getStatistics(index)),
+                statistics.getNodes(),
+                statistics.getMergedNodes(),
+                statistics.getStalenessInMs(statisticsService.getClock().millis())
+        ));
+    }
+}
@@ -1,51 +1,235 @@
 package com.example.statisticsservice.controller;
 
-import com.example.statisticsservice.dto.StatisticsResponse;
+import com.example.statisticsservice.dto.BatchTransactionsResponse;
+import com.example.statisticsservice.dto.HeavyHitterResponse;
+import com.example.statisticsservice.dto.KeyStatisticsResponse;
+import com.example.statisticsservice.dto.StatisticsPointResponse;
 import com.example.statisticsservice.dto.TransactionsRequest;
-import com.example.statisticsservice.service.Statistics;
+import com.example.statisticsservice.dto.WindowSketchesResponse;
+import com.example.statisticsservice.service.HeavyHitter;
+import com.example.statisticsservice.service.KeyStatistics;
+import com.example.statisticsservice.service.KeyedStatistics;
+import com.example.statisticsservice.service.StatisticsSeries;
 import com.example.statisticsservice.service.StatisticsService;
+import com.example.statisticsservice.service.Watermark;
+import com.example.statisticsservice.service.WindowSketches;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
 @RestController
 public class MainController {
 
     private static final Logger log = LoggerFactory.getLogger(MainController.class);
+    private static final String RETRY_AFTER_IN_SECONDS = "1";
+    private static final int MAX_TOP_KEYS = 1000;
+    private static final int MAX_HEAVY_HITTERS = 1000;
 
     private final StatisticsService statisticsService;
+    private final StatisticsResponseCache statisticsResponseCache;
 
-    public MainController(StatisticsService statisticsService) {
+    public MainController(StatisticsService statisticsService, StatisticsResponseCache statisticsResponseCache) {
         this.statisticsService = statisticsService;
+        this.statisticsResponseCache = statisticsResponseCache;
     }
 
     @PostMapping("/transactions")
     public ResponseEntity<Void> transactions(@RequestBody TransactionsRequest request) {
-        if (request == null || request.getTimestamp() < 0) {
+        // late and future transactions are dropped and counted by metrics, not logged
+        if (request == null || request.getTimestamp() < 0 || !StatisticsService.isValidAmount(request.getAmount())) {
             log.warn("Invalid request: request={}", request);
-        } else if (!statisticsService.isValidTimestamp(request.getTimestamp())) {
-            log.warn("Got request from past: request={}", request);
-        } else {
-            statisticsService.saveTransaction(request.getAmount(), request.getTimestamp());
+        } else if (statisticsService.checkTimestamp(request.getTimestamp()) == Watermark.Status.ACCEPTED
+                && !statisticsService.saveTransaction(request.getAmount(), request.getTimestamp(), request.getKey())) {
+            return overloaded().build();
         }
 
         return new ResponseEntity<>(HttpStatus.CREATED);
     }
 
+    /**
+     * Transactions were shed, because the service doesn't keep up with them, a client should retry later.
+     */
+    static ResponseEntity.BodyBuilder overloaded() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_IN_SECONDS);
+    }
+
+    /**
+     * Response of a batch, which was read by either web stack.
+     */
+    static ResponseEntity<BatchTransactionsResponse> batchResponse(BatchTransactionsResponse response) {
+        if (response.getInvalidTimestamp() > 0 || response.getInvalidAmount() > 0) {
+            log.warn("Some transactions of batch were invalid: response={}", response);
+        }
+        if (response.getAccepted() == 0 && response.getShed() > 0) {
+            return overloaded().body(response);
+        }
+        return new ResponseEntity<>(response, HttpStatus.CREATED);
+    }
+
+    static ResponseEntity<BatchTransactionsResponse> malformedBatchResponse(MalformedBatchException e) {
+        log.warn("Malformed batch: message={}, response={}", e.getMessage(), e.getResponse());
+        return new ResponseEntity<>(e.getResponse(), HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * @param window      one of configured sliding windows, e.g. {@code 10s} or {@code PT10S}, the primary one by default
+     * @param ifNoneMatch ETag of statistics, which the client has, {@code 304} is returned if they haven't changed
+     */
     @GetMapping("/statistics")
-    public ResponseEntity<StatisticsResponse> statistics() {
-        final Statistics stat = statisticsService.getStatisticsCache();
-        return ResponseEntity.ok(new StatisticsResponse(
+    public ResponseEntity<byte[]> statistics(@RequestParam(required = false) String window,
+                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                     String ifNoneMatch) {
+        int index = 0;
+        if (window != null) {
+            try {
+                index = statisticsService.windowIndex(DurationStyle.detectAndParse(window));
+            } catch (IllegalArgumentException e) {
+                log.warn("Invalid window: window={}, windows={}", window, statisticsService.getWindows());
+                return ResponseEntity.badRequest().build();
+            }
+        }
+
+        return statisticsResponseCache.get(statisticsService.getSnapshot(), index, ifNoneMatch);
+    }
+
+    /**
+     * @param from start of the range in milliseconds since epoch, it's aligned down to the step
+     * @param to   end of the range, exclusive, now by default
+     * @param step width of a point, e.g. {@code 1m}, it must be a multiple of a history resolution
+     */
+    @GetMapping("/statistics/range")
+    public ResponseEntity<List<StatisticsPointResponse>> statisticsRange(@RequestParam long from,
+                                                                         @RequestParam(required = false) Long to,
+                                                                         @RequestParam String step) {
+        final StatisticsSeries series;
+        try {
+            final Duration stepDuration = DurationStyle.detectAndParse(step);
+            final long toInMs = to != null ? to : statisticsService.getClock().millis();
+            series = statisticsService.getSeries(from, toInMs, stepDuration);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid range: from={}, to={}, step={}, message={}", from, to, step, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        if (series == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        final List<StatisticsPointResponse> points = new ArrayList<>(series.size());
+        for (int point = 0; point < series.size(); point++) {
+            points.add(new StatisticsPointResponse(
+                    series.getTimestamp(point),
+                    series.getSum(point),
+                    series.getAvg(point),
+                    series.getMax(point),
+                    series.getMin(point),
+                    series.getCount(point)
+            ));
+        }
+        return ResponseEntity.ok(points);
+    }
+
+    /**
+     * @param window one of configured sliding windows, the primary one by default
+     * @param limit  number of heavy hitters, not greater than {@value #MAX_HEAVY_HITTERS}
+     */
+    @GetMapping("/statistics/sketches")
+    public ResponseEntity<WindowSketchesResponse> sketches(@RequestParam(required = false) String window,
+                                                           @RequestParam(defaultValue = "10") int limit) {
+        if (limit <= 0 || limit > MAX_HEAVY_HITTERS) {
+            log.warn("Invalid limit of heavy hitters: limit={}", limit);
+            return ResponseEntity.badRequest().build();
+        }
+        final Duration windowDuration;
+        final WindowSketches sketches;
+        try {
+            windowDuration = window != null
+                    ? DurationStyle.detectAndParse(window)
+                    : statisticsService.getWindows().get(0);
+            sketches = statisticsService.getSketches(windowDuration, limit);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid window: window={}, windows={}", window, statisticsService.getWindows());
+            return ResponseEntity.badRequest().build();
+        }
+        if (sketches == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        return ResponseEntity.ok(new WindowSketchesResponse(
+                StatisticsResponseCache.toResponse(statisticsService.getStatisticsCache(windowDuration)),
+                sketches.getDistinctAmounts(),
+                sketches.getDistinctKeys(),
+                sketches.getHeavyHitters().stream()
+                        .map(MainController::toResponse)
+                        .collect(Collectors.toList())
+        ));
+    }
+
+    @GetMapping("/statistics/keys/{key}")
+    public ResponseEntity<KeyStatisticsResponse> keyStatistics(@PathVariable String key) {
+        final KeyStatistics stat = statisticsService.getKeyStatistics(key);
+        if (stat == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(toResponse(stat));
+    }
+
+    /**
+     * @param by    {@code sum} or {@code count}
+     * @param limit number of keys, not greater than {@value #MAX_TOP_KEYS}
+     */
+    @GetMapping("/statistics/top")
+    public ResponseEntity<List<KeyStatisticsResponse>> topKeys(@RequestParam(defaultValue = "sum") String by,
+                                                               @RequestParam(defaultValue = "10") int limit) {
+        final KeyedStatistics.Order order;
+        try {
+            order = KeyedStatistics.Order.valueOf(by.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid order of top keys: by={}", by);
+            return ResponseEntity.badRequest().build();
+        }
+        if (limit <= 0 || limit > MAX_TOP_KEYS) {
+            log.warn("Invalid limit of top keys: limit={}", limit);
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(statisticsService.getTopKeys(limit, order).stream()
+                .map(MainController::toResponse)
+                .collect(Collectors.toList()));
+    }
+
+    private static KeyStatisticsResponse toResponse(KeyStatistics stat) {
+        return new KeyStatisticsResponse(
+                stat.getKey(),
                 stat.getSum(),
                 stat.getAvg(),
                 stat.getMax(),
                 stat.getMin(),
                 stat.getCount()
-        ));
+        );
+    }
+
+    private static HeavyHitterResponse toResponse(HeavyHitter hitter) {
+        return new HeavyHitterResponse(
+                hitter.getAmount(),
+                hitter.getCount(),
+                hitter.getError()
+        );
     }
 }
@@ -0,0 +1,20 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.dto.BatchTransactionsResponse;
+
+public class MalformedBatchException extends RuntimeException {
+
+    private final BatchTransactionsResponse response;
+
+    public MalformedBatchException(String message, BatchTransactionsResponse response) {
+        super(message);
+        this.response = response;
+    }
+
+    /**
+     * @return counts of transactions, which were read before the error
+     */
+    public BatchTransactionsResponse getResponse() {
+        return response;
+    }
+}
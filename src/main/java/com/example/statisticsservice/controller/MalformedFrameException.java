@@ -0,0 +1,11 @@
+package com.example.statisticsservice.controller;
+
+/**
+ * A frame of the binary ingestion protocol is not valid, the connection is closed.
+ */
+class MalformedFrameException extends RuntimeException {
+
+    MalformedFrameException(String message) {
+        super(message);
+    }
+}
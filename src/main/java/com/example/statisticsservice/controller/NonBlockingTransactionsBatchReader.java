@@ -0,0 +1,217 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.dto.BatchTransactionsResponse;
+import com.example.statisticsservice.service.StatisticsService;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a JSON array or NDJSON stream of transactions from chunks of bytes, as they arrive,
+ * so a request is parsed without blocking a thread on the body. A transaction may be split between chunks.
+ * Chunks of accepted transactions are saved as soon as they are full, like {@link TransactionsBatchReader} does.
+ * <p>
+ * Is not thread-safe, one reader is used per request.
+ */
+final class NonBlockingTransactionsBatchReader {
+
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final TransactionsBatch batch;
+    /**
+     * Copy of the last chunk, which was not backed by an array.
+     */
+    private byte[] chunk = new byte[0];
+
+    private boolean started;
+    private boolean array;
+    /**
+     * Is set when the array is closed, the rest of the body is not read.
+     */
+    private boolean closed;
+    /**
+     * Nesting level inside the current transaction object, 0 between transactions.
+     */
+    private int depth;
+    private String fieldName;
+    private double amount;
+    private long timestamp;
+    private boolean hasTimestamp;
+    private String key;
+
+    NonBlockingTransactionsBatchReader(JsonFactory jsonFactory, StatisticsService statisticsService) {
+        try {
+            this.parser = jsonFactory.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't create non-blocking JSON parser", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.batch = new TransactionsBatch(statisticsService);
+    }
+
+    /**
+     * Parses the next chunk of the body, the buffer may be released after the call.
+     *
+     * @throws MalformedBatchException if the body is not valid, transactions before the error are saved
+     */
+    void feed(ByteBuffer input) {
+        final int length = input.remaining();
+        if (input.hasArray()) {
+            feed(input.array(), input.arrayOffset() + input.position(), length);
+            return;
+        }
+        if (chunk.length < length) {
+            chunk = new byte[length];
+        }
+        input.get(chunk, 0, length);
+        feed(chunk, 0, length);
+    }
+
+    /**
+     * Parses the next chunk of the body, the array may be reused after the call.
+     *
+     * @throws MalformedBatchException if the body is not valid, transactions before the error are saved
+     */
+    void feed(byte[] bytes, int offset, int length) {
+        if (closed) {
+            return;
+        }
+        try {
+            feeder.feedInput(bytes, offset, offset + length);
+            readTokens();
+        } catch (IOException e) {
+            throw malformed(e);
+        }
+    }
+
+    /**
+     * Parses the rest of the body and saves the last chunk.
+     *
+     * @throws MalformedBatchException if the body is not valid or ends inside a transaction
+     */
+    BatchTransactionsResponse finish() {
+        try {
+            if (!closed) {
+                feeder.endOfInput();
+                readTokens();
+            }
+            if (depth > 0) {
+                throw new JsonParseException(parser, "Unexpected end of input inside transaction object");
+            }
+        } catch (IOException e) {
+            throw malformed(e);
+        } finally {
+            closeParser();
+        }
+
+        batch.flush();
+        return batch.toResponse();
+    }
+
+    private void readTokens() throws IOException {
+        JsonToken token;
+        while (!closed && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (!started) {
+                started = true;
+                if (token == JsonToken.START_ARRAY) {
+                    array = true;
+                    continue;
+                }
+            }
+
+            if (depth == 0) {
+                readTransactionStart(token);
+            } else if (depth == 1) {
+                readTransactionField(token);
+            } else if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd()) {
+                depth--;
+            }
+        }
+    }
+
+    private void readTransactionStart(JsonToken token) throws IOException {
+        if (array && token == JsonToken.END_ARRAY) {
+            // like the blocking reader, content after the array is not read
+            closed = true;
+            return;
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            batch.addInvalid();
+            return;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected transaction object, but got " + token);
+        }
+
+        depth = 1;
+        fieldName = null;
+        amount = 0;
+        timestamp = 0;
+        hasTimestamp = false;
+        key = null;
+    }
+
+    private void readTransactionField(JsonToken token) throws IOException {
+        if (token == JsonToken.FIELD_NAME) {
+            fieldName = parser.getCurrentName();
+            return;
+        }
+        if (token == JsonToken.END_OBJECT) {
+            depth = 0;
+            if (hasTimestamp) {
+                batch.add(amount, timestamp, key);
+            } else {
+                batch.addInvalid();
+            }
+            return;
+        }
+        if (token.isStructStart()) {
+            if ("amount".equals(fieldName) || "timestamp".equals(fieldName)) {
+                // the blocking reader fails on it as well
+                throw new JsonParseException(parser, "Expected number of " + fieldName + ", but got " + token);
+            }
+            // a nested value of another field is skipped
+            depth++;
+            return;
+        }
+
+        switch (fieldName) {
+            case "amount":
+                amount = parser.getDoubleValue();
+                break;
+            case "timestamp":
+                timestamp = parser.getLongValue();
+                hasTimestamp = true;
+                break;
+            case "key":
+                key = parser.getValueAsString();
+                break;
+            default:
+        }
+    }
+
+    private MalformedBatchException malformed(IOException e) {
+        closeParser();
+        batch.flush();
+        final String message = e instanceof JsonProcessingException
+                ? ((JsonProcessingException) e).getOriginalMessage()
+                : e.getMessage();
+        return new MalformedBatchException(message, batch.toResponse());
+    }
+
+    private void closeParser() {
+        try {
+            parser.close();
+        } catch (IOException e) {
+            // nothing to release, the parser reads from memory
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import com.example.statisticsservice.dto.BatchTransactionsResponse;
+import com.example.statisticsservice.service.StatisticsService;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Batch endpoint of the reactive stack, the body is parsed chunk by chunk on the event loop,
+ * as it arrives, so a slow producer holds a connection, but not a thread.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveTransactionsBatchController {
+
+    private final JsonFactory jsonFactory;
+    private final StatisticsService statisticsService;
+
+    public ReactiveTransactionsBatchController(ObjectMapper objectMapper, StatisticsService statisticsService,
+                                               StatisticsProperties properties) {
+        // saving must never wait on the event loop, it would stall every connection of the loop
+        if (properties.getIngestion().getOverflowPolicy() == StatisticsProperties.OverflowPolicy.BLOCK) {
+            throw new IllegalArgumentException("Overflow policy block is not supported by reactive web stack");
+        }
+
+        this.jsonFactory = objectMapper.getFactory();
+        this.statisticsService = statisticsService;
+    }
+
+    @PostMapping(value = "/transactions/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<BatchTransactionsResponse>> batchTransactions(@RequestBody Flux<DataBuffer> body) {
+        return Mono.defer(() -> {
+            final NonBlockingTransactionsBatchReader reader =
+                    new NonBlockingTransactionsBatchReader(jsonFactory, statisticsService);
+            return body
+                    .doOnNext(buffer -> {
+                        try {
+                            reader.feed(buffer.asByteBuffer());
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                    })
+                    .then(Mono.fromCallable(reader::finish));
+        }).map(MainController::batchResponse);
+    }
+
+    @ExceptionHandler(MalformedBatchException.class)
+    public ResponseEntity<BatchTransactionsResponse> malformedBatch(MalformedBatchException e) {
+        return MainController.malformedBatchResponse(e);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import com.example.statisticsservice.dto.StatisticsResponse;
+import com.example.statisticsservice.service.Statistics;
+import com.example.statisticsservice.service.StatisticsService;
+import com.example.statisticsservice.service.StatisticsSnapshot;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Responses of {@code GET /statistics} by window, they are built once per version of statistics of the window,
+ * so repeated reads of unchanged statistics cost neither serialization nor allocation of the response,
+ * and a read with the current ETag in {@code If-None-Match} gets {@code 304}.
+ */
+@Component
+public class StatisticsResponseCache {
+
+    private static final class Entry {
+        private final long version;
+        private final String eTag;
+        private final ResponseEntity<byte[]> ok;
+        private final ResponseEntity<byte[]> notModified;
+
+        private Entry(long version, String eTag, ResponseEntity<byte[]> ok, ResponseEntity<byte[]> notModified) {
+            this.version = version;
+            this.eTag = eTag;
+            this.ok = ok;
+            this.notModified = notModified;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final CacheControl cacheControl;
+    /**
+     * Versions start from zero on every start, so ETags of different runs and instances differ by this prefix.
+     */
+    private final String eTagPrefix = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final AtomicReferenceArray<Entry> entries;
+
+    public StatisticsResponseCache(ObjectMapper objectMapper, StatisticsService statisticsService,
+                                   StatisticsProperties properties) {
+        final Duration maxAge = properties.getCacheMaxAge();
+        this.objectMapper = objectMapper;
+        this.cacheControl = maxAge.isZero() ? CacheControl.noCache() : CacheControl.maxAge(maxAge);
+        this.entries = new AtomicReferenceArray<>(statisticsService.getWindows().size());
+    }
+
+    /**
+     * @param window      index of the window
+     * @param ifNoneMatch value of {@code If-None-Match} header, null if there is none
+     */
+    public ResponseEntity<byte[]> get(StatisticsSnapshot snapshot, int window, String ifNoneMatch) {
+        final long version = snapshot.getVersion(window);
+        Entry entry = entries.get(window);
+        if (entry == null || entry.version != version) {
+            entry = createEntry(window, version, snapshot.getStatistics(window));
+            // a reader of an older snapshot must not replace a newer entry
+            final Entry current = entries.get(window);
+            if (current == null || current.version < version) {
+                entries.set(window, entry);
+            }
+        }
+
+        return matches(ifNoneMatch, entry.eTag) ? entry.notModified : entry.ok;
+    }
+
+    private Entry createEntry(int window, long version, Statistics stat) {
+        final byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(toResponse(stat));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize statistics: statistics=" + stat, e);
+        }
+
+        final String eTag = "\"" + eTagPrefix + "-" + window + "-" + version + "\"";
+        return new Entry(version, eTag,
+                ResponseEntity.ok()
+                        .eTag(eTag)
+                        .cacheControl(cacheControl)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .contentLength(body.length)
+                        .body(body),
+                ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(eTag)
+                        .cacheControl(cacheControl)
+                        .build());
+    }
+
+    static StatisticsResponse toResponse(Statistics stat) {
+        return new StatisticsResponse(
+                stat.getSum(),
+                stat.getAvg(),
+                stat.getMax(),
+                stat.getMin(),
+                stat.getCount(),
+                stat.getP50(),
+                stat.getP95(),
+                stat.getP99()
+        );
+    }
+
+    /**
+     * Weak comparison of {@code If-None-Match}, so a list of tags and weak tags match too.
+     */
+    private static boolean matches(String ifNoneMatch, String eTag) {
+        return ifNoneMatch != null && (ifNoneMatch.contains(eTag) || "*".equals(ifNoneMatch.trim()));
+    }
+}
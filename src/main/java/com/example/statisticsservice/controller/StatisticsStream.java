@@ -0,0 +1,319 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import com.example.statisticsservice.service.StatisticsService;
+import com.example.statisticsservice.service.StatisticsSnapshot;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes statistics to subscribers of {@code GET /statistics/stream} as server-sent events.
+ * <p>
+ * The broadcast thread is woken up by statistics threads, when they publish statistics, and at most once
+ * per min interval it frames every changed window once, from the body of {@link StatisticsResponseCache},
+ * then offers the same frame to all subscribers of the window. A subscriber keeps only the latest frame,
+ * which is not written yet, and frames are written by a pool of send threads, so a slow subscriber skips
+ * intermediate updates and doesn't delay the others. A subscriber costs nothing between updates,
+ * unlike a poller, which costs a request whether statistics have changed or not.
+ * <p>
+ * Only the servlet stack serves the stream, so the threads are not started with the reactive stack.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class StatisticsStream implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(StatisticsStream.class);
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final long SHUTDOWN_TIMEOUT_IN_MS = 5_000;
+
+    /**
+     * Connection of a subscriber, frames are written to it by one send thread at a time.
+     */
+    interface Sink {
+        void send(byte[] frame) throws IOException;
+
+        void complete();
+    }
+
+    private static final class Frame {
+        private final long version;
+        private final byte[] bytes;
+
+        private Frame(long version, byte[] bytes) {
+            this.version = version;
+            this.bytes = bytes;
+        }
+    }
+
+    final class Subscription {
+        private final int window;
+        private final Sink sink;
+        /**
+         * The latest frame, which is not written yet, it's replaced by a newer one.
+         */
+        private final AtomicReference<byte[]> pending = new AtomicReference<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        /**
+         * Is guarded by the subscription, the subscribing thread and the broadcast thread may offer frames at once.
+         */
+        private long offeredVersion = -1;
+
+        private Subscription(int window, Sink sink) {
+            this.window = window;
+            this.sink = sink;
+        }
+
+        /**
+         * Removes the subscription, when its connection is closed by the client or by the server.
+         */
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                subscriptions[window].remove(this);
+                subscriberCount.decrementAndGet();
+            }
+        }
+
+        private synchronized void offer(Frame frame) {
+            if (frame.version <= offeredVersion) {
+                return;
+            }
+            offeredVersion = frame.version;
+            if (pending.getAndSet(frame.bytes) != null) {
+                conflatedUpdates.increment();
+            }
+            schedule();
+        }
+
+        /**
+         * Heartbeat is written only if there is no update to write.
+         */
+        private void offerHeartbeat() {
+            if (pending.compareAndSet(null, HEARTBEAT)) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (!closed.get() && sending.compareAndSet(false, true)) {
+                sendExecutor.execute(this::send);
+            }
+        }
+
+        private void send() {
+            try {
+                byte[] frame;
+                while (!closed.get() && (frame = pending.getAndSet(null)) != null) {
+                    sink.send(frame);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("Closing statistics stream: message={}", e.getMessage());
+                close();
+            } finally {
+                sending.set(false);
+            }
+            // a frame offered after the loop, but before the flag was reset, would wait for the next one
+            if (pending.get() != null) {
+                schedule();
+            }
+        }
+    }
+
+    private final StatisticsService statisticsService;
+    private final StatisticsResponseCache statisticsResponseCache;
+    private final long minIntervalInNanos;
+    private final long heartbeatInNanos;
+    private final int maxSubscribers;
+    private final Set<Subscription>[] subscriptions;
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final LongAdder conflatedUpdates = new LongAdder();
+    private final AtomicReferenceArray<Frame> frames;
+    private final ExecutorService sendExecutor;
+    private final Thread broadcastThread = new Thread(this::broadcast, "statistics-stream");
+
+    @SuppressWarnings("unchecked")
+    public StatisticsStream(StatisticsService statisticsService, StatisticsResponseCache statisticsResponseCache,
+                            StatisticsProperties properties) {
+        final StatisticsProperties.Stream stream = properties.getStream();
+        if (stream.getSendThreads() <= 0) {
+            throw new IllegalArgumentException("Stream send threads must be positive: sendThreads="
+                    + stream.getSendThreads());
+        }
+
+        this.statisticsService = statisticsService;
+        this.statisticsResponseCache = statisticsResponseCache;
+        this.minIntervalInNanos = stream.getMinInterval().toNanos();
+        this.heartbeatInNanos = stream.getHeartbeat().toNanos();
+        this.maxSubscribers = stream.getMaxSubscribers();
+        final int windowCount = statisticsService.getWindows().size();
+        this.subscriptions = new Set[windowCount];
+        for (int window = 0; window < windowCount; window++) {
+            subscriptions[window] = ConcurrentHashMap.newKeySet();
+        }
+        this.frames = new AtomicReferenceArray<>(windowCount);
+        final AtomicInteger sendThreadCount = new AtomicInteger();
+        this.sendExecutor = Executors.newFixedThreadPool(stream.getSendThreads(), task -> {
+            final Thread thread = new Thread(task, "statistics-stream-send-" + sendThreadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        statisticsService.addSnapshotListener(() -> LockSupport.unpark(broadcastThread));
+        broadcastThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        broadcastThread.interrupt();
+        try {
+            broadcastThread.join(SHUTDOWN_TIMEOUT_IN_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sendExecutor.shutdownNow();
+        for (Set<Subscription> windowSubscriptions : subscriptions) {
+            for (Subscription subscription : windowSubscriptions) {
+                subscription.close();
+                subscription.sink.complete();
+            }
+        }
+    }
+
+    /**
+     * Subscribes the sink to updates of the window, the current statistics are sent to it right away.
+     *
+     * @param window index of the window
+     * @return subscription, or null if there are max subscribers already
+     */
+    Subscription subscribe(int window, Sink sink) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+
+        final Subscription subscription = new Subscription(window, sink);
+        subscriptions[window].add(subscription);
+        subscription.offer(frame(statisticsService.getSnapshot(), window));
+        return subscription;
+    }
+
+    int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    /**
+     * @return updates, which were replaced by newer ones before they were written to a slow subscriber
+     */
+    long getConflatedUpdates() {
+        return conflatedUpdates.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("statistics.stream.subscribers", this, StatisticsStream::getSubscriberCount)
+                .description("Open streams of statistics")
+                .register(registry);
+        FunctionCounter.builder("statistics.stream.conflated", this, StatisticsStream::getConflatedUpdates)
+                .description("Updates, which were skipped because a subscriber had not received the previous one")
+                .register(registry);
+    }
+
+    private void broadcast() {
+        final int windowCount = subscriptions.length;
+        final long[] sentVersions = new long[windowCount];
+        final long[] sentAtNanos = new long[windowCount];
+        long broadcastAtNanos = System.nanoTime() - minIntervalInNanos;
+        Arrays.fill(sentAtNanos, broadcastAtNanos);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // a publication unparks the thread, a heartbeat is due at the latest
+                LockSupport.parkNanos(this, heartbeatInNanos);
+                final long waitNanos = broadcastAtNanos + minIntervalInNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+                broadcastAtNanos = System.nanoTime();
+                if (subscriberCount.get() == 0) {
+                    continue;
+                }
+
+                final StatisticsSnapshot snapshot = statisticsService.getSnapshot();
+                for (int window = 0; window < windowCount; window++) {
+                    final Set<Subscription> windowSubscriptions = subscriptions[window];
+                    if (windowSubscriptions.isEmpty()) {
+                        continue;
+                    }
+                    if (snapshot.getVersion(window) != sentVersions[window]) {
+                        final Frame frame = frame(snapshot, window);
+                        for (Subscription subscription : windowSubscriptions) {
+                            subscription.offer(frame);
+                        }
+                        sentVersions[window] = frame.version;
+                        sentAtNanos[window] = broadcastAtNanos;
+                    } else if (broadcastAtNanos - sentAtNanos[window] >= heartbeatInNanos) {
+                        for (Subscription subscription : windowSubscriptions) {
+                            subscription.offerHeartbeat();
+                        }
+                        sentAtNanos[window] = broadcastAtNanos;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Statistics stream thread was stopped");
+    }
+
+    /**
+     * @return event of statistics of the window, it's built once per version
+     */
+    private Frame frame(StatisticsSnapshot snapshot, int window) {
+        final long version = snapshot.getVersion(window);
+        final Frame frame = frames.get(window);
+        if (frame != null && frame.version == version) {
+            return frame;
+        }
+
+        final byte[] data = statisticsResponseCache.get(snapshot, window, null).getBody();
+        final byte[] header = ("id: " + version + "\nevent: statistics\ndata: ").getBytes(StandardCharsets.UTF_8);
+        final byte[] bytes = new byte[header.length + data.length + 2];
+        System.arraycopy(header, 0, bytes, 0, header.length);
+        System.arraycopy(data, 0, bytes, header.length, data.length);
+        bytes[bytes.length - 2] = '\n';
+        bytes[bytes.length - 1] = '\n';
+
+        final Frame newFrame = new Frame(version, bytes);
+        // a subscriber of an older snapshot must not replace a newer frame
+        final Frame current = frames.get(window);
+        if (current == null || current.version < version) {
+            frames.set(window, newFrame);
+        }
+        return newFrame;
+    }
+}
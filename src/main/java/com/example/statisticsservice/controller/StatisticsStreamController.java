@@ -0,0 +1,80 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import com.example.statisticsservice.service.StatisticsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+
+/**
+ * Stream endpoint of the servlet stack, frames of {@link StatisticsStream} are written to the response
+ * as they are, so all subscribers of a window share one serialized update.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class StatisticsStreamController {
+
+    private static final Logger log = LoggerFactory.getLogger(StatisticsStreamController.class);
+
+    private final StatisticsService statisticsService;
+    private final StatisticsStream statisticsStream;
+    private final long timeoutInMs;
+
+    public StatisticsStreamController(StatisticsService statisticsService, StatisticsStream statisticsStream,
+                                      StatisticsProperties properties) {
+        this.statisticsService = statisticsService;
+        this.statisticsStream = statisticsStream;
+        this.timeoutInMs = properties.getStream().getTimeout().toMillis();
+    }
+
+    /**
+     * @param window one of configured sliding windows, the primary one by default
+     */
+    @GetMapping(value = "/statistics/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> stream(@RequestParam(required = false) String window) {
+        int index = 0;
+        if (window != null) {
+            try {
+                index = statisticsService.windowIndex(DurationStyle.detectAndParse(window));
+            } catch (IllegalArgumentException e) {
+                log.warn("Invalid window: window={}, windows={}", window, statisticsService.getWindows());
+                return ResponseEntity.badRequest().build();
+            }
+        }
+
+        final ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeoutInMs);
+        final StatisticsStream.Subscription subscription = statisticsStream.subscribe(index,
+                new StatisticsStream.Sink() {
+                    @Override
+                    public void send(byte[] frame) throws IOException {
+                        emitter.send(frame, MediaType.TEXT_EVENT_STREAM);
+                    }
+
+                    @Override
+                    public void complete() {
+                        emitter.complete();
+                    }
+                });
+        if (subscription == null) {
+            return MainController.overloaded().build();
+        }
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(e -> subscription.close());
+
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(emitter);
+    }
+}
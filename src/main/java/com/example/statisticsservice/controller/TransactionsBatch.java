@@ -0,0 +1,124 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.dto.BatchTransactionsResponse;
+import com.example.statisticsservice.service.StatisticsService;
+import com.example.statisticsservice.service.Watermark;
+
+/**
+ * Checks timestamps of a batch of transactions, saves accepted ones in chunks and counts the rest.
+ * Is not thread-safe, but can be reused for the next batch after {@link #reset()}.
+ */
+class TransactionsBatch {
+
+    static final int CHUNK_SIZE = 1024;
+
+    private final StatisticsService statisticsService;
+
+    private final double[] amounts = new double[CHUNK_SIZE];
+    private final long[] timestamps = new long[CHUNK_SIZE];
+    private final String[] keys = new String[CHUNK_SIZE];
+    private boolean hasKeys;
+    private int size;
+
+    private long accepted;
+    private long shed;
+    private long tooOld;
+    private long tooNew;
+    private long invalidTimestamp;
+    private long invalidAmount;
+
+    TransactionsBatch(StatisticsService statisticsService) {
+        this.statisticsService = statisticsService;
+    }
+
+    /**
+     * @param key null if the transaction has no key
+     */
+    void add(double amount, long timestamp, String key) {
+        if (timestamp < 0) {
+            invalidTimestamp++;
+            return;
+        }
+        if (!StatisticsService.isValidAmount(amount)) {
+            invalidAmount++;
+            return;
+        }
+        final Watermark.Status status = statisticsService.checkTimestamp(timestamp);
+        if (status == Watermark.Status.LATE) {
+            tooOld++;
+            return;
+        }
+        if (status == Watermark.Status.FUTURE) {
+            tooNew++;
+            return;
+        }
+
+        amounts[size] = amount;
+        timestamps[size] = timestamp;
+        keys[size] = key;
+        hasKeys |= key != null;
+        size++;
+        if (size == CHUNK_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Counts a transaction without a timestamp, or a null one, as one with an invalid timestamp.
+     */
+    void addInvalid() {
+        invalidTimestamp++;
+    }
+
+    void flush() {
+        if (size == 0) {
+            return;
+        }
+
+        final int saved = statisticsService.saveTransactions(hasKeys ? keys : null, amounts, timestamps, size);
+        accepted += saved;
+        shed += size - saved;
+        size = 0;
+        hasKeys = false;
+    }
+
+    void reset() {
+        size = 0;
+        hasKeys = false;
+        accepted = 0;
+        shed = 0;
+        tooOld = 0;
+        tooNew = 0;
+        invalidTimestamp = 0;
+        invalidAmount = 0;
+    }
+
+    long getAccepted() {
+        return accepted;
+    }
+
+    long getShed() {
+        return shed;
+    }
+
+    long getTooOld() {
+        return tooOld;
+    }
+
+    long getTooNew() {
+        return tooNew;
+    }
+
+    long getInvalidTimestamp() {
+        return invalidTimestamp;
+    }
+
+    long getInvalidAmount() {
+        return invalidAmount;
+    }
+
+    BatchTransactionsResponse toResponse() {
+        return new BatchTransactionsResponse(accepted, shed + tooOld + tooNew + invalidTimestamp + invalidAmount,
+                tooOld, tooNew, invalidTimestamp, invalidAmount, shed);
+    }
+}
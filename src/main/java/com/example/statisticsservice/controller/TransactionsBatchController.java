@@ -0,0 +1,37 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.dto.BatchTransactionsResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Batch endpoint of the servlet stack, the body is read from a blocking stream by the request thread.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class TransactionsBatchController {
+
+    private final TransactionsBatchReader transactionsBatchReader;
+
+    public TransactionsBatchController(TransactionsBatchReader transactionsBatchReader) {
+        this.transactionsBatchReader = transactionsBatchReader;
+    }
+
+    @PostMapping(value = "/transactions/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BatchTransactionsResponse> batchTransactions(InputStream body) throws IOException {
+        return MainController.batchResponse(transactionsBatchReader.read(body));
+    }
+
+    @ExceptionHandler(MalformedBatchException.class)
+    public ResponseEntity<BatchTransactionsResponse> malformedBatch(MalformedBatchException e) {
+        return MainController.malformedBatchResponse(e);
+    }
+}
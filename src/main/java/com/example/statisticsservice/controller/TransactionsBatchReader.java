@@ -0,0 +1,98 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.dto.BatchTransactionsResponse;
+import com.example.statisticsservice.service.StatisticsService;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a JSON array or NDJSON stream of transactions token by token,
+ * and saves them in chunks, so the whole batch is never materialized.
+ */
+@Component
+public class TransactionsBatchReader {
+
+    private final JsonFactory jsonFactory;
+    private final StatisticsService statisticsService;
+
+    public TransactionsBatchReader(ObjectMapper objectMapper, StatisticsService statisticsService) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.statisticsService = statisticsService;
+    }
+
+    /**
+     * @throws MalformedBatchException if the body is not valid, transactions before the error are saved
+     */
+    public BatchTransactionsResponse read(InputStream input) throws IOException {
+        final TransactionsBatch batch = new TransactionsBatch(statisticsService);
+
+        try (JsonParser parser = jsonFactory.createParser(input)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    readTransaction(parser, token, batch);
+                }
+            } else {
+                // NDJSON is a sequence of root level values
+                while (token != null) {
+                    readTransaction(parser, token, batch);
+                    token = parser.nextToken();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            batch.flush();
+            throw new MalformedBatchException(e.getOriginalMessage(), batch.toResponse());
+        }
+
+        batch.flush();
+        return batch.toResponse();
+    }
+
+    private void readTransaction(JsonParser parser, JsonToken token, TransactionsBatch batch) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            batch.addInvalid();
+            return;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected transaction object, but got " + token);
+        }
+
+        double amount = 0;
+        long timestamp = 0;
+        boolean hasTimestamp = false;
+        String key = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String fieldName = parser.getCurrentName();
+            parser.nextToken();
+
+            switch (fieldName) {
+                case "amount":
+                    amount = parser.getDoubleValue();
+                    break;
+                case "timestamp":
+                    timestamp = parser.getLongValue();
+                    hasTimestamp = true;
+                    break;
+                case "key":
+                    key = parser.getValueAsString();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (hasTimestamp) {
+            batch.add(amount, timestamp, key);
+        } else {
+            batch.addInvalid();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.statisticsservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class BatchTransactionsResponse {
+
+    private final long accepted;
+    private final long rejected;
+    private final long tooOld;
+    private final long tooNew;
+    private final long invalidTimestamp;
+    private final long invalidAmount;
+    private final long shed;
+
+    public BatchTransactionsResponse(@JsonProperty("accepted") long accepted,
+                                     @JsonProperty("rejected") long rejected,
+                                     @JsonProperty("tooOld") long tooOld,
+                                     @JsonProperty("tooNew") long tooNew,
+                                     @JsonProperty("invalidTimestamp") long invalidTimestamp,
+                                     @JsonProperty("invalidAmount") long invalidAmount,
+                                     @JsonProperty("shed") long shed) {
+        this.accepted = accepted;
+        this.rejected = rejected;
+        this.tooOld = tooOld;
+        this.tooNew = tooNew;
+        this.invalidTimestamp = invalidTimestamp;
+        this.invalidAmount = invalidAmount;
+        this.shed = shed;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getTooOld() {
+        return tooOld;
+    }
+
+    public long getTooNew() {
+        return tooNew;
+    }
+
+    public long getInvalidTimestamp() {
+        return invalidTimestamp;
+    }
+
+    public long getInvalidAmount() {
+        return invalidAmount;
+    }
+
+    public long getShed() {
+        return shed;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchTransactionsResponse{" +
+                "accepted=" + accepted +
+                ", rejected=" + rejected +
+                ", tooOld=" + tooOld +
+                ", tooNew=" + tooNew +
+                ", invalidTimestamp=" + invalidTimestamp +
+                ", invalidAmount=" + invalidAmount +
+                ", shed=" + shed +
+                '}';
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.statisticsservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class ClusterStatisticsResponse {
+
+    private final StatisticsResponse statistics;
+    private final int nodes;
+    private final int mergedNodes;
+    private final long stalenessInMs;
+
+    public ClusterStatisticsResponse(@JsonProperty("statistics") StatisticsResponse statistics,
+                                     @JsonProperty("nodes") int nodes,
+                                     @JsonProperty("mergedNodes") int mergedNodes,
+                                     @JsonProperty("stalenessInMs") long stalenessInMs) {
+        this.statistics = statistics;
+        this.nodes = nodes;
+        this.mergedNodes = mergedNodes;
+        this.stalenessInMs = stalenessInMs;
+    }
+
+    public StatisticsResponse getStatistics() {
+        return statistics;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public int getMergedNodes() {
+        return mergedNodes;
+    }
+
+    public long getStalenessInMs() {
+        return stalenessInMs;
+    }
+
+    @Override
+    public String toString() {
+        return "ClusterStatisticsResponse{" +
+                "statistics=" + statistics +
+                ", nodes=" + nodes +
+                ", mergedNodes=" + mergedNodes +
+                ", stalenessInMs=" + stalenessInMs +
+                '}';
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.statisticsservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class HeavyHitterResponse {
+
+    private final double amount;
+    private final long count;
+    private final long error;
+
+    public HeavyHitterResponse(@JsonProperty("amount") double amount,
+                               @JsonProperty("count") long count,
+                               @JsonProperty("error") long error) {
+        this.amount = amount;
+        this.count = count;
+        this.error = error;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "HeavyHitterResponse{" +
+                "amount=" + amount +
+                ", count=" + count +
+                ", error=" + error +
+                '}';
+    }
+}
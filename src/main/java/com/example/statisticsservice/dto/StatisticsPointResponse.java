@@ -0,0 +1,63 @@
+package com.example.statisticsservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class StatisticsPointResponse {
+
+    private final long timestamp;
+    private final double sum;
+    private final double avg;
+    private final double max;
+    private final double min;
+    private final long count;
+
+    public StatisticsPointResponse(@JsonProperty("timestamp") long timestamp,
+                                   @JsonProperty("sum") double sum,
+                                   @JsonProperty("avg") double avg,
+                                   @JsonProperty("max") double max,
+                                   @JsonProperty("min") double min,
+                                   @JsonProperty("count") long count) {
+        this.timestamp = timestamp;
+        this.sum = sum;
+        this.avg = avg;
+        this.max = max;
+        this.min = min;
+        this.count = count;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getAvg() {
+        return avg;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "StatisticsPointResponse{" +
+                "timestamp=" + timestamp +
+                ", sum=" + sum +
+                ", avg=" + avg +
+                ", max=" + max +
+                ", min=" + min +
+                ", count=" + count +
+                '}';
+    }
+}
@@ -9,17 +9,26 @@ public class StatisticsResponse {
     private final double max;
     private final double min;
     private final long count;
+    private final double p50;
+    private final double p95;
+    private final double p99;
 
     public StatisticsResponse(@JsonProperty("sum") double sum,
                               @JsonProperty("avg") double avg,
                               @JsonProperty("max") double max,
                               @JsonProperty("min") double min,
-                              @JsonProperty("count") long count) {
+                              @JsonProperty("count") long count,
+                              @JsonProperty("p50") double p50,
+                              @JsonProperty("p95") double p95,
+                              @JsonProperty("p99") double p99) {
         this.sum = sum;
         this.avg = avg;
         this.max = max;
         this.min = min;
         this.count = count;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
     }
 
     public double getSum() {
@@ -42,6 +51,18 @@ public class StatisticsResponse {
         return count;
     }
 
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP95() {
+        return p95;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
     @Override
     public String toString() {
         return "StatisticsResponse{" +
@@ -50,6 +71,9 @@ public class StatisticsResponse {
                 ", max=" + max +
                 ", min=" + min +
                 ", count=" + count +
+                ", p50=" + p50 +
+                ", p95=" + p95 +
+                ", p99=" + p99 +
                 '}';
     }
 }
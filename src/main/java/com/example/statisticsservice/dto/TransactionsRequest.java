@@ -1,5 +1,6 @@
 package com.example.statisticsservice.dto;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class TransactionsRequest {
@@ -8,10 +9,22 @@ public class TransactionsRequest {
 
     private final long timestamp;
 
+    /**
+     * Optional key for per key statistics, e.g. merchant id or currency.
+     */
+    private final String key;
+
+    public TransactionsRequest(double amount, long timestamp) {
+        this(amount, timestamp, null);
+    }
+
+    @JsonCreator
     public TransactionsRequest(@JsonProperty("amount") double amount,
-                               @JsonProperty("timestamp") long timestamp) {
+                               @JsonProperty("timestamp") long timestamp,
+                               @JsonProperty("key") String key) {
         this.amount = amount;
         this.timestamp = timestamp;
+        this.key = key;
     }
 
     public double getAmount() {
@@ -22,11 +35,16 @@ public class TransactionsRequest {
         return timestamp;
     }
 
+    public String getKey() {
+        return key;
+    }
+
     @Override
     public String toString() {
         return "TransactionsRequest{" +
                 "amount=" + amount +
                 ", timestamp=" + timestamp +
+                ", key='" + key + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,49 @@
+package com.example.statisticsservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+public class WindowSketchesResponse {
+
+    private final StatisticsResponse statistics;
+    private final long distinctAmounts;
+    private final Long distinctKeys;
+    private final List<HeavyHitterResponse> heavyHitters;
+
+    public WindowSketchesResponse(@JsonProperty("statistics") StatisticsResponse statistics,
+                                  @JsonProperty("distinctAmounts") long distinctAmounts,
+                                  @JsonProperty("distinctKeys") Long distinctKeys,
+                                  @JsonProperty("heavyHitters") List<HeavyHitterResponse> heavyHitters) {
+        this.statistics = statistics;
+        this.distinctAmounts = distinctAmounts;
+        this.distinctKeys = distinctKeys;
+        this.heavyHitters = heavyHitters;
+    }
+
+    public StatisticsResponse getStatistics() {
+        return statistics;
+    }
+
+    public long getDistinctAmounts() {
+        return distinctAmounts;
+    }
+
+    public Long getDistinctKeys() {
+        return distinctKeys;
+    }
+
+    public List<HeavyHitterResponse> getHeavyHitters() {
+        return heavyHitters;
+    }
+
+    @Override
+    public String toString() {
+        return "WindowSketchesResponse{" +
+                "statistics=" + statistics +
+                ", distinctAmounts=" + distinctAmounts +
+                ", distinctKeys=" + distinctKeys +
+                ", heavyHitters=" + heavyHitters +
+                '}';
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.statisticsservice.service;
+
+@FunctionalInterface
+interface AggregateConsumer {
+
+    void accept(long timestamp, long count, double sum, double min, double max);
+}
@@ -0,0 +1,27 @@
+package com.example.statisticsservice.service;
+
+/**
+ * Receives measurements of the statistics thread loop, is called only by the statistics thread.
+ */
+interface AggregationRecorder {
+
+    AggregationRecorder NOOP = new AggregationRecorder() {
+        @Override
+        public void drained(long transactions) {
+        }
+
+        @Override
+        public void recalculated(long durationInNanos) {
+        }
+    };
+
+    /**
+     * Is called for every non-empty drain of the ingestion buffer.
+     */
+    void drained(long transactions);
+
+    /**
+     * Is called for every pass, which changed statistics: engine update and the new snapshot.
+     */
+    void recalculated(long durationInNanos);
+}
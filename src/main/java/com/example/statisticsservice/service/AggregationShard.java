@@ -0,0 +1,601 @@
+package com.example.statisticsservice.service;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One aggregation pipeline: an ingestion buffer, an engine of all windows and the statistics thread, which owns
+ * the engine. Request threads are spread across shards by {@link StatisticsService}, every shard aggregates
+ * its part of transactions independently, so aggregation scales with the number of shards.
+ * <p>
+ * The only shard publishes statistics of its engine as they are. Several shards publish {@link WindowSummary}
+ * of every window instead, which are merged into statistics by the service.
+ */
+final class AggregationShard {
+
+    private static final Logger log = LoggerFactory.getLogger(AggregationShard.class);
+    /**
+     * Batch of a single step, see {@link #addNewElementsIfNeeded()}, batches of passes of the thread are sized
+     * by {@link DrainPolicy}.
+     */
+    static final int BATCH_SIZE = 100;
+    private static final long BLOCK_PARK_TIME_IN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * Receives what the shard publishes, is called by the statistics thread of the shard.
+     */
+    interface Publisher {
+
+        /**
+         * Statistics of all windows of the only shard.
+         */
+        void publish(Statistics[] statistics);
+
+        /**
+         * New summaries of one of several shards, see {@link #getSummaries()}.
+         */
+        void summariesPublished();
+    }
+
+    private final IngestionBuffer ingestionBuffer;
+    private final TransactionConsumer engineConsumer = this::addTransaction;
+    private final AggregateConsumer aggregateConsumer = this::addAggregate;
+    private final Thread tasksThread;
+    private final Clock clock;
+
+    private final StatisticsEngine engine;
+    private final int windowCount;
+    private final long shortestWindowInMs;
+    /**
+     * Next expiry time of the engine, is owned by the statistics thread, so a pass doesn't scan the engine for it.
+     * It's refreshed after removal of expired elements. In between only an add can lower it, e.g. an add to an empty
+     * window, so an add lowers it to the earliest expiry of the transaction, which may be early by less than a bucket
+     * for buckets engine, then a pass finds nothing to remove and refreshes it.
+     */
+    private long engineExpiryTime = Long.MAX_VALUE;
+    private final long maxParkTimeInNanos;
+    private final DrainPolicy drainPolicy;
+    private final Publisher publisher;
+    /**
+     * Summaries are published instead of statistics, because there are several shards.
+     */
+    private final boolean summarized;
+
+    /**
+     * Is set by the statistics thread before parking, so producers know they have to wake it up.
+     */
+    private volatile boolean parked;
+
+    private final StatisticsProperties.OverflowPolicy overflowPolicy;
+
+    /**
+     * Overflow area of coalesce policy, null for other policies.
+     */
+    private final CoalescingBuffer coalescingBuffer;
+
+    /**
+     * The ingestion buffer, which drop-oldest policy takes the oldest transaction from, null for other policies.
+     */
+    private final DropOldestBuffer dropOldestBuffer;
+
+    /**
+     * Write-ahead log of the statistics thread, null if persistence is disabled.
+     */
+    private final TransactionLog transactionLog;
+
+    /**
+     * Partial aggregates for cluster coordinators, null if the instance is not a cluster node.
+     */
+    private final PartialAggregates partialAggregates;
+    private final long partialsPublishIntervalInMs;
+    private volatile byte[] publishedPartials;
+    private volatile long partialsPublishedAtMs;
+
+    /**
+     * History for range queries, null if it's disabled.
+     */
+    private final HistoricalRollups rollups;
+
+    /**
+     * Distinct count and heavy hitter sketches of this shard, null if they are disabled.
+     */
+    private final AmountSketches sketches;
+
+    private final LongAdder shedTransactions;
+    private final LongAdder coalescedTransactions;
+
+    private volatile AggregationRecorder aggregationRecorder = AggregationRecorder.NOOP;
+
+    private volatile WindowSummary[] summaries;
+
+    /**
+     * State of the engine at the last publication, is published by the statistics thread for metrics.
+     */
+    private volatile long engineSize;
+    private volatile long evictedTransactions;
+    private volatile long nextExpiryTime = Long.MAX_VALUE;
+
+    /**
+     * Statistics of the shard are known to be up to date at this time: they were published or the thread parked
+     * with nothing to do.
+     */
+    private volatile long upToDateAtMs;
+
+    /**
+     * @param windowsInMs       sliding windows, the primary window is the first one
+     * @param transactionLog    log of the only shard, or null
+     * @param partialAggregates partial aggregates of the only shard, or null
+     * @param rollups           history of this shard, or null
+     * @param sketches          sketches of this shard, or null
+     */
+    AggregationShard(String threadName, StatisticsProperties properties, Clock clock, StatisticsEngine engine,
+                     long[] windowsInMs, boolean summarized, Publisher publisher, TransactionLog transactionLog,
+                     PartialAggregates partialAggregates, HistoricalRollups rollups, AmountSketches sketches,
+                     LongAdder shedTransactions, LongAdder coalescedTransactions) {
+        this.tasksThread = new Thread(this::processTasks, threadName);
+        this.clock = clock;
+        this.engine = engine;
+        this.windowCount = windowsInMs.length;
+        this.shortestWindowInMs = Arrays.stream(windowsInMs).min().getAsLong();
+        this.summarized = summarized;
+        this.publisher = publisher;
+        this.maxParkTimeInNanos = properties.getMaxStaleness() != null
+                ? properties.getMaxStaleness().toNanos()
+                : Long.MAX_VALUE;
+        this.drainPolicy = new DrainPolicy(properties.getDrain());
+        this.ingestionBuffer = createIngestionBuffer(properties.getIngestion());
+        this.overflowPolicy = properties.getIngestion().getOverflowPolicy();
+        this.coalescingBuffer = overflowPolicy == StatisticsProperties.OverflowPolicy.COALESCE
+                ? new CoalescingBuffer(properties.getIngestion().getCoalesceSlots())
+                : null;
+        this.dropOldestBuffer = overflowPolicy == StatisticsProperties.OverflowPolicy.DROP_OLDEST
+                ? (DropOldestBuffer) ingestionBuffer
+                : null;
+        this.transactionLog = transactionLog;
+        this.partialAggregates = partialAggregates;
+        this.partialsPublishIntervalInMs = properties.getCluster().getPublishInterval().toMillis();
+        if (partialAggregates != null) {
+            this.partialsPublishedAtMs = clock.millis();
+            this.publishedPartials = partialAggregates.encode(partialsPublishedAtMs);
+        }
+        this.rollups = rollups;
+        this.sketches = sketches;
+        this.shedTransactions = shedTransactions;
+        this.coalescedTransactions = coalescedTransactions;
+        this.upToDateAtMs = clock.millis();
+
+        final WindowSummary[] summaries = new WindowSummary[windowCount];
+        Arrays.fill(summaries, WindowSummary.EMPTY);
+        this.summaries = summaries;
+    }
+
+    /**
+     * Rebuilds the window from the transaction log, if persistence is enabled, and starts the statistics thread.
+     */
+    void start() {
+        if (transactionLog != null) {
+            recover();
+        }
+        tasksThread.start();
+    }
+
+    void interrupt() {
+        tasksThread.interrupt();
+    }
+
+    /**
+     * Waits for the statistics thread to stop and closes the log, which is written by the thread.
+     */
+    void awaitTermination(long timeoutInMs) {
+        if (transactionLog == null) {
+            return;
+        }
+        try {
+            tasksThread.join(timeoutInMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!tasksThread.isAlive()) {
+            transactionLog.close();
+        }
+    }
+
+    boolean offer(double amount, long timestamp) {
+        return ingestionBuffer.offer(amount, timestamp);
+    }
+
+    int offerAll(double[] amounts, long[] timestamps, int offset, int length) {
+        return ingestionBuffer.offerAll(amounts, timestamps, offset, length);
+    }
+
+    void wakeUpIfParked() {
+        if (parked) {
+            LockSupport.unpark(tasksThread);
+        }
+    }
+
+    /**
+     * Is called by a request thread, when the ingestion buffer is full.
+     *
+     * @return true if the transaction was saved in spite of the overflow
+     */
+    boolean handleOverflow(double amount, long timestamp, long deadlineInNanos) {
+        switch (overflowPolicy) {
+            case REJECT:
+                return false;
+            case DROP_OLDEST:
+                do {
+                    if (dropOldestBuffer.pollOldest()) {
+                        shedTransactions.increment();
+                    }
+                } while (!ingestionBuffer.offer(amount, timestamp));
+                return true;
+            case BLOCK:
+                while (System.nanoTime() < deadlineInNanos) {
+                    LockSupport.parkNanos(this, BLOCK_PARK_TIME_IN_NANOS);
+                    if (ingestionBuffer.offer(amount, timestamp)) {
+                        return true;
+                    }
+                }
+                return false;
+            case COALESCE:
+                if (!coalescingBuffer.add(amount, timestamp)) {
+                    return false;
+                }
+                coalescedTransactions.increment();
+                return true;
+            default:
+                throw new IllegalStateException("Unknown overflow policy: " + overflowPolicy);
+        }
+    }
+
+    /**
+     * @return summaries of all windows, which were published last, if there are several shards
+     */
+    WindowSummary[] getSummaries() {
+        return summaries;
+    }
+
+    /**
+     * @return encoded partial aggregates, or null if the instance is not a cluster node
+     */
+    byte[] getPartialAggregates() {
+        final byte[] published = publishedPartials;
+        if (published == null) {
+            return null;
+        }
+
+        // partials are published before parking, so they are up to date while the thread is parked
+        final long asOfMs = parked ? clock.millis() : partialsPublishedAtMs;
+        final byte[] partials = published.clone();
+        ByteBuffer.wrap(partials).putLong(PartialAggregates.AS_OF_OFFSET, asOfMs);
+        return partials;
+    }
+
+    HistoricalRollups getRollups() {
+        return rollups;
+    }
+
+    AmountSketches getSketches() {
+        return sketches;
+    }
+
+    void setAggregationRecorder(AggregationRecorder aggregationRecorder) {
+        this.aggregationRecorder = aggregationRecorder;
+    }
+
+    long getIngestionQueueDepth() {
+        return ingestionBuffer.size();
+    }
+
+    long getEngineSize() {
+        return engineSize;
+    }
+
+    long getEvictedTransactions() {
+        return evictedTransactions;
+    }
+
+    long getNextExpiryTime() {
+        return nextExpiryTime;
+    }
+
+    /**
+     * @return how long ago statistics of the shard were known to be up to date, 0 if the thread is idle
+     */
+    long getStalenessInMs() {
+        if (parked) {
+            return 0;
+        }
+        return Math.max(0, clock.millis() - upToDateAtMs);
+    }
+
+    private void processTasks() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (!aggregate()) {
+                    parkUntilNextEvent();
+                }
+            } catch (Exception | Error e) {
+                // the thread stops, so errors are logged as well, not only reported by the default handler
+                log.error("unexpected exception occurred", e);
+                return;
+            }
+        }
+        log.info("task thread were interrupted");
+    }
+
+    /**
+     * Parks until a new transaction is saved or the oldest transaction expires,
+     * but not longer than max staleness, if it's set.
+     */
+    private void parkUntilNextEvent() {
+        final long nextExpiryTime = engineExpiryTime;
+        this.nextExpiryTime = nextExpiryTime;
+        long parkTimeInNanos = maxParkTimeInNanos;
+        if (nextExpiryTime != Long.MAX_VALUE) {
+            final long millisToExpiry = nextExpiryTime - clock.millis();
+            parkTimeInNanos = Math.min(parkTimeInNanos, TimeUnit.MILLISECONDS.toNanos(Math.max(0, millisToExpiry)));
+        }
+        if (parkTimeInNanos <= 0) {
+            return;
+        }
+
+        if (transactionLog != null) {
+            // nothing else to do, so the rest of records doesn't wait for the sync interval
+            transactionLog.sync();
+        }
+        publishPartialAggregates(true);
+        upToDateAtMs = clock.millis();
+        parked = true;
+        // re-check after publishing the flag, otherwise a producer may miss it
+        if (ingestionBuffer.size() == 0 && (coalescingBuffer == null || coalescingBuffer.isEmpty())) {
+            LockSupport.parkNanos(this, parkTimeInNanos);
+        }
+        parked = false;
+    }
+
+    /**
+     * One pass of the statistics thread: new transactions and expired elements, as many as the drain policy
+     * allows, and one publication of both, so eviction keeps up with a busy ingestion buffer and vice versa.
+     *
+     * @return true if statistics have changed
+     */
+    boolean aggregate() {
+        final long startNanos = System.nanoTime();
+        final long nowInMs = clock.millis();
+        final boolean expiryPending = engineExpiryTime <= nowInMs;
+
+        final long added = drain(drainPolicy.addBatch(expiryPending));
+        final long addedAtNanos = System.nanoTime();
+        drainPolicy.added(added, addedAtNanos - startNanos);
+
+        long removed = 0;
+        if (expiryPending) {
+            removed = engine.removeExpired(nowInMs, drainPolicy.expiryBatch(ingestionBuffer.size() > 0));
+            drainPolicy.expired(removed, System.nanoTime() - addedAtNanos);
+            refreshExpiryTime();
+        }
+        if (added == 0 && removed == 0) {
+            return false;
+        }
+
+        if (added > 0) {
+            commit(added);
+        }
+        final long publishStartNanos = System.nanoTime();
+        publishStatistics(startNanos);
+        drainPolicy.published(System.nanoTime() - publishStartNanos);
+        return true;
+    }
+
+    /**
+     * Removes one batch of expired elements and publishes statistics, it's a step for those, who drive
+     * the shard without its thread, a pass of the thread is {@link #aggregate()}.
+     */
+    boolean removeOldElementsIfNeeded() {
+        final long startNanos = System.nanoTime();
+        final long removed = engine.removeExpired(clock.millis(), BATCH_SIZE);
+        refreshExpiryTime();
+        if (removed == 0) {
+            return false;
+        }
+
+        publishStatistics(startNanos);
+        return true;
+    }
+
+    /**
+     * Adds one batch of new transactions and publishes statistics, it's a step for those, who drive
+     * the shard without its thread, a pass of the thread is {@link #aggregate()}.
+     */
+    boolean addNewElementsIfNeeded() {
+        final long startNanos = System.nanoTime();
+        final long added = drain(BATCH_SIZE);
+        if (added == 0) {
+            return false;
+        }
+
+        commit(added);
+        publishStatistics(startNanos);
+        return true;
+    }
+
+    /**
+     * @return number of transactions, which were taken from the ingestion buffer and the coalescing buffer
+     */
+    private long drain(int batchSize) {
+        // history and sketches are locked once per batch, not per transaction
+        final long rollupsStamp = rollups != null ? rollups.beginUpdate() : 0;
+        final long sketchesStamp = sketches != null ? sketches.beginUpdate() : 0;
+        long added;
+        try {
+            added = ingestionBuffer.drainTo(engineConsumer, batchSize);
+            if (coalescingBuffer != null) {
+                added += coalescingBuffer.drainTo(aggregateConsumer);
+            }
+        } finally {
+            if (sketches != null) {
+                sketches.endUpdate(sketchesStamp);
+            }
+            if (rollups != null) {
+                rollups.endUpdate(rollupsStamp);
+            }
+        }
+        return added;
+    }
+
+    private void commit(long added) {
+        aggregationRecorder.drained(added);
+        if (transactionLog != null) {
+            transactionLog.commit();
+        }
+    }
+
+    private void publishStatistics(long startNanos) {
+        if (summarized) {
+            final WindowSummary[] summaries = new WindowSummary[windowCount];
+            for (int window = 0; window < summaries.length; window++) {
+                summaries[window] = engine.getSummary(window);
+            }
+            this.summaries = summaries;
+            publisher.summariesPublished();
+        } else {
+            final Statistics[] statistics = new Statistics[windowCount];
+            for (int window = 0; window < statistics.length; window++) {
+                statistics[window] = engine.getStatistics(window);
+            }
+            publisher.publish(statistics);
+        }
+        this.engineSize = engine.size();
+        this.evictedTransactions = engine.evictedTransactions();
+        this.upToDateAtMs = clock.millis();
+        publishPartialAggregates(false);
+        aggregationRecorder.recalculated(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Encodes partial aggregates, if they have changed, at most once per publish interval, unless {@code force}.
+     */
+    private void publishPartialAggregates(boolean force) {
+        if (partialAggregates == null || !partialAggregates.isChanged()) {
+            return;
+        }
+        final long nowInMs = clock.millis();
+        if (force || nowInMs - partialsPublishedAtMs >= partialsPublishIntervalInMs) {
+            publishedPartials = partialAggregates.encode(nowInMs);
+            partialsPublishedAtMs = nowInMs;
+        }
+    }
+
+    private void addTransaction(double amount, long timestamp) {
+        addToEngines(amount, timestamp);
+        if (transactionLog != null) {
+            transactionLog.appendTransaction(amount, timestamp);
+        }
+    }
+
+    private void addAggregate(long timestamp, long count, double sum, double min, double max) {
+        addAggregateToEngines(timestamp, count, sum, min, max);
+        if (transactionLog != null) {
+            transactionLog.appendAggregate(timestamp, count, sum, min, max);
+        }
+    }
+
+    /**
+     * Is called after removal of expired elements, the engine computes its next expiry time by a scan.
+     */
+    private void refreshExpiryTime() {
+        engineExpiryTime = engine.nextExpiryTime();
+        nextExpiryTime = engineExpiryTime;
+    }
+
+    private void addToEngines(double amount, long timestamp) {
+        engine.add(amount, timestamp);
+        engineExpiryTime = Math.min(engineExpiryTime, timestamp + 1 + shortestWindowInMs);
+        if (partialAggregates != null) {
+            partialAggregates.add(amount, timestamp);
+        }
+        if (rollups != null) {
+            rollups.add(amount, timestamp);
+        }
+        if (sketches != null) {
+            sketches.add(amount, timestamp);
+        }
+    }
+
+    private void addAggregateToEngines(long timestamp, long count, double sum, double min, double max) {
+        engine.addAggregate(timestamp, count, sum, min, max);
+        engineExpiryTime = Math.min(engineExpiryTime, timestamp + 1 + shortestWindowInMs);
+        if (partialAggregates != null) {
+            partialAggregates.addAggregate(timestamp, count, sum, min, max);
+        }
+        if (rollups != null) {
+            rollups.addAggregate(timestamp, count, sum, min, max);
+        }
+        if (sketches != null) {
+            sketches.addAggregate(timestamp, count, min, max);
+        }
+    }
+
+    /**
+     * Replays the log into the engine before the statistics thread is started, so it's not logged again.
+     * Only segments with live transactions are read, so recovery time depends on the window, not on the log.
+     */
+    private void recover() {
+        final long startNanos = System.nanoTime();
+        final long nowInMs = clock.millis();
+        final long replayed;
+        final long rollupsStamp = rollups != null ? rollups.beginUpdate() : 0;
+        final long sketchesStamp = sketches != null ? sketches.beginUpdate() : 0;
+        try {
+            replayed = transactionLog.recover(nowInMs, this::addToEngines, this::addAggregateToEngines);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot recover transactions from the log", e);
+        } finally {
+            if (sketches != null) {
+                sketches.endUpdate(sketchesStamp);
+            }
+            if (rollups != null) {
+                rollups.endUpdate(rollupsStamp);
+            }
+        }
+
+        engine.removeExpired(nowInMs, Integer.MAX_VALUE);
+        refreshExpiryTime();
+        publishStatistics(startNanos);
+        publishPartialAggregates(true);
+        log.info("Recovered transactions from the log: replayed={}, segments={}, durationInMs={}",
+                replayed, transactionLog.segmentCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * @return buffer of the mode, it's a {@link DropOldestBuffer} for drop-oldest policy
+     */
+    private static IngestionBuffer createIngestionBuffer(StatisticsProperties.Ingestion ingestion) {
+        switch (ingestion.getMode()) {
+            case QUEUE:
+                return new QueueIngestionBuffer(ingestion.getCapacity());
+            case STRIPED:
+                if (ingestion.getOverflowPolicy() == StatisticsProperties.OverflowPolicy.DROP_OLDEST) {
+                    throw new IllegalArgumentException("Overflow policy drop-oldest is not supported by striped mode");
+                }
+                final int stripes = ingestion.getStripes() > 0
+                        ? ingestion.getStripes()
+                        : Runtime.getRuntime().availableProcessors();
+                return new StripedIngestionBuffer(stripes, ingestion.getStripeCapacity());
+            default:
+                throw new IllegalArgumentException("Unknown ingestion mode: " + ingestion.getMode());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.statisticsservice.service;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Distinct amounts and most frequent amounts of the windows in a ring of time buckets, which covers
+ * the longest window. Every bucket has {@link HyperLogLog} registers and {@link SpaceSaving} counters of its
+ * transactions, a window is merged from its live buckets on read, so sketches expire together with their bucket
+ * and memory is fixed by resolution, precision and counters whatever the traffic.
+ * <p>
+ * A coalesced aggregate has no amounts of its transactions, its min and max are counted as distinct amounts,
+ * and it's counted as a heavy hitter only if all its transactions have the same amount.
+ * <p>
+ * Is updated by the statistics thread between {@link #beginUpdate()} and {@link #endUpdate(long)}.
+ */
+final class AmountSketches {
+
+    private static final long NO_EPOCH = Long.MIN_VALUE;
+
+    private final long resolutionInMs;
+    private final int precision;
+    private final long[] epochs;
+    /**
+     * Registers of all buckets, {@code 2^precision} registers per bucket.
+     */
+    private final byte[] registers;
+    private final SpaceSaving[] counters;
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * @param futureSkewInMs how far ahead of the clock a timestamp may be
+     */
+    AmountSketches(long longestWindowInMs, long resolutionInMs, int precision, int heavyHitters,
+                   long futureSkewInMs) {
+        if (resolutionInMs <= 0) {
+            throw new IllegalArgumentException("Sketch resolution must be positive: resolutionInMs="
+                    + resolutionInMs);
+        }
+        HyperLogLog.checkPrecision(precision);
+
+        this.resolutionInMs = resolutionInMs;
+        this.precision = precision;
+        // one extra bucket for the partially expired epoch at the window start
+        final int bucketCount = Math.toIntExact((longestWindowInMs + futureSkewInMs + resolutionInMs - 1)
+                / resolutionInMs + 1);
+        this.epochs = new long[bucketCount];
+        Arrays.fill(epochs, NO_EPOCH);
+        this.registers = new byte[bucketCount << precision];
+        this.counters = new SpaceSaving[bucketCount];
+        for (int slot = 0; slot < bucketCount; slot++) {
+            counters[slot] = new SpaceSaving(heavyHitters);
+        }
+    }
+
+    int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @return stamp for {@link #endUpdate(long)}
+     */
+    long beginUpdate() {
+        return lock.writeLock();
+    }
+
+    void endUpdate(long stamp) {
+        lock.unlockWrite(stamp);
+    }
+
+    void add(double amount, long timestamp) {
+        final int slot = slot(timestamp);
+        if (slot >= 0) {
+            addDistinct(slot, amount);
+            counters[slot].add(amount, 1);
+        }
+    }
+
+    void addAggregate(long timestamp, long count, double min, double max) {
+        final int slot = slot(timestamp);
+        if (slot < 0) {
+            return;
+        }
+        addDistinct(slot, min);
+        addDistinct(slot, max);
+        if (min == max) {
+            counters[slot].add(min, count);
+        }
+    }
+
+    /**
+     * Adds live buckets of the window to the merged sketches, so sketches of several shards are merged.
+     */
+    void addTo(MergedSketches merged, long windowInMs, long nowInMs) {
+        final long firstLiveEpoch = Math.floorDiv(nowInMs - windowInMs, resolutionInMs);
+        final long stamp = lock.readLock();
+        try {
+            for (int slot = 0; slot < epochs.length; slot++) {
+                if (epochs[slot] != NO_EPOCH && epochs[slot] >= firstLiveEpoch) {
+                    merged.addRegisters(registers, slot << precision);
+                    merged.addCounters(counters[slot]);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return slot of the timestamp's bucket, which is reset if it holds an older bucket,
+     * or -1 if the slot is taken by a bucket newer by the whole ring
+     */
+    private int slot(long timestamp) {
+        final long epoch = Math.floorDiv(timestamp, resolutionInMs);
+        final int slot = (int) Math.floorMod(epoch, (long) epochs.length);
+        if (epochs[slot] != epoch) {
+            if (epochs[slot] > epoch) {
+                return -1;
+            }
+            epochs[slot] = epoch;
+            Arrays.fill(registers, slot << precision, (slot + 1) << precision, (byte) 0);
+            counters[slot].reset();
+        }
+        return slot;
+    }
+
+    private void addDistinct(int slot, double amount) {
+        final long hash = HyperLogLog.hash(amount);
+        HyperLogLog.add(registers, slot << precision, HyperLogLog.register(hash, precision),
+                HyperLogLog.rank(hash, precision));
+    }
+}
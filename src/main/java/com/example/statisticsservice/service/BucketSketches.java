@@ -0,0 +1,72 @@
+package com.example.statisticsservice.service;
+
+import java.util.Arrays;
+
+/**
+ * Sparse {@link QuantileSketch} bins of ring buckets: every slot keeps only its non-empty bins,
+ * sorted by bin. A bucket usually has a few distinct bins, so memory of a slot is bounded
+ * by its distinct bins and never exceeds {@link QuantileSketch.Mapping#binCount()}.
+ * Arrays of a slot are reused after reset.
+ */
+final class BucketSketches {
+
+    private static final int INITIAL_CAPACITY = 4;
+    private static final int[] NO_BINS = new int[0];
+    private static final long[] NO_COUNTS = new long[0];
+
+    private final int[][] bins;
+    private final long[][] counts;
+    private final int[] sizes;
+
+    BucketSketches(int slotCount) {
+        this.bins = new int[slotCount][];
+        this.counts = new long[slotCount][];
+        this.sizes = new int[slotCount];
+        Arrays.fill(bins, NO_BINS);
+        Arrays.fill(counts, NO_COUNTS);
+    }
+
+    void add(int slot, int bin, long count) {
+        final int size = sizes[slot];
+        int index = Arrays.binarySearch(bins[slot], 0, size, bin);
+        if (index >= 0) {
+            counts[slot][index] += count;
+            return;
+        }
+
+        index = -index - 1;
+        if (size == bins[slot].length) {
+            final int capacity = Math.max(INITIAL_CAPACITY, 2 * size);
+            bins[slot] = Arrays.copyOf(bins[slot], capacity);
+            counts[slot] = Arrays.copyOf(counts[slot], capacity);
+        }
+        System.arraycopy(bins[slot], index, bins[slot], index + 1, size - index);
+        System.arraycopy(counts[slot], index, counts[slot], index + 1, size - index);
+        bins[slot][index] = bin;
+        counts[slot][index] = count;
+        sizes[slot] = size + 1;
+    }
+
+    void subtractFrom(int slot, QuantileSketch sketch) {
+        for (int index = 0; index < sizes[slot]; index++) {
+            sketch.subtract(bins[slot][index], counts[slot][index]);
+        }
+    }
+
+    void forEach(int slot, QuantileSketch.BinConsumer consumer) {
+        for (int index = 0; index < sizes[slot]; index++) {
+            consumer.accept(bins[slot][index], counts[slot][index]);
+        }
+    }
+
+    /**
+     * @return number of non-empty bins of the slot
+     */
+    int size(int slot) {
+        return sizes[slot];
+    }
+
+    void reset(int slot) {
+        sizes[slot] = 0;
+    }
+}
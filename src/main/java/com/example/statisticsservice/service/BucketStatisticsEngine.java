@@ -0,0 +1,349 @@
+package com.example.statisticsservice.service;
+
+import java.util.function.IntFunction;
+
+/**
+ * Keeps a fixed ring of time buckets covering the longest sliding window.
+ * Every bucket holds sum/count and sparse {@link QuantileSketch} bins of transactions with timestamp in
+ * {@code [epoch * resolution, (epoch + 1) * resolution)}, min/max of every window are kept
+ * by {@link SlidingWindowExtremum} over bucket epochs.
+ * <p>
+ * All windows share the ring, every window keeps only its own totals and expiry cursor,
+ * so an extra window costs O(1) per add and per expired bucket.
+ * The ring is owned by the longest window, a bucket is reset when it leaves the longest window.
+ * <p>
+ * The ring has extra buckets for future skew, so a transaction ahead of the clock doesn't take a live bucket.
+ * <p>
+ * Add and expiry are O(1) whatever the arrival order, memory doesn't depend on number of transactions.
+ * A bucket expires when its newest possible timestamp leaves the window,
+ * so with resolution > 1 ms statistics may include transactions up to (resolution - 1 ms) older than the window.
+ */
+class BucketStatisticsEngine implements StatisticsEngine {
+
+    private final long resolutionInMs;
+    private final int bucketCount;
+
+    private final long[] epochs;
+    private final long[] counts;
+    /**
+     * Sums of buckets by slot and window sums at index {@code bucketCount + window}.
+     */
+    private final SumAccumulator sums;
+    private final QuantileSketch.Mapping quantileMapping;
+    private final BucketSketches bucketSketches;
+    private int liveBuckets;
+
+    private final long[] windowsInMs;
+    /**
+     * Number of buckets, which a window may span.
+     */
+    private final int[] windowBucketCounts;
+    /**
+     * The longest window, which owns the ring.
+     */
+    private final int ringOwner;
+
+    /**
+     * All epochs before this one are already expired and removed from the window.
+     */
+    private final long[] oldestEpochs;
+    private final long[] windowCounts;
+    private final SlidingWindowExtremum[] maxes;
+    private final SlidingWindowExtremum[] mins;
+    private final QuantileSketch[] windowSketches;
+    private final double[] quantiles = new double[Statistics.QUANTILES.length];
+
+    BucketStatisticsEngine(long slidingWindowInMs, long resolutionInMs,
+                           IntFunction<SumAccumulator> sumAccumulatorFactory,
+                           QuantileSketch.Mapping quantileMapping) {
+        this(new long[]{slidingWindowInMs}, resolutionInMs, 0, sumAccumulatorFactory, quantileMapping);
+    }
+
+    /**
+     * @param futureSkewInMs how far ahead of the clock a timestamp may be
+     */
+    BucketStatisticsEngine(long[] windowsInMs, long resolutionInMs, long futureSkewInMs,
+                           IntFunction<SumAccumulator> sumAccumulatorFactory,
+                           QuantileSketch.Mapping quantileMapping) {
+        final int windowCount = windowsInMs.length;
+        if (windowCount == 0) {
+            throw new IllegalArgumentException("At least one sliding window is required");
+        }
+
+        int ringOwner = 0;
+        for (int window = 0; window < windowCount; window++) {
+            if (resolutionInMs <= 0 || resolutionInMs > windowsInMs[window]) {
+                throw new IllegalArgumentException("Bucket resolution must be in (0, slidingWindow]: resolutionInMs="
+                        + resolutionInMs + ", slidingWindowInMs=" + windowsInMs[window]);
+            }
+            if (windowsInMs[window] > windowsInMs[ringOwner]) {
+                ringOwner = window;
+            }
+        }
+
+        this.resolutionInMs = resolutionInMs;
+        this.windowsInMs = windowsInMs.clone();
+        this.ringOwner = ringOwner;
+        this.windowBucketCounts = new int[windowCount];
+        for (int window = 0; window < windowCount; window++) {
+            // one extra bucket for the partially expired epoch at the window start
+            windowBucketCounts[window] =
+                    Math.toIntExact((windowsInMs[window] + resolutionInMs - 1) / resolutionInMs + 1);
+        }
+        // buckets, which may be ahead of the clock
+        final int futureBucketCount = Math.toIntExact((futureSkewInMs + resolutionInMs - 1) / resolutionInMs);
+        this.bucketCount = windowBucketCounts[ringOwner] + futureBucketCount;
+
+        this.epochs = new long[bucketCount];
+        this.counts = new long[bucketCount];
+        this.sums = sumAccumulatorFactory.apply(bucketCount + windowCount);
+        this.quantileMapping = quantileMapping;
+        this.bucketSketches = new BucketSketches(bucketCount);
+
+        this.oldestEpochs = new long[windowCount];
+        this.windowCounts = new long[windowCount];
+        this.maxes = new SlidingWindowExtremum[windowCount];
+        this.mins = new SlidingWindowExtremum[windowCount];
+        this.windowSketches = new QuantileSketch[windowCount];
+        for (int window = 0; window < windowCount; window++) {
+            oldestEpochs[window] = Long.MIN_VALUE;
+            maxes[window] = SlidingWindowExtremum.max();
+            mins[window] = SlidingWindowExtremum.min();
+            windowSketches[window] = new QuantileSketch(quantileMapping);
+        }
+    }
+
+    @Override
+    public void add(double amount, long timestamp) {
+        final int slot = slotForAdd(timestamp);
+        if (slot >= 0) {
+            addToBucket(slot, 1, amount, amount, amount);
+            addToSketches(slot, quantileMapping.bin(amount), 1);
+        }
+    }
+
+    @Override
+    public void addAggregate(long timestamp, long count, double sum, double min, double max) {
+        final int slot = slotForAdd(timestamp);
+        if (slot >= 0) {
+            addToBucket(slot, count, sum, min, max);
+            quantileMapping.forEachBin(count, sum, min, max, (bin, binCount) -> addToSketches(slot, bin, binCount));
+        }
+    }
+
+    @Override
+    public long removeExpired(long nowInMs, int limit) {
+        long removed = 0;
+        for (int window = 0; window < windowsInMs.length; window++) {
+            if (window != ringOwner) {
+                removed += removeBuckets(window, lastExpiredEpoch(window, nowInMs), limit);
+            }
+        }
+
+        // the ring owner must not reset buckets, which other windows haven't expired yet
+        long lastExpiredEpoch = lastExpiredEpoch(ringOwner, nowInMs);
+        for (int window = 0; window < windowsInMs.length; window++) {
+            if (window != ringOwner) {
+                lastExpiredEpoch = Math.min(lastExpiredEpoch, oldestEpochs[window] - 1);
+            }
+        }
+        return removed + removeBuckets(ringOwner, lastExpiredEpoch, limit);
+    }
+
+    @Override
+    public Statistics getStatistics(int window) {
+        final long count = windowCounts[window];
+        if (count == 0) {
+            return Statistics.EMPTY;
+        }
+        final double sum = sums.get(bucketCount + window);
+        final double max = maxes[window].get();
+        final double min = mins[window].get();
+        windowSketches[window].quantiles(Statistics.QUANTILES, count, min, max, quantiles);
+        return new Statistics(sum, sum / count, max, min, count, quantiles[0], quantiles[1], quantiles[2]);
+    }
+
+    @Override
+    public WindowSummary getSummary(int window) {
+        final long count = windowCounts[window];
+        if (count == 0) {
+            return WindowSummary.EMPTY;
+        }
+        return windowSketches[window].summarize(count, sums.get(bucketCount + window), mins[window].get(),
+                maxes[window].get());
+    }
+
+    @Override
+    public long size() {
+        return liveBuckets;
+    }
+
+    @Override
+    public long nextExpiryTime() {
+        long nextExpiryTime = Long.MAX_VALUE;
+        for (int window = 0; window < windowsInMs.length; window++) {
+            if (windowCounts[window] > 0) {
+                final long expiryTime = (oldestLiveEpoch(window) + 1) * resolutionInMs + windowsInMs[window];
+                nextExpiryTime = Math.min(nextExpiryTime, expiryTime);
+            }
+        }
+        return nextExpiryTime;
+    }
+
+    private void addToBucket(int slot, long count, double sum, double min, double max) {
+        sums.add(slot, sum);
+        counts[slot] = counts[slot] + count;
+
+        final long epoch = epochs[slot];
+        for (int window = 0; window < windowsInMs.length; window++) {
+            if (epoch >= oldestEpochs[window]) {
+                sums.add(bucketCount + window, sum);
+                windowCounts[window] = windowCounts[window] + count;
+                maxes[window].add(epoch, max);
+                mins[window].add(epoch, min);
+            }
+        }
+    }
+
+    private void addToSketches(int slot, int bin, long count) {
+        bucketSketches.add(slot, bin, count);
+
+        final long epoch = epochs[slot];
+        for (int window = 0; window < windowsInMs.length; window++) {
+            if (epoch >= oldestEpochs[window]) {
+                windowSketches[window].add(bin, count);
+            }
+        }
+    }
+
+    /**
+     * A bucket is expired, when (epoch + 1) * resolution <= now - window.
+     */
+    private long lastExpiredEpoch(int window, long nowInMs) {
+        return Math.floorDiv(nowInMs - windowsInMs[window], resolutionInMs) - 1;
+    }
+
+    private long oldestLiveEpoch(int window) {
+        final long oldestEpoch = oldestEpochs[window];
+        // usually the oldest live bucket is right after removed ones
+        for (long epoch = oldestEpoch; epoch < oldestEpoch + bucketCount; epoch++) {
+            final int slot = slot(epoch);
+            if (counts[slot] > 0 && epochs[slot] == epoch) {
+                return epoch;
+            }
+        }
+
+        long oldestLiveEpoch = Long.MAX_VALUE;
+        for (int slot = 0; slot < bucketCount; slot++) {
+            if (counts[slot] > 0 && epochs[slot] >= oldestEpoch) {
+                oldestLiveEpoch = Math.min(oldestLiveEpoch, epochs[slot]);
+            }
+        }
+        return oldestLiveEpoch;
+    }
+
+    /**
+     * Removes buckets up to {@code lastExpiredEpoch} inclusive from all windows, the ring owner is the last one.
+     */
+    private void removeBuckets(long lastExpiredEpoch) {
+        for (int window = 0; window < windowsInMs.length; window++) {
+            if (window != ringOwner) {
+                removeBuckets(window, lastExpiredEpoch, Integer.MAX_VALUE);
+            }
+        }
+        removeBuckets(ringOwner, lastExpiredEpoch, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes buckets up to {@code lastExpiredEpoch} inclusive from the window in epoch order,
+     * so all epochs before the window's oldest epoch are always removed.
+     *
+     * @return number of removed buckets
+     */
+    private int removeBuckets(int window, long lastExpiredEpoch, int limit) {
+        final long oldestEpoch = oldestEpochs[window];
+        if (lastExpiredEpoch < oldestEpoch) {
+            return 0;
+        }
+
+        int removed = 0;
+        if (oldestEpoch <= lastExpiredEpoch - bucketCount) {
+            // whole ring is behind, e.g. after idle period, every slot is visited once regardless of the limit
+            for (int slot = 0; slot < bucketCount; slot++) {
+                if (counts[slot] > 0 && epochs[slot] >= oldestEpoch && epochs[slot] <= lastExpiredEpoch) {
+                    removeBucket(window, slot);
+                    removed++;
+                }
+            }
+            oldestEpochs[window] = lastExpiredEpoch + 1;
+        } else {
+            long epoch = oldestEpoch;
+            for (; epoch <= lastExpiredEpoch && removed < limit; epoch++) {
+                final int slot = slot(epoch);
+                if (counts[slot] > 0 && epochs[slot] == epoch) {
+                    removeBucket(window, slot);
+                    removed++;
+                }
+            }
+            oldestEpochs[window] = epoch;
+        }
+
+        maxes[window].removeOlderThan(oldestEpochs[window]);
+        mins[window].removeOlderThan(oldestEpochs[window]);
+        return removed;
+    }
+
+    private void removeBucket(int window, int slot) {
+        final int windowSum = bucketCount + window;
+        windowCounts[window] = windowCounts[window] - counts[slot];
+        bucketSketches.subtractFrom(slot, windowSketches[window]);
+        if (window == ringOwner) {
+            sums.subtractAndReset(windowSum, slot);
+            bucketSketches.reset(slot);
+            counts[slot] = 0;
+            liveBuckets--;
+        } else {
+            sums.subtractSum(windowSum, slot);
+        }
+        if (windowCounts[window] == 0) {
+            sums.reset(windowSum);
+        }
+    }
+
+    /**
+     * @return slot of the timestamp's bucket, or -1 if the bucket is already expired
+     */
+    private int slotForAdd(long timestamp) {
+        final long epoch = Math.floorDiv(timestamp, resolutionInMs);
+        if (oldestEpochs[ringOwner] == Long.MIN_VALUE) {
+            // older buckets don't fit into windows together with this one, the rest of the ring is for future skew
+            for (int window = 0; window < windowsInMs.length; window++) {
+                oldestEpochs[window] = epoch - windowBucketCounts[window] + 1;
+            }
+        }
+        if (epoch < oldestEpochs[ringOwner]) {
+            // bucket was already expired
+            return -1;
+        }
+
+        final int slot = slot(epoch);
+        if (counts[slot] > 0 && epochs[slot] != epoch) {
+            if (epochs[slot] > epoch) {
+                // slot is reused by a bucket, which is newer by the whole window
+                return -1;
+            }
+            // the slot's bucket is expired, but not removed yet
+            removeBuckets(epochs[slot]);
+        }
+
+        if (counts[slot] == 0) {
+            liveBuckets++;
+        }
+        epochs[slot] = epoch;
+        return slot;
+    }
+
+    private int slot(long epoch) {
+        return (int) Math.floorMod(epoch, (long) bucketCount);
+    }
+}
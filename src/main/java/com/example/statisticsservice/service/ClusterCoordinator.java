@@ -0,0 +1,212 @@
+package com.example.statisticsservice.service;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Merges partial aggregates of cluster nodes into global statistics of every window, see {@link PartialAggregates}.
+ * <p>
+ * Peers are polled over HTTP by one thread once per poll interval, the local node, if it's a node, is read directly.
+ * Buckets are expired by the coordinator's clock on merge, so a copy of a node may be reused until it's older
+ * than max staleness; after that the node is left out until it responds again, and the number of merged nodes
+ * shows that statistics are partial. Nodes are not coordinated otherwise, every node serves its own traffic.
+ */
+@Service
+public class ClusterCoordinator {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterCoordinator.class);
+    private static final String PARTIALS_PATH = "/internal/partials";
+    private static final long SHUTDOWN_TIMEOUT_IN_MS = 5_000;
+
+    private static final class Peer {
+        private final URI uri;
+        private PartialAggregates.Decoded partials;
+        private boolean failing;
+
+        private Peer(URI uri) {
+            this.uri = uri;
+        }
+    }
+
+    private final StatisticsService statisticsService;
+    private final List<Peer> peers;
+    private final long[] windowsInMs;
+    private final QuantileSketch.Mapping mapping;
+    private final long pollIntervalInMs;
+    private final long maxStalenessInMs;
+    private final Duration requestTimeout;
+    private final Thread pollingThread = new Thread(this::pollPeers, "cluster-coordinator");
+
+    private final HttpClient httpClient;
+    /**
+     * Are used by the polling thread only.
+     */
+    private final MergedStatistics merged;
+    private final MergedStatistics validated;
+
+    private volatile ClusterStatistics statistics = ClusterStatistics.EMPTY;
+
+    @Autowired
+    public ClusterCoordinator(StatisticsService statisticsService, StatisticsProperties properties) {
+        final StatisticsProperties.Cluster cluster = properties.getCluster();
+        this.statisticsService = statisticsService;
+        this.peers = cluster.getPeers().stream()
+                .map(peer -> new Peer(URI.create(peer.replaceAll("/+$", "") + PARTIALS_PATH)))
+                .collect(Collectors.toList());
+        this.windowsInMs = statisticsService.getWindows().stream().mapToLong(Duration::toMillis).toArray();
+        this.mapping = new QuantileSketch.Mapping(properties.getQuantiles().getRelativeAccuracy());
+        this.merged = new MergedStatistics(mapping);
+        this.validated = new MergedStatistics(mapping);
+        this.pollIntervalInMs = cluster.getPollInterval().toMillis();
+        this.maxStalenessInMs = cluster.getMaxStaleness().toMillis();
+        this.requestTimeout = cluster.getRequestTimeout();
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(requestTimeout)
+                .build();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        pollingThread.start();
+        log.info("Cluster coordinator is started: peers={}", peers.stream().map(peer -> peer.uri)
+                .collect(Collectors.toList()));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!isEnabled()) {
+            return;
+        }
+        pollingThread.interrupt();
+        try {
+            pollingThread.join(SHUTDOWN_TIMEOUT_IN_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if the instance has peers to merge
+     */
+    public boolean isEnabled() {
+        return !peers.isEmpty();
+    }
+
+    /**
+     * @return statistics, which were merged by the last poll
+     */
+    public ClusterStatistics getStatistics() {
+        return statistics;
+    }
+
+    private void pollPeers() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                poll();
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                log.error("Cluster poll failed", e);
+            }
+            // a failed poll waits for the next interval too, so it doesn't spin
+            try {
+                Thread.sleep(pollIntervalInMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        log.info("Cluster coordinator thread was stopped");
+    }
+
+    /**
+     * Fetches partial aggregates of all peers concurrently and merges them with the local ones.
+     */
+    void poll() throws InterruptedException {
+        final List<CompletableFuture<HttpResponse<byte[]>>> responses = new ArrayList<>(peers.size());
+        for (Peer peer : peers) {
+            final HttpRequest request = HttpRequest.newBuilder(peer.uri).timeout(requestTimeout).GET().build();
+            responses.add(httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()));
+        }
+
+        for (int index = 0; index < peers.size(); index++) {
+            final Peer peer = peers.get(index);
+            try {
+                final HttpResponse<byte[]> response = responses.get(index).get();
+                if (response.statusCode() != 200) {
+                    throw new IllegalStateException("Unexpected status: status=" + response.statusCode());
+                }
+                final PartialAggregates.Decoded partials = PartialAggregates.Decoded.decode(response.body());
+                if (!partials.isCompatible(mapping)) {
+                    throw new IllegalStateException("Quantile sketches of the node have other relative accuracy: "
+                            + "relativeAccuracy=" + partials.relativeAccuracy());
+                }
+                // all buckets are merged once, so inconsistent partials are left out here, not in every merge
+                validated.reset();
+                partials.mergeInto(validated, Long.MAX_VALUE / 2, 0);
+                peer.partials = partials;
+                if (peer.failing) {
+                    peer.failing = false;
+                    log.info("Cluster node responds again: uri={}", peer.uri);
+                }
+            } catch (ExecutionException | RuntimeException e) {
+                if (!peer.failing) {
+                    peer.failing = true;
+                    log.warn("Cannot fetch partial aggregates of cluster node: uri={}, message={}", peer.uri,
+                            e instanceof ExecutionException ? e.getCause().toString() : e.toString());
+                }
+            }
+        }
+
+        statistics = merge(statisticsService.getClock().millis());
+    }
+
+    private ClusterStatistics merge(long nowInMs) {
+        final List<PartialAggregates.Decoded> fresh = new ArrayList<>(peers.size() + 1);
+        int nodes = peers.size();
+        final byte[] local = statisticsService.getPartialAggregates();
+        if (local != null) {
+            nodes++;
+            fresh.add(PartialAggregates.Decoded.decode(local));
+        }
+        for (Peer peer : peers) {
+            if (peer.partials != null && nowInMs - peer.partials.asOfMs() <= maxStalenessInMs) {
+                fresh.add(peer.partials);
+            }
+        }
+
+        long oldestAsOfMs = Long.MAX_VALUE;
+        for (PartialAggregates.Decoded partials : fresh) {
+            oldestAsOfMs = Math.min(oldestAsOfMs, partials.asOfMs());
+        }
+
+        final Statistics[] windowStatistics = new Statistics[windowsInMs.length];
+        for (int window = 0; window < windowsInMs.length; window++) {
+            merged.reset();
+            for (PartialAggregates.Decoded partials : fresh) {
+                partials.mergeInto(merged, windowsInMs[window], nowInMs);
+            }
+            windowStatistics[window] = merged.toStatistics();
+        }
+        return new ClusterStatistics(windowStatistics, nodes, fresh.size(), oldestAsOfMs);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.statisticsservice.service;
+
+/**
+ * Statistics of all windows merged from partial aggregates of cluster nodes, it's never modified.
+ */
+public final class ClusterStatistics {
+
+    static final ClusterStatistics EMPTY = new ClusterStatistics(new Statistics[0], 0, 0, Long.MAX_VALUE);
+
+    private final Statistics[] statistics;
+    private final int nodes;
+    private final int mergedNodes;
+    private final long oldestAsOfMs;
+
+    ClusterStatistics(Statistics[] statistics, int nodes, int mergedNodes, long oldestAsOfMs) {
+        this.statistics = statistics;
+        this.nodes = nodes;
+        this.mergedNodes = mergedNodes;
+        this.oldestAsOfMs = oldestAsOfMs;
+    }
+
+    /**
+     * @param window index of the window in {@link StatisticsService#getWindows()}
+     */
+    public Statistics getStatistics(int window) {
+        return window < statistics.length ? statistics[window] : Statistics.EMPTY;
+    }
+
+    /**
+     * @return number of configured nodes, including the local one, if it's a node
+     */
+    public int getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return number of nodes, whose partial aggregates are merged, others were unreachable or stale
+     */
+    public int getMergedNodes() {
+        return mergedNodes;
+    }
+
+    /**
+     * @param nowInMs time of the clock of the service
+     * @return age of the oldest merged partial aggregates, 0 if no node was merged
+     */
+    public long getStalenessInMs(long nowInMs) {
+        return mergedNodes == 0 ? 0 : Math.max(0, nowInMs - oldestAsOfMs);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.statisticsservice.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Overflow area, which merges transactions with the same timestamp into one aggregate,
+ * so a burst costs one slot per millisecond instead of one slot per transaction.
+ * Slots are addressed by timestamp, a transaction is not accepted when its slot holds another timestamp,
+ * which is not drained yet.
+ */
+class CoalescingBuffer {
+
+    private static final class Slot {
+        private long timestamp;
+        private long count;
+        private double sum;
+        private double min;
+        private double max;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicInteger occupiedSlots = new AtomicInteger();
+
+    /**
+     * @param slotCount is rounded up to a power of two
+     */
+    CoalescingBuffer(int slotCount) {
+        if (slotCount <= 0) {
+            throw new IllegalArgumentException("Slot count must be positive: slotCount=" + slotCount);
+        }
+
+        this.slots = new Slot[StripedIngestionBuffer.ceilingPowerOfTwo(slotCount)];
+        this.mask = slots.length - 1;
+        for (int index = 0; index < slots.length; index++) {
+            slots[index] = new Slot();
+        }
+    }
+
+    /**
+     * @return false if the timestamp's slot is occupied by another timestamp
+     */
+    boolean add(double amount, long timestamp) {
+        final Slot slot = slots[(int) (timestamp & mask)];
+        synchronized (slot) {
+            if (slot.count == 0) {
+                slot.timestamp = timestamp;
+                slot.count = 1;
+                slot.sum = amount;
+                slot.min = amount;
+                slot.max = amount;
+                occupiedSlots.incrementAndGet();
+                return true;
+            }
+            if (slot.timestamp != timestamp) {
+                return false;
+            }
+
+            slot.count++;
+            slot.sum += amount;
+            slot.min = Math.min(slot.min, amount);
+            slot.max = Math.max(slot.max, amount);
+            return true;
+        }
+    }
+
+    /**
+     * @return number of drained transactions
+     */
+    long drainTo(AggregateConsumer consumer) {
+        if (isEmpty()) {
+            return 0;
+        }
+
+        long drained = 0;
+        for (Slot slot : slots) {
+            final long timestamp;
+            final long count;
+            final double sum;
+            final double min;
+            final double max;
+            synchronized (slot) {
+                if (slot.count == 0) {
+                    continue;
+                }
+                timestamp = slot.timestamp;
+                count = slot.count;
+                sum = slot.sum;
+                min = slot.min;
+                max = slot.max;
+                slot.count = 0;
+                occupiedSlots.decrementAndGet();
+            }
+
+            consumer.accept(timestamp, count, sum, min, max);
+            drained += count;
+        }
+        return drained;
+    }
+
+    boolean isEmpty() {
+        return occupiedSlots.get() == 0;
+    }
+}
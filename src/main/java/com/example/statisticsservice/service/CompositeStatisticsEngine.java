@@ -0,0 +1,77 @@
+package com.example.statisticsservice.service;
+
+/**
+ * Several windows for an engine, which keeps one window, every window is a separate engine with its own copy
+ * of transactions.
+ */
+class CompositeStatisticsEngine implements StatisticsEngine {
+
+    private final StatisticsEngine[] engines;
+
+    /**
+     * @param engines single window engines, in order of windows
+     */
+    CompositeStatisticsEngine(StatisticsEngine[] engines) {
+        this.engines = engines.clone();
+    }
+
+    @Override
+    public void add(double amount, long timestamp) {
+        for (StatisticsEngine engine : engines) {
+            engine.add(amount, timestamp);
+        }
+    }
+
+    @Override
+    public void addAggregate(long timestamp, long count, double sum, double min, double max) {
+        for (StatisticsEngine engine : engines) {
+            engine.addAggregate(timestamp, count, sum, min, max);
+        }
+    }
+
+    @Override
+    public long removeExpired(long nowInMs, int limit) {
+        long removed = 0;
+        for (StatisticsEngine engine : engines) {
+            removed += engine.removeExpired(nowInMs, limit);
+        }
+        return removed;
+    }
+
+    @Override
+    public Statistics getStatistics(int window) {
+        return engines[window].getStatistics();
+    }
+
+    @Override
+    public WindowSummary getSummary(int window) {
+        return engines[window].getSummary(0);
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (StatisticsEngine engine : engines) {
+            size += engine.size();
+        }
+        return size;
+    }
+
+    @Override
+    public long evictedTransactions() {
+        long evictedTransactions = 0;
+        for (StatisticsEngine engine : engines) {
+            evictedTransactions += engine.evictedTransactions();
+        }
+        return evictedTransactions;
+    }
+
+    @Override
+    public long nextExpiryTime() {
+        long nextExpiryTime = Long.MAX_VALUE;
+        for (StatisticsEngine engine : engines) {
+            nextExpiryTime = Math.min(nextExpiryTime, engine.nextExpiryTime());
+        }
+        return nextExpiryTime;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.statisticsservice.service;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+
+/**
+ * Sizes batches of a pass of the statistics thread, is used only by the statistics thread of a shard.
+ * <p>
+ * Adaptive policy keeps moving averages of the cost of one new transaction, of one expired element and of
+ * a publication, and gives a batch as many elements as fit into its share of target latency: a pass takes about
+ * target latency under any backlog, so statistics are published at least that often under load, and the fixed cost
+ * of a publication is paid per up to max batch transactions, not per min batch. New and expired elements get half
+ * of the budget each, when both are pending, so neither of them starves the other. A batch is only an upper bound,
+ * a pass drains what is pending, so light load is drained in one pass whatever the batch.
+ * <p>
+ * Fixed policy gives every batch min batch elements.
+ */
+final class DrainPolicy {
+
+    /**
+     * Weight of a new measurement in moving averages, so the cost follows changes of load within a few passes.
+     */
+    private static final double SMOOTHING = 0.25;
+
+    private final boolean adaptive;
+    private final long targetLatencyInNanos;
+    private final int minBatch;
+    private final int maxBatch;
+
+    /**
+     * Moving averages in nanoseconds, 0 until the first measurement.
+     */
+    private double addCostInNanos;
+    private double expiryCostInNanos;
+    private double publishCostInNanos;
+
+    DrainPolicy(StatisticsProperties.Drain drain) {
+        if (drain.getMinBatch() <= 0 || drain.getMaxBatch() < drain.getMinBatch()) {
+            throw new IllegalArgumentException("Drain batches must be positive and min batch must not exceed max batch"
+                    + ": minBatch=" + drain.getMinBatch() + ", maxBatch=" + drain.getMaxBatch());
+        }
+        this.adaptive = drain.isAdaptive();
+        this.targetLatencyInNanos = drain.getTargetLatency().toNanos();
+        this.minBatch = drain.getMinBatch();
+        this.maxBatch = drain.getMaxBatch();
+    }
+
+    /**
+     * @param expiryPending expired elements are removed in the same pass
+     * @return max number of new transactions of the pass
+     */
+    int addBatch(boolean expiryPending) {
+        return batch(addCostInNanos, expiryPending);
+    }
+
+    /**
+     * @param addPending new transactions are left in the ingestion buffer after the adds of the pass
+     * @return max number of expired elements of the pass per window
+     */
+    int expiryBatch(boolean addPending) {
+        return batch(expiryCostInNanos, addPending);
+    }
+
+    void added(long transactions, long durationInNanos) {
+        if (transactions > 0) {
+            addCostInNanos = average(addCostInNanos, (double) durationInNanos / transactions);
+        }
+    }
+
+    void expired(long elements, long durationInNanos) {
+        if (elements > 0) {
+            expiryCostInNanos = average(expiryCostInNanos, (double) durationInNanos / elements);
+        }
+    }
+
+    void published(long durationInNanos) {
+        publishCostInNanos = average(publishCostInNanos, durationInNanos);
+    }
+
+    private int batch(double costInNanos, boolean shared) {
+        if (!adaptive || costInNanos == 0) {
+            return minBatch;
+        }
+        double budgetInNanos = targetLatencyInNanos - publishCostInNanos;
+        if (shared) {
+            budgetInNanos /= 2;
+        }
+        return (int) Math.max(minBatch, Math.min(maxBatch, budgetInNanos / costInNanos));
+    }
+
+    private static double average(double average, double measurement) {
+        return average == 0 ? measurement : average + SMOOTHING * (measurement - average);
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.statisticsservice.service;
+
+/**
+ * Ingestion buffer, which any thread may take the oldest transaction from, so drop-oldest policy
+ * can make room for a new one.
+ */
+interface DropOldestBuffer extends IngestionBuffer {
+
+    /**
+     * Removes the oldest buffered transaction to make room for a new one.
+     *
+     * @return false if the buffer is empty
+     */
+    boolean pollOldest();
+}
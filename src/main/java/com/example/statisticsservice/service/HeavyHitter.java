@@ -0,0 +1,38 @@
+package com.example.statisticsservice.service;
+
+/**
+ * A frequent amount of a window, its true count is in {@code [count - error, count]}.
+ */
+public class HeavyHitter {
+
+    private final double amount;
+    private final long count;
+    private final long error;
+
+    public HeavyHitter(double amount, long count, long error) {
+        this.amount = amount;
+        this.count = count;
+        this.error = error;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "HeavyHitter{" +
+                "amount=" + amount +
+                ", count=" + count +
+                ", error=" + error +
+                '}';
+    }
+}
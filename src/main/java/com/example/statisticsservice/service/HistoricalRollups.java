@@ -0,0 +1,191 @@
+package com.example.statisticsservice.service;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Retention-bounded history of count, sum, min and max in tiers of growing resolution, e.g. per second for an hour,
+ * per minute for a day and per hour for a month, so ranges older than the sliding windows can be queried.
+ * <p>
+ * Every tier is a ring of buckets in primitive arrays, a transaction is added to its bucket of every tier,
+ * so a coarse bucket is the roll-up of the fine ones, and each tier stays complete after the finer ones have wrapped.
+ * Memory is {@code retention / resolution} buckets per tier, whatever the traffic.
+ * <p>
+ * Is updated by the statistics thread between {@link #beginUpdate()} and {@link #endUpdate(long)},
+ * so queries of other threads never see a bucket being reset.
+ */
+final class HistoricalRollups {
+
+    /**
+     * Max points of one query.
+     */
+    static final int MAX_POINTS = 10_000;
+
+    private static final class Tier {
+        private final long resolutionInMs;
+        private final long retentionInMs;
+        private final long[] epochs;
+        private final long[] counts;
+        private final double[] sums;
+        private final double[] mins;
+        private final double[] maxes;
+
+        private Tier(long resolutionInMs, long retentionInMs, long futureSkewInMs) {
+            this.resolutionInMs = resolutionInMs;
+            this.retentionInMs = retentionInMs;
+            final int bucketCount = Math.toIntExact((retentionInMs + resolutionInMs - 1) / resolutionInMs + 1
+                    + (futureSkewInMs + resolutionInMs - 1) / resolutionInMs);
+            this.epochs = new long[bucketCount];
+            this.counts = new long[bucketCount];
+            this.sums = new double[bucketCount];
+            this.mins = new double[bucketCount];
+            this.maxes = new double[bucketCount];
+        }
+
+        private void add(long timestamp, long count, double sum, double min, double max) {
+            final long epoch = Math.floorDiv(timestamp, resolutionInMs);
+            final int slot = (int) Math.floorMod(epoch, (long) counts.length);
+            if (counts[slot] > 0 && epochs[slot] != epoch) {
+                if (epochs[slot] > epoch) {
+                    // older than the whole ring, so it's out of retention
+                    return;
+                }
+                counts[slot] = 0;
+            }
+
+            if (counts[slot] == 0) {
+                epochs[slot] = epoch;
+                sums[slot] = 0;
+                mins[slot] = Double.POSITIVE_INFINITY;
+                maxes[slot] = Double.NEGATIVE_INFINITY;
+            }
+            counts[slot] += count;
+            sums[slot] += sum;
+            mins[slot] = Math.min(mins[slot], min);
+            maxes[slot] = Math.max(maxes[slot], max);
+        }
+
+        /**
+         * Adds buckets of epochs {@code [fromEpoch, toEpoch)} to the point of the series.
+         */
+        private void addTo(StatisticsSeries series, int point, long fromEpoch, long toEpoch) {
+            for (long epoch = fromEpoch; epoch < toEpoch; epoch++) {
+                final int slot = (int) Math.floorMod(epoch, (long) counts.length);
+                if (counts[slot] > 0 && epochs[slot] == epoch) {
+                    series.add(point, counts[slot], sums[slot], mins[slot], maxes[slot]);
+                }
+            }
+        }
+    }
+
+    private final Tier[] tiers;
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * @param resolutionsInMs bucket width of every tier, from the finest one
+     * @param retentionsInMs  how long every tier keeps its buckets
+     * @param futureSkewInMs  how far ahead of the clock a timestamp may be
+     */
+    HistoricalRollups(long[] resolutionsInMs, long[] retentionsInMs, long futureSkewInMs) {
+        if (resolutionsInMs.length == 0 || resolutionsInMs.length != retentionsInMs.length) {
+            throw new IllegalArgumentException("Every rollup tier must have resolution and retention: tiers="
+                    + resolutionsInMs.length + ", retentions=" + retentionsInMs.length);
+        }
+
+        this.tiers = new Tier[resolutionsInMs.length];
+        for (int tier = 0; tier < tiers.length; tier++) {
+            if (resolutionsInMs[tier] <= 0 || retentionsInMs[tier] < resolutionsInMs[tier]) {
+                throw new IllegalArgumentException("Rollup resolution must be in (0, retention]: resolutionInMs="
+                        + resolutionsInMs[tier] + ", retentionInMs=" + retentionsInMs[tier]);
+            }
+            tiers[tier] = new Tier(resolutionsInMs[tier], retentionsInMs[tier], futureSkewInMs);
+        }
+    }
+
+    /**
+     * @return stamp for {@link #endUpdate(long)}
+     */
+    long beginUpdate() {
+        return lock.writeLock();
+    }
+
+    void endUpdate(long stamp) {
+        lock.unlockWrite(stamp);
+    }
+
+    void add(double amount, long timestamp) {
+        for (Tier tier : tiers) {
+            tier.add(timestamp, 1, amount, amount, amount);
+        }
+    }
+
+    void addAggregate(long timestamp, long count, double sum, double min, double max) {
+        for (Tier tier : tiers) {
+            tier.add(timestamp, count, sum, min, max);
+        }
+    }
+
+    /**
+     * Aggregates points {@code [t, t + step)} of range {@code [from, to)}, {@code from} is aligned down to the step.
+     *
+     * @throws IllegalArgumentException if the range is not retained at a resolution, which divides the step,
+     *                                  or has more than {@value #MAX_POINTS} points
+     */
+    StatisticsSeries query(long fromInMs, long toInMs, long stepInMs, long nowInMs) {
+        final StatisticsSeries series = newSeries(fromInMs, toInMs, stepInMs);
+        addTo(series, nowInMs);
+        return series;
+    }
+
+    /**
+     * @return empty points of range {@code [from, to)}, {@code from} is aligned down to the step
+     * @throws IllegalArgumentException if the range has more than {@value #MAX_POINTS} points
+     */
+    static StatisticsSeries newSeries(long fromInMs, long toInMs, long stepInMs) {
+        if (stepInMs <= 0 || toInMs < fromInMs) {
+            throw new IllegalArgumentException("Invalid range: from=" + fromInMs + ", to=" + toInMs
+                    + ", stepInMs=" + stepInMs);
+        }
+        final long alignedFromInMs = Math.floorDiv(fromInMs, stepInMs) * stepInMs;
+        final long points = (toInMs - alignedFromInMs + stepInMs - 1) / stepInMs;
+        if (points > MAX_POINTS) {
+            throw new IllegalArgumentException("Too many points in range: points=" + points
+                    + ", maxPoints=" + MAX_POINTS);
+        }
+        return new StatisticsSeries(alignedFromInMs, stepInMs, (int) points);
+    }
+
+    /**
+     * Adds history to the points, so history of several shards is merged into one series.
+     * Points are summed from the coarsest tier, which retains the start of the series and whose resolution
+     * divides the step, so it reads {@code step / resolution} buckets per point, not transactions.
+     *
+     * @throws IllegalArgumentException if the range is not retained at a resolution, which divides the step
+     */
+    void addTo(StatisticsSeries series, long nowInMs) {
+        final long fromInMs = series.getTimestamp(0);
+        final long stepInMs = series.getStepInMs();
+        Tier selected = null;
+        for (Tier tier : tiers) {
+            if (stepInMs % tier.resolutionInMs == 0 && fromInMs >= nowInMs - tier.retentionInMs
+                    && (selected == null || tier.resolutionInMs > selected.resolutionInMs)) {
+                selected = tier;
+            }
+        }
+        if (selected == null) {
+            throw new IllegalArgumentException("Range is not retained at a resolution, which divides the step: from="
+                    + fromInMs + ", stepInMs=" + stepInMs);
+        }
+
+        final long bucketsPerStep = stepInMs / selected.resolutionInMs;
+        final long fromEpoch = Math.floorDiv(fromInMs, selected.resolutionInMs);
+        final long stamp = lock.readLock();
+        try {
+            for (int point = 0; point < series.size(); point++) {
+                final long pointEpoch = fromEpoch + point * bucketsPerStep;
+                selected.addTo(series, point, pointEpoch, pointEpoch + bucketsPerStep);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.statisticsservice.service;
+
+/**
+ * HyperLogLog over 64-bit hashes: low {@code precision} bits of a hash select a one byte register,
+ * which keeps the max rank (position of the first one bit) of the rest of the hash.
+ * Registers of several sets are merged by max, so registers of buckets and shards are merged into a window.
+ * <p>
+ * Registers are plain byte arrays owned by callers, so they are reset and reused without allocation.
+ */
+final class HyperLogLog {
+
+    static final int MIN_PRECISION = 4;
+    static final int MAX_PRECISION = 16;
+
+    private HyperLogLog() {
+    }
+
+    static void checkPrecision(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Distinct count precision must be in [" + MIN_PRECISION + ", "
+                    + MAX_PRECISION + "]: precision=" + precision);
+        }
+    }
+
+    /**
+     * Finalizer of MurmurHash3, so bits of a weak hash, e.g. of a double, are spread over the whole hash.
+     */
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * @return mixed hash of the amount, {@code -0.0} and {@code 0.0} are the same amount
+     */
+    static long hash(double amount) {
+        return mix(Double.doubleToLongBits(amount + 0.0));
+    }
+
+    static int register(long hash, int precision) {
+        return (int) hash & ((1 << precision) - 1);
+    }
+
+    static byte rank(long hash, int precision) {
+        // the top precision bits of the shifted hash are zeros, so the rank is in [1, 64 - precision + 1]
+        return (byte) (Long.numberOfLeadingZeros(hash >>> precision) - precision + 1);
+    }
+
+    static void add(byte[] registers, int offset, int register, byte rank) {
+        if (registers[offset + register] < rank) {
+            registers[offset + register] = rank;
+        }
+    }
+
+    static void merge(byte[] from, int fromOffset, byte[] to, int toOffset, int length) {
+        for (int index = 0; index < length; index++) {
+            if (to[toOffset + index] < from[fromOffset + index]) {
+                to[toOffset + index] = from[fromOffset + index];
+            }
+        }
+    }
+
+    /**
+     * Raw estimate with linear counting for small cardinalities, 64-bit hashes need no large range correction.
+     */
+    static long estimate(byte[] registers) {
+        final int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte rank : registers) {
+            sum += Double.longBitsToDouble((1023L - rank) << 52);
+            if (rank == 0) {
+                zeros++;
+            }
+        }
+
+        final double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            return Math.round(m * Math.log((double) m / zeros));
+        }
+        return Math.round(estimate);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
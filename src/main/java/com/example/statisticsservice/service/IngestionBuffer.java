@@ -0,0 +1,30 @@
+package com.example.statisticsservice.service;
+
+/**
+ * Hands over saved transactions from request threads to the statistics thread.
+ * {@link #offer} may be called from any thread, {@link #drainTo} only from the statistics thread.
+ */
+interface IngestionBuffer {
+
+    /**
+     * @return false if the buffer is full
+     */
+    boolean offer(double amount, long timestamp);
+
+    /**
+     * Offers transactions from {@code offset} to {@code offset + length} as one batch.
+     *
+     * @return number of accepted transactions, the rest didn't fit into the buffer
+     */
+    int offerAll(double[] amounts, long[] timestamps, int offset, int length);
+
+    /**
+     * @return number of drained transactions
+     */
+    int drainTo(TransactionConsumer consumer, int limit);
+
+    /**
+     * @return approximate number of buffered transactions
+     */
+    long size();
+}
@@ -0,0 +1,53 @@
+package com.example.statisticsservice.service;
+
+public class KeyStatistics {
+
+    private final String key;
+    private final double sum;
+    private final double max;
+    private final double min;
+    private final long count;
+
+    public KeyStatistics(String key, double sum, double max, double min, long count) {
+        this.key = key;
+        this.sum = sum;
+        this.max = max;
+        this.min = min;
+        this.count = count;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getAvg() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyStatistics{" +
+                "key='" + key + '\'' +
+                ", sum=" + sum +
+                ", max=" + max +
+                ", min=" + min +
+                ", count=" + count +
+                '}';
+    }
+}
@@ -0,0 +1,387 @@
+package com.example.statisticsservice.service;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of the primary sliding window per key, e.g. merchant or currency.
+ * <p>
+ * Keys are spread across stripes by hash, every stripe has its own lock and maps 64-bit key hash to a key slot
+ * with a primitive open addressing map. A key gets a small ring of coarse buckets on its first transaction,
+ * stale buckets are reset lazily on add and skipped on read, so idle keys cost nothing until their slot is needed.
+ * Memory is bounded by max keys, when a stripe is full, keys without live buckets are evicted,
+ * transactions of new keys are not counted per key while there are no idle keys.
+ * <p>
+ * Unlike the global statistics, keys are updated by request threads and have no quantiles.
+ * <p>
+ * Distinct keys are counted with {@link HyperLogLog} registers per bucket, including keys without a slot.
+ * A register is selected by the low bits of the key hash, which also select the stripe, so every stripe owns
+ * its own subset of registers and updates them under its lock.
+ */
+public final class KeyedStatistics {
+
+    public enum Order {
+        SUM(Comparator.comparingDouble(KeyStatistics::getSum)),
+        COUNT(Comparator.comparingLong(KeyStatistics::getCount));
+
+        private final Comparator<KeyStatistics> comparator;
+
+        Order(Comparator<KeyStatistics> comparator) {
+            this.comparator = comparator;
+        }
+    }
+
+    private static final class KeyRing {
+        private final long[] epochs;
+        private final long[] counts;
+        private final double[] sums;
+        private final double[] mins;
+        private final double[] maxes;
+        private long lastEpoch;
+
+        private KeyRing(int bucketCount) {
+            this.epochs = new long[bucketCount];
+            this.counts = new long[bucketCount];
+            this.sums = new double[bucketCount];
+            this.mins = new double[bucketCount];
+            this.maxes = new double[bucketCount];
+        }
+
+        private void clear() {
+            Arrays.fill(counts, 0);
+            lastEpoch = Long.MIN_VALUE;
+        }
+
+        private void add(long epoch, double amount) {
+            final int slot = (int) Math.floorMod(epoch, (long) counts.length);
+            if (counts[slot] == 0 || epochs[slot] != epoch) {
+                if (counts[slot] > 0 && epochs[slot] > epoch) {
+                    // slot is reused by a bucket, which is newer by the whole window
+                    return;
+                }
+                epochs[slot] = epoch;
+                counts[slot] = 0;
+                sums[slot] = 0;
+                mins[slot] = Double.POSITIVE_INFINITY;
+                maxes[slot] = Double.NEGATIVE_INFINITY;
+            }
+
+            counts[slot]++;
+            sums[slot] += amount;
+            mins[slot] = Math.min(mins[slot], amount);
+            maxes[slot] = Math.max(maxes[slot], amount);
+            lastEpoch = Math.max(lastEpoch, epoch);
+        }
+
+        private KeyStatistics statistics(String key, long firstLiveEpoch) {
+            long count = 0;
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int slot = 0; slot < counts.length; slot++) {
+                if (counts[slot] > 0 && epochs[slot] >= firstLiveEpoch) {
+                    count += counts[slot];
+                    sum += sums[slot];
+                    min = Math.min(min, mins[slot]);
+                    max = Math.max(max, maxes[slot]);
+                }
+            }
+            return count == 0
+                    ? new KeyStatistics(key, 0, 0, 0, 0)
+                    : new KeyStatistics(key, sum, max, min, count);
+        }
+    }
+
+    private final class Stripe {
+        private final LongIntHashMap slotsByHash;
+        private final String[] keys;
+        private final long[] hashes;
+        private final KeyRing[] rings;
+        private final int[] freeSlots;
+        private int freeSlotCount;
+        /**
+         * A full stripe is not swept again within the same bucket, when the previous sweep freed nothing.
+         */
+        private long lastSweepEpoch = Long.MIN_VALUE;
+        /**
+         * Distinct key registers of this stripe per bucket, null if distinct keys are not counted.
+         */
+        private final long[] distinctEpochs;
+        private final byte[] distinctRegisters;
+
+        private Stripe(int capacity) {
+            this.slotsByHash = new LongIntHashMap(capacity);
+            this.keys = new String[capacity];
+            this.hashes = new long[capacity];
+            this.rings = new KeyRing[capacity];
+            this.freeSlots = new int[capacity];
+            for (int slot = 0; slot < capacity; slot++) {
+                freeSlots[slot] = capacity - 1 - slot;
+            }
+            this.freeSlotCount = capacity;
+            if (distinctPrecision > 0) {
+                this.distinctEpochs = new long[bucketCount];
+                Arrays.fill(distinctEpochs, Long.MIN_VALUE);
+                this.distinctRegisters = new byte[bucketCount * stripeRegisters];
+            } else {
+                this.distinctEpochs = null;
+                this.distinctRegisters = null;
+            }
+        }
+
+        private void addDistinct(long hash, long epoch) {
+            final int slot = (int) Math.floorMod(epoch, (long) bucketCount);
+            if (distinctEpochs[slot] != epoch) {
+                if (distinctEpochs[slot] > epoch) {
+                    return;
+                }
+                distinctEpochs[slot] = epoch;
+                Arrays.fill(distinctRegisters, slot * stripeRegisters, (slot + 1) * stripeRegisters, (byte) 0);
+            }
+            HyperLogLog.add(distinctRegisters, slot * stripeRegisters,
+                    HyperLogLog.register(hash, distinctPrecision) >>> stripeBits,
+                    HyperLogLog.rank(hash, distinctPrecision));
+        }
+
+        private int allocate(String key, long hash, long firstLiveEpoch) {
+            if (freeSlotCount == 0 && lastSweepEpoch != firstLiveEpoch) {
+                lastSweepEpoch = firstLiveEpoch;
+                evictIdle(firstLiveEpoch);
+            }
+            if (freeSlotCount == 0) {
+                return -1;
+            }
+
+            final int slot = freeSlots[--freeSlotCount];
+            if (rings[slot] == null) {
+                rings[slot] = new KeyRing(bucketCount);
+            }
+            rings[slot].clear();
+            keys[slot] = key;
+            hashes[slot] = hash;
+            slotsByHash.put(hash, slot);
+            return slot;
+        }
+
+        private void evictIdle(long firstLiveEpoch) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != null && rings[slot].lastEpoch < firstLiveEpoch) {
+                    slotsByHash.remove(hashes[slot]);
+                    keys[slot] = null;
+                    freeSlots[freeSlotCount++] = slot;
+                }
+            }
+        }
+    }
+
+    private final long slidingWindowInMs;
+    private final long resolutionInMs;
+    private final int bucketCount;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int stripeBits;
+    /**
+     * Precision of distinct keys, 0 if they are not counted.
+     */
+    private final int distinctPrecision;
+    private final int stripeRegisters;
+    private final LongAdder rejectedTransactions = new LongAdder();
+
+    /**
+     * @param futureSkewInMs    how far ahead of the clock a timestamp may be, rings have room for it
+     * @param distinctPrecision {@link HyperLogLog} precision of distinct keys, 0 if they are not counted
+     */
+    KeyedStatistics(long slidingWindowInMs, StatisticsProperties.Keys properties, long futureSkewInMs,
+                    int distinctPrecision) {
+        if (properties.getResolution().toMillis() <= 0) {
+            throw new IllegalArgumentException("Key bucket resolution must be positive: resolution="
+                    + properties.getResolution());
+        }
+        // a bucket wider than a short window would only make statistics less exact
+        final long resolutionInMs = Math.min(properties.getResolution().toMillis(), slidingWindowInMs);
+
+        this.slidingWindowInMs = slidingWindowInMs;
+        this.resolutionInMs = resolutionInMs;
+        // one extra bucket for the partially expired epoch at the window start
+        this.bucketCount = Math.toIntExact((slidingWindowInMs + futureSkewInMs + resolutionInMs - 1) / resolutionInMs
+                + 1);
+
+        final int stripeCount = StripedIngestionBuffer.ceilingPowerOfTwo(properties.getStripes());
+        this.stripeMask = stripeCount - 1;
+        this.stripeBits = Integer.numberOfTrailingZeros(stripeCount);
+        if (distinctPrecision > 0) {
+            HyperLogLog.checkPrecision(distinctPrecision);
+            if (distinctPrecision < stripeBits) {
+                throw new IllegalArgumentException("Distinct count precision must cover key stripes: precision="
+                        + distinctPrecision + ", stripes=" + stripeCount);
+            }
+        }
+        this.distinctPrecision = distinctPrecision;
+        this.stripeRegisters = distinctPrecision > 0 ? 1 << (distinctPrecision - stripeBits) : 0;
+
+        this.stripes = new Stripe[stripeCount];
+        final int stripeCapacity = Math.max(1, properties.getMaxKeys() / stripes.length);
+        for (int index = 0; index < stripes.length; index++) {
+            stripes[index] = new Stripe(stripeCapacity);
+        }
+    }
+
+    /**
+     * @return false if the transaction is not counted for the key, because all key slots are busy
+     */
+    boolean add(String key, double amount, long timestamp, long nowInMs) {
+        final long hash = hash(key);
+        final long epoch = Math.floorDiv(timestamp, resolutionInMs);
+        final long firstLiveEpoch = firstLiveEpoch(nowInMs);
+        if (epoch < firstLiveEpoch) {
+            return true;
+        }
+
+        final Stripe stripe = stripe(hash);
+        synchronized (stripe) {
+            if (distinctPrecision > 0) {
+                stripe.addDistinct(hash, epoch);
+            }
+
+            int slot = stripe.slotsByHash.get(hash, -1);
+            if (slot >= 0 && !stripe.keys[slot].equals(key)) {
+                // 64-bit hash collision, the first key keeps the slot
+                slot = -1;
+            } else if (slot < 0) {
+                slot = stripe.allocate(key, hash, firstLiveEpoch);
+            }
+            if (slot < 0) {
+                rejectedTransactions.increment();
+                return false;
+            }
+
+            stripe.rings[slot].add(epoch, amount);
+            return true;
+        }
+    }
+
+    /**
+     * @return statistics of the key or null if the key is unknown or was evicted
+     */
+    KeyStatistics get(String key, long nowInMs) {
+        final long hash = hash(key);
+        final Stripe stripe = stripe(hash);
+        synchronized (stripe) {
+            final int slot = stripe.slotsByHash.get(hash, -1);
+            if (slot < 0 || !stripe.keys[slot].equals(key)) {
+                return null;
+            }
+            return stripe.rings[slot].statistics(key, firstLiveEpoch(nowInMs));
+        }
+    }
+
+    /**
+     * Scans all keys, so it's O(keys * buckets per key), stripes are locked one by one.
+     *
+     * @return at most {@code limit} keys with the greatest sum or count, in descending order
+     */
+    List<KeyStatistics> top(int limit, Order order, long nowInMs) {
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        final long firstLiveEpoch = firstLiveEpoch(nowInMs);
+        final PriorityQueue<KeyStatistics> top = new PriorityQueue<>(limit + 1, order.comparator);
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int slot = 0; slot < stripe.keys.length; slot++) {
+                    if (stripe.keys[slot] == null || stripe.rings[slot].lastEpoch < firstLiveEpoch) {
+                        continue;
+                    }
+
+                    top.add(stripe.rings[slot].statistics(stripe.keys[slot], firstLiveEpoch));
+                    if (top.size() > limit) {
+                        top.poll();
+                    }
+                }
+            }
+        }
+
+        final List<KeyStatistics> result = new ArrayList<>(top);
+        result.sort(order.comparator.reversed());
+        return result;
+    }
+
+    /**
+     * @return number of keys, which hold a slot, including idle keys, which are not evicted yet
+     */
+    long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.slotsByHash.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Stripes are locked one by one, so it's O(2^precision * buckets).
+     *
+     * @return estimated number of distinct keys in the window, or null if distinct keys are not counted
+     * or the window is longer than the one of keys
+     */
+    Long distinctKeys(long windowInMs, long nowInMs) {
+        if (distinctPrecision == 0 || windowInMs > slidingWindowInMs) {
+            return null;
+        }
+
+        final long firstLiveEpoch = Math.floorDiv(nowInMs - windowInMs, resolutionInMs);
+        final byte[] registers = new byte[1 << distinctPrecision];
+        for (int stripeIndex = 0; stripeIndex < stripes.length; stripeIndex++) {
+            final Stripe stripe = stripes[stripeIndex];
+            synchronized (stripe) {
+                for (int slot = 0; slot < bucketCount; slot++) {
+                    if (stripe.distinctEpochs[slot] < firstLiveEpoch) {
+                        continue;
+                    }
+                    for (int register = 0; register < stripeRegisters; register++) {
+                        final int index = register << stripeBits | stripeIndex;
+                        registers[index] = (byte) Math.max(registers[index],
+                                stripe.distinctRegisters[slot * stripeRegisters + register]);
+                    }
+                }
+            }
+        }
+        return HyperLogLog.estimate(registers);
+    }
+
+    long getRejectedTransactions() {
+        return rejectedTransactions.sum();
+    }
+
+    /**
+     * A bucket is live, when (epoch + 1) * resolution > now - window.
+     */
+    private long firstLiveEpoch(long nowInMs) {
+        return Math.floorDiv(nowInMs - slidingWindowInMs, resolutionInMs);
+    }
+
+    private Stripe stripe(long hash) {
+        return stripes[(int) hash & stripeMask];
+    }
+
+    /**
+     * 64-bit FNV-1a of chars, String.hashCode() is too narrow for millions of keys.
+     * It's mixed, because its low bits select stripes and distinct count registers.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int index = 0; index < key.length(); index++) {
+            hash ^= key.charAt(index);
+            hash *= 0x100000001b3L;
+        }
+        return HyperLogLog.mix(hash);
+    }
+}
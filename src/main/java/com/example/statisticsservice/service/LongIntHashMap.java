@@ -0,0 +1,108 @@
+package com.example.statisticsservice.service;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from long to non-negative int with linear probing and fixed capacity,
+ * so memory is allocated once and entries are not boxed. Removal shifts following entries back,
+ * so there are no tombstones.
+ */
+final class LongIntHashMap {
+
+    private static final int EMPTY = -1;
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+    private final int maxSize;
+    private int size;
+
+    /**
+     * @param maxSize max number of entries, the table is at most half full
+     */
+    LongIntHashMap(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive: maxSize=" + maxSize);
+        }
+
+        final int capacity = StripedIngestionBuffer.ceilingPowerOfTwo(2 * maxSize);
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        this.maxSize = maxSize;
+        Arrays.fill(values, EMPTY);
+    }
+
+    /**
+     * @return value of the key or {@code missingValue}
+     */
+    int get(long key, int missingValue) {
+        for (int index = index(key); ; index = (index + 1) & mask) {
+            if (values[index] == EMPTY) {
+                return missingValue;
+            }
+            if (keys[index] == key) {
+                return values[index];
+            }
+        }
+    }
+
+    /**
+     * @return false if the map is full and doesn't have the key
+     */
+    boolean put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value must be non-negative: value=" + value);
+        }
+
+        int index = index(key);
+        for (; values[index] != EMPTY; index = (index + 1) & mask) {
+            if (keys[index] == key) {
+                values[index] = value;
+                return true;
+            }
+        }
+        if (size == maxSize) {
+            return false;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        size++;
+        return true;
+    }
+
+    void remove(long key) {
+        int index = index(key);
+        for (; ; index = (index + 1) & mask) {
+            if (values[index] == EMPTY) {
+                return;
+            }
+            if (keys[index] == key) {
+                break;
+            }
+        }
+
+        // shift back entries, which would not be found after the hole
+        int hole = index;
+        for (int next = (hole + 1) & mask; values[next] != EMPTY; next = (next + 1) & mask) {
+            final int home = index(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        values[hole] = EMPTY;
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int index(long key) {
+        // keys are hashes already, but low bits are mixed to not depend on their quality
+        return (int) ((key ^ (key >>> 32)) * 0x9E3779B97F4A7C15L >>> 32) & mask;
+    }
+}
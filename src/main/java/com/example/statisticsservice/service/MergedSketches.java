@@ -0,0 +1,63 @@
+package com.example.statisticsservice.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Distinct count registers and heavy hitter counters of one window merged from buckets of all shards.
+ * <p>
+ * Counters of an amount are added up over the buckets, which have it. A full bucket without the amount could still
+ * have counted it up to its least count, so that count is added to both the count and the error of the amount,
+ * and the true count stays in {@code [count - error, count]}.
+ */
+final class MergedSketches {
+
+    private static final Comparator<HeavyHitter> BY_COUNT =
+            Comparator.comparingLong(HeavyHitter::getCount).reversed();
+
+    private final byte[] registers;
+    /**
+     * Count, error and least counts of the buckets, which have the amount, by bits of the amount.
+     */
+    private final Map<Long, long[]> counters = new HashMap<>();
+    private long leastCounts;
+
+    MergedSketches(int precision) {
+        this.registers = new byte[1 << precision];
+    }
+
+    void addRegisters(byte[] from, int offset) {
+        HyperLogLog.merge(from, offset, registers, 0, registers.length);
+    }
+
+    void addCounters(SpaceSaving bucket) {
+        final long minCount = bucket.minCount();
+        leastCounts += minCount;
+        bucket.forEach((amount, count, error) -> {
+            final long[] counter = counters.computeIfAbsent(Double.doubleToLongBits(amount), bits -> new long[3]);
+            counter[0] += count;
+            counter[1] += error;
+            counter[2] += minCount;
+        });
+    }
+
+    /**
+     * @param distinctKeys null if keys are not counted for the window
+     * @return sketches with at most {@code limit} most frequent amounts
+     */
+    WindowSketches toWindowSketches(int limit, Long distinctKeys) {
+        final List<HeavyHitter> heavyHitters = new ArrayList<>(counters.size());
+        for (Map.Entry<Long, long[]> entry : counters.entrySet()) {
+            final long[] counter = entry.getValue();
+            final long missedCount = leastCounts - counter[2];
+            heavyHitters.add(new HeavyHitter(Double.longBitsToDouble(entry.getKey()),
+                    counter[0] + missedCount, counter[1] + missedCount));
+        }
+        heavyHitters.sort(BY_COUNT);
+        return new WindowSketches(HyperLogLog.estimate(registers), distinctKeys,
+                List.copyOf(heavyHitters.subList(0, Math.min(Math.max(limit, 0), heavyHitters.size()))));
+    }
+}
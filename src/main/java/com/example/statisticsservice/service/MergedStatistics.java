@@ -0,0 +1,49 @@
+package com.example.statisticsservice.service;
+
+/**
+ * Totals of one window merged from several sources, e.g. shards or cluster nodes,
+ * is reused for the next window after {@link #reset}.
+ * Counts, sums and extremums are added up, quantiles are calculated from the merged sketch bins,
+ * so they keep the relative accuracy of the sources, if all of them have the same mapping.
+ */
+final class MergedStatistics {
+
+    private final QuantileSketch sketch;
+    private final double[] quantiles = new double[Statistics.QUANTILES.length];
+    private long count;
+    private double sum;
+    private double min;
+    private double max;
+
+    MergedStatistics(QuantileSketch.Mapping mapping) {
+        this.sketch = new QuantileSketch(mapping);
+        reset();
+    }
+
+    void reset() {
+        sketch.reset();
+        count = 0;
+        sum = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    void add(long count, double sum, double min, double max) {
+        this.count += count;
+        this.sum += sum;
+        this.min = Math.min(this.min, min);
+        this.max = Math.max(this.max, max);
+    }
+
+    void addBin(int bin, long count) {
+        sketch.add(bin, count);
+    }
+
+    Statistics toStatistics() {
+        if (count == 0) {
+            return Statistics.EMPTY;
+        }
+        sketch.quantiles(Statistics.QUANTILES, count, min, max, quantiles);
+        return new Statistics(sum, sum / count, max, min, count, quantiles[0], quantiles[1], quantiles[2]);
+    }
+}
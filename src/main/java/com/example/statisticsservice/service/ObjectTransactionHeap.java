@@ -0,0 +1,118 @@
+package com.example.statisticsservice.service;
+
+import java.util.PriorityQueue;
+
+/**
+ * {@link PriorityQueue} of an object per transaction, its memory is not bounded.
+ */
+final class ObjectTransactionHeap implements TransactionHeap {
+
+    private static class QueueElement implements Comparable<QueueElement> {
+        private final double amount;
+        private final long timestamp;
+        /**
+         * Quantile sketch bin of the amount, it fits into object alignment padding.
+         */
+        private final int bin;
+
+        private QueueElement(double amount, long timestamp, int bin) {
+            this.amount = amount;
+            this.timestamp = timestamp;
+            this.bin = bin;
+        }
+
+        long count() {
+            return 1;
+        }
+
+        void subtractFrom(QuantileSketch sketch, QuantileSketch.Mapping mapping) {
+            sketch.subtract(bin, 1);
+        }
+
+        @Override
+        public int compareTo(QueueElement other) {
+            return Long.compare(timestamp, other.timestamp);
+        }
+
+        @Override
+        public String toString() {
+            return "QueueElement{" +
+                    "amount=" + amount +
+                    ", timestamp=" + timestamp +
+                    '}';
+        }
+    }
+
+    /**
+     * Coalesced transactions, {@code amount} is their sum.
+     */
+    private static final class AggregatedElement extends QueueElement {
+        private final long count;
+        private final double min;
+        private final double max;
+
+        private AggregatedElement(double sum, long timestamp, long count, double min, double max) {
+            super(sum, timestamp, -1);
+            this.count = count;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        long count() {
+            return count;
+        }
+
+        @Override
+        void subtractFrom(QuantileSketch sketch, QuantileSketch.Mapping mapping) {
+            mapping.forEachBin(count, super.amount, min, max, sketch::subtract);
+        }
+    }
+
+    private final PriorityQueue<QueueElement> priorityQueue = new PriorityQueue<>();
+
+    @Override
+    public void add(long timestamp, double amount, int bin) {
+        priorityQueue.add(new QueueElement(amount, timestamp, bin));
+    }
+
+    @Override
+    public void addAggregate(long timestamp, double sum, long count, double min, double max) {
+        priorityQueue.add(new AggregatedElement(sum, timestamp, count, min, max));
+    }
+
+    @Override
+    public boolean isFull() {
+        return false;
+    }
+
+    @Override
+    public long size() {
+        return priorityQueue.size();
+    }
+
+    @Override
+    public long oldestTimestamp() {
+        return priorityQueue.peek().timestamp;
+    }
+
+    @Override
+    public double oldestAmount() {
+        return priorityQueue.peek().amount;
+    }
+
+    @Override
+    public long oldestCount() {
+        return priorityQueue.peek().count();
+    }
+
+    @Override
+    public void subtractOldestFrom(QuantileSketch sketch, QuantileSketch.Mapping mapping) {
+        priorityQueue.peek().subtractFrom(sketch, mapping);
+    }
+
+    @Override
+    public void removeOldest() {
+        priorityQueue.poll();
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.statisticsservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of fixed size records in direct memory, so live transactions are not objects, which the GC has
+ * to trace and copy. A record is {@code timestamp:int64 amount:float64 bin:int32 aggregate:int32}, 24 bytes.
+ * <p>
+ * Records are kept in chunks of direct buffers, which are allocated on demand and kept for reuse, up to the memory
+ * budget. A heap, not a ring, because timestamps arrive out of order within allowed lateness and expiry is exact.
+ * Coalesced aggregates are rare, their count, min and max are kept in primitive arrays on heap,
+ * the record refers to them by index.
+ * <p>
+ * The budget may exceed the direct memory limit of the JVM ({@code -XX:MaxDirectMemorySize}, the max heap size by
+ * default), then the heap is capped at the records allocated when a chunk can't be allocated and evicts from there on.
+ */
+final class OffHeapTransactionHeap implements TransactionHeap {
+
+    private static final Logger log = LoggerFactory.getLogger(OffHeapTransactionHeap.class);
+
+    static final int RECORD_SIZE = 24;
+    private static final int TIMESTAMP_OFFSET = 0;
+    private static final int AMOUNT_OFFSET = 8;
+    private static final int BIN_OFFSET = 16;
+    private static final int AGGREGATE_OFFSET = 20;
+    private static final int NO_AGGREGATE = -1;
+
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_RECORDS - 1;
+    private static final int INITIAL_AGGREGATES = 16;
+
+    private long capacity;
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private long size;
+
+    private long[] aggregateCounts = new long[INITIAL_AGGREGATES];
+    private double[] aggregateMins = new double[INITIAL_AGGREGATES];
+    private double[] aggregateMaxes = new double[INITIAL_AGGREGATES];
+    private int[] freeAggregates = new int[INITIAL_AGGREGATES];
+    private int freeAggregateCount;
+    private int aggregateCount;
+
+    /**
+     * @param maxMemoryInBytes memory budget of records, at least one record is kept
+     */
+    OffHeapTransactionHeap(long maxMemoryInBytes) {
+        this.capacity = Math.max(1, maxMemoryInBytes / RECORD_SIZE);
+    }
+
+    @Override
+    public void add(long timestamp, double amount, int bin) {
+        push(timestamp, amount, bin, NO_AGGREGATE);
+    }
+
+    @Override
+    public void addAggregate(long timestamp, double sum, long count, double min, double max) {
+        push(timestamp, sum, -1, allocateAggregate(count, min, max));
+    }
+
+    @Override
+    public boolean isFull() {
+        return size == capacity || !ensureChunk(size);
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public long oldestTimestamp() {
+        return chunks[0].getLong(TIMESTAMP_OFFSET);
+    }
+
+    @Override
+    public double oldestAmount() {
+        return chunks[0].getDouble(AMOUNT_OFFSET);
+    }
+
+    @Override
+    public long oldestCount() {
+        final int aggregate = chunks[0].getInt(AGGREGATE_OFFSET);
+        return aggregate == NO_AGGREGATE ? 1 : aggregateCounts[aggregate];
+    }
+
+    @Override
+    public void subtractOldestFrom(QuantileSketch sketch, QuantileSketch.Mapping mapping) {
+        final int aggregate = chunks[0].getInt(AGGREGATE_OFFSET);
+        if (aggregate == NO_AGGREGATE) {
+            sketch.subtract(chunks[0].getInt(BIN_OFFSET), 1);
+        } else {
+            mapping.forEachBin(aggregateCounts[aggregate], oldestAmount(), aggregateMins[aggregate],
+                    aggregateMaxes[aggregate], sketch::subtract);
+        }
+    }
+
+    @Override
+    public void removeOldest() {
+        final int aggregate = chunks[0].getInt(AGGREGATE_OFFSET);
+        if (aggregate != NO_AGGREGATE) {
+            freeAggregates[freeAggregateCount++] = aggregate;
+        }
+
+        size--;
+        if (size == 0) {
+            return;
+        }
+        // the last record is sifted down from the root
+        final ByteBuffer lastChunk = chunk(size);
+        final int lastOffset = offset(size);
+        siftDown(lastChunk.getLong(lastOffset + TIMESTAMP_OFFSET), lastChunk.getDouble(lastOffset + AMOUNT_OFFSET),
+                lastChunk.getInt(lastOffset + BIN_OFFSET), lastChunk.getInt(lastOffset + AGGREGATE_OFFSET));
+    }
+
+    private void push(long timestamp, double amount, int bin, int aggregate) {
+        if (size == capacity || !ensureChunk(size)) {
+            throw new IllegalStateException("Off-heap transaction heap is full: capacity=" + capacity);
+        }
+
+        // the new record is sifted up from the last position
+        long index = size++;
+        while (index > 0) {
+            final long parent = (index - 1) >>> 1;
+            final ByteBuffer parentChunk = chunk(parent);
+            final int parentOffset = offset(parent);
+            if (parentChunk.getLong(parentOffset + TIMESTAMP_OFFSET) <= timestamp) {
+                break;
+            }
+            copy(parentChunk, parentOffset, index);
+            index = parent;
+        }
+        write(index, timestamp, amount, bin, aggregate);
+    }
+
+    private void siftDown(long timestamp, double amount, int bin, int aggregate) {
+        long index = 0;
+        while (true) {
+            final long left = 2 * index + 1;
+            if (left >= size) {
+                break;
+            }
+            long child = left;
+            long childTimestamp = timestampAt(left);
+            if (left + 1 < size) {
+                final long rightTimestamp = timestampAt(left + 1);
+                if (rightTimestamp < childTimestamp) {
+                    child = left + 1;
+                    childTimestamp = rightTimestamp;
+                }
+            }
+            if (timestamp <= childTimestamp) {
+                break;
+            }
+            copy(chunk(child), offset(child), index);
+            index = child;
+        }
+        write(index, timestamp, amount, bin, aggregate);
+    }
+
+    private long timestampAt(long index) {
+        return chunk(index).getLong(offset(index) + TIMESTAMP_OFFSET);
+    }
+
+    private void copy(ByteBuffer fromChunk, int fromOffset, long to) {
+        write(to, fromChunk.getLong(fromOffset + TIMESTAMP_OFFSET), fromChunk.getDouble(fromOffset + AMOUNT_OFFSET),
+                fromChunk.getInt(fromOffset + BIN_OFFSET), fromChunk.getInt(fromOffset + AGGREGATE_OFFSET));
+    }
+
+    private void write(long index, long timestamp, double amount, int bin, int aggregate) {
+        final ByteBuffer chunk = chunk(index);
+        final int offset = offset(index);
+        chunk.putLong(offset + TIMESTAMP_OFFSET, timestamp);
+        chunk.putDouble(offset + AMOUNT_OFFSET, amount);
+        chunk.putInt(offset + BIN_OFFSET, bin);
+        chunk.putInt(offset + AGGREGATE_OFFSET, aggregate);
+    }
+
+    private ByteBuffer chunk(long index) {
+        return chunks[(int) (index >>> CHUNK_SHIFT)];
+    }
+
+    private static int offset(long index) {
+        return ((int) index & CHUNK_MASK) * RECORD_SIZE;
+    }
+
+    /**
+     * @return false if the chunk of the index can't be allocated, then capacity is reduced to the allocated records,
+     * if there are any
+     */
+    private boolean ensureChunk(long index) {
+        final int chunk = (int) (index >>> CHUNK_SHIFT);
+        if (chunk < chunks.length) {
+            return true;
+        }
+        final long records = Math.min(CHUNK_RECORDS, capacity - ((long) chunk << CHUNK_SHIFT));
+        final ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.allocateDirect(Math.toIntExact(records * RECORD_SIZE)).order(ByteOrder.nativeOrder());
+        } catch (OutOfMemoryError e) {
+            if (index == 0) {
+                // nothing to evict
+                throw e;
+            }
+            log.warn("Direct memory is exhausted, off-heap heap is capped: capacity={}, budget={}, message={}",
+                    index, capacity, e.getMessage());
+            capacity = index;
+            return false;
+        }
+        chunks = Arrays.copyOf(chunks, chunk + 1);
+        chunks[chunk] = buffer;
+        return true;
+    }
+
+    private int allocateAggregate(long count, double min, double max) {
+        final int aggregate;
+        if (freeAggregateCount > 0) {
+            aggregate = freeAggregates[--freeAggregateCount];
+        } else {
+            if (aggregateCount == aggregateCounts.length) {
+                final int newLength = 2 * aggregateCount;
+                aggregateCounts = Arrays.copyOf(aggregateCounts, newLength);
+                aggregateMins = Arrays.copyOf(aggregateMins, newLength);
+                aggregateMaxes = Arrays.copyOf(aggregateMaxes, newLength);
+                freeAggregates = Arrays.copyOf(freeAggregates, newLength);
+            }
+            aggregate = aggregateCount++;
+        }
+        aggregateCounts[aggregate] = count;
+        aggregateMins[aggregate] = min;
+        aggregateMaxes[aggregate] = max;
+        return aggregate;
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.statisticsservice.service;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Time-bucketed partial aggregates of a node for cluster coordinators: a ring of buckets covering the longest window,
+ * every bucket keeps count, sum, min, max and sparse {@link QuantileSketch} bins of its transactions.
+ * All of them are mergeable, so buckets of many nodes add up to a global window, and a coordinator expires them
+ * by its own clock, whatever the age of the copy.
+ * <p>
+ * Buckets are only added to, a slot is reset when it's reused by a newer epoch.
+ * Is owned by the statistics thread, others read encoded copies.
+ * <p>
+ * Encoding, big-endian: magic (4 bytes), as-of time (8), resolution (8), relative accuracy of sketches (8),
+ * bucket count (4), then buckets: epoch (8), count (8), sum (8), min (8), max (8), bin count (4),
+ * {@code bin (4), count (8)} per non-empty bin.
+ */
+final class PartialAggregates {
+
+    static final int MAGIC = 0x5041_5254;
+    static final int AS_OF_OFFSET = 4;
+    static final int HEADER_SIZE = 4 + 8 + 8 + 8 + 4;
+    private static final int BUCKET_SIZE = 5 * 8 + 4;
+    private static final int BIN_SIZE = 4 + 8;
+
+    private final long resolutionInMs;
+    private final long retentionInMs;
+    private final QuantileSketch.Mapping mapping;
+    private final int bucketCount;
+
+    private final long[] epochs;
+    private final long[] counts;
+    private final double[] sums;
+    private final double[] mins;
+    private final double[] maxes;
+    private final BucketSketches sketches;
+
+    /**
+     * Is set by adds, and reset by {@link #encode}.
+     */
+    private boolean changed;
+
+    /**
+     * @param retentionInMs  the longest window
+     * @param futureSkewInMs how far ahead of the clock a timestamp may be
+     */
+    PartialAggregates(long resolutionInMs, long retentionInMs, long futureSkewInMs, QuantileSketch.Mapping mapping) {
+        if (resolutionInMs <= 0 || resolutionInMs > retentionInMs) {
+            throw new IllegalArgumentException("Cluster resolution must be in (0, longestWindow]: resolutionInMs="
+                    + resolutionInMs + ", longestWindowInMs=" + retentionInMs);
+        }
+
+        this.resolutionInMs = resolutionInMs;
+        this.retentionInMs = retentionInMs;
+        this.mapping = mapping;
+        this.bucketCount = Math.toIntExact((retentionInMs + resolutionInMs - 1) / resolutionInMs + 1
+                + (futureSkewInMs + resolutionInMs - 1) / resolutionInMs);
+        this.epochs = new long[bucketCount];
+        this.counts = new long[bucketCount];
+        this.sums = new double[bucketCount];
+        this.mins = new double[bucketCount];
+        this.maxes = new double[bucketCount];
+        this.sketches = new BucketSketches(bucketCount);
+    }
+
+    void add(double amount, long timestamp) {
+        final int slot = slotForAdd(timestamp);
+        if (slot >= 0) {
+            addToBucket(slot, 1, amount, amount, amount);
+            sketches.add(slot, mapping.bin(amount), 1);
+        }
+    }
+
+    void addAggregate(long timestamp, long count, double sum, double min, double max) {
+        final int slot = slotForAdd(timestamp);
+        if (slot >= 0) {
+            addToBucket(slot, count, sum, min, max);
+            mapping.forEachBin(count, sum, min, max, (bin, binCount) -> sketches.add(slot, bin, binCount));
+        }
+    }
+
+    /**
+     * @return true if anything was added since the previous {@link #encode}
+     */
+    boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * Encodes buckets, which are not expired at {@code nowInMs}.
+     */
+    byte[] encode(long nowInMs) {
+        final long lastExpiredEpoch = Math.floorDiv(nowInMs - retentionInMs, resolutionInMs) - 1;
+        int size = HEADER_SIZE;
+        int liveBuckets = 0;
+        for (int slot = 0; slot < bucketCount; slot++) {
+            if (counts[slot] > 0 && epochs[slot] > lastExpiredEpoch) {
+                size += BUCKET_SIZE + sketches.size(slot) * BIN_SIZE;
+                liveBuckets++;
+            }
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC)
+                .putLong(nowInMs)
+                .putLong(resolutionInMs)
+                .putDouble(mapping.relativeAccuracy())
+                .putInt(liveBuckets);
+        for (int slot = 0; slot < bucketCount; slot++) {
+            if (counts[slot] > 0 && epochs[slot] > lastExpiredEpoch) {
+                buffer.putLong(epochs[slot])
+                        .putLong(counts[slot])
+                        .putDouble(sums[slot])
+                        .putDouble(mins[slot])
+                        .putDouble(maxes[slot])
+                        .putInt(sketches.size(slot));
+                sketches.forEach(slot, (bin, count) -> buffer.putInt(bin).putLong(count));
+            }
+        }
+
+        changed = false;
+        return buffer.array();
+    }
+
+    private void addToBucket(int slot, long count, double sum, double min, double max) {
+        counts[slot] += count;
+        sums[slot] += sum;
+        mins[slot] = Math.min(mins[slot], min);
+        maxes[slot] = Math.max(maxes[slot], max);
+        changed = true;
+    }
+
+    /**
+     * @return slot of the timestamp's bucket, or -1 if its slot already holds a newer bucket
+     */
+    private int slotForAdd(long timestamp) {
+        final long epoch = Math.floorDiv(timestamp, resolutionInMs);
+        final int slot = (int) Math.floorMod(epoch, (long) bucketCount);
+        if (counts[slot] > 0 && epochs[slot] != epoch) {
+            if (epochs[slot] > epoch) {
+                // older by the whole ring, so it's out of the longest window
+                return -1;
+            }
+            counts[slot] = 0;
+            sketches.reset(slot);
+        }
+
+        if (counts[slot] == 0) {
+            epochs[slot] = epoch;
+            sums[slot] = 0;
+            mins[slot] = Double.POSITIVE_INFINITY;
+            maxes[slot] = Double.NEGATIVE_INFINITY;
+        }
+        return slot;
+    }
+
+    /**
+     * Decoded partial aggregates of one node.
+     */
+    static final class Decoded {
+
+        private final long asOfMs;
+        private final long resolutionInMs;
+        private final double relativeAccuracy;
+        private final long[] epochs;
+        private final long[] counts;
+        private final double[] sums;
+        private final double[] mins;
+        private final double[] maxes;
+        /**
+         * Bins of bucket {@code i} are at {@code [binOffsets[i], binOffsets[i + 1])}.
+         */
+        private final int[] binOffsets;
+        private final int[] bins;
+        private final long[] binCounts;
+
+        private Decoded(ByteBuffer buffer) {
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not partial aggregates");
+            }
+            this.asOfMs = buffer.getLong();
+            this.resolutionInMs = buffer.getLong();
+            this.relativeAccuracy = buffer.getDouble();
+            final int bucketCount = buffer.getInt();
+            if (bucketCount < 0 || bucketCount > buffer.remaining() / BUCKET_SIZE || resolutionInMs <= 0) {
+                throw new IllegalArgumentException("Invalid partial aggregates header: bucketCount=" + bucketCount
+                        + ", resolutionInMs=" + resolutionInMs);
+            }
+
+            this.epochs = new long[bucketCount];
+            this.counts = new long[bucketCount];
+            this.sums = new double[bucketCount];
+            this.mins = new double[bucketCount];
+            this.maxes = new double[bucketCount];
+            this.binOffsets = new int[bucketCount + 1];
+            int[] bins = new int[0];
+            long[] binCounts = new long[0];
+            int binCount = 0;
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                epochs[bucket] = buffer.getLong();
+                counts[bucket] = buffer.getLong();
+                sums[bucket] = buffer.getDouble();
+                mins[bucket] = buffer.getDouble();
+                maxes[bucket] = buffer.getDouble();
+                final int bucketBins = buffer.getInt();
+                if (bucketBins < 0 || bucketBins > buffer.remaining() / BIN_SIZE) {
+                    throw new IllegalArgumentException("Invalid bin count of partial aggregates: bins=" + bucketBins);
+                }
+
+                if (binCount + bucketBins > bins.length) {
+                    bins = Arrays.copyOf(bins, Math.max(2 * bins.length, binCount + bucketBins));
+                    binCounts = Arrays.copyOf(binCounts, bins.length);
+                }
+                for (int index = 0; index < bucketBins; index++) {
+                    bins[binCount] = buffer.getInt();
+                    binCounts[binCount] = buffer.getLong();
+                    binCount++;
+                }
+                binOffsets[bucket + 1] = binCount;
+            }
+            this.bins = bins;
+            this.binCounts = binCounts;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the bytes are not valid partial aggregates
+         */
+        static Decoded decode(byte[] bytes) {
+            try {
+                return new Decoded(ByteBuffer.wrap(bytes));
+            } catch (BufferUnderflowException e) {
+                throw new IllegalArgumentException("Truncated partial aggregates: length=" + bytes.length);
+            }
+        }
+
+        long asOfMs() {
+            return asOfMs;
+        }
+
+        double relativeAccuracy() {
+            return relativeAccuracy;
+        }
+
+        /**
+         * @return true if sketches of the node are mapped as by {@code mapping}, so their bins can be merged
+         */
+        boolean isCompatible(QuantileSketch.Mapping mapping) {
+            if (relativeAccuracy != mapping.relativeAccuracy()) {
+                return false;
+            }
+            for (int index = 0; index < binOffsets[epochs.length]; index++) {
+                if (bins[index] < 0 || bins[index] >= mapping.binCount()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Adds buckets, which are in the window at {@code nowInMs}, to the merged totals.
+         */
+        void mergeInto(MergedStatistics merged, long windowInMs, long nowInMs) {
+            final long lastExpiredEpoch = Math.floorDiv(nowInMs - windowInMs, resolutionInMs) - 1;
+            for (int bucket = 0; bucket < epochs.length; bucket++) {
+                if (epochs[bucket] <= lastExpiredEpoch) {
+                    continue;
+                }
+                merged.add(counts[bucket], sums[bucket], mins[bucket], maxes[bucket]);
+                for (int index = binOffsets[bucket]; index < binOffsets[bucket + 1]; index++) {
+                    merged.addBin(bins[index], binCounts[index]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.statisticsservice.service;
+
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * Keeps every live transaction of one sliding window ordered by timestamp.
+ * Expiry is exact, removing an element costs O(log n).
+ * <p>
+ * Transactions are kept in a {@link TransactionHeap}: objects on heap or records off heap. When a heap with
+ * a memory budget is full, the oldest transactions are evicted before their expiry, so statistics are of
+ * the latest transactions, which fit into the budget.
+ */
+class PriorityQueueStatisticsEngine implements StatisticsEngine {
+
+    private final TransactionHeap heap;
+    private final SlidingWindowExtremum max = SlidingWindowExtremum.max();
+    private final SlidingWindowExtremum min = SlidingWindowExtremum.min();
+
+    private final long slidingWindowInMs;
+    private final SumAccumulator sum;
+    private long count;
+    private long evictedTransactions;
+
+    private final QuantileSketch.Mapping quantileMapping;
+    private final QuantileSketch sketch;
+    private final double[] quantiles = new double[Statistics.QUANTILES.length];
+
+    PriorityQueueStatisticsEngine(long slidingWindowInMs, IntFunction<SumAccumulator> sumAccumulatorFactory,
+                                  QuantileSketch.Mapping quantileMapping) {
+        this(slidingWindowInMs, sumAccumulatorFactory, quantileMapping, new ObjectTransactionHeap());
+    }
+
+    PriorityQueueStatisticsEngine(long slidingWindowInMs, IntFunction<SumAccumulator> sumAccumulatorFactory,
+                                  QuantileSketch.Mapping quantileMapping, TransactionHeap heap) {
+        this.slidingWindowInMs = slidingWindowInMs;
+        this.sum = sumAccumulatorFactory.apply(1);
+        this.quantileMapping = quantileMapping;
+        this.sketch = new QuantileSketch(quantileMapping);
+        this.heap = heap;
+    }
+
+    @Override
+    public void add(double amount, long timestamp) {
+        if (heap.isFull()) {
+            evictOldest();
+        }
+        final int bin = quantileMapping.bin(amount);
+        heap.add(timestamp, amount, bin);
+        sketch.add(bin, 1);
+        max.add(timestamp, amount);
+        min.add(timestamp, amount);
+        sum.add(0, amount);
+        count++;
+    }
+
+    @Override
+    public void addAggregate(long timestamp, long count, double sum, double min, double max) {
+        if (heap.isFull()) {
+            evictOldest();
+        }
+        heap.addAggregate(timestamp, sum, count, min, max);
+        quantileMapping.forEachBin(count, sum, min, max, sketch::add);
+        this.max.add(timestamp, max);
+        this.min.add(timestamp, min);
+        this.sum.add(0, sum);
+        this.count += count;
+    }
+
+    /**
+     * Elements with the same timestamp are removed together, even if it exceeds the {@code limit},
+     * so extremums can be expired by time.
+     */
+    @Override
+    public long removeExpired(long nowInMs, int limit) {
+        final long thresholdInMs = nowInMs - slidingWindowInMs;
+        long removed = 0;
+        long lastRemovedTimestamp = Long.MIN_VALUE;
+
+        for (int index = 0; ; index++) {
+            if (heap.isEmpty() || heap.oldestTimestamp() >= thresholdInMs) {
+                break;
+            }
+            if (index >= limit && heap.oldestTimestamp() != lastRemovedTimestamp) {
+                break;
+            }
+
+            lastRemovedTimestamp = heap.oldestTimestamp();
+            removeOldest();
+            removed++;
+        }
+
+        if (removed > 0) {
+            removedUpTo(lastRemovedTimestamp);
+        }
+        return removed;
+    }
+
+    @Override
+    public long size() {
+        return heap.size();
+    }
+
+    @Override
+    public long evictedTransactions() {
+        return evictedTransactions;
+    }
+
+    @Override
+    public Statistics getStatistics(int window) {
+        Objects.checkIndex(window, 1);
+        if (count == 0) {
+            return Statistics.EMPTY;
+        }
+        final double currentSum = sum.get(0);
+        final double currentMax = max.get();
+        final double currentMin = min.get();
+        sketch.quantiles(Statistics.QUANTILES, count, currentMin, currentMax, quantiles);
+        return new Statistics(currentSum, currentSum / count, currentMax, currentMin, count,
+                quantiles[0], quantiles[1], quantiles[2]);
+    }
+
+    @Override
+    public WindowSummary getSummary(int window) {
+        Objects.checkIndex(window, 1);
+        if (count == 0) {
+            return WindowSummary.EMPTY;
+        }
+        return sketch.summarize(count, sum.get(0), min.get(), max.get());
+    }
+
+    @Override
+    public long nextExpiryTime() {
+        return heap.isEmpty() ? Long.MAX_VALUE : heap.oldestTimestamp() + 1 + slidingWindowInMs;
+    }
+
+    /**
+     * Makes room for a transaction by removing all transactions with the oldest timestamp.
+     */
+    private void evictOldest() {
+        final long oldestTimestamp = heap.oldestTimestamp();
+        do {
+            evictedTransactions += heap.oldestCount();
+            removeOldest();
+        } while (!heap.isEmpty() && heap.oldestTimestamp() == oldestTimestamp);
+        removedUpTo(oldestTimestamp);
+    }
+
+    private void removeOldest() {
+        sum.subtract(0, heap.oldestAmount());
+        count -= heap.oldestCount();
+        heap.subtractOldestFrom(sketch, quantileMapping);
+        heap.removeOldest();
+    }
+
+    private void removedUpTo(long lastRemovedTimestamp) {
+        max.removeOlderThan(lastRemovedTimestamp + 1);
+        min.removeOlderThan(lastRemovedTimestamp + 1);
+        if (heap.isEmpty()) {
+            sum.reset(0);
+        }
+    }
+}
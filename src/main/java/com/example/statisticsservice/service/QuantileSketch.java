@@ -0,0 +1,178 @@
+package com.example.statisticsservice.service;
+
+import java.util.Arrays;
+
+/**
+ * Quantile sketch with log-spaced bins (DDSketch mapping): a value {@code x} is counted in bin
+ * {@code ceil(log_gamma(|x|))}, {@code gamma = (1 + a) / (1 - a)}, so every quantile is returned
+ * with relative error not greater than {@code a}.
+ * <p>
+ * Bin counts can be subtracted, so the sketch of a sliding window is kept up to date by adding new transactions
+ * and subtracting expired ones, without sorting live transactions.
+ * Memory doesn't depend on number of values: magnitudes below {@link #MIN_INDEXABLE_VALUE} are counted as zero,
+ * magnitudes above {@link #MAX_INDEXABLE_VALUE} are counted in the last bin.
+ */
+final class QuantileSketch {
+
+    static final double MIN_INDEXABLE_VALUE = 1e-6;
+    static final double MAX_INDEXABLE_VALUE = 1e12;
+
+    @FunctionalInterface
+    interface BinConsumer {
+        void accept(int bin, long count);
+    }
+
+    /**
+     * Maps values to bins, bins are ordered as values: negative, zero, positive.
+     */
+    static final class Mapping {
+
+        private final double relativeAccuracy;
+        private final double gamma;
+        private final double logGamma;
+        private final int minIndex;
+        private final int magnitudeBins;
+
+        Mapping(double relativeAccuracy) {
+            if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+                throw new IllegalArgumentException("Relative accuracy must be in (0, 1): relativeAccuracy="
+                        + relativeAccuracy);
+            }
+
+            this.relativeAccuracy = relativeAccuracy;
+            this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+            this.logGamma = Math.log(gamma);
+            this.minIndex = index(MIN_INDEXABLE_VALUE);
+            this.magnitudeBins = index(MAX_INDEXABLE_VALUE) - minIndex + 1;
+        }
+
+        double relativeAccuracy() {
+            return relativeAccuracy;
+        }
+
+        int binCount() {
+            return 2 * magnitudeBins + 1;
+        }
+
+        int bin(double value) {
+            final double magnitude = Math.abs(value);
+            if (!(magnitude >= MIN_INDEXABLE_VALUE)) {
+                return magnitudeBins;
+            }
+
+            // the index of infinity overflows, it's counted in the last bin as any huge magnitude
+            final int magnitudeBin = magnitude > MAX_INDEXABLE_VALUE
+                    ? magnitudeBins - 1
+                    : Math.min(index(magnitude) - minIndex, magnitudeBins - 1);
+            return value > 0 ? magnitudeBins + 1 + magnitudeBin : magnitudeBins - 1 - magnitudeBin;
+        }
+
+        /**
+         * @return the value, which has the least relative error to all values of the bin
+         */
+        double value(int bin) {
+            if (bin == magnitudeBins) {
+                return 0;
+            }
+
+            final int magnitudeBin = bin > magnitudeBins ? bin - magnitudeBins - 1 : magnitudeBins - 1 - bin;
+            final double magnitude = 2 * Math.pow(gamma, magnitudeBin + minIndex) / (gamma + 1);
+            return bin > magnitudeBins ? magnitude : -magnitude;
+        }
+
+        /**
+         * Coalesced transactions have no distribution, they are sketched by min, max and mean of the rest.
+         */
+        void forEachBin(long count, double sum, double min, double max, BinConsumer consumer) {
+            if (count == 1) {
+                consumer.accept(bin(sum), 1);
+                return;
+            }
+
+            consumer.accept(bin(min), 1);
+            consumer.accept(bin(max), 1);
+            if (count > 2) {
+                consumer.accept(bin((sum - min - max) / (count - 2)), count - 2);
+            }
+        }
+
+        private int index(double magnitude) {
+            return (int) Math.ceil(Math.log(magnitude) / logGamma);
+        }
+    }
+
+    private final Mapping mapping;
+    private final long[] counts;
+
+    QuantileSketch(Mapping mapping) {
+        this.mapping = mapping;
+        this.counts = new long[mapping.binCount()];
+    }
+
+    void add(int bin, long count) {
+        counts[bin] += count;
+    }
+
+    void subtract(int bin, long count) {
+        counts[bin] -= count;
+    }
+
+    void reset() {
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * Copies non-empty bins between bins of {@code min} and {@code max}, so the window can be merged
+     * with windows of other engines.
+     */
+    WindowSummary summarize(long count, double sum, double min, double max) {
+        if (count == 0) {
+            return WindowSummary.EMPTY;
+        }
+
+        final int firstBin = mapping.bin(min);
+        final int lastBin = mapping.bin(max);
+        int nonEmptyBins = 0;
+        for (int bin = firstBin; bin <= lastBin; bin++) {
+            if (counts[bin] != 0) {
+                nonEmptyBins++;
+            }
+        }
+
+        final int[] bins = new int[nonEmptyBins];
+        final long[] binCounts = new long[nonEmptyBins];
+        int index = 0;
+        for (int bin = firstBin; bin <= lastBin; bin++) {
+            if (counts[bin] != 0) {
+                bins[index] = bin;
+                binCounts[index] = counts[bin];
+                index++;
+            }
+        }
+        return new WindowSummary(count, sum, min, max, bins, binCounts);
+    }
+
+    /**
+     * Calculates several quantiles with one scan of bins between {@code min} and {@code max}.
+     *
+     * @param quantiles ascending quantiles in [0, 1]
+     * @param count     number of values in the sketch
+     * @param min       the least value in the sketch, results are clamped to [min, max]
+     * @param max       the greatest value in the sketch
+     * @param results   quantile values in the same order
+     */
+    void quantiles(double[] quantiles, long count, double min, double max, double[] results) {
+        final int lastBin = mapping.bin(max);
+        int bin = mapping.bin(min);
+        long seen = counts[bin];
+
+        for (int index = 0; index < quantiles.length; index++) {
+            final long rank = Math.max(1, (long) Math.ceil(quantiles[index] * count));
+            while (seen < rank && bin < lastBin) {
+                bin++;
+                seen += counts[bin];
+            }
+            results[index] = Math.min(max, Math.max(min, mapping.value(bin)));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.statisticsservice.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Single bounded queue, every transaction is a separate queue node.
+ */
+class QueueIngestionBuffer implements DropOldestBuffer {
+
+    private static class QueueElement {
+        private final double amount;
+        private final long timestamp;
+
+        private QueueElement(double amount, long timestamp) {
+            this.amount = amount;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public String toString() {
+            return "QueueElement{" +
+                    "amount=" + amount +
+                    ", timestamp=" + timestamp +
+                    '}';
+        }
+    }
+
+    private final BlockingQueue<QueueElement> tasks;
+
+    // is used only by the statistics thread
+    private final List<QueueElement> drainedElements = new ArrayList<>();
+
+    QueueIngestionBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: capacity=" + capacity);
+        }
+        this.tasks = new LinkedBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public boolean offer(double amount, long timestamp) {
+        return tasks.offer(new QueueElement(amount, timestamp));
+    }
+
+    @Override
+    public int offerAll(double[] amounts, long[] timestamps, int offset, int length) {
+        for (int index = 0; index < length; index++) {
+            if (!offer(amounts[offset + index], timestamps[offset + index])) {
+                return index;
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public int drainTo(TransactionConsumer consumer, int limit) {
+        drainedElements.clear();
+        tasks.drainTo(drainedElements, limit);
+
+        for (QueueElement element : drainedElements) {
+            consumer.accept(element.amount, element.timestamp);
+        }
+
+        final int drained = drainedElements.size();
+        drainedElements.clear();
+        return drained;
+    }
+
+    @Override
+    public boolean pollOldest() {
+        return tasks.poll() != null;
+    }
+
+    @Override
+    public long size() {
+        return tasks.size();
+    }
+}
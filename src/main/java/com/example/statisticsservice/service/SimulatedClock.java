@@ -0,0 +1,84 @@
+package com.example.statisticsservice.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Virtual time, which moves only when it's set or advanced, so tests and replays drive expiry
+ * without sleeping and faster than real time. It is advanced by one thread.
+ */
+final class SimulatedClock extends Clock {
+
+    private volatile long millis;
+
+    public SimulatedClock(long millis) {
+        this.millis = millis;
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    /**
+     * Moves the clock forward, it never goes back.
+     */
+    public void advanceTo(long millis) {
+        if (millis > this.millis) {
+            this.millis = millis;
+        }
+    }
+
+    public void advance(long deltaInMs) {
+        advanceTo(millis + deltaInMs);
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    /**
+     * @return view of this clock in the zone, it moves with this clock
+     */
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return zone.equals(ZoneOffset.UTC) ? this : new ZonedView(zone);
+    }
+
+    private final class ZonedView extends Clock {
+
+        private final ZoneId zone;
+
+        private ZonedView(ZoneId zone) {
+            this.zone = zone;
+        }
+
+        @Override
+        public long millis() {
+            return SimulatedClock.this.millis();
+        }
+
+        @Override
+        public Instant instant() {
+            return SimulatedClock.this.instant();
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return SimulatedClock.this.withZone(zone);
+        }
+    }
+}
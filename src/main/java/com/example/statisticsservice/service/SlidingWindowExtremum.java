@@ -0,0 +1,173 @@
+package com.example.statisticsservice.service;
+
+/**
+ * Exact max (or min) of a sliding window, which expires values in time order.
+ * <p>
+ * Monotonic deque over primitive arrays: times are non-decreasing and values are strictly decreasing
+ * from head to tail, so the head is the current extremum. A value is kept only while no other value
+ * with later or the same time is greater. Add and expiry are amortized O(1) for in-order times,
+ * a late value costs a binary search and a shift of the newer part of the deque.
+ * Only one value per distinct time is kept.
+ */
+final class SlidingWindowExtremum {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * 1 for max, -1 for min. Values are stored multiplied by the sign, so min is the max of negated values.
+     */
+    private final double sign;
+
+    private long[] times = new long[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+
+    private SlidingWindowExtremum(double sign) {
+        this.sign = sign;
+    }
+
+    static SlidingWindowExtremum max() {
+        return new SlidingWindowExtremum(1);
+    }
+
+    static SlidingWindowExtremum min() {
+        return new SlidingWindowExtremum(-1);
+    }
+
+    void add(long time, double value) {
+        final double signedValue = sign * value;
+
+        if (size == 0 || time >= timeAt(size - 1)) {
+            while (size > 0 && valueAt(size - 1) <= signedValue) {
+                size--;
+            }
+            if (size > 0 && timeAt(size - 1) == time) {
+                // dominated by a greater value with the same time
+                return;
+            }
+            push(time, signedValue);
+            return;
+        }
+
+        addLate(time, signedValue);
+    }
+
+    /**
+     * Removes values with time less than {@code time}.
+     */
+    void removeOlderThan(long time) {
+        while (size > 0 && times[head] < time) {
+            head = (head + 1) & (times.length - 1);
+            size--;
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return current extremum, the window must not be empty
+     */
+    double get() {
+        if (size == 0) {
+            throw new IllegalStateException("Window is empty");
+        }
+        return sign * values[head];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private void addLate(long time, double signedValue) {
+        // the first value, which expires not earlier than the new one
+        int newer = firstNotOlderThan(time);
+        if (valueAt(newer) >= signedValue) {
+            return;
+        }
+
+        // a less value with the same time is replaced, so one value per time is kept
+        final int later = timeAt(newer) == time ? newer + 1 : newer;
+
+        // older values, which are not greater than the new one, will never be extremum again
+        int dominated = newer;
+        while (dominated > 0 && valueAt(dominated - 1) <= signedValue) {
+            dominated--;
+        }
+
+        // values from dominated to later exclusive are replaced by the new one
+        if (dominated == later) {
+            ensureCapacity(size + 1);
+            for (int index = size; index > later; index--) {
+                set(index, timeAt(index - 1), valueAt(index - 1));
+            }
+            size++;
+        } else {
+            final int removed = later - dominated - 1;
+            if (removed > 0) {
+                for (int index = later; index < size; index++) {
+                    set(index - removed, timeAt(index), valueAt(index));
+                }
+                size -= removed;
+            }
+        }
+        set(dominated, time, signedValue);
+    }
+
+    private int firstNotOlderThan(long time) {
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (timeAt(middle) < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void push(long time, double signedValue) {
+        ensureCapacity(size + 1);
+        size++;
+        set(size - 1, time, signedValue);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= times.length) {
+            return;
+        }
+
+        final long[] newTimes = new long[times.length * 2];
+        final double[] newValues = new double[values.length * 2];
+        for (int index = 0; index < size; index++) {
+            newTimes[index] = timeAt(index);
+            newValues[index] = valueAt(index);
+        }
+        times = newTimes;
+        values = newValues;
+        head = 0;
+    }
+
+    private long timeAt(int index) {
+        return times[(head + index) & (times.length - 1)];
+    }
+
+    private double valueAt(int index) {
+        return values[(head + index) & (values.length - 1)];
+    }
+
+    private void set(int index, long time, double signedValue) {
+        final int physicalIndex = (head + index) & (times.length - 1);
+        times[physicalIndex] = time;
+        values[physicalIndex] = signedValue;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.statisticsservice.service;
+
+/**
+ * SpaceSaving counters of the most frequent amounts of one bucket. When all counters are taken, a new amount takes
+ * the counter of the least frequent one and inherits its count as error, so a count overestimates the true one
+ * by at most its error, and an amount more frequent than {@code total / capacity} always has a counter.
+ * <p>
+ * Counters are a min-heap of primitive arrays, amounts are found by a {@link LongIntHashMap} of their bits,
+ * so an add is O(log capacity) without allocation.
+ */
+final class SpaceSaving {
+
+    interface CounterConsumer {
+        void accept(double amount, long count, long error);
+    }
+
+    private final long[] amounts;
+    private final long[] counts;
+    private final long[] errors;
+    private final LongIntHashMap indexes;
+    private int size;
+
+    SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Heavy hitters capacity must be positive: capacity=" + capacity);
+        }
+        this.amounts = new long[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.indexes = new LongIntHashMap(capacity);
+    }
+
+    void add(double amount, long count) {
+        final long bits = Double.doubleToLongBits(amount + 0.0);
+        int index = indexes.get(bits, -1);
+        if (index >= 0) {
+            counts[index] += count;
+        } else if (size < amounts.length) {
+            index = size++;
+            amounts[index] = bits;
+            counts[index] = count;
+            errors[index] = 0;
+            indexes.put(bits, index);
+            siftUp(index);
+            return;
+        } else {
+            index = 0;
+            indexes.remove(amounts[index]);
+            amounts[index] = bits;
+            errors[index] = counts[index];
+            counts[index] += count;
+            indexes.put(bits, index);
+        }
+        siftDown(index);
+    }
+
+    /**
+     * @return upper bound of the count of an amount without a counter
+     */
+    long minCount() {
+        return size < amounts.length ? 0 : counts[0];
+    }
+
+    void forEach(CounterConsumer consumer) {
+        for (int index = 0; index < size; index++) {
+            consumer.accept(Double.longBitsToDouble(amounts[index]), counts[index], errors[index]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void reset() {
+        for (int index = 0; index < size; index++) {
+            indexes.remove(amounts[index]);
+        }
+        size = 0;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (counts[parent] <= counts[index]) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            final int left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            final int right = left + 1;
+            final int child = right < size && counts[right] < counts[left] ? right : left;
+            if (counts[index] <= counts[child]) {
+                return;
+            }
+            swap(index, child);
+            index = child;
+        }
+    }
+
+    private void swap(int first, int second) {
+        final long amount = amounts[first];
+        final long count = counts[first];
+        final long error = errors[first];
+        amounts[first] = amounts[second];
+        counts[first] = counts[second];
+        errors[first] = errors[second];
+        amounts[second] = amount;
+        counts[second] = count;
+        errors[second] = error;
+        indexes.put(amounts[first], first);
+        indexes.put(amounts[second], second);
+    }
+}
@@ -1,19 +1,35 @@
 package com.example.statisticsservice.service;
 
+import java.util.Objects;
+
 public class Statistics {
 
+    static final Statistics EMPTY = new Statistics(0, 0, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * Quantiles, which are calculated by engines: p50, p95, p99.
+     */
+    static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
     private final double sum;
     private final double avg;
     private final double max;
     private final double min;
     private final long count;
+    private final double p50;
+    private final double p95;
+    private final double p99;
 
-    public Statistics(double sum, double avg, double max, double min, long count) {
+    public Statistics(double sum, double avg, double max, double min, long count,
+                      double p50, double p95, double p99) {
         this.sum = sum;
         this.avg = avg;
         this.max = max;
         this.min = min;
         this.count = count;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
     }
 
     public double getSum() {
@@ -36,6 +52,42 @@ public class Statistics {
         return count;
     }
 
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP95() {
+        return p95;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final Statistics that = (Statistics) o;
+        return Double.compare(that.sum, sum) == 0
+                && Double.compare(that.avg, avg) == 0
+                && Double.compare(that.max, max) == 0
+                && Double.compare(that.min, min) == 0
+                && count == that.count
+                && Double.compare(that.p50, p50) == 0
+                && Double.compare(that.p95, p95) == 0
+                && Double.compare(that.p99, p99) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sum, avg, max, min, count, p50, p95, p99);
+    }
+
     @Override
     public String toString() {
         return "Statistics{" +
@@ -44,6 +96,9 @@ public class Statistics {
                 ", max=" + max +
                 ", min=" + min +
                 ", count=" + count +
+                ", p50=" + p50 +
+                ", p95=" + p95 +
+                ", p99=" + p99 +
                 '}';
     }
 }
@@ -0,0 +1,57 @@
+package com.example.statisticsservice.service;
+
+/**
+ * Aggregates transactions of one or several sliding windows, which are fed by the same transactions.
+ * Windows are addressed by index, window 0 is the primary one.
+ * Implementations are not thread-safe, they are owned by the statistics thread.
+ */
+interface StatisticsEngine {
+
+    void add(double amount, long timestamp);
+
+    /**
+     * Adds {@code count} transactions with the same timestamp, which were coalesced into one aggregate.
+     */
+    void addAggregate(long timestamp, long count, double sum, double min, double max);
+
+    /**
+     * Removes transactions, which are out of their window at {@code nowInMs},
+     * i.e. with timestamp less than {@code nowInMs - window}.
+     *
+     * @param limit max number of removed elements (transactions or buckets, depending on engine) per window per call
+     * @return number of removed elements of all windows, 0 if nothing was removed
+     */
+    long removeExpired(long nowInMs, int limit);
+
+    Statistics getStatistics(int window);
+
+    /**
+     * @return summary of the window, which can be merged with summaries of other engines
+     */
+    WindowSummary getSummary(int window);
+
+    /**
+     * @return statistics of the primary window
+     */
+    default Statistics getStatistics() {
+        return getStatistics(0);
+    }
+
+    /**
+     * @return number of stored elements (transactions or live buckets, depending on engine)
+     */
+    long size();
+
+    /**
+     * @return number of transactions, which were removed before expiry, because the memory budget was full
+     */
+    default long evictedTransactions() {
+        return 0;
+    }
+
+    /**
+     * @return the least time, at which {@link #removeExpired} removes anything,
+     * or {@link Long#MAX_VALUE} if there is nothing to remove
+     */
+    long nextExpiryTime();
+}
@@ -0,0 +1,70 @@
+package com.example.statisticsservice.service;
+
+import java.util.Arrays;
+
+/**
+ * Count, sum, min and max of consecutive points of a time range, see {@link StatisticsService#getSeries}.
+ * Empty points have zero min and max, like {@link Statistics#EMPTY}.
+ */
+public final class StatisticsSeries {
+
+    private final long fromInMs;
+    private final long stepInMs;
+    private final long[] counts;
+    private final double[] sums;
+    private final double[] mins;
+    private final double[] maxes;
+
+    StatisticsSeries(long fromInMs, long stepInMs, int points) {
+        this.fromInMs = fromInMs;
+        this.stepInMs = stepInMs;
+        this.counts = new long[points];
+        this.sums = new double[points];
+        this.mins = new double[points];
+        this.maxes = new double[points];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxes, Double.NEGATIVE_INFINITY);
+    }
+
+    void add(int point, long count, double sum, double min, double max) {
+        counts[point] += count;
+        sums[point] += sum;
+        mins[point] = Math.min(mins[point], min);
+        maxes[point] = Math.max(maxes[point], max);
+    }
+
+    long getStepInMs() {
+        return stepInMs;
+    }
+
+    public int size() {
+        return counts.length;
+    }
+
+    /**
+     * @return start of the point, the point covers {@code [timestamp, timestamp + step)}
+     */
+    public long getTimestamp(int point) {
+        return fromInMs + point * stepInMs;
+    }
+
+    public long getCount(int point) {
+        return counts[point];
+    }
+
+    public double getSum(int point) {
+        return sums[point];
+    }
+
+    public double getAvg(int point) {
+        return counts[point] == 0 ? 0 : sums[point] / counts[point];
+    }
+
+    public double getMin(int point) {
+        return counts[point] == 0 ? 0 : mins[point];
+    }
+
+    public double getMax(int point) {
+        return counts[point] == 0 ? 0 : maxes[point];
+    }
+}
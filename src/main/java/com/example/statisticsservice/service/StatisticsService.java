@@ -1,190 +1,670 @@
 package com.example.statisticsservice.service;
 
+import com.example.statisticsservice.config.StatisticsProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.nio.file.Paths;
+import java.time.Clock;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
 
 @Service
 public class StatisticsService {
 
     private static final Logger log = LoggerFactory.getLogger(StatisticsService.class);
-    private static final int POLL_PAUSE_IN_MS = 100;
-    static final int BATCH_SIZE = 100;
+    static final int BATCH_SIZE = AggregationShard.BATCH_SIZE;
+    private static final long SHUTDOWN_TIMEOUT_IN_MS = 5_000;
+    /**
+     * Max magnitude of an amount, so sums of windows stay finite and subtracting an amount cancels adding it.
+     */
+    public static final double MAX_AMOUNT = 1e15;
+
+    private final Clock clock;
+
+    /**
+     * Aggregation shards, request threads are spread across them by thread id.
+     */
+    private final AggregationShard[] shards;
+    private final int shardMask;
+
+    private volatile StatisticsSnapshot snapshot;
+
+    /**
+     * Is incremented by shards, when they publish summaries, the snapshot is merged from them on read.
+     */
+    private final AtomicLong publishedSummaries = new AtomicLong();
+    private volatile long mergedSummaries;
+    private final List<Runnable> snapshotListeners = new CopyOnWriteArrayList<>();
+    /**
+     * Is used under the lock of {@link #mergeSummaries()}, null if there is only one shard.
+     */
+    private final MergedStatistics mergedStatistics;
+
+    /**
+     * Sliding windows, the primary window is the first one.
+     */
+    private final List<Duration> windows;
+    private final long[] windowsInMs;
+    private final long longestWindowInMs;
+    private final long blockTimeoutInNanos;
+
+    private final KeyedStatistics keyedStatistics;
+    private final Watermark watermark;
+
+    private final LongAdder shedTransactions = new LongAdder();
+    private final LongAdder coalescedTransactions = new LongAdder();
+
+    public StatisticsService(Duration slidingWindow) {
+        this(propertiesOf(slidingWindow));
+    }
+
+    @Autowired
+    public StatisticsService(StatisticsProperties properties) {
+        this(properties, Clock.systemUTC());
+    }
 
-    private static final Statistics EMPTY_STATISTICS = new Statistics(0, 0, 0, 0, 0);
+    /**
+     * @param clock time, which windows, the watermark and history are measured by, the statistics threads park
+     *              in real time though, so a {@link SimulatedClock} is driven without them, see {@link #aggregate()},
+     *              {@link #addNewElementsIfNeeded()} and {@link #removeOldElementsIfNeeded()}
+     */
+    public StatisticsService(StatisticsProperties properties, Clock clock) {
+        this.clock = clock;
+        this.windows = windowsOf(properties.getSliding());
+        this.windowsInMs = windows.stream().mapToLong(Duration::toMillis).toArray();
+        this.longestWindowInMs = Arrays.stream(windowsInMs).max().getAsLong();
+        this.snapshot = StatisticsSnapshot.empty(windowsInMs.length);
+        this.blockTimeoutInNanos = properties.getIngestion().getBlockTimeout().toNanos();
+        this.keyedStatistics = new KeyedStatistics(windowsInMs[0], properties.getKeys(),
+                properties.getWatermark().getFutureSkew().toMillis(),
+                properties.getSketches().isEnabled() ? properties.getSketches().getPrecision() : 0);
+        this.watermark = createWatermark(properties.getWatermark(), longestWindowInMs);
+        this.shards = createShards(properties);
+        this.shardMask = shards.length - 1;
+        this.mergedStatistics = shards.length > 1
+                ? new MergedStatistics(new QuantileSketch.Mapping(properties.getQuantiles().getRelativeAccuracy()))
+                : null;
+    }
 
-    public StatisticsService(@Value("${statistics.sliding.window}") Duration slidingWindow) {
-        this.slidingWindowInMs = slidingWindow.toMillis();
+    /**
+     * Rebuilds the window from the transaction log, if persistence is enabled, and starts statistics threads.
+     */
+    @PostConstruct
+    public void init() {
+        for (AggregationShard shard : shards) {
+            shard.start();
+        }
     }
 
-    private static class QueueElement implements Comparable<QueueElement> {
-        private final double amount;
-        private final long timestamp;
+    @PreDestroy
+    public void destroy() {
+        log.info("Interrupting statistics threads: shards={}", shards.length);
+        for (AggregationShard shard : shards) {
+            shard.interrupt();
+        }
+        // the log is written by the statistics thread, so it's closed only after the thread has stopped
+        for (AggregationShard shard : shards) {
+            shard.awaitTermination(SHUTDOWN_TIMEOUT_IN_MS);
+        }
+    }
 
-        private QueueElement(double amount, long timestamp) {
-            this.amount = amount;
-            this.timestamp = timestamp;
+    /**
+     * Saves the transaction, its timestamp must be accepted by {@link #checkTimestamp(long)} already.
+     *
+     * @return false if the transaction was shed, because the ingestion buffer is full
+     */
+    public boolean saveTransaction(double amount, long timestamp) {
+        final AggregationShard shard = currentShard();
+        if (!shard.offer(amount, timestamp)
+                && !shard.handleOverflow(amount, timestamp, System.nanoTime() + blockTimeoutInNanos)) {
+            shedTransactions.increment();
+            return false;
         }
 
-        @Override
-        public int compareTo(QueueElement other) {
-            return Long.compare(timestamp, other.timestamp);
+        shard.wakeUpIfParked();
+        return true;
+    }
+
+    /**
+     * Saves the transaction and, if it's saved and {@code key} is not null, counts it in statistics of the key.
+     *
+     * @return false if the transaction was shed, because the ingestion buffer is full
+     */
+    public boolean saveTransaction(double amount, long timestamp, String key) {
+        if (!saveTransaction(amount, timestamp)) {
+            return false;
         }
 
-        @Override
-        public String toString() {
-            return "QueueElement{" +
-                    "amount=" + amount +
-                    ", timestamp=" + timestamp +
-                    '}';
+        if (key != null) {
+            keyedStatistics.add(key, amount, timestamp, clock.millis());
         }
+        return true;
     }
 
-    private final BlockingQueue<QueueElement> tasks = new LinkedBlockingQueue<>();
-    private final Thread tasksThread = new Thread(this::processTasks, "statistics-thread");
+    /**
+     * Saves transactions from {@code 0} to {@code length} as one batch, timestamps must be accepted by
+     * {@link #checkTimestamp(long)} already.
+     * Overflow policy is applied to every transaction, which doesn't fit into the ingestion buffer,
+     * block policy waits not longer than block timeout for the whole batch.
+     *
+     * @return number of saved transactions, the rest were shed
+     */
+    public int saveTransactions(double[] amounts, long[] timestamps, int length) {
+        return saveTransactions(null, amounts, timestamps, length);
+    }
 
-    private final PriorityQueue<QueueElement> priorityQueue = new PriorityQueue<>();
+    /**
+     * The same as {@link #saveTransactions(double[], long[], int)}, saved transactions with not null key
+     * are counted in statistics of the key.
+     *
+     * @param keys keys of transactions, null if no transaction has a key
+     */
+    public int saveTransactions(String[] keys, double[] amounts, long[] timestamps, int length) {
+        final AggregationShard shard = currentShard();
+        int saved = shard.offerAll(amounts, timestamps, 0, length);
+        if (keys != null) {
+            addKeyedTransactions(keys, amounts, timestamps, 0, saved);
+        }
+        if (saved < length) {
+            final long deadlineInNanos = System.nanoTime() + blockTimeoutInNanos;
+            for (int index = saved; index < length; index++) {
+                if (shard.handleOverflow(amounts[index], timestamps[index], deadlineInNanos)) {
+                    if (keys != null) {
+                        addKeyedTransactions(keys, amounts, timestamps, index, index + 1);
+                    }
+                    saved++;
+                } else {
+                    shedTransactions.increment();
+                }
+            }
+        }
 
-    private volatile Statistics statistics = EMPTY_STATISTICS;
+        if (saved > 0) {
+            shard.wakeUpIfParked();
+        }
+        return saved;
+    }
 
-    private final long slidingWindowInMs;
+    /**
+     * @return statistics of the key in the primary window, or null if there are no statistics for the key
+     */
+    public KeyStatistics getKeyStatistics(String key) {
+        return keyedStatistics.get(key, clock.millis());
+    }
 
+    /**
+     * @return at most {@code limit} keys with the greatest sum or count in the primary window, in descending order
+     */
+    public List<KeyStatistics> getTopKeys(int limit, KeyedStatistics.Order order) {
+        return keyedStatistics.top(limit, order, clock.millis());
+    }
 
-    @PostConstruct
-    public void init() {
-        tasksThread.start();
+    /**
+     * @return number of keys, which hold a slot in the key table
+     */
+    public long getKeyCount() {
+        return keyedStatistics.size();
     }
 
-    @PreDestroy
-    public void destroy() {
-        log.info("Interrupting tasksThread");
-        tasksThread.interrupt();
+    /**
+     * @return number of transactions, which were not counted for their key, because the key table was full
+     */
+    public long getKeyRejectedTransactions() {
+        return keyedStatistics.getRejectedTransactions();
+    }
+
+    /**
+     * @return number of transactions, which were older than the window or later than allowed lateness
+     */
+    public long getLateTransactions() {
+        return watermark.getLateTransactions();
+    }
+
+    /**
+     * @return number of transactions, which were ahead of the clock by more than future skew
+     */
+    public long getFutureTransactions() {
+        return watermark.getFutureTransactions();
+    }
+
+    /**
+     * @return how far the greatest accepted timestamp is behind the clock
+     */
+    public long getWatermarkLagInMs() {
+        return watermark.lagInMs(clock.millis());
+    }
+
+    /**
+     * @return number of transactions, which were shed because the ingestion buffer was full
+     */
+    public long getShedTransactions() {
+        return shedTransactions.sum();
+    }
+
+    /**
+     * @return number of transactions, which were merged into per millisecond aggregates by coalesce policy
+     */
+    public long getCoalescedTransactions() {
+        return coalescedTransactions.sum();
     }
 
-    public void saveTransaction(double amount, long timestamp) {
-        final QueueElement queueElement = new QueueElement(amount, timestamp);
-        if (!tasks.offer(queueElement)) {
-            log.error("task queue is full: queueElement={}", queueElement);
-            // we cannot recalculate stats from this moment
-            tasksThread.interrupt();
+    /**
+     * @return approximate number of transactions, which are not yet processed by the statistics thread
+     */
+    public long getIngestionQueueDepth() {
+        long depth = 0;
+        for (AggregationShard shard : shards) {
+            depth += shard.getIngestionQueueDepth();
         }
+        return depth;
     }
 
-    public Statistics getStatisticsCache() {
-        return statistics;
+    /**
+     * @return number of elements stored by the engine at the last snapshot
+     */
+    public long getEngineSize() {
+        long size = 0;
+        for (AggregationShard shard : shards) {
+            size += shard.getEngineSize();
+        }
+        return size;
     }
 
-    public boolean isValidTimestamp(long timestampInMs) {
-        return timestampInMs >= System.currentTimeMillis() - slidingWindowInMs;
+    /**
+     * @return number of transactions, which were evicted before expiry by engines with a memory budget
+     */
+    public long getEvictedTransactions() {
+        long evictedTransactions = 0;
+        for (AggregationShard shard : shards) {
+            evictedTransactions += shard.getEvictedTransactions();
+        }
+        return evictedTransactions;
     }
 
-    private void processTasks() {
-        while (!Thread.currentThread().isInterrupted()) {
-            try {
-                final boolean hasProgress =
-                        addNewElementsIfNeeded() ||
-                        removeOldElementsIfNeeded();
+    /**
+     * @return how late the next expiry is, it grows when expiry falls behind
+     */
+    public long getEvictionLagInMs() {
+        long expiryTime = Long.MAX_VALUE;
+        for (AggregationShard shard : shards) {
+            expiryTime = Math.min(expiryTime, shard.getNextExpiryTime());
+        }
+        if (expiryTime == Long.MAX_VALUE) {
+            return 0;
+        }
+        return Math.max(0, clock.millis() - expiryTime);
+    }
 
-                if (!hasProgress) {
-                    Thread.sleep(POLL_PAUSE_IN_MS);
-                }
-            } catch (InterruptedException e) {
-                log.info("task thread were interrupted", e);
-                return;
-            } catch (Exception e) {
-                log.error("unexpected exception occurred", e);
-                return;
-            }
+    /**
+     * @return how long ago the statistics snapshot was known to be up to date, 0 if the statistics thread is idle
+     */
+    public long getStatisticsStalenessInMs() {
+        long staleness = 0;
+        for (AggregationShard shard : shards) {
+            staleness = Math.max(staleness, shard.getStalenessInMs());
         }
+        return staleness;
     }
 
-    boolean removeOldElementsIfNeeded() {
-        boolean hasProgress = false;
+    void setAggregationRecorder(AggregationRecorder aggregationRecorder) {
+        for (AggregationShard shard : shards) {
+            shard.setAggregationRecorder(aggregationRecorder);
+        }
+    }
 
-        for (int index = 0; index < BATCH_SIZE; index++) {
-            final QueueElement peekElement = priorityQueue.peek();
-            if (peekElement == null || isValidTimestamp(peekElement.timestamp)) {
-                break;
-            }
+    /**
+     * @return statistics of the primary window
+     */
+    public Statistics getStatisticsCache() {
+        return getSnapshot().getStatistics(0);
+    }
 
-            final QueueElement element = priorityQueue.poll();
-            if (peekElement != element) {
-                log.error("Got unexpected element from priorityQueue: peekElement={}, element={}",
-                        peekElement, element);
-            }
+    /**
+     * @throws IllegalArgumentException if the window is not configured
+     */
+    public Statistics getStatisticsCache(Duration window) {
+        return getSnapshot().getStatistics(windowIndex(window));
+    }
 
-            hasProgress = true;
+    /**
+     * @return statistics of all windows, which were published at once
+     */
+    public StatisticsSnapshot getSnapshot() {
+        if (mergedStatistics != null && publishedSummaries.get() != mergedSummaries) {
+            mergeSummaries();
         }
+        return snapshot;
+    }
 
-        if (!hasProgress) {
-            return false;
+    /**
+     * @param listener is called by a statistics thread, when statistics may have changed, it must not block,
+     *                 the new statistics are read by {@link #getSnapshot()}
+     */
+    public void addSnapshotListener(Runnable listener) {
+        snapshotListeners.add(listener);
+    }
+
+    /**
+     * @return index of the window in {@link #getWindows()} and in snapshots
+     * @throws IllegalArgumentException if the window is not configured
+     */
+    public int windowIndex(Duration window) {
+        final int index = windows.indexOf(window);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown sliding window: window=" + window + ", windows=" + windows);
         }
+        return index;
+    }
 
-        recalculateStatisticsForRemovingElements();
-        return true;
+    /**
+     * @return encoded partial aggregates of this node for cluster coordinators, see {@link PartialAggregates},
+     * or null if the instance is not a cluster node
+     */
+    public byte[] getPartialAggregates() {
+        return shards[0].getPartialAggregates();
     }
 
-    private void recalculateStatisticsForRemovingElements() {
-        if (priorityQueue.isEmpty()) {
-            this.statistics = EMPTY_STATISTICS;
+    /**
+     * Statistics of consecutive steps of a past range, which are read from history, see {@link HistoricalRollups}.
+     *
+     * @return series of points {@code [t, t + step)} of range {@code [from, to)}, null if history is disabled
+     * @throws IllegalArgumentException if the range is not retained at a resolution, which divides the step,
+     *                                  or has too many points
+     */
+    public StatisticsSeries getSeries(long fromInMs, long toInMs, Duration step) {
+        if (shards[0].getRollups() == null) {
+            return null;
+        }
+        final StatisticsSeries series = HistoricalRollups.newSeries(fromInMs, toInMs, step.toMillis());
+        final long nowInMs = clock.millis();
+        for (AggregationShard shard : shards) {
+            shard.getRollups().addTo(series, nowInMs);
+        }
+        return series;
+    }
+
+    /**
+     * Merges sketches of the window from all shards, so it's O(2^precision * buckets), see {@link AmountSketches}.
+     *
+     * @return distinct counts and at most {@code limit} heavy hitters of the window, null if sketches are disabled
+     * @throws IllegalArgumentException if the window is not configured
+     */
+    public WindowSketches getSketches(Duration window, int limit) {
+        final long windowInMs = windowsInMs[windowIndex(window)];
+        if (shards[0].getSketches() == null) {
+            return null;
+        }
+        final long nowInMs = clock.millis();
+        final MergedSketches merged = new MergedSketches(shards[0].getSketches().getPrecision());
+        for (AggregationShard shard : shards) {
+            shard.getSketches().addTo(merged, windowInMs, nowInMs);
+        }
+        return merged.toWindowSketches(limit, keyedStatistics.distinctKeys(windowInMs, nowInMs));
+    }
+
+    /**
+     * @return clock, which windows, the watermark and history are measured by
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * @return configured sliding windows, the primary window is the first one
+     */
+    public List<Duration> getWindows() {
+        return windows;
+    }
+
+    /**
+     * @return false for NaN, infinite amounts and amounts beyond {@link #MAX_AMOUNT}, they must not be saved
+     */
+    public static boolean isValidAmount(double amount) {
+        return Math.abs(amount) <= MAX_AMOUNT;
+    }
+
+    /**
+     * Checks the transaction's timestamp against the clock and the watermark, late and future transactions
+     * are counted in metrics.
+     */
+    public Watermark.Status checkTimestamp(long timestampInMs) {
+        return watermark.check(timestampInMs, clock.millis());
+    }
+
+    private void addKeyedTransactions(String[] keys, double[] amounts, long[] timestamps, int from, int to) {
+        final long nowInMs = clock.millis();
+        for (int index = from; index < to; index++) {
+            if (keys[index] != null) {
+                keyedStatistics.add(keys[index], amounts[index], timestamps[index], nowInMs);
+            }
+        }
+    }
+
+    private AggregationShard currentShard() {
+        if (shardMask == 0) {
+            return shards[0];
+        }
+        long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return shards[(int) hash & shardMask];
+    }
+
+    /**
+     * Merges summaries of all shards into the next snapshot, a reader, which finds newer summaries, merges them
+     * for everyone.
+     */
+    private synchronized void mergeSummaries() {
+        final long published = publishedSummaries.get();
+        if (published == mergedSummaries) {
             return;
         }
 
-        recalculateStatistics(priorityQueue, EMPTY_STATISTICS);
+        final WindowSummary[][] shardSummaries = new WindowSummary[shards.length][];
+        for (int shard = 0; shard < shards.length; shard++) {
+            shardSummaries[shard] = shards[shard].getSummaries();
+        }
+        final Statistics[] statistics = new Statistics[windowsInMs.length];
+        for (int window = 0; window < statistics.length; window++) {
+            mergedStatistics.reset();
+            for (WindowSummary[] summaries : shardSummaries) {
+                summaries[window].mergeInto(mergedStatistics);
+            }
+            statistics[window] = mergedStatistics.toStatistics();
+        }
+        snapshot = snapshot.next(statistics);
+        mergedSummaries = published;
+    }
+
+    private void notifySnapshotListeners() {
+        for (Runnable listener : snapshotListeners) {
+            listener.run();
+        }
     }
 
+    /**
+     * Makes one pass of every shard, as their statistics threads do.
+     */
+    boolean aggregate() {
+        boolean hasProgress = false;
+        for (AggregationShard shard : shards) {
+            hasProgress |= shard.aggregate();
+        }
+        return hasProgress;
+    }
 
     boolean addNewElementsIfNeeded() {
-        final List<QueueElement> addedElements = new ArrayList<>(BATCH_SIZE);
-        tasks.drainTo(addedElements, BATCH_SIZE);
+        boolean hasProgress = false;
+        for (AggregationShard shard : shards) {
+            hasProgress |= shard.addNewElementsIfNeeded();
+        }
+        return hasProgress;
+    }
 
-        if (addedElements.isEmpty()) {
-            return false;
+    boolean removeOldElementsIfNeeded() {
+        boolean hasProgress = false;
+        for (AggregationShard shard : shards) {
+            hasProgress |= shard.removeOldElementsIfNeeded();
         }
+        return hasProgress;
+    }
 
-        recalculateStatisticsForAddingElements(addedElements);
-        return true;
+    private AggregationShard[] createShards(StatisticsProperties properties) {
+        final int shardCount = StripedIngestionBuffer.ceilingPowerOfTwo(properties.getShards() > 0
+                ? properties.getShards()
+                : Runtime.getRuntime().availableProcessors());
+        if (shardCount > 1 && properties.getPersistence().isEnabled()) {
+            throw new IllegalArgumentException("Persistence is not supported with several shards: shards="
+                    + shardCount);
+        }
+        if (shardCount > 1 && properties.getCluster().isNode()) {
+            throw new IllegalArgumentException("Cluster node is not supported with several shards: shards="
+                    + shardCount);
+        }
+
+        final AggregationShard.Publisher publisher = new AggregationShard.Publisher() {
+            @Override
+            public void publish(Statistics[] statistics) {
+                final StatisticsSnapshot previous = snapshot;
+                snapshot = previous.next(statistics);
+                if (snapshot != previous) {
+                    notifySnapshotListeners();
+                }
+            }
+
+            @Override
+            public void summariesPublished() {
+                publishedSummaries.incrementAndGet();
+                notifySnapshotListeners();
+            }
+        };
+        final AggregationShard[] shards = new AggregationShard[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            shards[shard] = new AggregationShard(
+                    shardCount == 1 ? "statistics-thread" : "statistics-thread-" + shard,
+                    properties,
+                    clock,
+                    createEngine(properties, windowsInMs, shardCount),
+                    windowsInMs,
+                    shardCount > 1,
+                    publisher,
+                    createTransactionLog(properties.getPersistence(), longestWindowInMs, clock),
+                    createPartialAggregates(properties, longestWindowInMs),
+                    createRollups(properties),
+                    createSketches(properties, longestWindowInMs),
+                    shedTransactions,
+                    coalescedTransactions);
+        }
+        return shards;
     }
 
-    private void recalculateStatisticsForAddingElements(List<QueueElement> addedElements) {
-        priorityQueue.addAll(addedElements);
+    /**
+     * @param windowsInMs sliding windows, the primary window is the first one
+     */
+    static StatisticsEngine createEngine(StatisticsProperties properties, long[] windowsInMs) {
+        return createEngine(properties, windowsInMs, 1);
+    }
+
+    /**
+     * @param shardCount number of engines, which share the memory budget
+     */
+    static StatisticsEngine createEngine(StatisticsProperties properties, long[] windowsInMs, int shardCount) {
+        final IntFunction<SumAccumulator> sumAccumulatorFactory =
+                size -> SumAccumulator.create(properties.getSum(), size);
+        final QuantileSketch.Mapping quantileMapping =
+                new QuantileSketch.Mapping(properties.getQuantiles().getRelativeAccuracy());
+
+        switch (properties.getEngine()) {
+            case PRIORITY_QUEUE:
+            case OFF_HEAP:
+                final long maxMemoryInBytes = properties.getOffHeap().getMaxMemory().toBytes()
+                        / shardCount / windowsInMs.length;
+                final StatisticsEngine[] engines = new StatisticsEngine[windowsInMs.length];
+                for (int window = 0; window < engines.length; window++) {
+                    engines[window] = new PriorityQueueStatisticsEngine(windowsInMs[window],
+                            sumAccumulatorFactory, quantileMapping,
+                            properties.getEngine() == StatisticsProperties.Engine.OFF_HEAP
+                                    ? new OffHeapTransactionHeap(maxMemoryInBytes)
+                                    : new ObjectTransactionHeap());
+                }
+                return engines.length == 1 ? engines[0] : new CompositeStatisticsEngine(engines);
+            case BUCKETS:
+                return new BucketStatisticsEngine(windowsInMs, properties.getBucket().getResolution().toMillis(),
+                        properties.getWatermark().getFutureSkew().toMillis(), sumAccumulatorFactory, quantileMapping);
+            default:
+                throw new IllegalArgumentException("Unknown statistics engine: " + properties.getEngine());
+        }
+    }
+
+    private static Watermark createWatermark(StatisticsProperties.Watermark properties, long longestWindowInMs) {
+        final long allowedLatenessInMs = properties.getAllowedLateness() != null
+                ? properties.getAllowedLateness().toMillis()
+                : longestWindowInMs;
+        return new Watermark(longestWindowInMs, allowedLatenessInMs, properties.getFutureSkew().toMillis());
+    }
+
+    private static TransactionLog createTransactionLog(StatisticsProperties.Persistence persistence,
+                                                       long longestWindowInMs, Clock clock) {
+        if (!persistence.isEnabled()) {
+            return null;
+        }
+        return new TransactionLog(Paths.get(persistence.getDirectory()), persistence.getSegmentSize().toBytes(),
+                persistence.getSyncInterval().toNanos(), longestWindowInMs, clock);
+    }
 
-        final Statistics currentStatistics = this.statistics;
-        recalculateStatistics(addedElements, currentStatistics);
+    private static PartialAggregates createPartialAggregates(StatisticsProperties properties, long longestWindowInMs) {
+        if (!properties.getCluster().isNode()) {
+            return null;
+        }
+        return new PartialAggregates(properties.getCluster().getResolution().toMillis(), longestWindowInMs,
+                properties.getWatermark().getFutureSkew().toMillis(),
+                new QuantileSketch.Mapping(properties.getQuantiles().getRelativeAccuracy()));
     }
 
-    private void recalculateStatistics(final Collection<QueueElement> newElements,
-                                       final Statistics currentStatistics) {
-        double newSum = currentStatistics.getSum();
-        long newCount = currentStatistics.getCount();
-        double newMax = currentStatistics.getMax();
-        double newMin = currentStatistics.getMin();
+    private static HistoricalRollups createRollups(StatisticsProperties properties) {
+        final StatisticsProperties.Rollup rollup = properties.getRollup();
+        if (!rollup.isEnabled()) {
+            return null;
+        }
+        return new HistoricalRollups(
+                rollup.getTiers().stream().mapToLong(tier -> tier.getResolution().toMillis()).toArray(),
+                rollup.getTiers().stream().mapToLong(tier -> tier.getRetention().toMillis()).toArray(),
+                properties.getWatermark().getFutureSkew().toMillis());
+    }
 
-        for (QueueElement addedElement : newElements) {
-            newSum = newSum + addedElement.amount;
-            newCount = newCount + 1;
+    private static AmountSketches createSketches(StatisticsProperties properties, long longestWindowInMs) {
+        final StatisticsProperties.Sketches sketches = properties.getSketches();
+        if (!sketches.isEnabled()) {
+            return null;
+        }
+        return new AmountSketches(longestWindowInMs, sketches.getResolution().toMillis(), sketches.getPrecision(),
+                sketches.getHeavyHitters(), properties.getWatermark().getFutureSkew().toMillis());
+    }
 
-            if (newCount == 1) {
-                newMax = addedElement.amount;
-                newMin = addedElement.amount;
-            } else {
-                newMax = Math.max(newMax,  addedElement.amount);
-                newMin = Math.min(newMin,  addedElement.amount);
+    private static List<Duration> windowsOf(StatisticsProperties.Sliding sliding) {
+        final List<Duration> windows = new ArrayList<>();
+        windows.add(sliding.getWindow());
+        for (Duration window : sliding.getWindows()) {
+            if (!windows.contains(window)) {
+                windows.add(window);
             }
         }
+        return List.copyOf(windows);
+    }
 
-        final double newAvg = newSum / newCount;
-        this.statistics = new Statistics(newSum, newAvg, newMax, newMin, newCount);
+    static StatisticsProperties propertiesOf(Duration slidingWindow) {
+        final StatisticsProperties properties = new StatisticsProperties();
+        properties.getSliding().setWindow(slidingWindow);
+        return properties;
     }
 }
@@ -0,0 +1,106 @@
+package com.example.statisticsservice.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports ingestion and aggregation state of {@link StatisticsService} to Micrometer.
+ * Gauges and counters are read only on scrape, the statistics thread records only a timer and a summary per pass.
+ */
+@Component
+public class StatisticsServiceMetrics implements MeterBinder {
+
+    private final StatisticsService statisticsService;
+
+    public StatisticsServiceMetrics(StatisticsService statisticsService) {
+        this.statisticsService = statisticsService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("statistics.ingestion.depth", statisticsService, StatisticsService::getIngestionQueueDepth)
+                .description("Transactions, which are not yet processed by the statistics thread")
+                .baseUnit("transactions")
+                .register(registry);
+        FunctionCounter.builder("statistics.ingestion.shed", statisticsService, StatisticsService::getShedTransactions)
+                .description("Transactions, which were shed because the ingestion buffer was full")
+                .baseUnit("transactions")
+                .register(registry);
+        FunctionCounter.builder("statistics.ingestion.late", statisticsService,
+                        StatisticsService::getLateTransactions)
+                .description("Transactions, which were older than the window or later than allowed lateness")
+                .baseUnit("transactions")
+                .register(registry);
+        FunctionCounter.builder("statistics.ingestion.future", statisticsService,
+                        StatisticsService::getFutureTransactions)
+                .description("Transactions, which were ahead of the clock by more than future skew")
+                .baseUnit("transactions")
+                .register(registry);
+        Gauge.builder("statistics.watermark.lag", statisticsService, StatisticsService::getWatermarkLagInMs)
+                .description("How far the greatest accepted timestamp is behind the clock")
+                .baseUnit("milliseconds")
+                .register(registry);
+        FunctionCounter.builder("statistics.ingestion.coalesced", statisticsService,
+                        StatisticsService::getCoalescedTransactions)
+                .description("Transactions, which were merged into per millisecond aggregates on overflow")
+                .baseUnit("transactions")
+                .register(registry);
+
+        Gauge.builder("statistics.engine.size", statisticsService, StatisticsService::getEngineSize)
+                .description("Elements stored by the engine: transactions or live buckets")
+                .register(registry);
+        FunctionCounter.builder("statistics.engine.evicted", statisticsService,
+                        StatisticsService::getEvictedTransactions)
+                .description("Transactions, which were evicted before expiry because the engine's memory was full")
+                .baseUnit("transactions")
+                .register(registry);
+        Gauge.builder("statistics.eviction.lag", statisticsService, StatisticsService::getEvictionLagInMs)
+                .description("How late the next expiry is, grows when expiry falls behind")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("statistics.snapshot.staleness", statisticsService,
+                        StatisticsService::getStatisticsStalenessInMs)
+                .description("How long ago the statistics snapshot was known to be up to date")
+                .baseUnit("milliseconds")
+                .register(registry);
+
+        Gauge.builder("statistics.keys.count", statisticsService, StatisticsService::getKeyCount)
+                .description("Keys, which hold a slot of per key statistics")
+                .baseUnit("keys")
+                .register(registry);
+        FunctionCounter.builder("statistics.keys.rejected", statisticsService,
+                        StatisticsService::getKeyRejectedTransactions)
+                .description("Transactions, which were not counted per key because all key slots were busy")
+                .baseUnit("transactions")
+                .register(registry);
+
+        final DistributionSummary drainBatchSize = DistributionSummary.builder("statistics.drain.batch.size")
+                .description("Transactions taken from the ingestion buffer per pass of the statistics thread")
+                .baseUnit("transactions")
+                .publishPercentileHistogram()
+                .register(registry);
+        final Timer recalculation = Timer.builder("statistics.recalculation")
+                .description("Time of one pass of the statistics thread, which changed statistics")
+                .publishPercentileHistogram()
+                .register(registry);
+
+        statisticsService.setAggregationRecorder(new AggregationRecorder() {
+            @Override
+            public void drained(long transactions) {
+                drainBatchSize.record(transactions);
+            }
+
+            @Override
+            public void recalculated(long durationInNanos) {
+                recalculation.record(durationInNanos, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+}
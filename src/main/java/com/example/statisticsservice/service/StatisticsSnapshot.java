@@ -0,0 +1,60 @@
+package com.example.statisticsservice.service;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of all windows, which were published by the statistics thread at once, it's never modified.
+ * <p>
+ * Every window has a version, which is incremented only when statistics of the window change,
+ * so a reader may cache anything derived from statistics of a window by its version.
+ */
+public final class StatisticsSnapshot {
+
+    private final Statistics[] statistics;
+    private final long[] versions;
+
+    private StatisticsSnapshot(Statistics[] statistics, long[] versions) {
+        this.statistics = statistics;
+        this.versions = versions;
+    }
+
+    static StatisticsSnapshot empty(int windowCount) {
+        final Statistics[] statistics = new Statistics[windowCount];
+        Arrays.fill(statistics, Statistics.EMPTY);
+        return new StatisticsSnapshot(statistics, new long[windowCount]);
+    }
+
+    /**
+     * @param statistics new statistics by window index
+     * @return snapshot, where changed windows have the next version, or this snapshot if nothing has changed
+     */
+    StatisticsSnapshot next(Statistics[] statistics) {
+        long[] versions = null;
+        for (int window = 0; window < statistics.length; window++) {
+            if (statistics[window].equals(this.statistics[window])) {
+                // unchanged windows keep the previous instance, it may be cached by readers
+                statistics[window] = this.statistics[window];
+            } else {
+                if (versions == null) {
+                    versions = this.versions.clone();
+                }
+                versions[window]++;
+            }
+        }
+        return versions == null ? this : new StatisticsSnapshot(statistics, versions);
+    }
+
+    /**
+     * @param window index of the window in {@link StatisticsService#getWindows()}
+     */
+    public Statistics getStatistics(int window) {
+        return statistics[window];
+    }
+
+    /**
+     * @param window index of the window in {@link StatisticsService#getWindows()}
+     */
+    public long getVersion(int window) {
+        return versions[window];
+    }
+}
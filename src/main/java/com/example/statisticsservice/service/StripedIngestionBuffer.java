@@ -0,0 +1,198 @@
+package com.example.statisticsservice.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of preallocated lock-free stripes. A request thread writes into the stripe chosen by its id,
+ * so threads rarely compete for the same stripe, and nothing is allocated per transaction.
+ * The statistics thread drains stripes in round-robin.
+ */
+class StripedIngestionBuffer implements IngestionBuffer {
+
+    /**
+     * Bounded multi-producer single-consumer ring over primitive arrays.
+     * Every slot has a sequence number, which tells whether the slot is free for the producer
+     * with the same position ({@code sequence == position}) or published for the consumer
+     * ({@code sequence == position + 1}).
+     */
+    private static final class Stripe {
+        private final int mask;
+        private final long[] timestamps;
+        private final double[] amounts;
+        private final AtomicLongArray sequences;
+
+        private final AtomicLong tail = new AtomicLong();
+        // is written only by the statistics thread
+        private volatile long head;
+
+        private Stripe(int capacity) {
+            this.mask = capacity - 1;
+            this.timestamps = new long[capacity];
+            this.amounts = new double[capacity];
+            this.sequences = new AtomicLongArray(capacity);
+            for (int index = 0; index < capacity; index++) {
+                sequences.set(index, index);
+            }
+        }
+
+        private boolean offer(double amount, long timestamp) {
+            while (true) {
+                final long position = tail.get();
+                final int index = (int) (position & mask);
+                final long difference = sequences.get(index) - position;
+
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        timestamps[index] = timestamp;
+                        amounts[index] = amount;
+                        sequences.lazySet(index, position + 1);
+                        return true;
+                    }
+                } else if (difference < 0) {
+                    // the slot is not consumed yet
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Claims {@code length} slots with one CAS, it is possible when the last of them is free,
+         * because the consumer frees slots in order.
+         */
+        private boolean offerAll(double[] batchAmounts, long[] batchTimestamps, int offset, int length) {
+            if (length > mask + 1) {
+                return false;
+            }
+
+            while (true) {
+                final long position = tail.get();
+                final long lastPosition = position + length - 1;
+                final long difference = sequences.get((int) (lastPosition & mask)) - lastPosition;
+
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + length)) {
+                        for (int index = 0; index < length; index++) {
+                            final int slot = (int) ((position + index) & mask);
+                            timestamps[slot] = batchTimestamps[offset + index];
+                            amounts[slot] = batchAmounts[offset + index];
+                            sequences.lazySet(slot, position + index + 1);
+                        }
+                        return true;
+                    }
+                } else if (difference < 0) {
+                    return false;
+                }
+            }
+        }
+
+        private int drainTo(TransactionConsumer consumer, int limit) {
+            long position = head;
+            int drained = 0;
+
+            while (drained < limit) {
+                final int index = (int) (position & mask);
+                if (sequences.get(index) != position + 1) {
+                    break;
+                }
+
+                final long timestamp = timestamps[index];
+                final double amount = amounts[index];
+                sequences.lazySet(index, position + mask + 1);
+                position++;
+                drained++;
+
+                consumer.accept(amount, timestamp);
+            }
+
+            head = position;
+            return drained;
+        }
+
+        private long size() {
+            return Math.max(0, tail.get() - head);
+        }
+    }
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    // is used only by the statistics thread
+    private int nextDrainStripe;
+
+    StripedIngestionBuffer(int stripeCount, int stripeCapacity) {
+        if (stripeCount <= 0 || stripeCapacity <= 0) {
+            throw new IllegalArgumentException("Stripe count and capacity must be positive: stripeCount="
+                    + stripeCount + ", stripeCapacity=" + stripeCapacity);
+        }
+
+        this.stripes = new Stripe[ceilingPowerOfTwo(stripeCount)];
+        this.stripeMask = stripes.length - 1;
+        for (int index = 0; index < stripes.length; index++) {
+            stripes[index] = new Stripe(ceilingPowerOfTwo(stripeCapacity));
+        }
+    }
+
+    @Override
+    public boolean offer(double amount, long timestamp) {
+        final int firstStripe = stripeOf(Thread.currentThread());
+        for (int attempt = 0; attempt < stripes.length; attempt++) {
+            if (stripes[(firstStripe + attempt) & stripeMask].offer(amount, timestamp)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int offerAll(double[] amounts, long[] timestamps, int offset, int length) {
+        final int firstStripe = stripeOf(Thread.currentThread());
+        for (int attempt = 0; attempt < stripes.length; attempt++) {
+            if (stripes[(firstStripe + attempt) & stripeMask].offerAll(amounts, timestamps, offset, length)) {
+                return length;
+            }
+        }
+
+        // no stripe has room for the whole batch, the rest of free space is used
+        for (int index = 0; index < length; index++) {
+            if (!offer(amounts[offset + index], timestamps[offset + index])) {
+                return index;
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public int drainTo(TransactionConsumer consumer, int limit) {
+        int drained = 0;
+        for (int attempt = 0; attempt < stripes.length && drained < limit; attempt++) {
+            final Stripe stripe = stripes[nextDrainStripe];
+            nextDrainStripe = (nextDrainStripe + 1) & stripeMask;
+            drained += stripe.drainTo(consumer, limit - drained);
+        }
+        return drained;
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    int stripeCount() {
+        return stripes.length;
+    }
+
+    private int stripeOf(Thread thread) {
+        long hash = thread.getId() * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return (int) hash & stripeMask;
+    }
+
+    static int ceilingPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+}
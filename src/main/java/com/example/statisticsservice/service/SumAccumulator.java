@@ -0,0 +1,173 @@
+package com.example.statisticsservice.service;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+
+/**
+ * Array of sums, which can be incremented and decremented for a long time without noticeable drift,
+ * so an expired amount can be subtracted instead of summing up the whole window again.
+ */
+abstract class SumAccumulator {
+
+    static SumAccumulator create(StatisticsProperties.Sum properties, int size) {
+        switch (properties.getAccumulator()) {
+            case COMPENSATED:
+                return new Compensated(size);
+            case FIXED_POINT:
+                return new FixedPoint(size, properties.getScale());
+            default:
+                throw new IllegalArgumentException("Unknown sum accumulator: " + properties.getAccumulator());
+        }
+    }
+
+    abstract void add(int index, double value);
+
+    abstract void subtract(int index, double value);
+
+    /**
+     * Subtracts sum {@code source} from sum {@code target}.
+     */
+    abstract void subtractSum(int target, int source);
+
+    /**
+     * Subtracts sum {@code source} from sum {@code target} and resets {@code source}.
+     */
+    void subtractAndReset(int target, int source) {
+        subtractSum(target, source);
+        reset(source);
+    }
+
+    abstract double get(int index);
+
+    abstract void reset(int index);
+
+    /**
+     * Neumaier compensated summation, the lost low-order bits are kept in a separate compensation term.
+     * To first order the error is bounded independently of the number of operations, the compensation term is
+     * a rounded double itself though, so a second order error remains. Amounts are not rounded.
+     */
+    static final class Compensated extends SumAccumulator {
+
+        private final double[] sums;
+        private final double[] compensations;
+
+        Compensated(int size) {
+            this.sums = new double[size];
+            this.compensations = new double[size];
+        }
+
+        @Override
+        void add(int index, double value) {
+            final double sum = sums[index];
+            final double newSum = sum + value;
+            if (Math.abs(sum) >= Math.abs(value)) {
+                compensations[index] += (sum - newSum) + value;
+            } else {
+                compensations[index] += (value - newSum) + sum;
+            }
+            sums[index] = newSum;
+        }
+
+        @Override
+        void subtract(int index, double value) {
+            add(index, -value);
+        }
+
+        @Override
+        void subtractSum(int target, int source) {
+            add(target, -sums[source]);
+            add(target, -compensations[source]);
+        }
+
+        @Override
+        double get(int index) {
+            return sums[index] + compensations[index];
+        }
+
+        @Override
+        void reset(int index) {
+            sums[index] = 0;
+            compensations[index] = 0;
+        }
+    }
+
+    /**
+     * Amounts are stored as long count of {@code 10^-scale} units, e.g. cents for scale 2.
+     * Sum is exact, but amounts with more fraction digits than scale are rounded.
+     * <p>
+     * Units, which don't fit into a long, about 9.2e18, are carried in a double instead of failing the statistics
+     * thread, so such a sum is approximate.
+     */
+    static final class FixedPoint extends SumAccumulator {
+
+        private static final double LONG_RANGE = 0x1p63;
+
+        private final long[] units;
+        private final double[] overflows;
+        private final double unitsInOne;
+
+        FixedPoint(int size, int scale) {
+            if (scale < 0 || scale > 9) {
+                throw new IllegalArgumentException("Fixed point scale must be in [0, 9]: scale=" + scale);
+            }
+            this.units = new long[size];
+            this.overflows = new double[size];
+            this.unitsInOne = Math.pow(10, scale);
+        }
+
+        @Override
+        void add(int index, double value) {
+            addUnits(index, toUnits(value));
+        }
+
+        @Override
+        void subtract(int index, double value) {
+            addUnits(index, -toUnits(value));
+        }
+
+        @Override
+        void subtractSum(int target, int source) {
+            final long difference = units[target] - units[source];
+            // no overflow, if the operands have the same sign or the difference has the sign of the target
+            if (((units[target] ^ units[source]) & (units[target] ^ difference)) >= 0) {
+                units[target] = difference;
+            } else {
+                overflows[target] -= units[source];
+            }
+            overflows[target] -= overflows[source];
+        }
+
+        @Override
+        double get(int index) {
+            return (units[index] + overflows[index]) / unitsInOne;
+        }
+
+        @Override
+        void reset(int index) {
+            units[index] = 0;
+            overflows[index] = 0;
+        }
+
+        private double toUnits(double value) {
+            // rint is symmetric, so subtracting a value always cancels adding it
+            return Math.rint(value * unitsInOne);
+        }
+
+        private void addUnits(int index, double delta) {
+            final double overflow = overflows[index];
+            if (overflow != 0 && (overflow > 0) != (delta > 0) && Math.abs(delta) <= Math.abs(overflow)) {
+                // carried units are cancelled first, so the sum is exact again, when they are expired
+                overflows[index] = overflow + delta;
+                return;
+            }
+            if (Math.abs(delta) < LONG_RANGE) {
+                final long sum = units[index] + (long) delta;
+                // no overflow, if the sum has the sign of either operand
+                if (((units[index] ^ sum) & ((long) delta ^ sum)) >= 0) {
+                    units[index] = sum;
+                    return;
+                }
+            }
+            overflows[index] += delta;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.statisticsservice.service;
+
+@FunctionalInterface
+interface TransactionConsumer {
+
+    void accept(double amount, long timestamp);
+}
@@ -0,0 +1,42 @@
+package com.example.statisticsservice.service;
+
+/**
+ * Live transactions of one window ordered by timestamp, the oldest one is read and removed first.
+ * Transactions are read field by field, so removal doesn't need an element object.
+ */
+interface TransactionHeap {
+
+    void add(long timestamp, double amount, int bin);
+
+    /**
+     * Adds {@code count} transactions with the same timestamp, which were coalesced into one aggregate.
+     */
+    void addAggregate(long timestamp, double sum, long count, double min, double max);
+
+    /**
+     * @return true if there is no room for another transaction within the memory budget
+     */
+    boolean isFull();
+
+    long size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Is called only if the heap is not empty, as well as other methods of the oldest transaction.
+     */
+    long oldestTimestamp();
+
+    /**
+     * @return amount of the oldest transaction or sum of the oldest aggregate
+     */
+    double oldestAmount();
+
+    long oldestCount();
+
+    void subtractOldestFrom(QuantileSketch sketch, QuantileSketch.Mapping mapping);
+
+    void removeOldest();
+}
@@ -0,0 +1,328 @@
+package com.example.statisticsservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Write-ahead log of transactions, which were added to the engine, in fixed size memory-mapped segment files.
+ * <p>
+ * The log is written by the statistics thread only. A record is written into the mapped segment
+ * as soon as it's drained from the ingestion buffer, so it survives a crash of the process;
+ * segments are forced to disk at most once per sync interval (group commit), so an OS crash loses at most
+ * the last sync interval. Transactions, which were still in the ingestion buffer, are lost in both cases.
+ * <p>
+ * Every segment header keeps the greatest timestamp of its records, a segment is deleted when it leaves
+ * the retention period, so the log holds about one window of transactions
+ * and recovery reads only segments, which may have live transactions, whatever the age of the log.
+ * <p>
+ * Segment layout: magic (8 bytes), max timestamp (8 bytes), records. A record is a type byte followed by
+ * {@code timestamp, amount} or {@code timestamp, count, sum, min, max}, zero type byte marks the end,
+ * new files are zero filled. The type byte is written after the payload, so a record,
+ * which was being written when the process crashed, is not replayed.
+ */
+final class TransactionLog {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionLog.class);
+
+    private static final long MAGIC = 0x5354_4154_5741_4c31L;
+    private static final int MAX_TIMESTAMP_OFFSET = 8;
+    static final int HEADER_SIZE = 16;
+
+    private static final byte END = 0;
+    private static final byte TRANSACTION = 1;
+    private static final byte AGGREGATE = 2;
+    private static final int TRANSACTION_SIZE = 1 + 2 * Long.BYTES;
+    private static final int AGGREGATE_SIZE = 1 + 5 * Long.BYTES;
+
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private static final class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private long maxTimestamp;
+
+        private Segment(Path path, MappedByteBuffer buffer, long maxTimestamp) {
+            this.path = path;
+            this.buffer = buffer;
+            this.maxTimestamp = maxTimestamp;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long syncIntervalInNanos;
+    private final long retentionInMs;
+    private final Clock clock;
+
+    /**
+     * Full segments in the order of creation, they are deleted from the head.
+     */
+    private final ArrayDeque<Segment> fullSegments = new ArrayDeque<>();
+    private Segment current;
+    private long nextSequence;
+
+    private boolean hasUnsyncedRecords;
+    private long lastSyncNanos = System.nanoTime();
+
+    /**
+     * Is set on the first I/O error, statistics keep working without the log after it.
+     */
+    private boolean failed;
+
+    /**
+     * @param retentionInMs how long a transaction may be needed, the longest window
+     */
+    TransactionLog(Path directory, long segmentSize, long syncIntervalInNanos, long retentionInMs, Clock clock) {
+        if (segmentSize < HEADER_SIZE + AGGREGATE_SIZE || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Log segment size must be in ["
+                    + (HEADER_SIZE + AGGREGATE_SIZE) + ", " + Integer.MAX_VALUE + "]: segmentSize=" + segmentSize);
+        }
+
+        this.directory = directory;
+        this.segmentSize = (int) segmentSize;
+        this.syncIntervalInNanos = syncIntervalInNanos;
+        this.retentionInMs = retentionInMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Replays transactions of existing segments, which are not older than retention, and deletes expired segments.
+     * Must be called once before the first append, new records are written to a new segment.
+     *
+     * @return number of replayed records
+     */
+    long recover(long nowInMs, TransactionConsumer transactions, AggregateConsumer aggregates) throws IOException {
+        Files.createDirectories(directory);
+
+        final long oldestLiveTimestamp = nowInMs - retentionInMs;
+        long replayed = 0;
+        for (Path path : segmentPaths()) {
+            nextSequence = Math.max(nextSequence, sequenceOf(path) + 1);
+
+            final MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (buffer.capacity() < HEADER_SIZE || buffer.getLong(0) != MAGIC) {
+                log.warn("Skipping not a log segment: path={}", path);
+                continue;
+            }
+
+            final Segment segment = new Segment(path, buffer, buffer.getLong(MAX_TIMESTAMP_OFFSET));
+            if (segment.maxTimestamp < oldestLiveTimestamp) {
+                Files.deleteIfExists(path);
+                continue;
+            }
+
+            replayed += replay(segment, oldestLiveTimestamp, transactions, aggregates);
+            fullSegments.addLast(segment);
+        }
+        return replayed;
+    }
+
+    void appendTransaction(double amount, long timestamp) {
+        if (failed || !ensureCapacity(TRANSACTION_SIZE)) {
+            return;
+        }
+
+        final MappedByteBuffer buffer = current.buffer;
+        final int position = buffer.position();
+        buffer.putLong(position + 1, timestamp);
+        buffer.putDouble(position + 1 + Long.BYTES, amount);
+        commitRecord(position, TRANSACTION, TRANSACTION_SIZE, timestamp);
+    }
+
+    void appendAggregate(long timestamp, long count, double sum, double min, double max) {
+        if (failed || !ensureCapacity(AGGREGATE_SIZE)) {
+            return;
+        }
+
+        final MappedByteBuffer buffer = current.buffer;
+        final int position = buffer.position();
+        buffer.putLong(position + 1, timestamp);
+        buffer.putLong(position + 1 + Long.BYTES, count);
+        buffer.putDouble(position + 1 + 2 * Long.BYTES, sum);
+        buffer.putDouble(position + 1 + 3 * Long.BYTES, min);
+        buffer.putDouble(position + 1 + 4 * Long.BYTES, max);
+        commitRecord(position, AGGREGATE, AGGREGATE_SIZE, timestamp);
+    }
+
+    /**
+     * Forces appended records to disk, if sync interval has passed since the previous sync.
+     * Is called once per drained batch, so many batches share one sync under load.
+     */
+    void commit() {
+        if (hasUnsyncedRecords && System.nanoTime() - lastSyncNanos >= syncIntervalInNanos) {
+            sync();
+        }
+    }
+
+    /**
+     * Forces appended records to disk.
+     */
+    void sync() {
+        if (!hasUnsyncedRecords || failed) {
+            return;
+        }
+
+        try {
+            current.buffer.force();
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+        hasUnsyncedRecords = false;
+        lastSyncNanos = System.nanoTime();
+    }
+
+    /**
+     * Forces appended records to disk, the log must not be appended after it.
+     */
+    void close() {
+        sync();
+        current = null;
+    }
+
+    /**
+     * @return number of segment files, including the current one
+     */
+    int segmentCount() {
+        return fullSegments.size() + (current != null ? 1 : 0);
+    }
+
+    private void commitRecord(int position, byte type, int size, long timestamp) {
+        final MappedByteBuffer buffer = current.buffer;
+        // the type byte is the last one, so a torn record is read as the end of the segment
+        buffer.put(position, type);
+        buffer.position(position + size);
+        if (timestamp > current.maxTimestamp) {
+            current.maxTimestamp = timestamp;
+            buffer.putLong(MAX_TIMESTAMP_OFFSET, timestamp);
+        }
+        hasUnsyncedRecords = true;
+    }
+
+    /**
+     * Rolls the current segment over, if the record doesn't fit into it, and deletes expired segments.
+     *
+     * @return false if the log has failed
+     */
+    private boolean ensureCapacity(int recordSize) {
+        if (current != null && current.buffer.remaining() >= recordSize) {
+            return true;
+        }
+
+        try {
+            if (current != null) {
+                current.buffer.force();
+                fullSegments.addLast(current);
+                current = null;
+            }
+            deleteExpiredSegments(clock.millis() - retentionInMs);
+            current = createSegment(nextSequence++);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+            return false;
+        }
+    }
+
+    private void deleteExpiredSegments(long oldestLiveTimestamp) throws IOException {
+        // segments are mostly in timestamp order, a late segment only delays deletion of the next ones
+        while (!fullSegments.isEmpty() && fullSegments.peekFirst().maxTimestamp < oldestLiveTimestamp) {
+            Files.deleteIfExists(fullSegments.pollFirst().path);
+        }
+    }
+
+    private Segment createSegment(long sequence) throws IOException {
+        final Path path = directory.resolve(String.format("%016d%s", sequence, SEGMENT_SUFFIX));
+        final MappedByteBuffer buffer;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(segmentSize);
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+
+        buffer.putLong(0, MAGIC);
+        buffer.putLong(MAX_TIMESTAMP_OFFSET, Long.MIN_VALUE);
+        buffer.position(HEADER_SIZE);
+        return new Segment(path, buffer, Long.MIN_VALUE);
+    }
+
+    private static long replay(Segment segment, long oldestLiveTimestamp,
+                               TransactionConsumer transactions, AggregateConsumer aggregates) {
+        final MappedByteBuffer buffer = segment.buffer;
+        buffer.position(HEADER_SIZE);
+        long replayed = 0;
+        try {
+            while (buffer.hasRemaining()) {
+                final byte type = buffer.get();
+                if (type == TRANSACTION) {
+                    final long timestamp = buffer.getLong();
+                    final double amount = buffer.getDouble();
+                    if (timestamp >= oldestLiveTimestamp) {
+                        transactions.accept(amount, timestamp);
+                        replayed++;
+                    }
+                } else if (type == AGGREGATE) {
+                    final long timestamp = buffer.getLong();
+                    final long count = buffer.getLong();
+                    final double sum = buffer.getDouble();
+                    final double min = buffer.getDouble();
+                    final double max = buffer.getDouble();
+                    if (timestamp >= oldestLiveTimestamp) {
+                        aggregates.accept(timestamp, count, sum, min, max);
+                        replayed++;
+                    }
+                } else {
+                    if (type != END) {
+                        log.warn("Unknown log record, the rest of segment is skipped: path={}, type={}, position={}",
+                                segment.path, type, buffer.position() - 1);
+                    }
+                    break;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            log.warn("Truncated log record, the rest of segment is skipped: path={}", segment.path);
+        }
+        return replayed;
+    }
+
+    private List<Path> segmentPaths() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .filter(path -> sequenceOf(path) >= 0)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return sequence number from the segment's file name, or -1 if it's not a segment name
+     */
+    private static long sequenceOf(Path path) {
+        final String fileName = path.getFileName().toString();
+        try {
+            return Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void fail(Exception e) {
+        log.error("Transaction log failed, transactions are not persisted anymore: directory={}", directory, e);
+        failed = true;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.statisticsservice.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Event time watermark of ingestion: the greatest timestamp of accepted transactions.
+ * <p>
+ * A transaction is late, when it's older than the longest window or more than allowed lateness behind the watermark.
+ * A transaction ahead of the clock within future skew is accepted with its own timestamp, bucket rings have room
+ * for future skew, so a bucket is placed by timestamp in O(1) whatever the arrival order.
+ * A transaction further in the future is rejected, the watermark itself never moves ahead of the clock.
+ */
+public final class Watermark {
+
+    public enum Status {
+        ACCEPTED,
+        /**
+         * Older than the longest window or behind the watermark by more than allowed lateness.
+         */
+        LATE,
+        /**
+         * Ahead of the clock by more than future skew.
+         */
+        FUTURE
+    }
+
+    private final long longestWindowInMs;
+    private final long allowedLatenessInMs;
+    private final long futureSkewInMs;
+
+    private final AtomicLong watermark = new AtomicLong(Long.MIN_VALUE);
+    private final LongAdder lateTransactions = new LongAdder();
+    private final LongAdder futureTransactions = new LongAdder();
+
+    /**
+     * @param allowedLatenessInMs is limited by the longest window, older transactions are expired anyway
+     */
+    Watermark(long longestWindowInMs, long allowedLatenessInMs, long futureSkewInMs) {
+        if (allowedLatenessInMs < 0 || futureSkewInMs < 0) {
+            throw new IllegalArgumentException("Allowed lateness and future skew must not be negative: "
+                    + "allowedLatenessInMs=" + allowedLatenessInMs + ", futureSkewInMs=" + futureSkewInMs);
+        }
+
+        this.longestWindowInMs = longestWindowInMs;
+        this.allowedLatenessInMs = Math.min(allowedLatenessInMs, longestWindowInMs);
+        this.futureSkewInMs = futureSkewInMs;
+    }
+
+    /**
+     * Checks the timestamp and advances the watermark, if the transaction is accepted.
+     * Late and future transactions are counted.
+     */
+    Status check(long timestampInMs, long nowInMs) {
+        if (timestampInMs > nowInMs + futureSkewInMs) {
+            futureTransactions.increment();
+            return Status.FUTURE;
+        }
+        final long eventTimeInMs = Math.min(timestampInMs, nowInMs);
+        final long current = watermark.get();
+        if (eventTimeInMs < nowInMs - longestWindowInMs
+                || (current != Long.MIN_VALUE && eventTimeInMs < current - allowedLatenessInMs)) {
+            lateTransactions.increment();
+            return Status.LATE;
+        }
+
+        if (eventTimeInMs > current) {
+            // requests are mostly in order, so the watermark is read much more often than it's moved
+            watermark.accumulateAndGet(eventTimeInMs, Math::max);
+        }
+        return Status.ACCEPTED;
+    }
+
+    /**
+     * @return how far the watermark is behind the clock, 0 before the first transaction
+     */
+    long lagInMs(long nowInMs) {
+        final long current = watermark.get();
+        if (current == Long.MIN_VALUE) {
+            return 0;
+        }
+        return Math.max(0, nowInMs - current);
+    }
+
+    long getLateTransactions() {
+        return lateTransactions.sum();
+    }
+
+    long getFutureTransactions() {
+        return futureTransactions.sum();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.statisticsservice.service;
+
+import java.util.List;
+
+/**
+ * Approximate distinct counts and heavy hitters of a window, see {@link AmountSketches}.
+ */
+public class WindowSketches {
+
+    private final long distinctAmounts;
+    private final Long distinctKeys;
+    private final List<HeavyHitter> heavyHitters;
+
+    /**
+     * @param distinctKeys null if keys are not counted for the window
+     * @param heavyHitters in descending order of count
+     */
+    public WindowSketches(long distinctAmounts, Long distinctKeys, List<HeavyHitter> heavyHitters) {
+        this.distinctAmounts = distinctAmounts;
+        this.distinctKeys = distinctKeys;
+        this.heavyHitters = heavyHitters;
+    }
+
+    public long getDistinctAmounts() {
+        return distinctAmounts;
+    }
+
+    public Long getDistinctKeys() {
+        return distinctKeys;
+    }
+
+    public List<HeavyHitter> getHeavyHitters() {
+        return heavyHitters;
+    }
+
+    @Override
+    public String toString() {
+        return "WindowSketches{" +
+                "distinctAmounts=" + distinctAmounts +
+                ", distinctKeys=" + distinctKeys +
+                ", heavyHitters=" + heavyHitters +
+                '}';
+    }
+}
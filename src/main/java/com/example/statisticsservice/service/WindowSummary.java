@@ -0,0 +1,40 @@
+package com.example.statisticsservice.service;
+
+/**
+ * Count, sum, extremums and non-empty quantile sketch bins of one window of an engine, it's never modified.
+ * Unlike {@link Statistics}, summaries of several engines are merged without loss of accuracy.
+ */
+final class WindowSummary {
+
+    static final WindowSummary EMPTY = new WindowSummary(0, 0, 0, 0, new int[0], new long[0]);
+
+    private final long count;
+    private final double sum;
+    private final double min;
+    private final double max;
+    private final int[] bins;
+    private final long[] binCounts;
+
+    WindowSummary(long count, double sum, double min, double max, int[] bins, long[] binCounts) {
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+        this.bins = bins;
+        this.binCounts = binCounts;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    void mergeInto(MergedStatistics merged) {
+        if (count == 0) {
+            return;
+        }
+        merged.add(count, sum, min, max);
+        for (int index = 0; index < bins.length; index++) {
+            merged.addBin(bins[index], binCounts[index]);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.statisticsservice;
 
+import com.example.statisticsservice.dto.BatchTransactionsResponse;
 import com.example.statisticsservice.dto.StatisticsResponse;
 import com.example.statisticsservice.dto.TransactionsRequest;
 import org.junit.jupiter.api.Test;
@@ -9,8 +10,10 @@ import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -53,6 +56,32 @@ class StatisticsServiceApplicationTests {
         assertEmptyStatistics(statisticsResponse);
     }
 
+    @Test
+    void batchApiTest() {
+        // rejected transactions don't change statistics of apiTest
+        final String body = "[{\"amount\": 1, \"timestamp\": " + (System.currentTimeMillis() - 60_000) + "}, " +
+                "{\"amount\": 1, \"timestamp\": -5}]";
+        ResponseEntity<BatchTransactionsResponse> response = postBatch(body);
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals(0, response.getBody().getAccepted());
+        assertEquals(2, response.getBody().getRejected());
+        assertEquals(1, response.getBody().getTooOld());
+        assertEquals(1, response.getBody().getInvalidTimestamp());
+
+        response = postBatch("[{\"amount\": \"abc\"}]");
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(0, response.getBody().getAccepted());
+    }
+
+    private ResponseEntity<BatchTransactionsResponse> postBatch(String body) {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return restTemplate.exchange("http://localhost:" + port + "/transactions/batch",
+                HttpMethod.POST,
+                new HttpEntity<>(body, headers),
+                BatchTransactionsResponse.class);
+    }
+
     private void assertEmptyStatistics(StatisticsResponse statisticsResponse) {
         assertEquals(statisticsResponse.getSum(), 0, 0.01);
         assertEquals(statisticsResponse.getCount(), 0);
@@ -0,0 +1,167 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryIngestionServerTest {
+
+    private final RecordingStatisticsService statisticsService = new RecordingStatisticsService();
+    private final StatisticsProperties properties = new StatisticsProperties();
+    private BinaryIngestionServer server;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        properties.getBinary().setHost("127.0.0.1");
+        properties.getBinary().setPort(0);
+        server = new BinaryIngestionServer(statisticsService, properties);
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() throws IOException {
+        server.stop();
+    }
+
+    @Test
+    public void framesAreAckedInOrderTest() throws IOException {
+        final long now = System.currentTimeMillis();
+        try (SocketChannel channel = connect()) {
+            // both frames in one write, the second one has keys
+            ByteBuffer frames = ByteBuffer.allocate(1024);
+            frame(frames, (byte) 0, () -> {
+                frames.putLong(now).putDouble(1.5);
+                frames.putLong(now - 120_000).putDouble(2);
+                frames.putLong(-1).putDouble(3);
+            });
+            frame(frames, BinaryFrameDecoder.FLAG_KEYS, () -> {
+                frames.putLong(now).putDouble(4);
+                putKey(frames, "EUR");
+                frames.putLong(now + 60_000).putDouble(5);
+                putKey(frames, "USD");
+                frames.putLong(now).putDouble(6);
+                putKey(frames, "");
+            });
+            write(channel, frames);
+
+            assertArrayEquals(readAck(channel), new int[]{1, 1, 0, 1, 0});
+            assertArrayEquals(readAck(channel), new int[]{2, 0, 1, 0, 0});
+        }
+        assertEquals(statisticsService.getTransactions(), Arrays.asList("1.5", "4.0/EUR", "6.0/null"));
+    }
+
+    @Test
+    public void invalidAmountsTest() throws IOException {
+        final long now = System.currentTimeMillis();
+        try (SocketChannel channel = connect()) {
+            ByteBuffer frames = ByteBuffer.allocate(1024);
+            frame(frames, (byte) 0, () -> {
+                frames.putLong(now).putDouble(Double.NaN);
+                frames.putLong(now).putDouble(Double.NEGATIVE_INFINITY);
+                frames.putLong(now).putDouble(1);
+            });
+            write(channel, frames);
+
+            assertArrayEquals(readAck(channel), new int[]{1, 0, 0, 2, 0});
+        }
+        assertEquals(statisticsService.getTransactions(), List.of("1.0"));
+    }
+
+    @Test
+    public void malformedFrameClosesConnectionTest() throws IOException {
+        final long now = System.currentTimeMillis();
+        try (SocketChannel channel = connect()) {
+            ByteBuffer frames = ByteBuffer.allocate(1024);
+            // truncated record
+            frame(frames, (byte) 0, () -> frames.putLong(now).putDouble(1).putInt(7));
+            write(channel, frames);
+
+            assertEquals(channel.read(ByteBuffer.allocate(BinaryFrameDecoder.ACK_SIZE)), -1);
+        }
+        // records before the error are saved
+        assertEquals(statisticsService.getTransactions(), List.of("1.0"));
+    }
+
+    @Test
+    public void maxConnectionsTest() throws IOException, InterruptedException {
+        server.stop();
+        properties.getBinary().setMaxConnections(1);
+        server = new BinaryIngestionServer(statisticsService, properties);
+        server.start();
+
+        final long now = System.currentTimeMillis();
+        try (SocketChannel first = connect(); SocketChannel second = connect()) {
+            ByteBuffer frames = ByteBuffer.allocate(1024);
+            frame(frames, (byte) 0, () -> frames.putLong(now).putDouble(1));
+            write(first, frames);
+            assertArrayEquals(readAck(first), new int[]{1, 0, 0, 0, 0});
+
+            // the second connection waits in the backlog, while the first one is open
+            frames.clear();
+            frame(frames, (byte) 0, () -> frames.putLong(now).putDouble(2));
+            write(second, frames);
+            second.configureBlocking(false);
+            Thread.sleep(200);
+            assertEquals(second.read(ByteBuffer.allocate(BinaryFrameDecoder.ACK_SIZE)), 0);
+
+            first.close();
+            second.configureBlocking(true);
+            assertArrayEquals(readAck(second), new int[]{1, 0, 0, 0, 0});
+        }
+        assertEquals(statisticsService.getTransactions(), List.of("1.0", "2.0"));
+    }
+
+    @Test
+    public void blockPolicyIsNotSupportedTest() {
+        properties.getIngestion().setOverflowPolicy(StatisticsProperties.OverflowPolicy.BLOCK);
+        assertThrows(IllegalArgumentException.class, () -> new BinaryIngestionServer(statisticsService, properties));
+    }
+
+    private SocketChannel connect() throws IOException {
+        return SocketChannel.open(new InetSocketAddress("127.0.0.1", server.getPort()));
+    }
+
+    private static void frame(ByteBuffer buffer, byte flags, Runnable records) {
+        final int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        buffer.put(flags);
+        records.run();
+        buffer.putInt(lengthPosition, buffer.position() - lengthPosition - BinaryFrameDecoder.LENGTH_SIZE);
+    }
+
+    private static void putKey(ByteBuffer buffer, String key) {
+        final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static void write(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int[] readAck(SocketChannel channel) throws IOException {
+        final ByteBuffer ack = ByteBuffer.allocate(BinaryFrameDecoder.ACK_SIZE);
+        while (ack.hasRemaining()) {
+            assertTrue(channel.read(ack) >= 0, "connection is closed");
+        }
+        ack.flip();
+        final int[] counts = new int[5];
+        for (int index = 0; index < counts.length; index++) {
+            counts[index] = ack.getInt();
+        }
+        return counts;
+    }
+}
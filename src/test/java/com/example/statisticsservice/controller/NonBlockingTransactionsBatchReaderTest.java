@@ -0,0 +1,139 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.dto.BatchTransactionsResponse;
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NonBlockingTransactionsBatchReaderTest {
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Test
+    public void everySplitOfBodyTest() {
+        final long now = System.currentTimeMillis();
+        final byte[] body = ("[" +
+                "{\"amount\": 1.5, \"timestamp\": " + now + ", \"key\": \"EUR\"}," +
+                "{\"timestamp\": " + now + ", \"amount\": 2, \"comment\": {\"a\": [1, {\"amount\": 100}]}}," +
+                "{\"amount\": 3, \"timestamp\": -1}," +
+                "{\"amount\": 4, \"timestamp\": " + (now - 120_000) + "}," +
+                "{\"amount\": 5}," +
+                "{\"amount\": 1e400, \"timestamp\": " + now + "}," +
+                "null" +
+                "]").getBytes(StandardCharsets.UTF_8);
+
+        for (int split = 0; split <= body.length; split++) {
+            final RecordingStatisticsService statisticsService = new RecordingStatisticsService();
+            final NonBlockingTransactionsBatchReader reader =
+                    new NonBlockingTransactionsBatchReader(jsonFactory, statisticsService);
+            reader.feed(body, 0, split);
+            reader.feed(body, split, body.length - split);
+            final BatchTransactionsResponse response = reader.finish();
+
+            assertEquals(response.getAccepted(), 2);
+            assertEquals(response.getTooOld(), 1);
+            assertEquals(response.getInvalidTimestamp(), 3);
+            assertEquals(response.getInvalidAmount(), 1);
+            assertEquals(statisticsService.getSum(), 3.5, 0.01);
+            assertEquals(statisticsService.getKeys(), Arrays.asList("EUR", null));
+        }
+    }
+
+    @Test
+    public void ndjsonByteByByteTest() {
+        final long now = System.currentTimeMillis();
+        final RecordingStatisticsService statisticsService = new RecordingStatisticsService();
+        final NonBlockingTransactionsBatchReader reader =
+                new NonBlockingTransactionsBatchReader(jsonFactory, statisticsService);
+        final byte[] body = ("{\"amount\": 1, \"timestamp\": " + now + "}\n" +
+                "{\"amount\": 2, \"timestamp\": " + now + "}\n").getBytes(StandardCharsets.UTF_8);
+        for (int index = 0; index < body.length; index++) {
+            reader.feed(body, index, 1);
+        }
+
+        assertEquals(reader.finish().getAccepted(), 2);
+        assertEquals(statisticsService.getSum(), 3, 0.01);
+    }
+
+    @Test
+    public void chunksAreSavedBeforeEndOfBodyTest() {
+        final long now = System.currentTimeMillis();
+        final RecordingStatisticsService statisticsService = new RecordingStatisticsService();
+        final NonBlockingTransactionsBatchReader reader =
+                new NonBlockingTransactionsBatchReader(jsonFactory, statisticsService);
+        final byte[] transaction = ("{\"amount\": 1, \"timestamp\": " + now + "}\n").getBytes(StandardCharsets.UTF_8);
+        for (int index = 0; index < TransactionsBatch.CHUNK_SIZE; index++) {
+            reader.feed(transaction, 0, transaction.length);
+        }
+
+        assertEquals(statisticsService.getTransactions().size(), TransactionsBatch.CHUNK_SIZE);
+        assertEquals(reader.finish().getAccepted(), TransactionsBatch.CHUNK_SIZE);
+    }
+
+    @Test
+    public void emptyBodyTest() {
+        final RecordingStatisticsService statisticsService = new RecordingStatisticsService();
+        assertEquals(new NonBlockingTransactionsBatchReader(jsonFactory, statisticsService).finish().getAccepted(), 0);
+
+        final NonBlockingTransactionsBatchReader reader =
+                new NonBlockingTransactionsBatchReader(jsonFactory, statisticsService);
+        final byte[] body = "[] ".getBytes(StandardCharsets.UTF_8);
+        reader.feed(body, 0, body.length);
+        assertEquals(reader.finish().getAccepted(), 0);
+    }
+
+    @Test
+    public void malformedBodyTest() {
+        final long now = System.currentTimeMillis();
+        final RecordingStatisticsService statisticsService = new RecordingStatisticsService();
+        final NonBlockingTransactionsBatchReader reader =
+                new NonBlockingTransactionsBatchReader(jsonFactory, statisticsService);
+        final byte[] body = ("[" +
+                "{\"amount\": 1, \"timestamp\": " + now + "}," +
+                "{\"amount\": \"abc\", \"timestamp\": " + now + "}" +
+                "]").getBytes(StandardCharsets.UTF_8);
+
+        MalformedBatchException exception = assertThrows(MalformedBatchException.class,
+                () -> reader.feed(body, 0, body.length));
+        // transactions before the error are saved
+        assertEquals(exception.getResponse().getAccepted(), 1);
+        assertEquals(statisticsService.getSum(), 1, 0.01);
+    }
+
+    @Test
+    public void nestedAmountOrTimestampTest() {
+        final long now = System.currentTimeMillis();
+        for (String transaction : List.of("{\"amount\": {\"value\": 2}, \"timestamp\": " + now + "}",
+                "{\"amount\": 2, \"timestamp\": [" + now + "]}")) {
+            final RecordingStatisticsService statisticsService = new RecordingStatisticsService();
+            final NonBlockingTransactionsBatchReader reader =
+                    new NonBlockingTransactionsBatchReader(jsonFactory, statisticsService);
+            final byte[] body = ("[{\"amount\": 1, \"timestamp\": " + now + "}, " + transaction + "]")
+                    .getBytes(StandardCharsets.UTF_8);
+
+            // unlike nested values of other fields, they are not skipped, as in the blocking reader
+            MalformedBatchException exception = assertThrows(MalformedBatchException.class,
+                    () -> reader.feed(body, 0, body.length));
+            assertEquals(exception.getResponse().getAccepted(), 1);
+            assertEquals(statisticsService.getSum(), 1, 0.01);
+        }
+    }
+
+    @Test
+    public void truncatedBodyTest() {
+        final long now = System.currentTimeMillis();
+        final NonBlockingTransactionsBatchReader reader =
+                new NonBlockingTransactionsBatchReader(jsonFactory, new RecordingStatisticsService());
+        final byte[] body = ("[{\"amount\": 1, \"timestamp\": " + now + "}, {\"amount\": 2")
+                .getBytes(StandardCharsets.UTF_8);
+        reader.feed(body, 0, body.length);
+
+        MalformedBatchException exception = assertThrows(MalformedBatchException.class, reader::finish);
+        assertEquals(exception.getResponse().getAccepted(), 1);
+    }
+}
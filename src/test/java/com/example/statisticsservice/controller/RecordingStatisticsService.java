@@ -0,0 +1,61 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.service.StatisticsService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records saved transactions instead of aggregating them, timestamps are checked by the real service.
+ * Is thread-safe, transactions may be saved by a server thread.
+ */
+class RecordingStatisticsService extends StatisticsService {
+
+    private final List<Integer> batches = new ArrayList<>();
+    private final List<String> keys = new ArrayList<>();
+    private final List<String> transactions = new ArrayList<>();
+    private double sum;
+
+    RecordingStatisticsService() {
+        super(Duration.ofSeconds(60));
+    }
+
+    @Override
+    public synchronized int saveTransactions(String[] keys, double[] amounts, long[] timestamps, int length) {
+        batches.add(length);
+        for (int index = 0; index < length; index++) {
+            sum += amounts[index];
+            if (keys != null) {
+                this.keys.add(keys[index]);
+            }
+            transactions.add(amounts[index] + (keys != null ? "/" + keys[index] : ""));
+        }
+        return length;
+    }
+
+    /**
+     * @return sizes of saved chunks
+     */
+    synchronized List<Integer> getBatches() {
+        return new ArrayList<>(batches);
+    }
+
+    /**
+     * @return keys of transactions, which were saved in chunks with keys
+     */
+    synchronized List<String> getKeys() {
+        return new ArrayList<>(keys);
+    }
+
+    /**
+     * @return saved transactions as {@code amount} or {@code amount/key}
+     */
+    synchronized List<String> getTransactions() {
+        return new ArrayList<>(transactions);
+    }
+
+    synchronized double getSum() {
+        return sum;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import com.example.statisticsservice.service.StatisticsService;
+import com.example.statisticsservice.service.StatisticsSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatisticsResponseCacheTest {
+
+    private final StatisticsProperties properties = new StatisticsProperties();
+    private final StatisticsService statisticsService = new StatisticsService(properties);
+    private final StatisticsResponseCache cache =
+            new StatisticsResponseCache(new ObjectMapper(), statisticsService, properties);
+
+    @BeforeEach
+    public void setUp() {
+        statisticsService.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        statisticsService.destroy();
+    }
+
+    @Test
+    public void unchangedStatisticsAreNotSerializedAgainTest() {
+        final ResponseEntity<byte[]> first = cache.get(statisticsService.getSnapshot(), 0, null);
+        assertEquals(first.getStatusCode(), HttpStatus.OK);
+        assertEquals(first.getHeaders().getCacheControl(), "no-cache");
+        assertSame(cache.get(statisticsService.getSnapshot(), 0, null), first);
+
+        saveAndAwait();
+        final ResponseEntity<byte[]> changed = cache.get(statisticsService.getSnapshot(), 0, null);
+        assertFalse(changed.getHeaders().getETag().equals(first.getHeaders().getETag()));
+        assertFalse(new String(changed.getBody()).equals(new String(first.getBody())));
+    }
+
+    @Test
+    public void ifNoneMatchTest() {
+        final String eTag = cache.get(statisticsService.getSnapshot(), 0, null).getHeaders().getETag();
+
+        final ResponseEntity<byte[]> notModified = cache.get(statisticsService.getSnapshot(), 0, eTag);
+        assertEquals(notModified.getStatusCode(), HttpStatus.NOT_MODIFIED);
+        assertNull(notModified.getBody());
+        assertEquals(notModified.getHeaders().getETag(), eTag);
+        assertEquals(cache.get(statisticsService.getSnapshot(), 0, "\"other\", W/" + eTag).getStatusCode(),
+                HttpStatus.NOT_MODIFIED);
+        assertEquals(cache.get(statisticsService.getSnapshot(), 0, "*").getStatusCode(), HttpStatus.NOT_MODIFIED);
+
+        saveAndAwait();
+        assertEquals(cache.get(statisticsService.getSnapshot(), 0, eTag).getStatusCode(), HttpStatus.OK);
+    }
+
+    @Test
+    public void cacheMaxAgeTest() {
+        properties.setCacheMaxAge(Duration.ofSeconds(5));
+        final StatisticsResponseCache maxAgeCache =
+                new StatisticsResponseCache(new ObjectMapper(), statisticsService, properties);
+        assertEquals(maxAgeCache.get(statisticsService.getSnapshot(), 0, null).getHeaders().getCacheControl(),
+                "max-age=5");
+    }
+
+    private void saveAndAwait() {
+        final StatisticsSnapshot snapshot = statisticsService.getSnapshot();
+        statisticsService.saveTransaction(1, System.currentTimeMillis());
+        final long deadline = System.currentTimeMillis() + 1000;
+        while (statisticsService.getSnapshot() == snapshot && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(statisticsService.getSnapshot().getVersion(0), snapshot.getVersion(0) + 1);
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import com.example.statisticsservice.service.StatisticsService;
+import com.example.statisticsservice.service.StatisticsSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatisticsStreamTest {
+
+    private final StatisticsProperties properties = new StatisticsProperties();
+    private StatisticsService statisticsService;
+    private StatisticsResponseCache cache;
+    private StatisticsStream stream;
+
+    @BeforeEach
+    public void setUp() {
+        properties.getStream().setMinInterval(Duration.ofMillis(10));
+        properties.getStream().setMaxSubscribers(2);
+        statisticsService = new StatisticsService(properties);
+        cache = new StatisticsResponseCache(new ObjectMapper(), statisticsService, properties);
+        stream = new StatisticsStream(statisticsService, cache, properties);
+        statisticsService.init();
+        stream.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        stream.stop();
+        statisticsService.destroy();
+    }
+
+    @Test
+    public void subscribersShareUpdatesTest() throws InterruptedException {
+        final QueueSink first = new QueueSink();
+        final QueueSink second = new QueueSink();
+        assertNotNull(stream.subscribe(0, first));
+        assertNotNull(stream.subscribe(0, second));
+
+        // the current statistics are sent right away
+        final byte[] initial = first.take();
+        assertEquals(new String(initial, StandardCharsets.UTF_8), "id: 0\nevent: statistics\ndata: " + body() + "\n\n");
+        assertSame(second.take(), initial);
+
+        saveAndAwait(1);
+        final byte[] update = first.take();
+        assertEquals(new String(update, StandardCharsets.UTF_8), "id: 1\nevent: statistics\ndata: " + body() + "\n\n");
+        assertSame(second.take(), update);
+    }
+
+    @Test
+    public void slowSubscriberGetsLatestUpdateTest() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final QueueSink slow = new QueueSink() {
+            @Override
+            public void send(byte[] frame) {
+                super.send(frame);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final QueueSink fast = new QueueSink();
+        stream.subscribe(0, slow);
+        stream.subscribe(0, fast);
+        assertEquals(fast.take(), slow.take());
+
+        // the slow subscriber is still writing the initial statistics, while they change several times
+        for (int count = 1; count <= 5; count++) {
+            saveAndAwait(count);
+            final String event = new String(fast.take(), StandardCharsets.UTF_8);
+            assertTrue(event.startsWith("id: " + count + "\n"), event);
+        }
+        assertTrue(stream.getConflatedUpdates() >= 3, "conflated=" + stream.getConflatedUpdates());
+
+        // the slow subscriber skips to the latest update, the fast one may be offered it first
+        release.countDown();
+        byte[] latest = slow.take();
+        byte[] next;
+        int received = 1;
+        while ((next = slow.frames.poll(100, TimeUnit.MILLISECONDS)) != null) {
+            latest = next;
+            received++;
+        }
+        assertTrue(received <= 2, "received=" + received);
+        final String event = new String(latest, StandardCharsets.UTF_8);
+        assertTrue(event.startsWith("id: 5\n"), event);
+    }
+
+    @Test
+    public void maxSubscribersTest() throws InterruptedException {
+        final StatisticsStream.Subscription subscription = stream.subscribe(0, new QueueSink());
+        assertNotNull(stream.subscribe(0, new QueueSink()));
+        assertNull(stream.subscribe(0, new QueueSink()));
+        assertEquals(stream.getSubscriberCount(), 2);
+
+        subscription.close();
+        subscription.close();
+        assertEquals(stream.getSubscriberCount(), 1);
+        final QueueSink sink = new QueueSink();
+        assertNotNull(stream.subscribe(0, sink));
+        assertNotNull(sink.take());
+    }
+
+    /**
+     * @return body of {@code GET /statistics}, which is sent as the data of events
+     */
+    private String body() {
+        return new String(cache.get(statisticsService.getSnapshot(), 0, null).getBody(), StandardCharsets.UTF_8);
+    }
+
+    private void saveAndAwait(long version) {
+        final StatisticsSnapshot snapshot = statisticsService.getSnapshot();
+        statisticsService.saveTransaction(1, System.currentTimeMillis());
+        final long deadline = System.currentTimeMillis() + 1000;
+        while (statisticsService.getSnapshot() == snapshot && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(statisticsService.getSnapshot().getVersion(0), version);
+    }
+
+    private static class QueueSink implements StatisticsStream.Sink {
+        final BlockingQueue<byte[]> frames = new LinkedBlockingQueue<>();
+
+        @Override
+        public void send(byte[] frame) {
+            frames.add(frame);
+        }
+
+        @Override
+        public void complete() {
+        }
+
+        byte[] take() throws InterruptedException {
+            final byte[] frame = frames.poll(1, TimeUnit.SECONDS);
+            assertNotNull(frame);
+            return frame;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.statisticsservice.controller;
+
+import com.example.statisticsservice.dto.BatchTransactionsResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionsBatchReaderTest {
+
+    private final RecordingStatisticsService statisticsService = new RecordingStatisticsService();
+    private final TransactionsBatchReader reader = new TransactionsBatchReader(new ObjectMapper(), statisticsService);
+
+    @Test
+    public void jsonArrayTest() throws IOException {
+        final long now = System.currentTimeMillis();
+        BatchTransactionsResponse response = read("[" +
+                "{\"amount\": 1.5, \"timestamp\": " + now + "}," +
+                "{\"timestamp\": " + now + ", \"amount\": 2, \"comment\": {\"a\": [1, 2]}}," +
+                "{\"amount\": 3, \"timestamp\": -1}," +
+                "{\"amount\": 4, \"timestamp\": " + (now - 120_000) + "}," +
+                "{\"amount\": 5}," +
+                "{\"amount\": 1e400, \"timestamp\": " + now + "}," +
+                "{\"amount\": -1e400, \"timestamp\": " + now + "}," +
+                "{\"amount\": 2e15, \"timestamp\": " + now + "}," +
+                "null" +
+                "]");
+
+        assertEquals(response.getAccepted(), 2);
+        assertEquals(response.getRejected(), 7);
+        assertEquals(response.getTooOld(), 1);
+        assertEquals(response.getInvalidTimestamp(), 3);
+        // infinity, which is too large for a double, and amounts beyond max amount are invalid
+        assertEquals(response.getInvalidAmount(), 3);
+        assertEquals(statisticsService.getSum(), 3.5, 0.01);
+        assertEquals(statisticsService.getBatches(), List.of(2));
+    }
+
+    @Test
+    public void ndjsonTest() throws IOException {
+        final long now = System.currentTimeMillis();
+        BatchTransactionsResponse response = read(
+                "{\"amount\": 1, \"timestamp\": " + now + "}\n" +
+                "{\"amount\": 2, \"timestamp\": " + now + "}\n");
+
+        assertEquals(response.getAccepted(), 2);
+        assertEquals(response.getRejected(), 0);
+        assertEquals(statisticsService.getSum(), 3, 0.01);
+    }
+
+    @Test
+    public void futureTimestampTest() throws IOException {
+        final long now = System.currentTimeMillis();
+        BatchTransactionsResponse response = read(
+                "{\"amount\": 1, \"timestamp\": " + (now + 500) + "}\n" +
+                "{\"amount\": 2, \"timestamp\": " + (now + 60_000) + "}\n");
+
+        assertEquals(response.getAccepted(), 1);
+        assertEquals(response.getTooNew(), 1);
+        assertEquals(response.getRejected(), 1);
+        assertEquals(statisticsService.getFutureTransactions(), 1);
+    }
+
+    @Test
+    public void keysTest() throws IOException {
+        final long now = System.currentTimeMillis();
+        read("{\"amount\": 1, \"timestamp\": " + now + ", \"key\": \"EUR\"}\n" +
+                "{\"amount\": 2, \"timestamp\": " + now + "}\n" +
+                "{\"key\": \"USD\", \"amount\": 3, \"timestamp\": " + now + "}\n");
+        assertEquals(statisticsService.getKeys(), Arrays.asList("EUR", null, "USD"));
+
+        read("{\"amount\": 1, \"timestamp\": " + now + "}\n");
+        // a chunk without keys is saved without key array
+        assertEquals(statisticsService.getKeys().size(), 3);
+    }
+
+    @Test
+    public void chunksTest() throws IOException {
+        final long now = System.currentTimeMillis();
+        final int total = 2 * TransactionsBatch.CHUNK_SIZE + 1;
+        StringBuilder body = new StringBuilder();
+        for (int index = 0; index < total; index++) {
+            body.append("{\"amount\": 1, \"timestamp\": ").append(now).append("}\n");
+        }
+
+        BatchTransactionsResponse response = read(body.toString());
+        assertEquals(response.getAccepted(), total);
+        assertEquals(statisticsService.getBatches(),
+                List.of(TransactionsBatch.CHUNK_SIZE, TransactionsBatch.CHUNK_SIZE, 1));
+    }
+
+    @Test
+    public void emptyBodyTest() throws IOException {
+        assertEquals(read("").getAccepted(), 0);
+        assertEquals(read("[]").getAccepted(), 0);
+        assertTrue(statisticsService.getBatches().isEmpty());
+    }
+
+    @Test
+    public void malformedBodyTest() {
+        final long now = System.currentTimeMillis();
+        MalformedBatchException exception = assertThrows(MalformedBatchException.class, () -> read("[" +
+                "{\"amount\": 1, \"timestamp\": " + now + "}," +
+                "{\"amount\": \"abc\", \"timestamp\": " + now + "}" +
+                "]"));
+
+        // transactions before the error are saved
+        assertEquals(exception.getResponse().getAccepted(), 1);
+        assertEquals(statisticsService.getSum(), 1, 0.01);
+    }
+
+    private BatchTransactionsResponse read(String body) throws IOException {
+        return reader.read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+}
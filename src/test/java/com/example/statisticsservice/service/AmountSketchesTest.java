@@ -0,0 +1,138 @@
+package com.example.statisticsservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AmountSketchesTest {
+
+    private static final long SECOND = 1000;
+    private static final long WINDOW_IN_MS = 60 * SECOND;
+    private static final long NOW = 1_000_000 * SECOND + 123;
+    private static final int PRECISION = 12;
+
+    private final AmountSketches sketches = new AmountSketches(WINDOW_IN_MS, SECOND, PRECISION, 64, SECOND);
+
+    @Test
+    public void distinctAmountsMatchExactCountTest() {
+        final Random random = new Random(7);
+        final Set<Double> exact = new HashSet<>();
+        for (int index = 0; index < 200_000; index++) {
+            final double amount = random.nextInt(50_000) / 100.0;
+            exact.add(amount);
+            add(amount, NOW - (long) (random.nextDouble() * WINDOW_IN_MS));
+        }
+
+        // 3 standard errors of precision 12
+        final long distinct = query(WINDOW_IN_MS, 10).getDistinctAmounts();
+        assertEquals(distinct, exact.size(), exact.size() * 0.05);
+
+        // small cardinalities are counted almost exactly
+        final AmountSketches few = new AmountSketches(WINDOW_IN_MS, SECOND, PRECISION, 64, SECOND);
+        final long stamp = few.beginUpdate();
+        for (int index = 0; index < 1000; index++) {
+            few.add(index % 20, NOW - index);
+        }
+        few.endUpdate(stamp);
+        final MergedSketches merged = new MergedSketches(PRECISION);
+        few.addTo(merged, WINDOW_IN_MS, NOW);
+        assertEquals(merged.toWindowSketches(10, null).getDistinctAmounts(), 20);
+    }
+
+    @Test
+    public void heavyHittersMatchExactCountsTest() {
+        final Random random = new Random(11);
+        final Map<Double, Long> exact = new HashMap<>();
+        for (int index = 0; index < 100_000; index++) {
+            // a few frequent amounts in a long tail of rare ones
+            final double amount = random.nextInt(3) == 0
+                    ? 1 + (int) (10 * random.nextDouble() * random.nextDouble())
+                    : 100 + random.nextInt(1_000_000) / 100.0;
+            exact.merge(amount, 1L, Long::sum);
+            add(amount, NOW - (long) (random.nextDouble() * WINDOW_IN_MS));
+        }
+
+        final List<HeavyHitter> heavyHitters = query(WINDOW_IN_MS, 5).getHeavyHitters();
+        final List<Map.Entry<Double, Long>> exactTop = new ArrayList<>(exact.entrySet());
+        exactTop.sort(Map.Entry.<Double, Long>comparingByValue().reversed());
+        assertEquals(heavyHitters.size(), 5);
+        for (int rank = 0; rank < heavyHitters.size(); rank++) {
+            final HeavyHitter hitter = heavyHitters.get(rank);
+            assertEquals(hitter.getAmount(), exactTop.get(rank).getKey(), 0);
+            final long exactCount = exact.get(hitter.getAmount());
+            assertTrue(hitter.getCount() >= exactCount, hitter + " exact=" + exactCount);
+            assertTrue(hitter.getCount() - hitter.getError() <= exactCount, hitter + " exact=" + exactCount);
+        }
+    }
+
+    @Test
+    public void sketchesExpireWithBucketsTest() {
+        add(1, NOW - 50 * SECOND);
+        add(2, NOW - 50 * SECOND);
+        add(3, NOW - 5 * SECOND);
+        add(3, NOW);
+
+        WindowSketches all = query(WINDOW_IN_MS, 10);
+        assertEquals(all.getDistinctAmounts(), 3);
+        assertEquals(all.getHeavyHitters().get(0).getAmount(), 3, 0);
+        assertEquals(all.getHeavyHitters().get(0).getCount(), 2);
+        assertEquals(query(10 * SECOND, 10).getDistinctAmounts(), 1);
+
+        // the old bucket is out of the window, then its slot of the ring of 62 buckets is reused
+        final long later = NOW + 20 * SECOND;
+        final MergedSketches expired = new MergedSketches(PRECISION);
+        sketches.addTo(expired, WINDOW_IN_MS, later);
+        assertEquals(expired.toWindowSketches(10, null).getDistinctAmounts(), 1);
+
+        add(4, NOW + 12 * SECOND);
+        final MergedSketches reused = new MergedSketches(PRECISION);
+        sketches.addTo(reused, WINDOW_IN_MS, later);
+        final WindowSketches reusedSketches = reused.toWindowSketches(10, null);
+        assertEquals(reusedSketches.getDistinctAmounts(), 2);
+        assertEquals(reusedSketches.getHeavyHitters().size(), 2);
+        assertEquals(reusedSketches.getHeavyHitters().get(0).getAmount(), 3, 0);
+    }
+
+    @Test
+    public void shardsAreMergedTest() {
+        final AmountSketches other = new AmountSketches(WINDOW_IN_MS, SECOND, PRECISION, 64, SECOND);
+        final long stamp = other.beginUpdate();
+        other.add(1, NOW);
+        other.add(2, NOW);
+        other.addAggregate(NOW, 5, 7, 7);
+        other.endUpdate(stamp);
+        add(2, NOW);
+        add(3, NOW);
+
+        final MergedSketches merged = new MergedSketches(PRECISION);
+        sketches.addTo(merged, WINDOW_IN_MS, NOW);
+        other.addTo(merged, WINDOW_IN_MS, NOW);
+        final WindowSketches windowSketches = merged.toWindowSketches(2, 10L);
+        assertEquals(windowSketches.getDistinctAmounts(), 4);
+        assertEquals(windowSketches.getDistinctKeys(), Long.valueOf(10));
+        assertEquals(windowSketches.getHeavyHitters().get(0).getAmount(), 7, 0);
+        assertEquals(windowSketches.getHeavyHitters().get(0).getCount(), 5);
+        assertEquals(windowSketches.getHeavyHitters().get(1).getAmount(), 2, 0);
+        assertEquals(windowSketches.getHeavyHitters().get(1).getCount(), 2);
+    }
+
+    private void add(double amount, long timestamp) {
+        final long stamp = sketches.beginUpdate();
+        sketches.add(amount, timestamp);
+        sketches.endUpdate(stamp);
+    }
+
+    private WindowSketches query(long windowInMs, int limit) {
+        final MergedSketches merged = new MergedSketches(PRECISION);
+        sketches.addTo(merged, windowInMs, NOW);
+        return merged.toWindowSketches(limit, null);
+    }
+}
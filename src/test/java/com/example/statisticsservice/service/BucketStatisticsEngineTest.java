@@ -0,0 +1,244 @@
+package com.example.statisticsservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BucketStatisticsEngineTest {
+
+    private static final QuantileSketch.Mapping QUANTILE_MAPPING = new QuantileSketch.Mapping(0.01);
+
+    @Test
+    public void addAndExpireTest() {
+        BucketStatisticsEngine engine = newEngine(1000, 1);
+
+        engine.add(1, 10_000);
+        engine.add(5, 10_000);
+        engine.add(3, 10_500);
+        assertEquals(engine.size(), 2);
+
+        Statistics stat = engine.getStatistics();
+        assertEquals(stat.getSum(), 9, 0.01);
+        assertEquals(stat.getCount(), 3);
+        assertEquals(stat.getAvg(), 3, 0.01);
+        assertEquals(stat.getMin(), 1, 0.01);
+        assertEquals(stat.getMax(), 5, 0.01);
+
+        // the first bucket is still valid
+        assertEquals(engine.removeExpired(11_000, 100), 0);
+
+        assertEquals(engine.removeExpired(11_001, 100), 1);
+        stat = engine.getStatistics();
+        assertEquals(stat.getSum(), 3, 0.01);
+        assertEquals(stat.getCount(), 1);
+        assertEquals(stat.getMin(), 3, 0.01);
+        assertEquals(stat.getMax(), 3, 0.01);
+
+        assertEquals(engine.removeExpired(21_000, 100), 1);
+        assertEmptyStatistics(engine.getStatistics());
+        assertEquals(engine.size(), 0);
+        assertEquals(engine.removeExpired(21_000, 100), 0);
+    }
+
+    @Test
+    public void addAggregateTest() {
+        BucketStatisticsEngine engine = newEngine(1000, 10);
+
+        engine.add(4, 10_000);
+        engine.addAggregate(10_005, 3, 6, 1, 3);
+
+        Statistics stat = engine.getStatistics();
+        assertEquals(stat.getSum(), 10, 0.01);
+        assertEquals(stat.getCount(), 4);
+        assertEquals(stat.getMin(), 1, 0.01);
+        assertEquals(stat.getMax(), 4, 0.01);
+
+        assertEquals(engine.removeExpired(11_010, 100), 1);
+        assertEmptyStatistics(engine.getStatistics());
+    }
+
+    @Test
+    public void coarseResolutionTest() {
+        BucketStatisticsEngine engine = newEngine(60_000, 1000);
+
+        engine.add(1, 10_000);
+        engine.add(2, 10_999);
+        engine.add(4, 11_000);
+
+        // bucket [10000, 11000) expires only when its last millisecond leaves the window
+        assertEquals(engine.removeExpired(70_999, 100), 0);
+        assertEquals(engine.removeExpired(71_000, 100), 1);
+
+        Statistics stat = engine.getStatistics();
+        assertEquals(stat.getSum(), 4, 0.01);
+        assertEquals(stat.getCount(), 1);
+    }
+
+    @Test
+    public void removeLimitTest() {
+        BucketStatisticsEngine engine = newEngine(1000, 1);
+        for (int index = 0; index < 10; index++) {
+            engine.add(index, 5_000 + index);
+        }
+
+        assertEquals(engine.removeExpired(6_000, 3), 0);
+        assertEquals(engine.removeExpired(6_010, 3), 3);
+        assertEquals(engine.getStatistics().getCount(), 7);
+        assertEquals(engine.getStatistics().getMin(), 3, 0.01);
+
+        assertEquals(engine.removeExpired(11_000, 100), 7);
+        assertEmptyStatistics(engine.getStatistics());
+    }
+
+    @Test
+    public void ringReuseTest() {
+        BucketStatisticsEngine engine = newEngine(1000, 100);
+
+        engine.add(7, 1_000);
+        // the same slot, but newer by the whole ring, the old bucket is dropped without explicit removal
+        engine.add(2, 2_100);
+
+        Statistics stat = engine.getStatistics();
+        assertEquals(stat.getSum(), 2, 0.01);
+        assertEquals(stat.getCount(), 1);
+        assertEquals(stat.getMax(), 2, 0.01);
+
+        // too old for the ring
+        engine.add(9, 1_000);
+        assertEquals(engine.getStatistics().getCount(), 1);
+    }
+
+    @Test
+    public void expiredElementIsIgnoredTest() {
+        BucketStatisticsEngine engine = newEngine(1000, 1);
+        engine.add(1, 5_000);
+        assertEquals(engine.removeExpired(7_000, 100), 1);
+
+        engine.add(1, 4_000);
+        assertEmptyStatistics(engine.getStatistics());
+    }
+
+    @Test
+    public void extremesTest() {
+        BucketStatisticsEngine engine = newEngine(1000, 10);
+        engine.add(5, 10_000);
+        engine.add(1, 10_010);
+        engine.add(9, 10_020);
+        engine.add(4, 10_030);
+        // late transaction
+        engine.add(7, 10_005);
+
+        assertEquals(engine.getStatistics().getMax(), 9, 0.01);
+        assertEquals(engine.getStatistics().getMin(), 1, 0.01);
+
+        assertEquals(engine.removeExpired(11_020, 100), 2);
+        assertEquals(engine.getStatistics().getMax(), 9, 0.01);
+        assertEquals(engine.getStatistics().getMin(), 4, 0.01);
+
+        assertEquals(engine.removeExpired(11_030, 100), 1);
+        assertEquals(engine.getStatistics().getMax(), 4, 0.01);
+        assertEquals(engine.getStatistics().getMin(), 4, 0.01);
+    }
+
+    @Test
+    public void sharedWindowsTest() {
+        final long[] windowsInMs = {1000, 250, 5000};
+        BucketStatisticsEngine engine =
+                new BucketStatisticsEngine(windowsInMs, 10, 0, SumAccumulator.Compensated::new, QUANTILE_MAPPING);
+        BucketStatisticsEngine[] separateEngines = new BucketStatisticsEngine[windowsInMs.length];
+        for (int window = 0; window < windowsInMs.length; window++) {
+            separateEngines[window] = newEngine(windowsInMs[window], 10);
+        }
+
+        // every window of the shared ring must be the same as a separate engine with this window
+        final Random random = new Random(7);
+        long now = 100_000;
+        for (int step = 0; step < 20_000; step++) {
+            now += random.nextInt(5);
+            final long timestamp = now - random.nextInt(6000);
+            final double amount = random.nextInt(1000);
+            engine.add(amount, timestamp);
+            for (BucketStatisticsEngine separateEngine : separateEngines) {
+                separateEngine.add(amount, timestamp);
+            }
+
+            final int limit = 1 + random.nextInt(3);
+            engine.removeExpired(now, limit);
+            for (BucketStatisticsEngine separateEngine : separateEngines) {
+                separateEngine.removeExpired(now, limit);
+            }
+
+            for (int window = 0; window < windowsInMs.length; window++) {
+                Statistics expected = separateEngines[window].getStatistics();
+                Statistics actual = engine.getStatistics(window);
+                assertEquals(actual.getCount(), expected.getCount(), "step=" + step + ", window=" + window);
+                assertEquals(actual.getSum(), expected.getSum(), 0.01);
+                assertEquals(actual.getMin(), expected.getMin(), 0.01);
+                assertEquals(actual.getMax(), expected.getMax(), 0.01);
+                assertEquals(actual.getP99(), expected.getP99(), 0.01);
+            }
+        }
+
+        assertEquals(engine.size(), separateEngines[2].size());
+        assertEquals(engine.nextExpiryTime(), Math.min(separateEngines[0].nextExpiryTime(),
+                Math.min(separateEngines[1].nextExpiryTime(), separateEngines[2].nextExpiryTime())));
+    }
+
+    @Test
+    public void quantilesExpireWithBucketsTest() {
+        BucketStatisticsEngine engine = newEngine(1000, 100);
+        for (int amount = 1; amount <= 100; amount++) {
+            engine.add(1000 + amount, 10_000);
+            engine.add(amount, 10_500);
+        }
+
+        Statistics stat = engine.getStatistics();
+        assertEquals(stat.getP50(), 100, 100 * 0.01);
+        assertEquals(stat.getP99(), 1099, 1099 * 0.01);
+
+        // the bucket with large amounts expires together with its bins
+        assertEquals(engine.removeExpired(11_100, 100), 1);
+        stat = engine.getStatistics();
+        assertEquals(stat.getP50(), 50, 50 * 0.01);
+        assertEquals(stat.getP95(), 95, 95 * 0.01);
+        assertEquals(stat.getP99(), 99, 99 * 0.01);
+    }
+
+    @Test
+    public void futureSkewTest() {
+        BucketStatisticsEngine engine = new BucketStatisticsEngine(new long[]{1000}, 100, 1000,
+                SumAccumulator.Compensated::new, QUANTILE_MAPPING);
+
+        // at 10_000 both buckets are live, without room for skew they would share a slot
+        engine.add(1, 9_500);
+        engine.add(2, 10_600);
+        assertEquals(engine.getStatistics().getCount(), 2);
+
+        assertEquals(engine.removeExpired(10_600, 100), 1);
+        assertEquals(engine.getStatistics().getSum(), 2, 0.01);
+        assertEquals(engine.removeExpired(11_699, 100), 0);
+        assertEquals(engine.removeExpired(11_700, 100), 1);
+        assertEmptyStatistics(engine.getStatistics());
+    }
+
+    @Test
+    public void invalidResolutionTest() {
+        assertThrows(IllegalArgumentException.class, () -> newEngine(1000, 0));
+        assertThrows(IllegalArgumentException.class, () -> newEngine(1000, 2000));
+    }
+
+    private BucketStatisticsEngine newEngine(long slidingWindowInMs, long resolutionInMs) {
+        return new BucketStatisticsEngine(slidingWindowInMs, resolutionInMs, SumAccumulator.Compensated::new,
+                QUANTILE_MAPPING);
+    }
+
+    private void assertEmptyStatistics(Statistics stat) {
+        assertEquals(stat.getSum(), 0, 0.01);
+        assertEquals(stat.getCount(), 0);
+        assertEquals(stat.getAvg(), 0, 0.01);
+        assertEquals(stat.getMin(), 0, 0.01);
+        assertEquals(stat.getMax(), 0, 0.01);
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.statisticsservice.service;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterCoordinatorTest {
+
+    private static final double RELATIVE_ACCURACY = 0.01;
+
+    private final List<StatisticsService> nodes = new ArrayList<>();
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        servers.forEach(server -> server.stop(0));
+        nodes.forEach(StatisticsService::destroy);
+    }
+
+    @Test
+    public void mergedStatisticsMatchExactStatisticsTest() throws Exception {
+        final List<String> peers = new ArrayList<>();
+        for (int node = 0; node < 3; node++) {
+            peers.add(startNode());
+        }
+
+        // recent transactions are in both windows, older ones only in the longest one,
+        // none of them is near a window boundary, so bucket resolution doesn't matter
+        final Random random = new Random(7);
+        final long now = System.currentTimeMillis();
+        final List<Double> recent = new ArrayList<>();
+        final List<Double> all = new ArrayList<>();
+        for (int index = 0; index < 3000; index++) {
+            final double amount = Math.exp(random.nextGaussian() * 2);
+            final boolean isRecent = index % 3 != 0;
+            final long timestamp = isRecent ? now - random.nextInt(5_000) : now - 20_000 - random.nextInt(20_000);
+            assertTrue(nodes.get(index % nodes.size()).saveTransaction(amount, timestamp));
+            all.add(amount);
+            if (isRecent) {
+                recent.add(amount);
+            }
+        }
+
+        final ClusterCoordinator coordinator = new ClusterCoordinator(new StatisticsService(coordinatorProperties(peers)),
+                coordinatorProperties(peers));
+        final ClusterStatistics statistics = awaitCount(coordinator, all.size());
+        assertEquals(statistics.getNodes(), 3);
+        assertEquals(statistics.getMergedNodes(), 3);
+        assertTrue(statistics.getStalenessInMs(System.currentTimeMillis()) < 5_000);
+        assertMatches(statistics.getStatistics(0), all);
+        assertMatches(statistics.getStatistics(1), recent);
+    }
+
+    @Test
+    public void unreachableNodeIsLeftOutTest() throws Exception {
+        final List<String> peers = new ArrayList<>();
+        peers.add(startNode());
+        peers.add(startNode());
+        // nothing listens on the port of a stopped server
+        servers.get(1).stop(0);
+
+        nodes.get(0).saveTransaction(5, System.currentTimeMillis());
+        final ClusterCoordinator coordinator = new ClusterCoordinator(new StatisticsService(coordinatorProperties(peers)),
+                coordinatorProperties(peers));
+        final ClusterStatistics statistics = awaitCount(coordinator, 1);
+        assertEquals(statistics.getNodes(), 2);
+        assertEquals(statistics.getMergedNodes(), 1);
+        assertEquals(statistics.getStatistics(0).getSum(), 5, 0.01);
+    }
+
+    @Test
+    public void staleNodeIsLeftOutTest() throws Exception {
+        final List<String> peers = new ArrayList<>();
+        peers.add(startNode());
+        nodes.get(0).saveTransaction(5, System.currentTimeMillis());
+
+        final StatisticsProperties properties = coordinatorProperties(peers);
+        properties.getCluster().setMaxStaleness(Duration.ofMillis(50));
+        final ClusterCoordinator coordinator = new ClusterCoordinator(new StatisticsService(properties), properties);
+        awaitCount(coordinator, 1);
+
+        // the node is not polled again, so its copy gets older than max staleness
+        servers.get(0).stop(0);
+        Thread.sleep(100);
+        coordinator.poll();
+        assertEquals(coordinator.getStatistics().getMergedNodes(), 0);
+        assertEquals(coordinator.getStatistics().getStatistics(0).getCount(), 0);
+    }
+
+    @Test
+    public void partialAggregatesEncodingTest() {
+        final QuantileSketch.Mapping mapping = new QuantileSketch.Mapping(RELATIVE_ACCURACY);
+        final PartialAggregates partials = new PartialAggregates(1000, 10_000, 1000, mapping);
+        final long now = 1_000_000;
+        partials.add(100, now - 12_500);
+        // the slot of an expired bucket is reused by a newer one, and is not reverted by older transactions
+        partials.add(3, now - 500);
+        partials.add(50, now - 12_500);
+        partials.add(7, now - 500);
+        partials.addAggregate(now - 5_500, 4, 10, 1, 4);
+        assertTrue(partials.isChanged());
+
+        final PartialAggregates.Decoded decoded = PartialAggregates.Decoded.decode(partials.encode(now));
+        assertFalse(partials.isChanged());
+        assertEquals(decoded.asOfMs(), now);
+        assertTrue(decoded.isCompatible(mapping));
+        assertFalse(decoded.isCompatible(new QuantileSketch.Mapping(0.02)));
+
+        final MergedStatistics merged = new MergedStatistics(mapping);
+        decoded.mergeInto(merged, 2_000, now);
+        assertEquals(merged.toStatistics().getCount(), 2);
+        assertEquals(merged.toStatistics().getSum(), 10, 0.01);
+
+        merged.reset();
+        decoded.mergeInto(merged, 10_000, now);
+        final Statistics stat = merged.toStatistics();
+        assertEquals(stat.getCount(), 6);
+        assertEquals(stat.getSum(), 20, 0.01);
+        assertEquals(stat.getMin(), 1, 0.01);
+        assertEquals(stat.getMax(), 7, 0.01);
+
+        assertThrows(IllegalArgumentException.class, () -> PartialAggregates.Decoded.decode(new byte[10]));
+        final byte[] truncated = Arrays.copyOf(partials.encode(now), PartialAggregates.HEADER_SIZE + 5);
+        assertThrows(IllegalArgumentException.class, () -> PartialAggregates.Decoded.decode(truncated));
+    }
+
+    /**
+     * Starts a node and serves its partial aggregates over HTTP.
+     *
+     * @return base URL of the node
+     */
+    private String startNode() throws IOException {
+        final StatisticsProperties properties = new StatisticsProperties();
+        properties.getSliding().setWindows(List.of(Duration.ofSeconds(10)));
+        properties.getQuantiles().setRelativeAccuracy(RELATIVE_ACCURACY);
+        properties.getCluster().setNode(true);
+        final StatisticsService node = new StatisticsService(properties);
+        node.init();
+        nodes.add(node);
+
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/internal/partials", exchange -> {
+            final byte[] partials = node.getPartialAggregates();
+            exchange.sendResponseHeaders(200, partials.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(partials);
+            }
+        });
+        server.start();
+        servers.add(server);
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    private StatisticsProperties coordinatorProperties(List<String> peers) {
+        final StatisticsProperties properties = new StatisticsProperties();
+        properties.getSliding().setWindows(List.of(Duration.ofSeconds(10)));
+        properties.getQuantiles().setRelativeAccuracy(RELATIVE_ACCURACY);
+        properties.getCluster().setPeers(peers);
+        return properties;
+    }
+
+    /**
+     * Polls until all transactions are merged, nodes publish them asynchronously.
+     */
+    private ClusterStatistics awaitCount(ClusterCoordinator coordinator, long count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 2000;
+        while (true) {
+            coordinator.poll();
+            final ClusterStatistics statistics = coordinator.getStatistics();
+            if (statistics.getStatistics(0).getCount() == count) {
+                return statistics;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "timeout waiting for count=" + count);
+            Thread.sleep(10);
+        }
+    }
+
+    private void assertMatches(Statistics stat, List<Double> amounts) {
+        final double[] values = amounts.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        assertEquals(stat.getCount(), values.length);
+        assertEquals(stat.getSum(), Arrays.stream(values).sum(), 1e-6);
+        assertEquals(stat.getMin(), values[0], 0);
+        assertEquals(stat.getMax(), values[values.length - 1], 0);
+        assertQuantile(stat.getP50(), values, 0.5);
+        assertQuantile(stat.getP95(), values, 0.95);
+        assertQuantile(stat.getP99(), values, 0.99);
+    }
+
+    private void assertQuantile(double actual, double[] values, double quantile) {
+        final long rank = Math.max(1, (long) Math.ceil(quantile * values.length));
+        final double expected = values[(int) rank - 1];
+        assertEquals(actual, expected, expected * RELATIVE_ACCURACY + 1e-12, "quantile=" + quantile);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.statisticsservice.service;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DrainPolicyTest {
+
+    @Test
+    public void fixedBatchTest() {
+        final StatisticsProperties.Drain drain = new StatisticsProperties.Drain();
+        drain.setAdaptive(false);
+        final DrainPolicy policy = new DrainPolicy(drain);
+        policy.added(1_000, 1_000);
+        policy.expired(1_000, 1_000);
+
+        assertEquals(policy.addBatch(false), drain.getMinBatch());
+        assertEquals(policy.expiryBatch(true), drain.getMinBatch());
+    }
+
+    @Test
+    public void batchFitsTargetLatencyTest() {
+        final StatisticsProperties.Drain drain = new StatisticsProperties.Drain();
+        drain.setTargetLatency(Duration.ofMillis(1));
+        final DrainPolicy policy = new DrainPolicy(drain);
+        // min batch until the cost is measured
+        assertEquals(policy.addBatch(false), drain.getMinBatch());
+
+        policy.added(1_000, 100_000);
+        policy.expired(100, 50_000);
+        policy.published(200_000);
+        assertEquals(policy.addBatch(false), 8_000);
+        assertEquals(policy.expiryBatch(false), 1_600);
+
+        // new and expired transactions share the pass
+        assertEquals(policy.addBatch(true), 4_000);
+        assertEquals(policy.expiryBatch(true), 800);
+    }
+
+    @Test
+    public void batchBoundsTest() {
+        final StatisticsProperties.Drain drain = new StatisticsProperties.Drain();
+        drain.setMinBatch(10);
+        drain.setMaxBatch(1_000);
+        final DrainPolicy policy = new DrainPolicy(drain);
+
+        policy.added(1, 1);
+        assertEquals(policy.addBatch(false), 1_000);
+
+        // a publication, which takes longer than target latency, leaves min batch
+        policy.published(Duration.ofMillis(5).toNanos());
+        assertEquals(policy.addBatch(false), 10);
+    }
+
+    @Test
+    public void invalidBatchesTest() {
+        final StatisticsProperties.Drain drain = new StatisticsProperties.Drain();
+        drain.setMinBatch(1_000);
+        drain.setMaxBatch(100);
+        assertThrows(IllegalArgumentException.class, () -> new DrainPolicy(drain));
+    }
+}
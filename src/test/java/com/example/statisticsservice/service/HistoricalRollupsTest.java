@@ -0,0 +1,108 @@
+package com.example.statisticsservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoricalRollupsTest {
+
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+
+    private final HistoricalRollups rollups = new HistoricalRollups(
+            new long[]{SECOND, MINUTE, HOUR}, new long[]{HOUR, 24 * HOUR, 30 * 24 * HOUR}, SECOND);
+
+    @Test
+    public void seriesMatchesExactAggregatesTest() {
+        final long now = 1_000 * 24 * HOUR + 12_345;
+        final Random random = new Random(5);
+        final long[] timestamps = new long[20_000];
+        final double[] amounts = new double[timestamps.length];
+        for (int index = 0; index < timestamps.length; index++) {
+            // mostly recent transactions and some of the last days, in no particular order
+            timestamps[index] = now - (index % 4 == 0 ? (long) (random.nextDouble() * 3 * 24 * HOUR)
+                    : (long) (random.nextDouble() * 2 * HOUR));
+            amounts[index] = Math.round(random.nextDouble() * 10_000) / 100.0;
+            add(amounts[index], timestamps[index]);
+        }
+
+        assertSeries(now - 30 * MINUTE, now, 10 * SECOND, now, timestamps, amounts);
+        assertSeries(now - 30 * MINUTE, now, 5 * MINUTE, now, timestamps, amounts);
+        // older than the per second tier, so it's read from the per minute one
+        assertSeries(now - 20 * HOUR, now, 30 * MINUTE, now, timestamps, amounts);
+        assertSeries(now - 2 * 24 * HOUR, now, 6 * HOUR, now, timestamps, amounts);
+    }
+
+    @Test
+    public void invalidRangeTest() {
+        final long now = 1_000 * 24 * HOUR;
+        // not a multiple of any resolution
+        assertThrows(IllegalArgumentException.class, () -> rollups.query(now - MINUTE, now, 1500, now));
+        // per second history is not retained that long, and the step is not a multiple of a minute
+        assertThrows(IllegalArgumentException.class, () -> rollups.query(now - 2 * HOUR, now, 10 * SECOND, now));
+        assertThrows(IllegalArgumentException.class, () -> rollups.query(now - 31 * 24 * HOUR, now, HOUR, now));
+        // too many points
+        assertThrows(IllegalArgumentException.class, () -> rollups.query(now - 3 * HOUR, now, SECOND, now));
+        assertThrows(IllegalArgumentException.class, () -> rollups.query(now, now - MINUTE, MINUTE, now));
+        assertThrows(IllegalArgumentException.class, () -> new HistoricalRollups(
+                new long[]{MINUTE}, new long[]{SECOND}, 0));
+
+        assertEquals(rollups.query(now, now, MINUTE, now).size(), 0);
+    }
+
+    @Test
+    public void emptyPointsTest() {
+        final long now = 1_000 * 24 * HOUR;
+        add(5, now - 90 * SECOND);
+        final StatisticsSeries series = rollups.query(now - 3 * MINUTE, now, MINUTE, now);
+
+        assertEquals(series.size(), 3);
+        assertEquals(series.getTimestamp(0), now - 3 * MINUTE);
+        assertEquals(series.getCount(0), 0);
+        assertEquals(series.getMin(0), 0, 0);
+        assertEquals(series.getMax(0), 0, 0);
+        assertEquals(series.getAvg(0), 0, 0);
+        assertEquals(series.getCount(1), 1);
+        assertEquals(series.getSum(1), 5, 0);
+        assertEquals(series.getCount(2), 0);
+    }
+
+    private void add(double amount, long timestamp) {
+        final long stamp = rollups.beginUpdate();
+        try {
+            rollups.add(amount, timestamp);
+        } finally {
+            rollups.endUpdate(stamp);
+        }
+    }
+
+    private void assertSeries(long from, long to, long step, long now, long[] timestamps, double[] amounts) {
+        final StatisticsSeries series = rollups.query(from, to, step, now);
+        final long alignedFrom = Math.floorDiv(from, step) * step;
+        assertEquals(series.size(), (int) ((to - alignedFrom + step - 1) / step));
+
+        for (int point = 0; point < series.size(); point++) {
+            final long pointFrom = alignedFrom + point * step;
+            assertEquals(series.getTimestamp(point), pointFrom);
+            long count = 0;
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int index = 0; index < timestamps.length; index++) {
+                if (timestamps[index] >= pointFrom && timestamps[index] < pointFrom + step) {
+                    count++;
+                    sum += amounts[index];
+                    min = Math.min(min, amounts[index]);
+                    max = Math.max(max, amounts[index]);
+                }
+            }
+            assertEquals(series.getCount(point), count, "step=" + step + ", point=" + point);
+            assertEquals(series.getSum(point), sum, 1e-6);
+            assertEquals(series.getMin(point), count == 0 ? 0 : min, 0);
+            assertEquals(series.getMax(point), count == 0 ? 0 : max, 0);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.statisticsservice.service;
+
+import com.example.statisticsservice.config.StatisticsProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyedStatisticsTest {
+
+    private static final long WINDOW_IN_MS = 60_000;
+    private static final long NOW = 1_000_000;
+
+    @Test
+    public void addAndGetTest() {
+        KeyedStatistics statistics = create(100);
+        assertTrue(statistics.add("EUR", 10, NOW - 30_000, NOW));
+        assertTrue(statistics.add("EUR", 2, NOW, NOW));
+        assertTrue(statistics.add("USD", 5, NOW, NOW));
+
+        KeyStatistics eur = statistics.get("EUR", NOW);
+        assertEquals(eur.getKey(), "EUR");
+        assertEquals(eur.getSum(), 12, 0);
+        assertEquals(eur.getMax(), 10, 0);
+        assertEquals(eur.getMin(), 2, 0);
+        assertEquals(eur.getCount(), 2);
+        assertEquals(eur.getAvg(), 6, 0);
+        assertEquals(statistics.get("USD", NOW).getCount(), 1);
+
+        assertNull(statistics.get("GBP", NOW));
+        assertEquals(statistics.size(), 2);
+    }
+
+    @Test
+    public void expiryTest() {
+        KeyedStatistics statistics = create(100);
+        statistics.add("EUR", 10, NOW - 30_000, NOW);
+        statistics.add("EUR", 2, NOW, NOW);
+
+        // already expired transaction is ignored
+        assertTrue(statistics.add("EUR", 100, NOW - 2 * WINDOW_IN_MS, NOW));
+
+        KeyStatistics eur = statistics.get("EUR", NOW + 40_000);
+        assertEquals(eur.getSum(), 2, 0);
+        assertEquals(eur.getCount(), 1);
+
+        eur = statistics.get("EUR", NOW + 2 * WINDOW_IN_MS);
+        assertEquals(eur.getCount(), 0);
+        assertEquals(eur.getSum(), 0, 0);
+    }
+
+    @Test
+    public void ringReuseTest() {
+        KeyedStatistics statistics = create(100);
+        for (long time = NOW; time < NOW + 5 * WINDOW_IN_MS; time += 500) {
+            statistics.add("EUR", 1, time, time);
+        }
+
+        final long now = NOW + 5 * WINDOW_IN_MS - 500;
+        KeyStatistics eur = statistics.get("EUR", now);
+        // buckets are 1s wide, so the oldest bucket may be partially expired
+        assertTrue(eur.getCount() >= 120 && eur.getCount() <= 122, "count=" + eur.getCount());
+    }
+
+    @Test
+    public void topTest() {
+        KeyedStatistics statistics = create(100);
+        statistics.add("a", 100, NOW, NOW);
+        statistics.add("b", 1, NOW, NOW);
+        statistics.add("b", 1, NOW, NOW);
+        statistics.add("b", 1, NOW, NOW);
+        statistics.add("c", 50, NOW, NOW);
+        statistics.add("c", 50, NOW, NOW);
+        statistics.add("d", 1000, NOW - 50_000, NOW);
+
+        assertEquals(keys(statistics.top(2, KeyedStatistics.Order.SUM, NOW)), List.of("d", "a"));
+        assertEquals(keys(statistics.top(2, KeyedStatistics.Order.COUNT, NOW)), List.of("b", "c"));
+        // "d" has expired
+        assertEquals(keys(statistics.top(10, KeyedStatistics.Order.SUM, NOW + 20_000)), List.of("a", "c", "b"));
+        assertTrue(statistics.top(0, KeyedStatistics.Order.SUM, NOW).isEmpty());
+    }
+
+    @Test
+    public void idleKeysAreEvictedTest() {
+        KeyedStatistics statistics = create(2);
+        assertTrue(statistics.add("a", 1, NOW, NOW));
+        assertTrue(statistics.add("b", 1, NOW, NOW));
+        assertFalse(statistics.add("c", 1, NOW, NOW));
+        assertEquals(statistics.getRejectedTransactions(), 1);
+        // known keys are still counted
+        assertTrue(statistics.add("a", 1, NOW, NOW));
+
+        final long later = NOW + WINDOW_IN_MS + 30_000;
+        assertTrue(statistics.add("a", 1, later, later));
+        // "b" is idle, so its slot is reused
+        assertTrue(statistics.add("c", 1, later, later));
+        assertNull(statistics.get("b", later));
+        assertEquals(statistics.get("c", later).getCount(), 1);
+        assertEquals(statistics.get("a", later).getCount(), 1);
+        assertEquals(statistics.size(), 2);
+    }
+
+    @Test
+    public void distinctKeysMatchExactCountTest() {
+        StatisticsProperties.Keys properties = new StatisticsProperties.Keys();
+        properties.setMaxKeys(1000);
+        properties.setResolution(Duration.ofSeconds(1));
+        properties.setStripes(16);
+        KeyedStatistics statistics = new KeyedStatistics(WINDOW_IN_MS, properties, 0, 12);
+
+        // most keys don't get a slot, but they are counted as distinct
+        for (int index = 0; index < 100_000; index++) {
+            statistics.add("key-" + (index % 30_000), 1, NOW - index % WINDOW_IN_MS, NOW);
+        }
+        assertTrue(statistics.getRejectedTransactions() > 0);
+        assertEquals(statistics.distinctKeys(WINDOW_IN_MS, NOW), 30_000, 30_000 * 0.05);
+        assertEquals(statistics.distinctKeys(1000, NOW), 1000, 1000 * 0.05);
+        // keys are kept only for the primary window
+        assertNull(statistics.distinctKeys(2 * WINDOW_IN_MS, NOW));
+        assertNull(create(100).distinctKeys(WINDOW_IN_MS, NOW));
+    }
+
+    private static KeyedStatistics create(int maxKeys) {
+        StatisticsProperties.Keys properties = new StatisticsProperties.Keys();
+        properties.setMaxKeys(maxKeys);
+        properties.setResolution(Duration.ofSeconds(1));
+        properties.setStripes(1);
+        return new KeyedStatistics(WINDOW_IN_MS, properties, 0, 0);
+    }
+
+    private static List<String> keys(List<KeyStatistics> statistics) {
+        return statistics.stream().map(KeyStatistics::getKey).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.statisticsservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongIntHashMapTest {
+
+    @Test
+    public void putGetRemoveTest() {
+        LongIntHashMap map = new LongIntHashMap(2);
+        assertTrue(map.put(1, 10));
+        assertTrue(map.put(2, 20));
+        assertTrue(map.put(2, 21));
+        assertFalse(map.put(3, 30));
+        assertEquals(map.get(2, -1), 21);
+        assertEquals(map.get(3, -1), -1);
+
+        map.remove(1);
+        map.remove(1);
+        assertEquals(map.size(), 1);
+        assertTrue(map.put(3, 30));
+        assertEquals(map.get(3, -1), 30);
+    }
+
+    @Test
+    public void randomOperationsTest() {
+        final Random random = new Random(1);
+        final int maxSize = 1000;
+        LongIntHashMap map = new LongIntHashMap(maxSize);
+        Map<Long, Integer> expected = new HashMap<>();
+
+        for (int operation = 0; operation < 200_000; operation++) {
+            // small key range makes long probe sequences and many removals inside them
+            final long key = random.nextInt(3 * maxSize) * 0x1000L;
+            if (random.nextBoolean()) {
+                final int value = random.nextInt(Integer.MAX_VALUE);
+                final boolean fits = expected.size() < maxSize || expected.containsKey(key);
+                assertEquals(map.put(key, value), fits);
+                if (fits) {
+                    expected.put(key, value);
+                }
+            } else {
+                map.remove(key);
+                expected.remove(key);
+            }
+
+            assertEquals(map.size(), expected.size());
+            assertEquals(map.get(key, -1), (int) expected.getOrDefault(key, -1));
+        }
+
+        for (long key = 0; key < 3 * maxSize; key++) {
+            assertEquals(map.get(key * 0x1000L, -1), (int) expected.getOrDefault(key * 0x1000L, -1));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.statisticsservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapTransactionHeapTest {
+
+    private static final QuantileSketch.Mapping QUANTILE_MAPPING = new QuantileSketch.Mapping(0.01);
+    private static final long WINDOW_IN_MS = 1000;
+
+    @Test
+    public void matchesObjectHeapTest() {
+        final PriorityQueueStatisticsEngine offHeap = newEngine(new OffHeapTransactionHeap(Long.MAX_VALUE));
+        final PriorityQueueStatisticsEngine onHeap = newEngine(new ObjectTransactionHeap());
+        final Random random = new Random(3);
+
+        // more records than one chunk, timestamps are out of order within 100ms
+        long now = 10_000;
+        for (int round = 0; round < 200; round++) {
+            for (int index = 0; index < 1000; index++) {
+                final long timestamp = now - random.nextInt(100);
+                if (random.nextInt(50) == 0) {
+                    offHeap.addAggregate(timestamp, 3, 7.5, 1.5, 4);
+                    onHeap.addAggregate(timestamp, 3, 7.5, 1.5, 4);
+                } else {
+                    final double amount = random.nextInt(100_000) / 100.0;
+                    offHeap.add(amount, timestamp);
+                    onHeap.add(amount, timestamp);
+                }
+            }
+            now += 10;
+
+            assertEquals(offHeap.removeExpired(now, StatisticsService.BATCH_SIZE),
+                    onHeap.removeExpired(now, StatisticsService.BATCH_SIZE));
+            assertEquals(offHeap.size(), onHeap.size());
+            assertEquals(offHeap.nextExpiryTime(), onHeap.nextExpiryTime());
+            assertEquals(offHeap.getStatistics(), onHeap.getStatistics());
+        }
+        assertTrue(offHeap.size() > 100_000);
+
+        while (onHeap.removeExpired(now + WINDOW_IN_MS + 100, Integer.MAX_VALUE) > 0) {
+        }
+        while (offHeap.removeExpired(now + WINDOW_IN_MS + 100, Integer.MAX_VALUE) > 0) {
+        }
+        assertEquals(offHeap.size(), 0);
+        assertEquals(offHeap.getStatistics(), Statistics.EMPTY);
+        assertEquals(offHeap.nextExpiryTime(), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void oldestTransactionsAreEvictedWhenFullTest() {
+        final PriorityQueueStatisticsEngine engine =
+                newEngine(new OffHeapTransactionHeap(3 * OffHeapTransactionHeap.RECORD_SIZE));
+        engine.add(1, 10_000);
+        engine.add(2, 10_000);
+        engine.add(3, 10_001);
+        assertEquals(engine.evictedTransactions(), 0);
+
+        // both transactions of the oldest millisecond are evicted
+        engine.add(4, 10_002);
+        assertEquals(engine.evictedTransactions(), 2);
+        assertEquals(engine.size(), 2);
+        Statistics stat = engine.getStatistics();
+        assertEquals(stat.getCount(), 2);
+        assertEquals(stat.getSum(), 7, 0.01);
+        assertEquals(stat.getMin(), 3, 0.01);
+        assertEquals(stat.getMax(), 4, 0.01);
+
+        engine.addAggregate(10_003, 5, 10, 2, 2);
+        assertEquals(engine.evictedTransactions(), 2);
+        engine.add(5, 10_004);
+        assertEquals(engine.evictedTransactions(), 3);
+        stat = engine.getStatistics();
+        assertEquals(stat.getCount(), 7);
+        assertEquals(stat.getSum(), 19, 0.01);
+        assertEquals(stat.getMin(), 2, 0.01);
+        assertEquals(stat.getMax(), 5, 0.01);
+    }
+
+    private static PriorityQueueStatisticsEngine newEngine(TransactionHeap heap) {
+        return new PriorityQueueStatisticsEngine(WINDOW_IN_MS, SumAccumulator.Compensated::new, QUANTILE_MAPPING,
+                heap);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.statisticsservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantileSketchTest {
+
+    @Test
+    public void relativeErrorTest() {
+        for (double relativeAccuracy : new double[]{0.05, 0.01, 0.001}) {
+            final QuantileSketch.Mapping mapping = new QuantileSketch.Mapping(relativeAccuracy);
+            final QuantileSketch sketch = new QuantileSketch(mapping);
+            final Random random = new Random(3);
+
+            // log-normal amounts with a few negative ones and zeros
+            final double[] values = new double[100_000];
+            for (int index = 0; index < values.length; index++) {
+                final double value = Math.exp(random.nextGaussian() * 3);
+                values[index] = index % 50 == 0 ? -value : (index % 99 == 0 ? 0 : value);
+                sketch.add(mapping.bin(values[index]), 1);
+            }
+            Arrays.sort(values);
+
+            final double[] quantiles = {0, 0.01, 0.25, 0.5, 0.9, 0.95, 0.99, 0.999, 1};
+            final double[] results = new double[quantiles.length];
+            sketch.quantiles(quantiles, values.length, values[0], values[values.length - 1], results);
+
+            for (int index = 0; index < quantiles.length; index++) {
+                final long rank = Math.max(1, (long) Math.ceil(quantiles[index] * values.length));
+                final double expected = values[(int) rank - 1];
+                assertEquals(results[index], expected, Math.abs(expected) * relativeAccuracy + 1e-12,
+                        "relativeAccuracy=" + relativeAccuracy + ", quantile=" + quantiles[index]);
+            }
+        }
+    }
+
+    @Test
+    public void subtractTest() {
+        final QuantileSketch.Mapping mapping = new QuantileSketch.Mapping(0.01);
+        final QuantileSketch sketch = new QuantileSketch(mapping);
+        for (int value = 1; value <= 1000; value++) {
+            sketch.add(mapping.bin(value), 1);
+        }
+        for (int value = 1; value <= 500; value++) {
+            sketch.subtract(mapping.bin(value), 1);
+        }
+
+        final double[] results = new double[1];
+        sketch.quantiles(new double[]{0.5}, 500, 501, 1000, results);
+        assertEquals(results[0], 750, 750 * 0.01);
+    }
+
+    @Test
+    public void outOfRangeValuesTest() {
+        final QuantileSketch.Mapping mapping = new QuantileSketch.Mapping(0.01);
+        assertEquals(mapping.value(mapping.bin(1e-9)), 0, 0);
+        assertEquals(mapping.bin(Double.NaN), mapping.bin(0));
+        assertTrue(mapping.bin(1e15) < mapping.binCount());
+        assertTrue(mapping.bin(-1e15) >= 0);
+        assertEquals(mapping.bin(Double.POSITIVE_INFINITY), mapping.binCount() - 1);
+        assertEquals(mapping.bin(Double.NEGATIVE_INFINITY), 0);
+        assertEquals(mapping.bin(Double.NaN), mapping.bin(0));
+        assertTrue(mapping.bin(-2) < mapping.bin(-1));
+
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch.Mapping(0));
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch.Mapping(1));
+    }
+}
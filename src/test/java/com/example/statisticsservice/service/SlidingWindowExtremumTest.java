@@ -0,0 +1,109 @@
+package com.example.statisticsservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowExtremumTest {
+
+    @Test
+    public void inOrderTest() {
+        SlidingWindowExtremum max = SlidingWindowExtremum.max();
+        SlidingWindowExtremum min = SlidingWindowExtremum.min();
+        double[] amounts = {3, 1, 4, 1, 5, 9, 2, 6};
+        for (int index = 0; index < amounts.length; index++) {
+            max.add(index, amounts[index]);
+            min.add(index, amounts[index]);
+        }
+
+        assertEquals(max.get(), 9, 0.01);
+        assertEquals(min.get(), 1, 0.01);
+
+        max.removeOlderThan(6);
+        min.removeOlderThan(6);
+        assertEquals(max.get(), 6, 0.01);
+        assertEquals(min.get(), 2, 0.01);
+
+        max.removeOlderThan(8);
+        assertTrue(max.isEmpty());
+        assertThrows(IllegalStateException.class, max::get);
+    }
+
+    @Test
+    public void sameTimeTest() {
+        SlidingWindowExtremum max = SlidingWindowExtremum.max();
+        max.add(1, 5);
+        max.add(1, 3);
+        max.add(1, 7);
+        max.add(1, 2);
+
+        assertEquals(max.size(), 1);
+        assertEquals(max.get(), 7, 0.01);
+    }
+
+    @Test
+    public void lateSameTimeTest() {
+        SlidingWindowExtremum max = SlidingWindowExtremum.max();
+        max.add(1, 5);
+        max.add(2, 3);
+        max.add(3, 1);
+        // a greater late value replaces the value with the same time
+        max.add(2, 4);
+        assertEquals(max.size(), 3);
+
+        max.removeOlderThan(2);
+        assertEquals(max.get(), 4, 0.01);
+        max.removeOlderThan(3);
+        assertEquals(max.get(), 1, 0.01);
+        assertEquals(max.size(), 1);
+
+        SlidingWindowExtremum min = SlidingWindowExtremum.min();
+        min.add(1, 2);
+        min.add(2, 1);
+        min.add(3, 5);
+        // the older value is dominated as well
+        min.add(2, 0);
+        assertEquals(min.size(), 2);
+        assertEquals(min.get(), 0, 0.01);
+    }
+
+    @Test
+    public void randomOutOfOrderTest() {
+        final Random random = new Random(42);
+        SlidingWindowExtremum max = SlidingWindowExtremum.max();
+        SlidingWindowExtremum min = SlidingWindowExtremum.min();
+        List<long[]> live = new ArrayList<>();
+
+        long now = 0;
+        long expiredBefore = 0;
+        for (int step = 0; step < 100_000; step++) {
+            if (random.nextInt(4) == 0) {
+                expiredBefore = Math.min(now, expiredBefore + random.nextInt(5));
+                final long threshold = expiredBefore;
+                max.removeOlderThan(threshold);
+                min.removeOlderThan(threshold);
+                live.removeIf(element -> element[0] < threshold);
+            } else {
+                now += random.nextInt(3);
+                // up to 20 ticks late, but not expired
+                final long time = Math.max(expiredBefore, now - random.nextInt(20));
+                final long amount = random.nextInt(1000) - 500;
+                max.add(time, amount);
+                min.add(time, amount);
+                live.add(new long[]{time, amount});
+            }
+
+            if (live.isEmpty()) {
+                assertTrue(max.isEmpty());
+                assertTrue(min.isEmpty());
+            } else {
+                assertEquals(max.get(), live.stream().mapToLong(element -> element[1]).max().getAsLong(), 0);
+                assertEquals(min.get(), live.stream().mapToLong(element -> element[1]).min().getAsLong(), 0);
+            }
+        }
+    }
+}
@@ -1,21 +1,30 @@
 package com.example.statisticsservice.service;
 
+import com.example.statisticsservice.config.StatisticsProperties;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class StatisticsServiceTest {
 
     @Test
-    public void isValidTimestampTest() {
+    public void checkTimestampTest() {
         StatisticsService statisticsService = new StatisticsService(Duration.ofSeconds(60));
-        assertFalse(statisticsService.isValidTimestamp(System.currentTimeMillis() - 62_000));
-        assertTrue(statisticsService.isValidTimestamp(System.currentTimeMillis() - 58_000));
+        final long now = System.currentTimeMillis();
+        assertEquals(statisticsService.checkTimestamp(now - 62_000), Watermark.Status.LATE);
+        assertEquals(statisticsService.checkTimestamp(now - 58_000), Watermark.Status.ACCEPTED);
+        assertEquals(statisticsService.checkTimestamp(now + 500), Watermark.Status.ACCEPTED);
+        assertEquals(statisticsService.checkTimestamp(now + 60_000), Watermark.Status.FUTURE);
+        assertEquals(statisticsService.getLateTransactions(), 1);
+        assertEquals(statisticsService.getFutureTransactions(), 1);
     }
 
     @Test
@@ -26,11 +35,13 @@ class StatisticsServiceTest {
     }
 
     @Test
-    public void emptyStatisticsInvariantTest() throws InterruptedException {
+    public void emptyStatisticsInvariantTest() {
         final int windowMillis = 500;
-        StatisticsService statisticsService = new StatisticsService(Duration.ofMillis(windowMillis));
+        final SimulatedClock clock = new SimulatedClock(System.currentTimeMillis());
+        StatisticsService statisticsService =
+                new StatisticsService(StatisticsService.propertiesOf(Duration.ofMillis(windowMillis)), clock);
 
-        statisticsService.saveTransaction(1, System.currentTimeMillis());
+        statisticsService.saveTransaction(1, clock.millis());
         assertTrue(statisticsService.addNewElementsIfNeeded());
 
         Statistics stat = statisticsService.getStatisticsCache();
@@ -41,7 +52,10 @@ class StatisticsServiceTest {
         assertEquals(stat.getMax(), 1, 0.01);
 
         assertFalse(statisticsService.addNewElementsIfNeeded());
-        Thread.sleep(windowMillis);
+        // a transaction is in the window until the window has passed, inclusive
+        clock.advance(windowMillis);
+        assertFalse(statisticsService.removeOldElementsIfNeeded());
+        clock.advance(1);
 
         assertTrue(statisticsService.removeOldElementsIfNeeded());
         stat = statisticsService.getStatisticsCache();
@@ -50,6 +64,55 @@ class StatisticsServiceTest {
         assertFalse(statisticsService.removeOldElementsIfNeeded());
     }
 
+    @Test
+    public void evictionAtScaleTest() {
+        final long windowInMs = 60_000;
+        final long startMs = 1_600_000_000_000L;
+        final SimulatedClock clock = new SimulatedClock(startMs);
+        final StatisticsService statisticsService =
+                new StatisticsService(StatisticsService.propertiesOf(Duration.ofMillis(windowInMs)), clock);
+        final Random random = new Random(5);
+
+        // 10 virtual minutes of 500 transactions per second, checked every second against the exact window
+        final int seconds = 600;
+        final int perSecond = 500;
+        final long[] timestamps = new long[seconds * perSecond];
+        final double[] amounts = new double[timestamps.length];
+        int head = 0;
+        int tail = 0;
+        for (int second = 0; second < seconds; second++) {
+            for (int index = 0; index < perSecond; index++) {
+                clock.advanceTo(startMs + second * 1000L + index * 2L);
+                timestamps[tail] = clock.millis();
+                amounts[tail] = random.nextInt(1_000_000) / 100.0;
+                assertTrue(statisticsService.saveTransaction(amounts[tail], timestamps[tail]));
+                tail++;
+            }
+            while (statisticsService.addNewElementsIfNeeded()) {
+            }
+            while (statisticsService.removeOldElementsIfNeeded()) {
+            }
+
+            while (timestamps[head] < clock.millis() - windowInMs) {
+                head++;
+            }
+            double sum = 0;
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (int index = head; index < tail; index++) {
+                sum += amounts[index];
+                min = Math.min(min, amounts[index]);
+                max = Math.max(max, amounts[index]);
+            }
+            final Statistics stat = statisticsService.getStatisticsCache();
+            assertEquals(stat.getCount(), tail - head);
+            assertEquals(stat.getSum(), sum, 0.01);
+            assertEquals(stat.getMin(), min, 0);
+            assertEquals(stat.getMax(), max, 0);
+        }
+        assertEquals(statisticsService.getEngineSize(), tail - head);
+    }
+
     @Test
     public void addBatchTest() {
         final int windowMillis = 1000;
@@ -73,14 +136,19 @@ class StatisticsServiceTest {
         assertEquals(stat.getAvg(), 50.5, 0.1);
         assertEquals(stat.getMin(), 1, 0.01);
         assertEquals(stat.getMax(), 100, 0.01);
+        assertEquals(stat.getP50(), 50, 50 * 0.01);
+        assertEquals(stat.getP95(), 95, 95 * 0.01);
+        assertEquals(stat.getP99(), 99, 99 * 0.01);
     }
 
     @Test
-    public void batchTest() throws InterruptedException {
+    public void batchTest() {
         final int windowMillis = 1000;
-        StatisticsService statisticsService = new StatisticsService(Duration.ofMillis(windowMillis));
-
         final long startMs = System.currentTimeMillis();
+        final SimulatedClock clock = new SimulatedClock(startMs + 2);
+        StatisticsService statisticsService =
+                new StatisticsService(StatisticsService.propertiesOf(Duration.ofMillis(windowMillis)), clock);
+
         final int totalElements = 252;
         for (int index = 1; index <= totalElements; index++) {
             final long timeMillis;
@@ -107,7 +175,7 @@ class StatisticsServiceTest {
         // there are no transactions for removing
         assertFalse(statisticsService.removeOldElementsIfNeeded());
 
-        Thread.sleep(windowMillis / 2);
+        clock.advance(windowMillis / 2);
 
         // check, that we don't remove anything
         assertFalse(statisticsService.removeOldElementsIfNeeded());
@@ -128,7 +196,7 @@ class StatisticsServiceTest {
         assertEquals(stat.getMax(), 200, 0.01);
 
         // remove first batch
-        Thread.sleep(windowMillis / 2);
+        clock.advance(windowMillis / 2 - 1);
         assertTrue(statisticsService.removeOldElementsIfNeeded());
         stat = statisticsService.getStatisticsCache();
         assertEquals(stat.getSum(), 15050, 0.01);
@@ -149,6 +217,7 @@ class StatisticsServiceTest {
         assertFalse(statisticsService.addNewElementsIfNeeded());
 
         // remove second batch
+        clock.advance(1);
         assertTrue(statisticsService.removeOldElementsIfNeeded());
         stat = statisticsService.getStatisticsCache();
         assertEquals(stat.getSum(), 11778, 0.01);
@@ -158,6 +227,7 @@ class StatisticsServiceTest {
         assertEquals(stat.getMax(), 252, 0.01);
 
         // remove third batch
+        clock.advance(1);
         assertTrue(statisticsService.removeOldElementsIfNeeded());
         stat = statisticsService.getStatisticsCache();
         assertEmptyStatistics(stat);
@@ -166,6 +236,372 @@ class StatisticsServiceTest {
         assertFalse(statisticsService.removeOldElementsIfNeeded());
     }
 
+    @Test
+    public void bucketEngineTest() {
+        final int windowMillis = 500;
+        StatisticsProperties properties = new StatisticsProperties();
+        properties.getSliding().setWindow(Duration.ofMillis(windowMillis));
+        properties.setEngine(StatisticsProperties.Engine.BUCKETS);
+        final long startMs = 1_600_000_000_000L;
+        final SimulatedClock clock = new SimulatedClock(startMs);
+        StatisticsService statisticsService = new StatisticsService(properties, clock);
+
+        statisticsService.saveTransaction(1, startMs);
+        statisticsService.saveTransaction(3, startMs);
+        assertTrue(statisticsService.addNewElementsIfNeeded());
+
+        Statistics stat = statisticsService.getStatisticsCache();
+        assertEquals(stat.getSum(), 4, 0.01);
+        assertEquals(stat.getCount(), 2);
+        assertEquals(stat.getAvg(), 2, 0.01);
+        assertEquals(stat.getMin(), 1, 0.01);
+        assertEquals(stat.getMax(), 3, 0.01);
+
+        clock.advance(windowMillis);
+        assertFalse(statisticsService.removeOldElementsIfNeeded());
+        clock.advance(1);
+
+        assertTrue(statisticsService.removeOldElementsIfNeeded());
+        assertEmptyStatistics(statisticsService.getStatisticsCache());
+    }
+
+    @Test
+    public void multipleWindowsTest() {
+        StatisticsProperties properties = new StatisticsProperties();
+        properties.getSliding().setWindow(Duration.ofMillis(1000));
+        properties.getSliding().setWindows(List.of(Duration.ofMillis(200), Duration.ofMillis(1000)));
+        properties.setEngine(StatisticsProperties.Engine.BUCKETS);
+        final long startMs = 1_600_000_000_000L;
+        final SimulatedClock clock = new SimulatedClock(startMs);
+        StatisticsService statisticsService = new StatisticsService(properties, clock);
+        assertEquals(statisticsService.getWindows(), List.of(Duration.ofMillis(1000), Duration.ofMillis(200)));
+
+        statisticsService.saveTransaction(1, startMs);
+        // older than the short window, but valid for the long one
+        assertEquals(statisticsService.checkTimestamp(startMs - 500), Watermark.Status.ACCEPTED);
+        statisticsService.saveTransaction(2, startMs - 500);
+        assertTrue(statisticsService.addNewElementsIfNeeded());
+
+        assertEquals(statisticsService.getStatisticsCache().getSum(), 3, 0.01);
+        assertEquals(statisticsService.getStatisticsCache(Duration.ofMillis(1000)).getSum(), 3, 0.01);
+        assertEquals(statisticsService.getStatisticsCache(Duration.ofMillis(200)).getSum(), 1, 0.01);
+        assertThrows(IllegalArgumentException.class, () -> statisticsService.getStatisticsCache(Duration.ofSeconds(5)));
+
+        clock.advance(201);
+        assertTrue(statisticsService.removeOldElementsIfNeeded());
+        assertEmptyStatistics(statisticsService.getStatisticsCache(Duration.ofMillis(200)));
+        assertEquals(statisticsService.getStatisticsCache().getSum(), 3, 0.01);
+    }
+
+    @Test
+    public void snapshotVersionTest() {
+        StatisticsProperties properties = new StatisticsProperties();
+        properties.getSliding().setWindow(Duration.ofMillis(1000));
+        properties.getSliding().setWindows(List.of(Duration.ofMillis(200)));
+        properties.setEngine(StatisticsProperties.Engine.BUCKETS);
+        final SimulatedClock clock = new SimulatedClock(1_600_000_000_000L);
+        StatisticsService statisticsService = new StatisticsService(properties, clock);
+        final int shortWindow = statisticsService.windowIndex(Duration.ofMillis(200));
+
+        statisticsService.saveTransaction(1, clock.millis());
+        assertTrue(statisticsService.addNewElementsIfNeeded());
+        final StatisticsSnapshot snapshot = statisticsService.getSnapshot();
+        assertEquals(snapshot.getVersion(0), 1);
+        assertEquals(snapshot.getVersion(shortWindow), 1);
+
+        clock.advance(201);
+        assertTrue(statisticsService.removeOldElementsIfNeeded());
+        final StatisticsSnapshot expired = statisticsService.getSnapshot();
+        // only the short window has changed, the long one keeps its statistics instance
+        assertEquals(expired.getVersion(0), 1);
+        assertEquals(expired.getVersion(shortWindow), 2);
+        assertSame(expired.getStatistics(0), snapshot.getStatistics(0));
+        assertEmptyStatistics(expired.getStatistics(shortWindow));
+    }
+
+    @Test
+    public void recoveryFromLogTest(@TempDir Path directory) throws InterruptedException {
+        StatisticsProperties properties = new StatisticsProperties();
+        properties.getSliding().setWindow(Duration.ofSeconds(60));
+        properties.getPersistence().setEnabled(true);
+        properties.getPersistence().setDirectory(directory.toString());
+
+        StatisticsService statisticsService = new StatisticsService(properties);
+        final long now = System.currentTimeMillis();
+        statisticsService.saveTransaction(1, now - 120_000);
+        statisticsService.saveTransaction(2, now - 1_000);
+        statisticsService.saveTransaction(3, now);
+        assertTrue(statisticsService.addNewElementsIfNeeded());
+        statisticsService.destroy();
+
+        // the restarted service has the window before any new transaction
+        StatisticsService restartedService = new StatisticsService(properties);
+        restartedService.init();
+        try {
+            Statistics stat = restartedService.getStatisticsCache();
+            assertEquals(stat.getCount(), 2);
+            assertEquals(stat.getSum(), 5, 0.01);
+        } finally {
+            restartedService.destroy();
+        }
+    }
+
+    @Test
+    public void statisticsThreadTest() throws InterruptedException {
+        final int windowMillis = 300;
+        StatisticsProperties properties = new StatisticsProperties();
+        properties.getSliding().setWindow(Duration.ofMillis(windowMillis));
+        properties.setMaxStaleness(Duration.ofSeconds(10));
+        StatisticsService statisticsService = new StatisticsService(properties);
+        statisticsService.init();
+
+        try {
+            final long timestamp = System.currentTimeMillis();
+            statisticsService.saveTransaction(1, timestamp);
+
+            // the parked thread is woken up by the transaction, not by max staleness
+            awaitCount(statisticsService, 1, 1000);
+            assertTrue(System.currentTimeMillis() - timestamp < windowMillis);
+
+            // and by the expiry deadline
+            awaitCount(statisticsService, 0, 1000);
+            final long expiredAfter = System.currentTimeMillis() - timestamp;
+            assertTrue(expiredAfter > windowMillis, "expired too early: " + expiredAfter);
+            assertTrue(expiredAfter < 2 * windowMillis, "expired too late: " + expiredAfter);
+        } finally {
+            statisticsService.destroy();
+        }
+    }
+
+    @Test
+    public void rejectOverflowTest() {
+        StatisticsService statisticsService = newOverflowService(StatisticsProperties.OverflowPolicy.REJECT);
+        final long timestamp = System.currentTimeMillis();
+
+        assertTrue(statisticsService.saveTransaction(1, timestamp));
+        assertTrue(statisticsService.saveTransaction(2, timestamp));
+        assertFalse(statisticsService.saveTransaction(3, timestamp));
+        assertEquals(statisticsService.saveTransactions(new double[]{4, 5}, new long[]{timestamp, timestamp}, 2), 0);
+        assertEquals(statisticsService.getShedTransactions(), 3);
+        assertEquals(statisticsService.getIngestionQueueDepth(), 2);
+
+        assertTrue(statisticsService.addNewElementsIfNeeded());
+        assertEquals(statisticsService.getStatisticsCache().getSum(), 3, 0.01);
+    }
+
+    @Test
+    public void dropOldestOverflowTest() {
+        StatisticsService statisticsService = newOverflowService(StatisticsProperties.OverflowPolicy.DROP_OLDEST);
+        final long timestamp = System.currentTimeMillis();
+
+        assertTrue(statisticsService.saveTransaction(1, timestamp));
+        assertTrue(statisticsService.saveTransaction(2, timestamp));
+        assertTrue(statisticsService.saveTransaction(3, timestamp));
+        assertEquals(statisticsService.saveTransactions(new double[]{4, 5}, new long[]{timestamp, timestamp}, 2), 2);
+        assertEquals(statisticsService.getShedTransactions(), 3);
+
+        assertTrue(statisticsService.addNewElementsIfNeeded());
+        Statistics stat = statisticsService.getStatisticsCache();
+        assertEquals(stat.getSum(), 9, 0.01);
+        assertEquals(stat.getMin(), 4, 0.01);
+    }
+
+    @Test
+    public void blockOverflowTest() {
+        StatisticsService statisticsService = newOverflowService(StatisticsProperties.OverflowPolicy.BLOCK);
+        final long timestamp = System.currentTimeMillis();
+
+        assertTrue(statisticsService.saveTransaction(1, timestamp));
+        assertTrue(statisticsService.saveTransaction(2, timestamp));
+
+        // nobody drains the buffer, so the request waits for block timeout and is rejected
+        final long startNanos = System.nanoTime();
+        assertFalse(statisticsService.saveTransaction(3, timestamp));
+        assertTrue(System.nanoTime() - startNanos >= Duration.ofMillis(10).toNanos());
+        assertEquals(statisticsService.getShedTransactions(), 1);
+    }
+
+    @Test
+    public void coalesceOverflowTest() {
+        StatisticsService statisticsService = newOverflowService(StatisticsProperties.OverflowPolicy.COALESCE);
+        final long timestamp = System.currentTimeMillis();
+
+        for (int amount = 1; amount <= 10; amount++) {
+            assertTrue(statisticsService.saveTransaction(amount, timestamp));
+        }
+        assertTrue(statisticsService.saveTransaction(11, timestamp - 1));
+        assertEquals(statisticsService.getCoalescedTransactions(), 9);
+        assertEquals(statisticsService.getShedTransactions(), 0);
+
+        assertTrue(statisticsService.addNewElementsIfNeeded());
+        Statistics stat = statisticsService.getStatisticsCache();
+        assertEquals(stat.getSum(), 66, 0.01);
+        assertEquals(stat.getCount(), 11);
+        assertEquals(stat.getMin(), 1, 0.01);
+        assertEquals(stat.getMax(), 11, 0.01);
+        assertFalse(statisticsService.addNewElementsIfNeeded());
+    }
+
+    @Test
+    public void dropOldestIsNotSupportedByStripedModeTest() {
+        StatisticsProperties properties = new StatisticsProperties();
+        properties.getIngestion().setMode(StatisticsProperties.IngestionMode.STRIPED);
+        properties.getIngestion().setOverflowPolicy(StatisticsProperties.OverflowPolicy.DROP_OLDEST);
+        assertThrows(IllegalArgumentException.class, () -> new StatisticsService(properties));
+    }
+
+    @Test
+    public void aggregationMetricsTest() {
+        StatisticsService statisticsService = new StatisticsService(Duration.ofSeconds(60));
+        final List<Long> drained = new ArrayList<>();
+        final List<Long> recalculations = new ArrayList<>();
+        statisticsService.setAggregationRecorder(new AggregationRecorder() {
+            @Override
+            public void drained(long transactions) {
+                drained.add(transactions);
+            }
+
+            @Override
+            public void recalculated(long durationInNanos) {
+                recalculations.add(durationInNanos);
+            }
+        });
+
+        final long timestamp = System.currentTimeMillis() - 1000;
+        statisticsService.saveTransaction(1, timestamp);
+        statisticsService.saveTransaction(2, timestamp + 1);
+        assertEquals(statisticsService.getIngestionQueueDepth(), 2);
+        assertEquals(statisticsService.getEvictionLagInMs(), 0);
+
+        assertTrue(statisticsService.addNewElementsIfNeeded());
+        assertFalse(statisticsService.removeOldElementsIfNeeded());
+        assertEquals(statisticsService.getIngestionQueueDepth(), 0);
+        assertEquals(statisticsService.getEngineSize(), 2);
+        assertEquals(drained, List.of(2L));
+        assertEquals(recalculations.size(), 1);
+        assertTrue(statisticsService.getStatisticsStalenessInMs() < 1000);
+    }
+
+    @Test
+    public void shardedAggregationTest() throws InterruptedException {
+        StatisticsProperties properties = new StatisticsProperties();
+        properties.getSliding().setWindow(Duration.ofSeconds(60));
+        properties.setShards(3);
+        StatisticsService shardedService = new StatisticsService(properties);
+        StatisticsService singleService = new StatisticsService(Duration.ofSeconds(60));
+
+        // every producer thread is pinned to a shard, so transactions are spread over shards
+        final long timestamp = System.currentTimeMillis();
+        final Thread[] producers = new Thread[8];
+        for (int producer = 0; producer < producers.length; producer++) {
+            final int offset = producer * 1000;
+            producers[producer] = new Thread(() -> {
+                for (int i = 1; i <= 1000; i++) {
+                    shardedService.saveTransaction(offset + i, timestamp);
+                }
+            });
+            producers[producer].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        for (int i = 1; i <= producers.length * 1000; i++) {
+            singleService.saveTransaction(i, timestamp);
+        }
+
+        while (shardedService.addNewElementsIfNeeded()) {
+        }
+        while (singleService.addNewElementsIfNeeded()) {
+        }
+
+        final Statistics sharded = shardedService.getStatisticsCache();
+        final Statistics single = singleService.getStatisticsCache();
+        assertEquals(sharded.getCount(), 8000);
+        assertEquals(sharded.getSum(), single.getSum(), 0.001);
+        assertEquals(sharded.getMin(), 1, 0.01);
+        assertEquals(sharded.getMax(), 8000, 0.01);
+        assertEquals(sharded.getP50(), single.getP50(), 0.000001);
+        assertEquals(sharded.getP95(), single.getP95(), 0.000001);
+        assertEquals(sharded.getP99(), single.getP99(), 0.000001);
+        assertEquals(shardedService.getEngineSize(), 8000);
+    }
+
+    @Test
+    public void shardsWithPersistenceAreNotSupportedTest(@TempDir Path directory) {
+        StatisticsProperties properties = new StatisticsProperties();
+        properties.setShards(2);
+        properties.getPersistence().setEnabled(true);
+        properties.getPersistence().setDirectory(directory.toString());
+        assertThrows(IllegalArgumentException.class, () -> new StatisticsService(properties));
+    }
+
+    private StatisticsService newOverflowService(StatisticsProperties.OverflowPolicy overflowPolicy) {
+        StatisticsProperties properties = new StatisticsProperties();
+        properties.getIngestion().setCapacity(2);
+        properties.getIngestion().setOverflowPolicy(overflowPolicy);
+        return new StatisticsService(properties);
+    }
+
+    @Test
+    public void passInterleavesAddAndExpiryTest() {
+        final long windowInMs = 1_000;
+        final int batchSize = StatisticsService.BATCH_SIZE;
+        final StatisticsProperties properties = StatisticsService.propertiesOf(Duration.ofMillis(windowInMs));
+        properties.getDrain().setAdaptive(false);
+        final SimulatedClock clock = new SimulatedClock(1_600_000_000_000L);
+        StatisticsService statisticsService = new StatisticsService(properties, clock);
+
+        for (int i = 0; i < batchSize; i++) {
+            statisticsService.saveTransaction(1, clock.millis());
+        }
+        assertTrue(statisticsService.aggregate());
+        assertFalse(statisticsService.aggregate());
+        assertEquals(statisticsService.getStatisticsCache().getCount(), batchSize);
+
+        // a backlog of new transactions doesn't hold back expiry of the old ones
+        clock.advance(windowInMs + 1);
+        for (int i = 0; i < 3 * batchSize; i++) {
+            statisticsService.saveTransaction(2, clock.millis());
+        }
+        assertTrue(statisticsService.aggregate());
+        Statistics stat = statisticsService.getStatisticsCache();
+        assertEquals(stat.getCount(), batchSize);
+        assertEquals(stat.getMin(), 2, 0.01);
+
+        assertTrue(statisticsService.aggregate());
+        assertTrue(statisticsService.aggregate());
+        assertFalse(statisticsService.aggregate());
+        assertEquals(statisticsService.getStatisticsCache().getCount(), 3 * batchSize);
+    }
+
+    @Test
+    public void adaptivePassDrainsBacklogTest() {
+        final StatisticsProperties properties = StatisticsService.propertiesOf(Duration.ofSeconds(60));
+        properties.getDrain().setTargetLatency(Duration.ofSeconds(1));
+        final SimulatedClock clock = new SimulatedClock(1_600_000_000_000L);
+        StatisticsService statisticsService = new StatisticsService(properties, clock);
+
+        // the first pass takes min batch, then batches are sized by the measured cost
+        final int backlog = 100 * StatisticsService.BATCH_SIZE;
+        for (int i = 0; i < backlog; i++) {
+            statisticsService.saveTransaction(1, clock.millis());
+        }
+        assertTrue(statisticsService.aggregate());
+        assertEquals(statisticsService.getStatisticsCache().getCount(), StatisticsService.BATCH_SIZE);
+        assertTrue(statisticsService.aggregate());
+        assertFalse(statisticsService.aggregate());
+        assertEquals(statisticsService.getStatisticsCache().getCount(), backlog);
+    }
+
+    private void awaitCount(StatisticsService statisticsService, long count, long timeoutMillis)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (statisticsService.getStatisticsCache().getCount() != count) {
+            assertTrue(System.currentTimeMillis() < deadline, "timeout waiting for count=" + count);
+            Thread.sleep(1);
+        }
+    }
+
     private void assertEmptyStatistics(Statistics stat) {
         assertEquals(stat.getSum(), 0, 0.01);
         assertEquals(stat.getCount(), 0);
@@ -0,0 +1,102 @@
+package com.example.statisticsservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripedIngestionBufferTest {
+
+    @Test
+    public void offerAndDrainTest() {
+        StripedIngestionBuffer buffer = new StripedIngestionBuffer(3, 10);
+        assertEquals(buffer.stripeCount(), 4);
+
+        for (int index = 1; index <= 5; index++) {
+            assertTrue(buffer.offer(index, 1000 + index));
+        }
+        assertEquals(buffer.size(), 5);
+
+        List<Long> timestamps = new ArrayList<>();
+        double[] sum = new double[1];
+        assertEquals(buffer.drainTo((amount, timestamp) -> {
+            sum[0] += amount;
+            timestamps.add(timestamp);
+        }, 3), 3);
+        assertEquals(timestamps, List.of(1001L, 1002L, 1003L));
+
+        assertEquals(buffer.drainTo((amount, timestamp) -> sum[0] += amount, 100), 2);
+        assertEquals(sum[0], 15, 0.01);
+        assertEquals(buffer.size(), 0);
+        assertEquals(buffer.drainTo((amount, timestamp) -> fail("buffer is empty"), 100), 0);
+    }
+
+    @Test
+    public void fullBufferTest() {
+        StripedIngestionBuffer buffer = new StripedIngestionBuffer(2, 4);
+
+        // the current thread's stripe is full, then the other stripe is used
+        for (int index = 0; index < 8; index++) {
+            assertTrue(buffer.offer(1, index));
+        }
+        assertFalse(buffer.offer(1, 8));
+
+        assertEquals(buffer.drainTo((amount, timestamp) -> { }, 1), 1);
+        assertTrue(buffer.offer(1, 8));
+    }
+
+    @Test
+    public void offerAllTest() {
+        StripedIngestionBuffer buffer = new StripedIngestionBuffer(2, 4);
+        double[] amounts = {1, 2, 3, 4, 5, 6, 7};
+        long[] timestamps = {1, 2, 3, 4, 5, 6, 7};
+
+        assertEquals(buffer.offerAll(amounts, timestamps, 0, 3), 3);
+        // doesn't fit into the current thread's stripe, goes to the other one
+        assertEquals(buffer.offerAll(amounts, timestamps, 3, 4), 4);
+        assertEquals(buffer.offerAll(amounts, timestamps, 0, 7), 1);
+
+        double[] sum = new double[1];
+        assertEquals(buffer.drainTo((amount, timestamp) -> sum[0] += amount, 100), 8);
+        assertEquals(sum[0], 29, 0.01);
+    }
+
+    @Test
+    public void concurrentProducersTest() throws InterruptedException {
+        final int producers = 8;
+        final int perProducer = 100_000;
+        StripedIngestionBuffer buffer = new StripedIngestionBuffer(4, 1024);
+
+        CountDownLatch done = new CountDownLatch(producers);
+        for (int producer = 0; producer < producers; producer++) {
+            new Thread(() -> {
+                for (int index = 1; index <= perProducer; index++) {
+                    while (!buffer.offer(index, index)) {
+                        Thread.onSpinWait();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+
+        long count = 0;
+        double sum = 0;
+        double[] batchSum = new double[1];
+        while (count < (long) producers * perProducer) {
+            batchSum[0] = 0;
+            count += buffer.drainTo((amount, timestamp) -> {
+                assertEquals(amount, timestamp, 0.01);
+                batchSum[0] += amount;
+            }, 100);
+            sum += batchSum[0];
+        }
+        done.await();
+
+        assertEquals(count, (long) producers * perProducer);
+        assertEquals(sum, producers * (perProducer * (perProducer + 1.0) / 2), 0.01);
+        assertEquals(buffer.size(), 0);
+    }
+}
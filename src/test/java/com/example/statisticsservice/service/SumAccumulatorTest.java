@@ -0,0 +1,113 @@
+package com.example.statisticsservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SumAccumulatorTest {
+
+    private static final int CYCLES = 5_000_000;
+
+    @Test
+    public void fixedPointHasNoDriftTest() {
+        for (long seed = 1; seed <= 3; seed++) {
+            assertNoDrift(new SumAccumulator.FixedPoint(1, 2), seed, 0);
+        }
+    }
+
+    @Test
+    public void compensatedHasNoDriftTest() {
+        for (long seed = 1; seed <= 3; seed++) {
+            // amounts are binary approximations of cents, so the error is a few ulps of the largest amount,
+            // plain double summation drifts by more than a cent here
+            assertNoDrift(new SumAccumulator.Compensated(1), seed, 1e-4);
+        }
+    }
+
+    @Test
+    public void subtractAndResetTest() {
+        SumAccumulator accumulator = new SumAccumulator.Compensated(2);
+        accumulator.add(0, 0.1);
+        accumulator.add(0, 0.2);
+        accumulator.add(1, 0.1);
+        accumulator.add(1, 0.2);
+        accumulator.add(1, 1e16);
+
+        accumulator.subtractAndReset(1, 0);
+        assertEquals(accumulator.get(0), 0, 0);
+        assertEquals(accumulator.get(1), 1e16, 0);
+    }
+
+    @Test
+    public void fixedPointRoundingTest() {
+        SumAccumulator accumulator = new SumAccumulator.FixedPoint(1, 2);
+        accumulator.add(0, 0.125);
+        accumulator.add(0, -0.125);
+        accumulator.add(0, 2.5e-3);
+        accumulator.subtract(0, 2.5e-3);
+        assertEquals(accumulator.get(0), 0, 0);
+
+        assertThrows(IllegalArgumentException.class, () -> new SumAccumulator.FixedPoint(1, 10));
+    }
+
+    @Test
+    public void fixedPointOverflowTest() {
+        SumAccumulator accumulator = new SumAccumulator.FixedPoint(2, 2);
+        // 1e17 is out of range of long cents, a total of window may overflow as well
+        accumulator.add(0, 1e17);
+        accumulator.add(0, 5e16);
+        accumulator.add(0, 5e16);
+        accumulator.add(0, 0.25);
+        assertEquals(accumulator.get(0), 2e17, 1e3);
+
+        accumulator.add(1, 5e16);
+        accumulator.subtractSum(0, 1);
+        accumulator.subtract(0, 1e17);
+        accumulator.subtract(0, 5e16);
+        assertEquals(accumulator.get(0), 0.25, 1e-9);
+
+        accumulator.subtract(0, 0.25);
+        accumulator.add(0, -9e16);
+        accumulator.add(0, -9e16);
+        assertEquals(accumulator.get(0), -1.8e17, 1e3);
+    }
+
+    /**
+     * Keeps a sliding window of random amounts with cents and compares the accumulator with exact sum of cents
+     * after every add/expire cycle.
+     */
+    private void assertNoDrift(SumAccumulator accumulator, long seed, double tolerance) {
+        final Random random = new Random(seed);
+        final ArrayDeque<Long> window = new ArrayDeque<>();
+        long exactCents = 0;
+
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            // amounts of very different magnitudes make plain double summation drift
+            final long cents = random.nextInt(3) == 0
+                    ? random.nextInt(100)
+                    : (random.nextLong() % 1_000_000_000_000L);
+            accumulator.add(0, cents / 100.0);
+            window.addLast(cents);
+            exactCents += cents;
+
+            if (window.size() > 1000 || random.nextBoolean()) {
+                final long expired = window.removeFirst();
+                accumulator.subtract(0, expired / 100.0);
+                exactCents -= expired;
+            }
+
+            if (cycle % 1000 == 0) {
+                assertEquals(accumulator.get(0), exactCents / 100.0, tolerance,
+                        "seed=" + seed + ", cycle=" + cycle);
+            }
+        }
+
+        while (!window.isEmpty()) {
+            accumulator.subtract(0, window.removeFirst() / 100.0);
+        }
+        assertEquals(accumulator.get(0), 0, tolerance, "seed=" + seed);
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.statisticsservice.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionLogTest {
+
+    private static final long RETENTION_IN_MS = 60_000;
+    /**
+     * Three transaction records per segment.
+     */
+    private static final long SMALL_SEGMENT_SIZE = TransactionLog.HEADER_SIZE + 3 * 17;
+
+    @TempDir
+    Path directory;
+
+    private final List<String> replayed = new ArrayList<>();
+    /**
+     * Expired segments are deleted on rollover by the clock.
+     */
+    private final long now = System.currentTimeMillis();
+
+    @Test
+    public void appendAndRecoverTest() throws IOException {
+        TransactionLog transactionLog = newLog(1 << 20);
+        assertEquals(recover(transactionLog, now), 0);
+        transactionLog.appendTransaction(1.5, now - 10);
+        transactionLog.appendAggregate(now - 5, 3, 6, 1, 3);
+        transactionLog.appendTransaction(2, now);
+        transactionLog.close();
+
+        assertEquals(recover(newLog(1 << 20), now), 3);
+        assertEquals(replayed, List.of(
+                "1.5@" + (now - 10),
+                "3:6.0[1.0,3.0]@" + (now - 5),
+                "2.0@" + now));
+    }
+
+    @Test
+    public void segmentsAreDeletedWithWindowTest() throws IOException {
+        TransactionLog transactionLog = newLog(SMALL_SEGMENT_SIZE);
+        recover(transactionLog, now);
+        for (int index = 0; index < 9; index++) {
+            transactionLog.appendTransaction(index, now + index * 10_000L);
+        }
+        assertEquals(transactionLog.segmentCount(), 3);
+        transactionLog.close();
+
+        // the first segment has expired, the second one is partially live
+        assertEquals(recover(newLog(SMALL_SEGMENT_SIZE), now + 95_000), 5);
+        assertEquals(replayed, List.of(
+                "4.0@" + (now + 40_000),
+                "5.0@" + (now + 50_000),
+                "6.0@" + (now + 60_000),
+                "7.0@" + (now + 70_000),
+                "8.0@" + (now + 80_000)));
+        assertEquals(segmentFiles().size(), 2);
+    }
+
+    @Test
+    public void newRecordsGoToNewSegmentTest() throws IOException {
+        TransactionLog transactionLog = newLog(1 << 20);
+        recover(transactionLog, now);
+        transactionLog.appendTransaction(1, now);
+        transactionLog.close();
+
+        transactionLog = newLog(1 << 20);
+        recover(transactionLog, now);
+        transactionLog.appendTransaction(2, now);
+        transactionLog.close();
+        assertEquals(segmentFiles().size(), 2);
+
+        replayed.clear();
+        assertEquals(recover(newLog(1 << 20), now), 2);
+        assertEquals(replayed, List.of("1.0@" + now, "2.0@" + now));
+    }
+
+    @Test
+    public void foreignFilesAreSkippedTest() throws IOException {
+        Files.write(directory.resolve("0000000000000000.wal"), new byte[]{1, 2, 3});
+        Files.write(directory.resolve("notes.txt"), new byte[]{1});
+
+        TransactionLog transactionLog = newLog(1 << 20);
+        assertEquals(recover(transactionLog, now), 0);
+        transactionLog.appendTransaction(1, now);
+        transactionLog.close();
+
+        // the foreign segment file is not overwritten
+        assertEquals(Files.size(directory.resolve("0000000000000000.wal")), 3);
+        assertEquals(recover(newLog(1 << 20), now), 1);
+    }
+
+    private TransactionLog newLog(long segmentSize) {
+        return new TransactionLog(directory, segmentSize, 0, RETENTION_IN_MS, Clock.systemUTC());
+    }
+
+    private long recover(TransactionLog transactionLog, long nowInMs) throws IOException {
+        return transactionLog.recover(nowInMs,
+                (amount, timestamp) -> replayed.add(amount + "@" + timestamp),
+                (timestamp, count, sum, min, max) -> replayed.add(count + ":" + sum + "[" + min + "," + max + "]@"
+                        + timestamp));
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.statisticsservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WatermarkTest {
+
+    private static final long NOW = 1_000_000;
+
+    @Test
+    public void allowedLatenessTest() {
+        Watermark watermark = new Watermark(60_000, 5_000, 1_000);
+        assertEquals(watermark.check(NOW - 30_000, NOW), Watermark.Status.ACCEPTED);
+        // the watermark is still 30s behind, so an older transaction is not late yet
+        assertEquals(watermark.check(NOW - 33_000, NOW), Watermark.Status.ACCEPTED);
+        assertEquals(watermark.lagInMs(NOW), 30_000);
+
+        assertEquals(watermark.check(NOW, NOW), Watermark.Status.ACCEPTED);
+        assertEquals(watermark.check(NOW - 5_000, NOW), Watermark.Status.ACCEPTED);
+        assertEquals(watermark.check(NOW - 5_001, NOW), Watermark.Status.LATE);
+        // out of order, but within allowed lateness
+        assertEquals(watermark.check(NOW - 100, NOW), Watermark.Status.ACCEPTED);
+        assertEquals(watermark.lagInMs(NOW), 0);
+        assertEquals(watermark.getLateTransactions(), 1);
+    }
+
+    @Test
+    public void windowLimitsLatenessTest() {
+        Watermark watermark = new Watermark(60_000, Long.MAX_VALUE, 0);
+        assertEquals(watermark.lagInMs(NOW), 0);
+        assertEquals(watermark.check(NOW - 60_000, NOW), Watermark.Status.ACCEPTED);
+        assertEquals(watermark.check(NOW - 60_001, NOW), Watermark.Status.LATE);
+        assertEquals(watermark.check(-1, NOW), Watermark.Status.LATE);
+    }
+
+    @Test
+    public void futureSkewTest() {
+        Watermark watermark = new Watermark(60_000, 60_000, 1_000);
+        assertEquals(watermark.check(NOW + 1_000, NOW), Watermark.Status.ACCEPTED);
+        assertEquals(watermark.check(NOW + 1_001, NOW), Watermark.Status.FUTURE);
+        assertEquals(watermark.getFutureTransactions(), 1);
+
+        // the skewed transaction moved the watermark only up to now
+        assertEquals(watermark.lagInMs(NOW + 10), 10);
+    }
+}